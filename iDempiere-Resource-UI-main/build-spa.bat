@@ -24,6 +24,10 @@ set "JAR_NAME=%PLUGIN_NAME%-%PLUGIN_VERSION%.jar"
 set "FULL_JAR_PATH=%OUTPUT_DIR%\%JAR_NAME%"
 
 set "SERVLET_API_JAR=%PLUGIN_DIR%\lib\servlet-api.jar"
+set "IDEMPIERE_BASE_JAR=%PLUGIN_DIR%\lib\org.adempiere.base.jar"
+set "GSON_JAR=%PLUGIN_DIR%\lib\gson.jar"
+set JUNIT_VERSION=1.10.2
+set "JUNIT_JAR=%PLUGIN_DIR%\lib\junit-platform-console-standalone.jar"
 set "BUILD_DIR=%PLUGIN_DIR%\build"
 set "BUILD_CLASSES_DIR=%BUILD_DIR%\classes"
 set "WEB_CONTENT_DIR=%PLUGIN_DIR%\web-content"
@@ -48,6 +52,14 @@ if exist "%PLUGIN_DIR%\ui" (
     ) else (
         call bun install && call bun run build
     )
+    :: 預先壓縮 .br / .gz，伺服器執行時不需再壓縮
+    echo [提示] 預先壓縮靜態資源...
+    where node >nul 2>nul
+    if !ERRORLEVEL! equ 0 (
+        call node scripts\precompress.mjs "%WEB_CONTENT_DIR%"
+    ) else (
+        call bun scripts\precompress.mjs "%WEB_CONTENT_DIR%"
+    )
     popd
 )
 
@@ -60,13 +72,45 @@ if not exist "%SERVLET_API_JAR%" (
     move /y "%PLUGIN_DIR%\lib\javax.servlet-api-3.1.0.jar" "%SERVLET_API_JAR%" >nul
 )
 
+:: API servlet (tw.mxp.emui.api) 的 iDempiere 依賴，從 idempiere-app 容器複製
+if not exist "%IDEMPIERE_BASE_JAR%" (
+    echo [複製] 從 idempiere-app 複製 org.adempiere.base.jar...
+    if not exist "%PLUGIN_DIR%\lib" mkdir "%PLUGIN_DIR%\lib"
+    for /f "delims=" %%f in ('docker exec idempiere-app sh -c "ls /opt/idempiere/plugins/org.adempiere.base_*.jar | head -n 1"') do docker cp "idempiere-app:%%f" "%IDEMPIERE_BASE_JAR%"
+)
+if not exist "%GSON_JAR%" (
+    echo [複製] 從 idempiere-app 複製 gson.jar...
+    if not exist "%PLUGIN_DIR%\lib" mkdir "%PLUGIN_DIR%\lib"
+    for /f "delims=" %%f in ('docker exec idempiere-app sh -c "ls /opt/idempiere/plugins/com.google.gson_*.jar | head -n 1"') do docker cp "idempiere-app:%%f" "%GSON_JAR%"
+)
+
 :: 4. Java 編譯
 echo [3/5] 編譯 Java 原始碼...
 if not exist "%BUILD_CLASSES_DIR%" mkdir "%BUILD_CLASSES_DIR%"
 :: 先將檔案清單組合起來
-set "JAVA_SOURCES="%PLUGIN_DIR%\src\tw\mxp\emui\SpaFilter.java" "%PLUGIN_DIR%\src\tw\mxp\emui\SpaServlet.java""
+set "JAVA_SOURCES="%PLUGIN_DIR%\src\tw\mxp\emui\SpaAsyncWriter.java" "%PLUGIN_DIR%\src\tw\mxp\emui\SpaBootstrap.java" "%PLUGIN_DIR%\src\tw\mxp\emui\SpaBootstrapValues.java" "%PLUGIN_DIR%\src\tw\mxp\emui\SpaByteRanges.java" "%PLUGIN_DIR%\src\tw\mxp\emui\SpaCachePolicy.java" "%PLUGIN_DIR%\src\tw\mxp\emui\SpaFileResource.java" "%PLUGIN_DIR%\src\tw\mxp\emui\SpaFilter.java" "%PLUGIN_DIR%\src\tw\mxp\emui\SpaPreloadHints.java" "%PLUGIN_DIR%\src\tw\mxp\emui\SpaResource.java" "%PLUGIN_DIR%\src\tw\mxp\emui\SpaResourceCache.java" "%PLUGIN_DIR%\src\tw\mxp\emui\SpaServlet.java" "%PLUGIN_DIR%\src\tw\mxp\emui\api\ApiException.java" "%PLUGIN_DIR%\src\tw\mxp\emui\api\ApiServlet.java" "%PLUGIN_DIR%\src\tw\mxp\emui\api\ApiToken.java" "%PLUGIN_DIR%\src\tw\mxp\emui\api\AttachmentWriter.java" "%PLUGIN_DIR%\src\tw\mxp\emui\api\ReceiptServlet.java" "%PLUGIN_DIR%\src\tw\mxp\emui\api\RequestStatisticsServlet.java" "%PLUGIN_DIR%\src\tw\mxp\emui\api\UploadServlet.java""
 :: 執行編譯
-javac -encoding UTF-8 -cp "%SERVLET_API_JAR%" -d "%BUILD_CLASSES_DIR%" %JAVA_SOURCES%
+javac -encoding UTF-8 -cp "%SERVLET_API_JAR%;%IDEMPIERE_BASE_JAR%;%GSON_JAR%" -d "%BUILD_CLASSES_DIR%" %JAVA_SOURCES%
+
+:: 單元測試 (test\ 的 JUnit 5 測試)；失敗時中止，不打包
+echo [3.1/5] 執行單元測試...
+if not exist "%JUNIT_JAR%" (
+    echo [下載] 下載 junit-platform-console-standalone.jar...
+    docker run --rm -v "%PLUGIN_DIR%\lib:/out" maven:3.9-eclipse-temurin-17 ^
+    mvn -q dependency:copy -Dartifact=org.junit.platform:junit-platform-console-standalone:%JUNIT_VERSION% -DoutputDirectory=/out
+    move /y "%PLUGIN_DIR%\lib\junit-platform-console-standalone-%JUNIT_VERSION%.jar" "%JUNIT_JAR%" >nul
+)
+set "TEST_CP=%SERVLET_API_JAR%;%IDEMPIERE_BASE_JAR%;%GSON_JAR%;%BUILD_CLASSES_DIR%"
+if not exist "%BUILD_DIR%\test-classes" mkdir "%BUILD_DIR%\test-classes"
+set "TEST_SOURCES="
+for /r "%PLUGIN_DIR%\test" %%f in (*.java) do set "TEST_SOURCES=!TEST_SOURCES! "%%f""
+javac -encoding UTF-8 -cp "%TEST_CP%;%JUNIT_JAR%" -d "%BUILD_DIR%\test-classes" !TEST_SOURCES!
+java -jar "%JUNIT_JAR%" execute --disable-banner --class-path "%TEST_CP%;%BUILD_DIR%\test-classes" --scan-class-path "%BUILD_DIR%\test-classes"
+if !ERRORLEVEL! neq 0 (
+    echo [錯誤] 單元測試失敗，未打包 JAR。
+    pause
+    exit /b 1
+)
 
 :: 5. 打包 JAR (徹底解決 SoɮשΥؿ 亂碼問題)
 echo [4/5] 打包 JAR...
@@ -85,6 +129,8 @@ jar cvfm "%FULL_JAR_PATH%" "META-INF\MANIFEST.MF" -C "%BUILD_CLASSES_DIR%" . -C
 :: 加入 HTML (直接使用相對路徑)
 if exist "%WEB_SRC%\index.html" (
     jar uvf "%FULL_JAR_PATH%" -C "%WEB_SRC%" index.html
+    if exist "%WEB_SRC%\index.html.br" jar uvf "%FULL_JAR_PATH%" -C "%WEB_SRC%" index.html.br
+    if exist "%WEB_SRC%\index.html.gz" jar uvf "%FULL_JAR_PATH%" -C "%WEB_SRC%" index.html.gz
 ) else (
     echo [錯誤] 找不到 index.html，請檢查前端 build 是否成功。
 )
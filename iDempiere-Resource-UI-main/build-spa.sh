@@ -17,6 +17,7 @@ set -euo pipefail
 # - Use --no-deploy / --no-restart to disable.
 DO_DEPLOY=1
 DO_RESTART=1
+DO_TEST=1
 
 usage() {
   cat <<'EOF'
@@ -27,6 +28,7 @@ Options:
   --no-deploy      Only build JAR, do not docker cp
   --restart        Restart idempiere-app after deploy (default)
   --no-restart     Do not restart idempiere-app after deploy
+  --no-test        Do not run the unit tests of test/
 
 Notes:
   - If you're on SSH and worry about disconnects, run with: --no-restart
@@ -39,6 +41,7 @@ while [ "${1:-}" != "" ]; do
     --no-deploy) DO_DEPLOY=0 ;;
     --restart) DO_RESTART=1 ;;
     --no-restart) DO_RESTART=0 ;;
+    --no-test) DO_TEST=0 ;;
     -h|--help) usage; exit 0 ;;
     *)
       echo "Unknown option: $1"
@@ -59,8 +62,13 @@ PLUGIN_VERSION="1.0.1"
 JAR_NAME="${PLUGIN_NAME}-${PLUGIN_VERSION}.jar"
 
 SERVLET_API_JAR="$PLUGIN_DIR/lib/servlet-api.jar"
+IDEMPIERE_BASE_JAR="$PLUGIN_DIR/lib/org.adempiere.base.jar"
+GSON_JAR="$PLUGIN_DIR/lib/gson.jar"
+JUNIT_VERSION="1.10.2"
+JUNIT_JAR="$PLUGIN_DIR/lib/junit-platform-console-standalone.jar"
 BUILD_DIR="$PLUGIN_DIR/build"
 BUILD_CLASSES_DIR="$BUILD_DIR/classes"
+BUILD_TEST_CLASSES_DIR="$BUILD_DIR/test-classes"
 BUILD_WEBINF_DIR="$BUILD_DIR/WEB-INF"
 WEB_CONTENT_DIR="$PLUGIN_DIR/web-content"
 
@@ -138,6 +146,14 @@ build_ui_if_possible() {
   echo "Building..."
   (cd "$PLUGIN_DIR/ui" && $build_cmd)
 
+  # Write .br/.gz siblings once here, so the servlet never compresses at runtime
+  echo "Precompressing assets..."
+  if has_cmd node; then
+    (cd "$PLUGIN_DIR/ui" && node scripts/precompress.mjs "$WEB_CONTENT_DIR")
+  else
+    (cd "$PLUGIN_DIR/ui" && bun scripts/precompress.mjs "$WEB_CONTENT_DIR")
+  fi
+
   # Vite emptyOutDir may remove .gitkeep; restore it so the directory stays tracked.
   : > "$WEB_CONTENT_DIR/.gitkeep"
 }
@@ -201,7 +217,69 @@ ensure_servlet_api_jar() {
   exit 1
 }
 
+ensure_plugin_jar() {
+  # Usage: ensure_plugin_jar <target jar> <bundle jar pattern>
+  # The API servlets (tw.mxp.emui.api) compile against iDempiere bundles; they are not on Maven Central.
+  local target="$1"
+  local pattern="$2"
+  if [ -f "$target" ]; then
+    return 0
+  fi
+  mkdir -p "$PLUGIN_DIR/lib"
+
+  # 1) Non-Docker / local iDempiere: $WORKSPACE_DIR/plugins.
+  local f
+  for f in "$WORKSPACE_DIR"/plugins/$pattern; do
+    if [ -f "$f" ]; then
+      echo "$(basename "$target") not found; using local: $f"
+      cp "$f" "$target"
+      return 0
+    fi
+  done
+
+  # 2) Copy from running container
+  echo "$(basename "$target") not found; copying from running idempiere-app container..."
+  local jar_path
+  jar_path="$(docker exec idempiere-app sh -c "for f in /opt/idempiere/plugins/$pattern; do echo \"\$f\"; break; done" || true)"
+  if [ -n "$jar_path" ] && docker cp "idempiere-app:$jar_path" "$target"; then
+    return 0
+  fi
+
+  echo "ERROR: $(basename "$target") not found."
+  echo "       Put the iDempiere bundle $pattern into: $target"
+  exit 1
+}
+
+ensure_junit_jar() {
+  # JUnit 5 console launcher (JUnit Jupiter included), only used to run test/; not packaged.
+  if [ -f "$JUNIT_JAR" ]; then
+    return 0
+  fi
+  echo "$(basename "$JUNIT_JAR") not found; downloading junit-platform-console-standalone $JUNIT_VERSION..."
+  local artifact="org.junit.platform:junit-platform-console-standalone:$JUNIT_VERSION"
+  local repo_path="org/junit/platform/junit-platform-console-standalone/$JUNIT_VERSION/junit-platform-console-standalone-$JUNIT_VERSION.jar"
+  if use_native_toolchain; then
+    mvn -q -Dtransitive=false dependency:get -Dartifact="$artifact"
+    cp "$HOME/.m2/repository/$repo_path" "$JUNIT_JAR"
+  else
+    docker run --rm \
+      -v "$PLUGIN_DIR/lib:/out" \
+      maven:3.9-eclipse-temurin-17 \
+      bash -lc "mvn -q -Dmaven.repo.local=/tmp/.m2 -Dtransitive=false dependency:get -Dartifact=$artifact && cp /tmp/.m2/repository/$repo_path /out/junit-platform-console-standalone.jar"
+  fi
+  if [ ! -f "$JUNIT_JAR" ]; then
+    echo "ERROR: $(basename "$JUNIT_JAR") not found."
+    echo "       Put junit-platform-console-standalone-$JUNIT_VERSION.jar into: $JUNIT_JAR, or use --no-test"
+    exit 1
+  fi
+}
+
 ensure_servlet_api_jar
+ensure_plugin_jar "$IDEMPIERE_BASE_JAR" "org.adempiere.base_*.jar"
+ensure_plugin_jar "$GSON_JAR" "com.google.gson_*.jar"
+if [ "$DO_TEST" -eq 1 ]; then
+  ensure_junit_jar
+fi
 
 # 0. Build UI (if available)
 build_ui_if_possible
@@ -209,13 +287,64 @@ build_ui_if_possible
 # 1. Compile Java Source
 echo "Compiling Java sources..."
 if use_native_toolchain; then
-  javac -cp "$SERVLET_API_JAR" -d "$BUILD_CLASSES_DIR" \
+  javac -cp "$SERVLET_API_JAR:$IDEMPIERE_BASE_JAR:$GSON_JAR" -d "$BUILD_CLASSES_DIR" \
+    "$PLUGIN_DIR/src/tw/mxp/emui/SpaAsyncWriter.java" \
+    "$PLUGIN_DIR/src/tw/mxp/emui/SpaBootstrap.java" \
+    "$PLUGIN_DIR/src/tw/mxp/emui/SpaBootstrapValues.java" \
+    "$PLUGIN_DIR/src/tw/mxp/emui/SpaByteRanges.java" \
+    "$PLUGIN_DIR/src/tw/mxp/emui/SpaCachePolicy.java" \
+    "$PLUGIN_DIR/src/tw/mxp/emui/SpaFileResource.java" \
     "$PLUGIN_DIR/src/tw/mxp/emui/SpaFilter.java" \
-    "$PLUGIN_DIR/src/tw/mxp/emui/SpaServlet.java"
+    "$PLUGIN_DIR/src/tw/mxp/emui/SpaPreloadHints.java" \
+    "$PLUGIN_DIR/src/tw/mxp/emui/SpaResource.java" \
+    "$PLUGIN_DIR/src/tw/mxp/emui/SpaResourceCache.java" \
+    "$PLUGIN_DIR/src/tw/mxp/emui/SpaServlet.java" \
+    "$PLUGIN_DIR/src/tw/mxp/emui/api/ApiException.java" \
+    "$PLUGIN_DIR/src/tw/mxp/emui/api/ApiServlet.java" \
+    "$PLUGIN_DIR/src/tw/mxp/emui/api/ApiToken.java" \
+    "$PLUGIN_DIR/src/tw/mxp/emui/api/AttachmentWriter.java" \
+    "$PLUGIN_DIR/src/tw/mxp/emui/api/ReceiptServlet.java" \
+    "$PLUGIN_DIR/src/tw/mxp/emui/api/RequestStatisticsServlet.java" \
+    "$PLUGIN_DIR/src/tw/mxp/emui/api/UploadServlet.java"
 else
-  run_in_jdk javac -cp lib/servlet-api.jar -d build/classes \
+  run_in_jdk javac -cp lib/servlet-api.jar:lib/org.adempiere.base.jar:lib/gson.jar -d build/classes \
+    src/tw/mxp/emui/SpaAsyncWriter.java \
+    src/tw/mxp/emui/SpaBootstrap.java \
+    src/tw/mxp/emui/SpaBootstrapValues.java \
+    src/tw/mxp/emui/SpaByteRanges.java \
+    src/tw/mxp/emui/SpaCachePolicy.java \
+    src/tw/mxp/emui/SpaFileResource.java \
     src/tw/mxp/emui/SpaFilter.java \
-    src/tw/mxp/emui/SpaServlet.java
+    src/tw/mxp/emui/SpaPreloadHints.java \
+    src/tw/mxp/emui/SpaResource.java \
+    src/tw/mxp/emui/SpaResourceCache.java \
+    src/tw/mxp/emui/SpaServlet.java \
+    src/tw/mxp/emui/api/ApiException.java \
+    src/tw/mxp/emui/api/ApiServlet.java \
+    src/tw/mxp/emui/api/ApiToken.java \
+    src/tw/mxp/emui/api/AttachmentWriter.java \
+    src/tw/mxp/emui/api/ReceiptServlet.java \
+    src/tw/mxp/emui/api/RequestStatisticsServlet.java \
+    src/tw/mxp/emui/api/UploadServlet.java
+fi
+
+# 1.1 Run the unit tests of test/ (JUnit 5); a failing test stops the build
+if [ "$DO_TEST" -eq 1 ]; then
+  echo "Running unit tests..."
+  mkdir -p "$BUILD_TEST_CLASSES_DIR"
+  if use_native_toolchain; then
+    TEST_CP="$SERVLET_API_JAR:$IDEMPIERE_BASE_JAR:$GSON_JAR:$BUILD_CLASSES_DIR"
+    javac -encoding UTF-8 -cp "$TEST_CP:$JUNIT_JAR" -d "$BUILD_TEST_CLASSES_DIR" \
+      $(find "$PLUGIN_DIR/test" -name "*.java")
+    java -jar "$JUNIT_JAR" execute --disable-banner \
+      --class-path "$TEST_CP:$BUILD_TEST_CLASSES_DIR" --scan-class-path "$BUILD_TEST_CLASSES_DIR"
+  else
+    TEST_CP="lib/servlet-api.jar:lib/org.adempiere.base.jar:lib/gson.jar:build/classes"
+    run_in_jdk javac -encoding UTF-8 -cp "$TEST_CP:lib/junit-platform-console-standalone.jar" -d build/test-classes \
+      $(cd "$PLUGIN_DIR" && find test -name "*.java")
+    run_in_jdk java -jar lib/junit-platform-console-standalone.jar execute --disable-banner \
+      --class-path "$TEST_CP:build/test-classes" --scan-class-path build/test-classes
+  fi
 fi
 
 # 2. Prepare Config
@@ -245,6 +374,14 @@ WEB_CONTENT_CONTAINER_DIR="$WEB_CONTENT_SOURCE"
 web_content_jar_args_host=(-C "$WEB_CONTENT_HOST_DIR" index.html)
 web_content_jar_args_container=(-C "$WEB_CONTENT_CONTAINER_DIR" index.html)
 
+# Precompressed siblings of index.html (assets/ siblings are included with the folder)
+for variant in index.html.br index.html.gz; do
+  if [ -f "$WEB_CONTENT_HOST_DIR/$variant" ]; then
+    web_content_jar_args_host+=(-C "$WEB_CONTENT_HOST_DIR" "$variant")
+    web_content_jar_args_container+=(-C "$WEB_CONTENT_CONTAINER_DIR" "$variant")
+  fi
+done
+
 if [ -d "$WEB_CONTENT_HOST_DIR/assets" ]; then
   web_content_jar_args_host+=(-C "$WEB_CONTENT_HOST_DIR" assets)
   web_content_jar_args_container+=(-C "$WEB_CONTENT_CONTAINER_DIR" assets)
@@ -0,0 +1,163 @@
+package tw.mxp.emui;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Non-blocking writer of a cached buffer (Servlet 3.1 {@link WriteListener}).
+ * The response is written only while the output is ready, so a slow client
+ * does not hold a container thread; the container calls back when the
+ * output can take more bytes.
+ *
+ * <p>The writer also listens to the async context. A response that times out
+ * or fails in the container is completed and counted once, so a stalled client
+ * never leaves the context open or the active count growing.</p>
+ */
+public final class SpaAsyncWriter implements WriteListener, AsyncListener {
+
+    /** Bytes copied per write from a direct buffer. */
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    private static final AtomicLong started = new AtomicLong();
+    private static final AtomicLong completed = new AtomicLong();
+    private static final AtomicLong failed = new AtomicLong();
+    private static final AtomicLong timeouts = new AtomicLong();
+
+    private final AsyncContext asyncContext;
+    private final ServletOutputStream output;
+    private final ByteBuffer buffer;
+    private final AtomicBoolean finished = new AtomicBoolean();
+    private byte[] chunk;
+
+    private SpaAsyncWriter(AsyncContext asyncContext, ServletOutputStream output, ByteBuffer buffer) {
+        this.asyncContext = asyncContext;
+        this.output = output;
+        this.buffer = buffer;
+    }
+
+    /**
+     * Starts asynchronous processing and writes the buffer without blocking.
+     * Headers, including Content-Length, must be set before.
+     *
+     * @param request the HTTP servlet request
+     * @param response the HTTP servlet response
+     * @param buffer the bytes to write; its position is advanced
+     * @param timeout the async timeout in milliseconds
+     * @throws IOException if the output stream cannot be obtained
+     */
+    public static void start(
+            HttpServletRequest request,
+            HttpServletResponse response,
+            ByteBuffer buffer,
+            long timeout) throws IOException {
+        AsyncContext asyncContext = request.startAsync(request, response);
+        asyncContext.setTimeout(timeout);
+        ServletOutputStream output = response.getOutputStream();
+        SpaAsyncWriter writer = new SpaAsyncWriter(asyncContext, output, buffer);
+        started.incrementAndGet();
+        asyncContext.addListener(writer);
+        output.setWriteListener(writer);
+    }
+
+    @Override
+    public void onWritePossible() throws IOException {
+        while (output.isReady()) {
+            if (finished.get()) {
+                return;
+            }
+            if (!buffer.hasRemaining()) {
+                finish(completed);
+                return;
+            }
+            int length = Math.min(buffer.remaining(), CHUNK_SIZE);
+            if (buffer.hasArray()) {
+                // The cached array is never modified, so the container may hold it until the write completes
+                output.write(buffer.array(), buffer.arrayOffset() + buffer.position(), length);
+                buffer.position(buffer.position() + length);
+            } else {
+                // The chunk is reused once isReady reports the previous write as complete
+                if (chunk == null) {
+                    chunk = new byte[CHUNK_SIZE];
+                }
+                buffer.get(chunk, 0, length);
+                output.write(chunk, 0, length);
+            }
+        }
+    }
+
+    @Override
+    public void onError(Throwable t) {
+        // Usually the client went away; the connection is closed by the container
+        finish(failed);
+    }
+
+    @Override
+    public void onTimeout(AsyncEvent event) {
+        finish(timeouts);
+    }
+
+    @Override
+    public void onError(AsyncEvent event) {
+        finish(failed);
+    }
+
+    @Override
+    public void onComplete(AsyncEvent event) {
+        // Completed by the container before the buffer was written
+        if (finished.compareAndSet(false, true)) {
+            failed.incrementAndGet();
+        }
+    }
+
+    @Override
+    public void onStartAsync(AsyncEvent event) {
+        // Not restarted
+    }
+
+    /**
+     * Counts the response once and completes the async context.
+     *
+     * @param counter the counter of the outcome
+     */
+    private void finish(AtomicLong counter) {
+        if (!finished.compareAndSet(false, true)) {
+            return;
+        }
+        counter.incrementAndGet();
+        try {
+            asyncContext.complete();
+        } catch (IllegalStateException e) {
+            // Already completed or dispatched by the container
+        }
+    }
+
+    /**
+     * Gets the number of asynchronous responses in progress.
+     *
+     * @return started minus completed, failed and timed out responses
+     */
+    public static long getActive() {
+        return started.get() - completed.get() - failed.get() - timeouts.get();
+    }
+
+    public static long getStarted() {
+        return started.get();
+    }
+
+    public static long getFailed() {
+        return failed.get();
+    }
+
+    public static long getTimeouts() {
+        return timeouts.get();
+    }
+}
@@ -0,0 +1,292 @@
+package tw.mxp.emui;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import javax.servlet.ServletContext;
+
+/**
+ * Bootstrap data rendered into index.html, so the SPA does not wait for REST round trips
+ * before its first render. The data is an inline JSON block:
+ *
+ * <pre>
+ * &lt;script id="emui-bootstrap" type="application/json"&gt;
+ * {"names":["EMUI_X"],"sysConfig":{"0":{"EMUI_X":{"id":100,"value":"Y"}},"11":{}}}
+ * &lt;/script&gt;
+ * </pre>
+ *
+ * <p>index.html is public and requested before login, so the client of the user is unknown:
+ * the block holds the values of an explicit list of AD_SysConfig names for each client, and
+ * the SPA picks the section of its client. Only global, non-sensitive names belong in the
+ * list; values kept per record (e.g. EMUI_RESOURCE_ASSIGNMENT_COLOR_&lt;id&gt;) stay on REST,
+ * as they would expose client data and grow the page with the records. A value of
+ * organization * is preferred over values of other organizations.</p>
+ *
+ * <p>The clients are the configured client IDs, System (0) only by default; a client is
+ * never listed unless configured, as the page is public. System is always included, as
+ * client values override it.</p>
+ *
+ * <p>The values are read from iDempiere by {@link SpaBootstrapValues}, which links the
+ * optional imports of the bundle; outside iDempiere no block is rendered. They are cached
+ * until AD_SysConfig changes, so a request queries the database only after a change, and
+ * the page is rendered again only when the values or index.html changed. No lock is held
+ * while the values are loaded.</p>
+ *
+ * <p>Lookup data (e.g. resource types) is not rendered: it is filtered by the role of
+ * the login, which the public page does not know, so it stays on REST.</p>
+ */
+public class SpaBootstrap {
+
+    /** No names: the block is not rendered until names are configured */
+    public static final String DEFAULT_NAMES = "";
+    /** System only */
+    public static final String DEFAULT_CLIENT_IDS = "0";
+
+    private static final String DB_CLASS = "org.compiere.util.DB";
+    private static final String HEAD_END = "</head>";
+    private static final String SCRIPT_START = "<script id=\"emui-bootstrap\" type=\"application/json\">";
+    private static final String SCRIPT_END = "</script>";
+
+    private final ServletContext context;
+    private final SpaResourceCache resourceCache;
+    private final List<String> names;
+    private final String sql;
+
+    /** The values, or null outside iDempiere */
+    private final SpaBootstrapValues values;
+
+    /** The last rendered page; replaced, never modified */
+    private volatile Rendered rendered;
+
+    /**
+     * Creates the bootstrap renderer.
+     *
+     * @param context the servlet context, for logging
+     * @param resourceCache the cache creating the rendered entry
+     * @param names comma-separated AD_SysConfig names of the public values
+     * @param clientIds comma-separated AD_Client_IDs whose values are rendered besides System
+     */
+    public SpaBootstrap(
+            ServletContext context,
+            SpaResourceCache resourceCache,
+            String names,
+            String clientIds) {
+        this.context = context;
+        this.resourceCache = resourceCache;
+        this.names = parseNames(names);
+        this.sql = createSql(this.names, parseClientIds(context, clientIds));
+        this.values = createValues();
+    }
+
+    /**
+     * Checks if the values can be read.
+     *
+     * @return true inside iDempiere with at least one name
+     */
+    public boolean isAvailable() {
+        return values != null && !names.isEmpty();
+    }
+
+    /**
+     * Renders index.html with the bootstrap block.
+     *
+     * @param index the cached index.html
+     * @return the rendered entry, or index itself if no block can be rendered
+     */
+    public SpaResource render(SpaResourceCache.Entry index) {
+        if (!isAvailable()) {
+            return index;
+        }
+
+        List<List<Object>> rows;
+        try {
+            rows = values.getRows(sql, names.toArray());
+        } catch (RuntimeException e) {
+            context.log("Cannot load bootstrap values of " + names, e);
+            return index;
+        }
+
+        String indexETag = index.getETag(null);
+        Rendered last = rendered;
+        if (last != null && last.rows == rows && last.indexETag.equals(indexETag)) {
+            return last.entry;
+        }
+
+        // Rendered again after a change; concurrent requests may both render, with the same result
+        String json = toJson(rows);
+        long jsonChanged = last != null && json.equals(last.json)
+            ? last.jsonChanged
+            // Whole seconds, as HTTP dates are
+            : System.currentTimeMillis() / 1000 * 1000;
+        ByteBuffer buffer = index.getBuffer(null);
+        String html = StandardCharsets.UTF_8.decode(buffer).toString();
+        int headEnd = html.toLowerCase(Locale.ROOT).indexOf(HEAD_END);
+        if (headEnd < 0) {
+            return index;
+        }
+        String page = html.substring(0, headEnd) + SCRIPT_START + json + SCRIPT_END + html.substring(headEnd);
+        SpaResourceCache.Entry entry = resourceCache.createEntry(index.getMimeType(), page.getBytes(StandardCharsets.UTF_8),
+            Math.max(index.getLastModified(), jsonChanged));
+        rendered = new Rendered(indexETag, rows, json, jsonChanged, entry);
+        return entry;
+    }
+
+    /**
+     * Creates the query of the values. It has one row per client without values, so
+     * every client has its section.
+     */
+    private static String createSql(List<String> names, List<Integer> clientIds) {
+        StringBuilder sql = new StringBuilder("SELECT c.AD_Client_ID, s.Name, s.Value, s.AD_SysConfig_ID FROM AD_Client c")
+            .append(" LEFT OUTER JOIN AD_SysConfig s ON (s.AD_Client_ID=c.AD_Client_ID AND s.IsActive='Y' AND s.Name IN (");
+        for (int i = 0; i < names.size(); i++) {
+            sql.append(i == 0 ? "?" : ",?");
+        }
+        sql.append(")) WHERE c.IsActive='Y' AND c.AD_Client_ID IN (0");
+        for (Integer clientId : clientIds) {
+            sql.append(',').append(clientId.intValue());
+        }
+        return sql.append(") ORDER BY c.AD_Client_ID, s.Name, s.AD_Org_ID").toString();
+    }
+
+    /**
+     * Converts the rows of the values to JSON.
+     *
+     * @param rows the rows of the query
+     * @return the JSON
+     */
+    private String toJson(List<List<Object>> rows) {
+        Map<Integer, Map<String, Object[]>> values = new TreeMap<>();
+        for (List<Object> row : rows) {
+            Map<String, Object[]> client = values.computeIfAbsent(Integer.valueOf(((Number) row.get(0)).intValue()),
+                clientId -> new TreeMap<>());
+            if (row.get(1) != null) {
+                // The first row of a name is of the lowest organization
+                client.putIfAbsent(String.valueOf(row.get(1)), new Object[] {row.get(3), row.get(2)});
+            }
+        }
+
+        StringBuilder out = new StringBuilder("{\"names\":[");
+        for (int i = 0; i < names.size(); i++) {
+            out.append(i == 0 ? "" : ",");
+            appendString(out, names.get(i));
+        }
+        out.append("],\"sysConfig\":{");
+        boolean firstClient = true;
+        for (Map.Entry<Integer, Map<String, Object[]>> client : values.entrySet()) {
+            out.append(firstClient ? "" : ",").append('"').append(client.getKey()).append("\":{");
+            firstClient = false;
+            boolean firstValue = true;
+            for (Map.Entry<String, Object[]> value : client.getValue().entrySet()) {
+                out.append(firstValue ? "" : ",");
+                firstValue = false;
+                appendString(out, value.getKey());
+                out.append(":{\"id\":").append(((Number) value.getValue()[0]).intValue()).append(",\"value\":");
+                appendString(out, value.getValue()[1] == null ? "" : value.getValue()[1].toString());
+                out.append('}');
+            }
+            out.append('}');
+        }
+        return out.append("}}").toString();
+    }
+
+    /**
+     * Appends a JSON string that is safe inside a script element:
+     * {@code <}, {@code >} and {@code &} are escaped, so the value cannot close the element,
+     * as are the line and paragraph separators.
+     */
+    private static void appendString(StringBuilder out, String value) {
+        out.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    out.append("\\\"");
+                    break;
+                case '\\':
+                    out.append("\\\\");
+                    break;
+                case '\n':
+                    out.append("\\n");
+                    break;
+                case '\r':
+                    out.append("\\r");
+                    break;
+                case '\t':
+                    out.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20 || c == '<' || c == '>' || c == '&' || c == '\u2028' || c == '\u2029') {
+                        out.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        out.append(c);
+                    }
+            }
+        }
+        out.append('"');
+    }
+
+    private static List<String> parseNames(String names) {
+        List<String> list = new ArrayList<>();
+        if (names == null) {
+            return list;
+        }
+        for (String name : names.split(",")) {
+            name = name.trim();
+            if (!name.isEmpty() && !list.contains(name)) {
+                list.add(name);
+            }
+        }
+        return list;
+    }
+
+    private static List<Integer> parseClientIds(ServletContext context, String clientIds) {
+        List<Integer> list = new ArrayList<>();
+        if (clientIds == null) {
+            return list;
+        }
+        for (String clientId : clientIds.split(",")) {
+            clientId = clientId.trim();
+            if (clientId.isEmpty()) {
+                continue;
+            }
+            try {
+                list.add(Integer.valueOf(clientId));
+            } catch (NumberFormatException e) {
+                context.log("Invalid bootstrap client ID: " + clientId);
+            }
+        }
+        return list;
+    }
+
+    private SpaBootstrapValues createValues() {
+        try {
+            Class.forName(DB_CLASS);
+            return new SpaBootstrapValues();
+        } catch (ClassNotFoundException | LinkageError e) {
+            context.log("Bootstrap data disabled: " + DB_CLASS + " is not available");
+            return null;
+        }
+    }
+
+    /** Page rendered for one version of index.html and of the values */
+    private static final class Rendered {
+        private final String indexETag;
+        private final List<List<Object>> rows;
+        private final String json;
+        private final long jsonChanged;
+        private final SpaResourceCache.Entry entry;
+
+        private Rendered(String indexETag, List<List<Object>> rows, String json, long jsonChanged,
+                SpaResourceCache.Entry entry) {
+            this.indexETag = indexETag;
+            this.rows = rows;
+            this.json = json;
+            this.jsonChanged = jsonChanged;
+            this.entry = entry;
+        }
+    }
+}
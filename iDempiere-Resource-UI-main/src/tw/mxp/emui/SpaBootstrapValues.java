@@ -0,0 +1,51 @@
+package tw.mxp.emui;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.compiere.util.CCache;
+import org.compiere.util.DB;
+
+/**
+ * AD_SysConfig rows of the bootstrap block, cached until AD_SysConfig changes.
+ * This class links org.compiere.util, so it is only loaded inside iDempiere.
+ */
+final class SpaBootstrapValues {
+
+    private static final String TABLE_NAME = "AD_SysConfig";
+
+    /** Rows by query; any change of AD_SysConfig resets them */
+    private final CCache<String, List<List<Object>>> cache =
+        new CCache<String, List<List<Object>>>(TABLE_NAME, "EMUI_Bootstrap", 1, 0, false) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            public int reset(int recordId) {
+                return reset();
+            }
+
+            @Override
+            public void newRecord(int recordId) {
+                reset();
+            }
+        };
+
+    /**
+     * Gets the rows of the query, loading them after a change of AD_SysConfig.
+     * The rows are not modified; the same list is returned until the cache is reset.
+     *
+     * @param sql the query
+     * @param params the parameters
+     * @return the rows
+     */
+    List<List<Object>> getRows(String sql, Object[] params) {
+        List<List<Object>> rows = cache.get(sql);
+        if (rows == null) {
+            rows = DB.getSQLArrayObjectsEx(null, sql, params);
+            // null if no row is found
+            rows = rows == null ? new ArrayList<List<Object>>() : rows;
+            cache.put(sql, rows);
+        }
+        return rows;
+    }
+}
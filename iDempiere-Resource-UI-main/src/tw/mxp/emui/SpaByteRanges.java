@@ -0,0 +1,142 @@
+package tw.mxp.emui;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Parser of HTTP byte range requests (RFC 7233).
+ * Overlapping and adjacent ranges are coalesced, so a multipart response
+ * never sends the same bytes twice.
+ */
+public final class SpaByteRanges {
+
+    public static final String UNIT = "bytes";
+
+    /** More ranges than this are ignored and the full content is sent. */
+    private static final int MAX_RANGES = 16;
+    private static final String UNIT_PREFIX = UNIT + "=";
+
+    private SpaByteRanges() {
+    }
+
+    /**
+     * Parses a Range header against a representation length.
+     *
+     * @param header the Range request header
+     * @param length the length of the selected representation
+     * @return the satisfiable ranges in ascending order, an empty list if no range is
+     *         satisfiable (416), or null if the header is invalid or ignored (200)
+     */
+    public static List<Range> parse(String header, long length) {
+        if (header == null || !header.regionMatches(true, 0, UNIT_PREFIX, 0, UNIT_PREFIX.length())) {
+            return null;
+        }
+        String[] specs = header.substring(UNIT_PREFIX.length()).split(",");
+        if (specs.length > MAX_RANGES) {
+            return null;
+        }
+
+        List<Range> ranges = new ArrayList<>();
+        for (String spec : specs) {
+            spec = spec.trim();
+            int dash = spec.indexOf('-');
+            if (dash < 0) {
+                return null;
+            }
+            try {
+                String first = spec.substring(0, dash).trim();
+                String last = spec.substring(dash + 1).trim();
+                if (first.isEmpty()) {
+                    // Suffix range: the last n bytes
+                    long suffix = Long.parseLong(last);
+                    if (suffix < 0) {
+                        return null;
+                    }
+                    if (suffix > 0 && length > 0) {
+                        ranges.add(new Range(Math.max(0, length - suffix), length - 1));
+                    }
+                    continue;
+                }
+                long start = Long.parseLong(first);
+                long end = last.isEmpty() ? Long.MAX_VALUE : Long.parseLong(last);
+                if (start < 0 || end < start) {
+                    return null;
+                }
+                if (start < length) {
+                    ranges.add(new Range(start, Math.min(end, length - 1)));
+                }
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+        return coalesce(ranges);
+    }
+
+    /**
+     * Gets the Content-Range header of a 416 response.
+     *
+     * @param length the length of the selected representation
+     * @return the header value
+     */
+    public static String getUnsatisfiedContentRange(long length) {
+        return UNIT + " */" + length;
+    }
+
+    private static List<Range> coalesce(List<Range> ranges) {
+        if (ranges.size() < 2) {
+            return ranges;
+        }
+        Collections.sort(ranges, Comparator.comparingLong(range -> range.start));
+        List<Range> coalesced = new ArrayList<>();
+        Range current = ranges.get(0);
+        for (int i = 1; i < ranges.size(); i++) {
+            Range next = ranges.get(i);
+            if (next.start <= current.end + 1) {
+                current = new Range(current.start, Math.max(current.end, next.end));
+            } else {
+                coalesced.add(current);
+                current = next;
+            }
+        }
+        coalesced.add(current);
+        return coalesced;
+    }
+
+    /**
+     * Satisfiable byte range, first and last byte inclusive.
+     */
+    public static final class Range {
+
+        private final long start;
+        private final long end;
+
+        Range(long start, long end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        public long getStart() {
+            return start;
+        }
+
+        public long getEnd() {
+            return end;
+        }
+
+        public long getLength() {
+            return end - start + 1;
+        }
+
+        /**
+         * Gets the Content-Range header of this range.
+         *
+         * @param length the length of the selected representation
+         * @return the header value
+         */
+        public String getContentRange(long length) {
+            return UNIT + " " + start + "-" + end + "/" + length;
+        }
+    }
+}
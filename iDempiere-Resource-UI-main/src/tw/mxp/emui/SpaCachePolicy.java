@@ -0,0 +1,98 @@
+package tw.mxp.emui;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Cache-Control policy for SPA resources.
+ * Content-hashed build output is cached for a year without revalidation,
+ * while index.html and SPA fallback responses must be revalidated on every use.
+ *
+ * <p>Path patterns are comma-separated and support an exact path ({@code /index.html}),
+ * a prefix ({@code /assets/*}) or a suffix ({@code *.html}).</p>
+ */
+public class SpaCachePolicy {
+
+    public static final String DEFAULT_IMMUTABLE_PATHS = "/assets/*";
+    public static final String DEFAULT_NO_CACHE_PATHS = "/index.html";
+    public static final String DEFAULT_IMMUTABLE_CACHE_CONTROL = "public, max-age=31536000, immutable";
+    public static final String DEFAULT_NO_CACHE_CONTROL = "no-cache";
+
+    private static final String WILDCARD = "*";
+
+    private final List<String> immutablePaths;
+    private final List<String> noCachePaths;
+    private final String immutableCacheControl;
+    private final String noCacheControl;
+    private final String defaultCacheControl;
+
+    /**
+     * Creates a policy.
+     *
+     * @param immutablePaths patterns of content-hashed resources
+     * @param noCachePaths patterns of resources that must be revalidated
+     * @param immutableCacheControl Cache-Control of immutable resources
+     * @param noCacheControl Cache-Control of no-cache resources and SPA fallback responses
+     * @param defaultCacheControl Cache-Control of other resources, or null to send none
+     */
+    public SpaCachePolicy(
+            String immutablePaths,
+            String noCachePaths,
+            String immutableCacheControl,
+            String noCacheControl,
+            String defaultCacheControl) {
+        this.immutablePaths = parsePatterns(immutablePaths);
+        this.noCachePaths = parsePatterns(noCachePaths);
+        this.immutableCacheControl = immutableCacheControl;
+        this.noCacheControl = noCacheControl;
+        this.defaultCacheControl = defaultCacheControl;
+    }
+
+    /**
+     * Gets the Cache-Control header of a response.
+     *
+     * @param path the normalized resource path
+     * @param fallback true if index.html is served for a client-side route
+     * @return the header value, or null to send none
+     */
+    public String getCacheControl(String path, boolean fallback) {
+        if (fallback || matches(noCachePaths, path)) {
+            return noCacheControl;
+        }
+        if (matches(immutablePaths, path)) {
+            return immutableCacheControl;
+        }
+        return defaultCacheControl;
+    }
+
+    private static List<String> parsePatterns(String patterns) {
+        List<String> list = new ArrayList<>();
+        if (patterns == null) {
+            return list;
+        }
+        for (String pattern : patterns.split(",")) {
+            pattern = pattern.trim();
+            if (!pattern.isEmpty()) {
+                list.add(pattern);
+            }
+        }
+        return list;
+    }
+
+    private static boolean matches(List<String> patterns, String path) {
+        for (String pattern : patterns) {
+            if (pattern.endsWith(WILDCARD)) {
+                if (path.startsWith(pattern.substring(0, pattern.length() - 1))) {
+                    return true;
+                }
+            } else if (pattern.startsWith(WILDCARD)) {
+                if (path.endsWith(pattern.substring(1))) {
+                    return true;
+                }
+            } else if (pattern.equals(path)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
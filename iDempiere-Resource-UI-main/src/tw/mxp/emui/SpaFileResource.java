@@ -0,0 +1,231 @@
+package tw.mxp.emui;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.servlet.ServletContext;
+
+/**
+ * SPA resource served from a file of an exploded deployment.
+ * The file is streamed to the response in fixed-size chunks without loading the whole
+ * file, so the heap used per request does not grow with the file size.
+ *
+ * <p>Precompressed {@code .br} and {@code .gz} siblings are served the same way.
+ * The ETag is a hash of the content, as for cached resources, so it stays the same when
+ * a redeployment rewrites identical bytes. The file is hashed once per path, length and
+ * modification time, and the hash is reused until the file changes.</p>
+ */
+public final class SpaFileResource implements SpaResource {
+
+    private static final String DEFAULT_MIME_TYPE = "application/octet-stream";
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /** Content hashes of the served files, by path. */
+    private static final Map<Path, FileHash> HASHES = new ConcurrentHashMap<>();
+
+    private final String mimeType;
+    private final Path raw;
+    private final Path gzip;
+    private final Path brotli;
+    private final long length;
+    private final long gzipLength;
+    private final long brotliLength;
+    private final long lastModified;
+    private final String hash;
+
+    private SpaFileResource(String mimeType, Path raw, long length, Path gzip, Path brotli, long lastModified,
+            String hash) throws IOException {
+        this.mimeType = mimeType;
+        this.hash = hash;
+        this.raw = raw;
+        this.gzip = gzip;
+        this.brotli = brotli;
+        this.length = length;
+        this.gzipLength = gzip == null ? -1 : Files.size(gzip);
+        this.brotliLength = brotli == null ? -1 : Files.size(brotli);
+        this.lastModified = lastModified;
+    }
+
+    /**
+     * Resolves a resource path to a file of the exploded deployment.
+     *
+     * @param context the servlet context
+     * @param path the normalized resource path
+     * @param minLength the minimum file length; smaller files are left to the cache
+     * @return the file resource, or null if the resource is not a file on disk
+     *         (e.g. packed in a bundle jar) or is smaller than minLength
+     * @throws IOException if the file attributes cannot be read
+     */
+    public static SpaFileResource resolve(ServletContext context, String path, long minLength) throws IOException {
+        Path raw = toFile(context, path);
+        if (raw == null) {
+            return null;
+        }
+        long length = Files.size(raw);
+        if (length <= minLength) {
+            return null;
+        }
+
+        String mimeType = context.getMimeType(path);
+        if (mimeType == null) {
+            mimeType = DEFAULT_MIME_TYPE;
+        }
+        long modified = Files.getLastModifiedTime(raw).toMillis();
+
+        return new SpaFileResource(mimeType, raw, length, toSmallerFile(context, path + ".gz", length),
+            toSmallerFile(context, path + ".br", length), modified / 1000 * 1000, hash(raw, length, modified));
+    }
+
+    /**
+     * Gets the content hash of a file, hashing it only if it changed since it was last hashed.
+     *
+     * @param file the file
+     * @param length the length of the file
+     * @param modified the modification time of the file in milliseconds
+     * @return the hash for the ETag
+     * @throws IOException if the file cannot be read
+     */
+    static String hash(Path file, long length, long modified) throws IOException {
+        FileHash cached = HASHES.get(file);
+        if (cached != null && cached.length == length && cached.modified == modified) {
+            return cached.hash;
+        }
+        MessageDigest digest = SpaResourceCache.createDigest();
+        try (InputStream input = Files.newInputStream(file)) {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int bytesRead;
+            while ((bytesRead = input.read(buffer)) != -1) {
+                digest.update(buffer, 0, bytesRead);
+            }
+        }
+        String hash = SpaResourceCache.encodeHash(digest.digest());
+        HASHES.put(file, new FileHash(length, modified, hash));
+        return hash;
+    }
+
+    private static Path toFile(ServletContext context, String path) {
+        String realPath = context.getRealPath(path);
+        if (realPath == null) {
+            return null;
+        }
+        Path file = Paths.get(realPath);
+        return Files.isRegularFile(file) ? file : null;
+    }
+
+    private static Path toSmallerFile(ServletContext context, String path, long rawLength) throws IOException {
+        Path file = toFile(context, path);
+        if (file == null || Files.size(file) >= rawLength) {
+            return null;
+        }
+        return file;
+    }
+
+    @Override
+    public String getMimeType() {
+        return mimeType;
+    }
+
+    @Override
+    public boolean hasVariants() {
+        return gzip != null || brotli != null;
+    }
+
+    @Override
+    public String selectEncoding(String acceptEncoding) {
+        if (brotli != null && SpaResource.accepts(acceptEncoding, ENCODING_BROTLI)) {
+            return ENCODING_BROTLI;
+        }
+        if (gzip != null && SpaResource.accepts(acceptEncoding, ENCODING_GZIP)) {
+            return ENCODING_GZIP;
+        }
+        return null;
+    }
+
+    @Override
+    public String getETag(String encoding) {
+        if (encoding == null) {
+            return "\"" + hash + "\"";
+        }
+        return "\"" + hash + "-" + encoding + "\"";
+    }
+
+    @Override
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    @Override
+    public long getLength(String encoding) {
+        if (ENCODING_BROTLI.equals(encoding)) {
+            return brotliLength;
+        }
+        if (ENCODING_GZIP.equals(encoding)) {
+            return gzipLength;
+        }
+        return length;
+    }
+
+    /**
+     * Streams a byte range of a variant to the output with FileChannel.transferTo.
+     * The response stream is not a file or socket channel, so the JDK copies through a
+     * small fixed-size buffer; the file is never loaded whole. Exactly length bytes are
+     * written, so the response matches its Content-Length even if the file is replaced
+     * while it is served. Seeking into a range costs nothing, as the transfer starts at
+     * the offset.
+     *
+     * @param encoding the encoding from selectEncoding
+     * @param offset the first byte to write
+     * @param length the number of bytes to write
+     * @param output the response output stream
+     * @throws IOException if an I/O error occurs
+     */
+    @Override
+    public void writeTo(String encoding, long offset, long length, OutputStream output) throws IOException {
+        try (FileChannel channel = FileChannel.open(variant(encoding), StandardOpenOption.READ)) {
+            // The response stream stays open; it is closed by the container
+            WritableByteChannel target = Channels.newChannel(output);
+            long end = offset + length;
+            long position = offset;
+            while (position < end) {
+                long transferred = channel.transferTo(position, end - position, target);
+                if (transferred <= 0) {
+                    throw new IOException("File truncated while serving: " + variant(encoding));
+                }
+                position += transferred;
+            }
+        }
+    }
+
+    private Path variant(String encoding) {
+        if (ENCODING_BROTLI.equals(encoding)) {
+            return brotli;
+        }
+        if (ENCODING_GZIP.equals(encoding)) {
+            return gzip;
+        }
+        return raw;
+    }
+
+    /** Hash of a file, valid while its length and modification time are unchanged. */
+    private static final class FileHash {
+        private final long length;
+        private final long modified;
+        private final String hash;
+
+        private FileHash(long length, long modified, String hash) {
+            this.length = length;
+            this.modified = modified;
+            this.hash = hash;
+        }
+    }
+}
@@ -3,9 +3,17 @@ package tw.mxp.emui;
 import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 import javax.servlet.Filter;
 import javax.servlet.FilterChain;
 import javax.servlet.FilterConfig;
+import javax.servlet.ServletContext;
 import javax.servlet.ServletException;
 import javax.servlet.ServletRequest;
 import javax.servlet.ServletResponse;
@@ -15,18 +23,60 @@ import javax.servlet.http.HttpServletResponse;
 /**
  * Filter for Single Page Application (SPA) routing.
  * Handles client-side routing by forwarding non-existent routes to index.html.
+ *
+ * <p>The route decision avoids a resource lookup per request: the static files of the
+ * bundle are listed once at init, API paths pass without a lookup, and the decision of
+ * any other path is kept in a bounded concurrent cache. Decision counters and the time
+ * spent deciding are published as a context attribute and logged on destroy.</p>
+ *
+ * <p>Init parameters:</p>
+ * <ul>
+ *   <li>apiPrefixes - comma-separated path prefixes passed through without a lookup (default /api/)</li>
+ *   <li>routeCacheSize - maximum cached route decisions; the cache is cleared when full (default 4096)</li>
+ * </ul>
  */
 public class SpaFilter implements Filter {
 
+    /** Servlet context attribute holding the filter, for statistics. */
+    public static final String CONTEXT_ATTRIBUTE = SpaFilter.class.getName();
+
     private static final String ROOT_PATH = "/";
     private static final String INDEX_HTML = "/index.html";
     private static final String PATH_SEPARATOR = "/";
 
+    private static final String DEFAULT_API_PREFIXES = "/api/";
+    private static final int DEFAULT_ROUTE_CACHE_SIZE = 4096;
+    /** Protected folders are never listed as static files. */
+    private static final String[] HIDDEN_FOLDERS = {"/WEB-INF/", "/META-INF/"};
+
     private FilterConfig filterConfig;
 
+    /** Static files of the web context, listed at init. Read-only after init. */
+    private Set<String> knownFiles = Collections.emptySet();
+    private List<String> apiPrefixes = Collections.emptyList();
+    private int routeCacheSize;
+    /** Key: path, value: true if the path is a client-side route forwarded to index.html */
+    private final ConcurrentHashMap<String, Boolean> routeCache = new ConcurrentHashMap<>();
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong knownFileHits = new AtomicLong();
+    private final AtomicLong apiHits = new AtomicLong();
+    private final AtomicLong routeCacheHits = new AtomicLong();
+    private final AtomicLong lookups = new AtomicLong();
+    private final AtomicLong forwards = new AtomicLong();
+    private final AtomicLong decisionNanos = new AtomicLong();
+
     @Override
     public void init(FilterConfig filterConfig) throws ServletException {
         this.filterConfig = filterConfig;
+        apiPrefixes = parsePrefixes(getStringParameter("apiPrefixes", DEFAULT_API_PREFIXES));
+        routeCacheSize = getIntParameter("routeCacheSize", DEFAULT_ROUTE_CACHE_SIZE);
+
+        Set<String> files = new HashSet<>();
+        listFiles(filterConfig.getServletContext(), ROOT_PATH, files);
+        knownFiles = Collections.unmodifiableSet(files);
+
+        filterConfig.getServletContext().setAttribute(CONTEXT_ATTRIBUTE, this);
     }
 
     @Override
@@ -44,32 +94,201 @@ public class SpaFilter implements Filter {
         HttpServletRequest httpRequest = (HttpServletRequest) request;
         String path = buildPath(httpRequest);
 
-        // 1. Root path: let welcome-file handle it (usually index.html)
-        if (ROOT_PATH.equals(path)) {
+        long start = System.nanoTime();
+        boolean clientRoute = isClientRoute(path);
+        decisionNanos.addAndGet(System.nanoTime() - start);
+
+        if (!clientRoute) {
             chain.doFilter(request, response);
             return;
         }
 
-        // 2. Check if the resource exists in the web context
-        if (resourceExists(path)) {
-            chain.doFilter(request, response);
-            return;
+        // Client-side route -> forward to index.html
+        forwards.incrementAndGet();
+        request.getRequestDispatcher(INDEX_HTML).forward(request, response);
+    }
+
+    @Override
+    public void destroy() {
+        ServletContext context = filterConfig.getServletContext();
+        context.log("SPA filter: " + this);
+        context.removeAttribute(CONTEXT_ATTRIBUTE);
+        routeCache.clear();
+        this.filterConfig = null;
+    }
+
+    /**
+     * Decides if a path is a client-side route to forward to index.html.
+     *
+     * @param path the request path
+     * @return true to forward to index.html, false to pass the request down the chain
+     */
+    private boolean isClientRoute(String path) {
+        requests.incrementAndGet();
+
+        // 1. Root path: let welcome-file handle it (usually index.html)
+        if (ROOT_PATH.equals(path)) {
+            return false;
         }
 
-        // 3. Resource doesn't exist - check if it's a client-side route
-        if (isAssetPath(path)) {
-            // Likely a missing asset (image, css, js) -> 404 (let default servlet handle it)
-            chain.doFilter(request, response);
+        // 2. Static file of the bundle
+        if (knownFiles.contains(path)) {
+            knownFileHits.incrementAndGet();
+            return false;
+        }
+
+        // 3. API request: never a client-side route
+        if (isApiPath(path)) {
+            apiHits.incrementAndGet();
+            return false;
+        }
+
+        // 4. Decision made before
+        Boolean cached = routeCache.get(path);
+        if (cached != null) {
+            routeCacheHits.incrementAndGet();
+            return cached.booleanValue();
+        }
+
+        // 5. Look up the resource; a missing path with an extension is a missing asset (404),
+        // any other missing path is a client-side route
+        lookups.incrementAndGet();
+        boolean clientRoute = !resourceExists(path) && !isAssetPath(path);
+        if (routeCache.size() >= routeCacheSize) {
+            // Bounded: arbitrary paths (e.g. scanners or crawlers) cannot grow the cache
+            routeCache.clear();
+        }
+        routeCache.put(path, Boolean.valueOf(clientRoute));
+        return clientRoute;
+    }
+
+    /**
+     * Checks if a path starts with an API prefix.
+     *
+     * @param path the request path
+     * @return true if the path is an API path
+     */
+    private boolean isApiPath(String path) {
+        for (String prefix : apiPrefixes) {
+            if (path.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Lists the files of a web context folder recursively.
+     *
+     * @param context the servlet context
+     * @param folder the folder path, ending with a slash
+     * @param files the set to add file paths to
+     */
+    private void listFiles(ServletContext context, String folder, Set<String> files) {
+        Set<String> paths = context.getResourcePaths(folder);
+        if (paths == null) {
             return;
         }
+        for (String path : paths) {
+            if (!path.endsWith(PATH_SEPARATOR)) {
+                files.add(path);
+            } else if (!isHiddenFolder(path)) {
+                listFiles(context, path, files);
+            }
+        }
+    }
 
-        // 4. Likely a client-side route -> forward to index.html
-        request.getRequestDispatcher(INDEX_HTML).forward(request, response);
+    private boolean isHiddenFolder(String path) {
+        for (String folder : HIDDEN_FOLDERS) {
+            if (path.equals(folder)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Reads a text init parameter.
+     *
+     * @param name the init parameter name
+     * @param defaultValue the value when the parameter is missing or blank
+     * @return the parameter value
+     */
+    private String getStringParameter(String name, String defaultValue) {
+        String value = filterConfig.getInitParameter(name);
+        if (value == null || value.trim().isEmpty()) {
+            return defaultValue;
+        }
+        return value.trim();
+    }
+
+    /**
+     * Reads a numeric init parameter.
+     *
+     * @param name the init parameter name
+     * @param defaultValue the value when the parameter is missing or invalid
+     * @return the parameter value
+     */
+    private int getIntParameter(String name, int defaultValue) {
+        String value = getStringParameter(name, null);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            filterConfig.getServletContext().log("Invalid init parameter " + name + ": " + value);
+            return defaultValue;
+        }
+    }
+
+    private static List<String> parsePrefixes(String prefixes) {
+        List<String> list = new ArrayList<>();
+        for (String prefix : prefixes.split(",")) {
+            prefix = prefix.trim();
+            if (!prefix.isEmpty()) {
+                list.add(prefix);
+            }
+        }
+        return list;
+    }
+
+    public int getKnownFileCount() {
+        return knownFiles.size();
+    }
+
+    public long getRequests() {
+        return requests.get();
+    }
+
+    public long getLookups() {
+        return lookups.get();
+    }
+
+    public long getForwards() {
+        return forwards.get();
+    }
+
+    /**
+     * Gets the average time spent deciding the route of a request.
+     *
+     * @return the average decision time in nanoseconds, or 0 before the first request
+     */
+    public long getAverageDecisionNanos() {
+        long count = requests.get();
+        return count == 0 ? 0 : decisionNanos.get() / count;
     }
 
     @Override
-    public void destroy() {
-        this.filterConfig = null;
+    public String toString() {
+        return "SpaFilter[knownFiles=" + getKnownFileCount()
+            + ", requests=" + getRequests()
+            + ", knownFileHits=" + knownFileHits.get()
+            + ", apiHits=" + apiHits.get()
+            + ", routeCacheHits=" + routeCacheHits.get()
+            + ", lookups=" + getLookups()
+            + ", forwards=" + getForwards()
+            + ", avgDecisionNanos=" + getAverageDecisionNanos() + "]";
     }
 
     /**
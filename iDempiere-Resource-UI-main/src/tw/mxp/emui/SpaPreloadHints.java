@@ -0,0 +1,140 @@
+package tw.mxp.emui;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Preload hints of the critical assets referenced by index.html.
+ * The entry module, module preloads and stylesheets of the Vite build are turned into
+ * {@code Link} header values, so the browser fetches them in parallel with index.html
+ * instead of discovering them one after another.
+ *
+ * <p>The hints are parsed for one version of index.html, identified by its ETag.</p>
+ */
+public final class SpaPreloadHints {
+
+    /** More links than this are not sent; the headers of every index.html response stay small. */
+    private static final int MAX_LINKS = 16;
+
+    private static final Pattern TAG = Pattern.compile("<(script|link)\\b([^>]*)>", Pattern.CASE_INSENSITIVE);
+    private static final Pattern ATTRIBUTE = Pattern.compile(
+        "([a-zA-Z-]+)(?:\\s*=\\s*(?:\"([^\"]*)\"|'([^']*)'|([^\\s\"'>]+)))?");
+
+    private final String etag;
+    private final List<String> links;
+
+    private SpaPreloadHints(String etag, List<String> links) {
+        this.etag = etag;
+        this.links = Collections.unmodifiableList(links);
+    }
+
+    /**
+     * Parses the preload hints of index.html.
+     *
+     * @param html the content of index.html
+     * @param etag the ETag of the parsed index.html
+     * @return the hints
+     */
+    public static SpaPreloadHints parse(String html, String etag) {
+        List<String> links = new ArrayList<>();
+        Matcher tag = TAG.matcher(html);
+        while (tag.find() && links.size() < MAX_LINKS) {
+            String name = tag.group(1).toLowerCase(Locale.ROOT);
+            String link = toLink(name, parseAttributes(tag.group(2)));
+            if (link != null && !links.contains(link)) {
+                links.add(link);
+            }
+        }
+        return new SpaPreloadHints(etag, links);
+    }
+
+    /**
+     * Converts a script or link tag to a Link header value.
+     *
+     * @param name the tag name, script or link
+     * @param attributes the lower-case attribute names and values of the tag
+     * @return the Link header value, or null if the tag is not a critical same-origin asset
+     */
+    private static String toLink(String name, List<String[]> attributes) {
+        String href;
+        String rel;
+        if ("script".equals(name)) {
+            href = getAttribute(attributes, "src");
+            rel = "module".equalsIgnoreCase(getAttribute(attributes, "type")) ? "rel=modulepreload" : "rel=preload; as=script";
+        } else {
+            href = getAttribute(attributes, "href");
+            String linkRel = getAttribute(attributes, "rel");
+            if ("modulepreload".equalsIgnoreCase(linkRel)) {
+                rel = "rel=modulepreload";
+            } else if ("stylesheet".equalsIgnoreCase(linkRel)) {
+                rel = "rel=preload; as=style";
+            } else {
+                return null;
+            }
+        }
+        if (!isSameOriginPath(href)) {
+            return null;
+        }
+
+        StringBuilder link = new StringBuilder("<").append(href).append(">; ").append(rel);
+        // The preload must use the same CORS mode as the tag, or the browser fetches the asset twice
+        if (getAttribute(attributes, "crossorigin") != null) {
+            link.append("; crossorigin");
+        }
+        return link.toString();
+    }
+
+    private static boolean isSameOriginPath(String href) {
+        return href != null
+            && !href.isEmpty()
+            && !href.startsWith("//")
+            && !href.contains(":")
+            && href.indexOf('>') < 0
+            && href.indexOf(',') < 0;
+    }
+
+    private static List<String[]> parseAttributes(String text) {
+        List<String[]> attributes = new ArrayList<>();
+        Matcher attribute = ATTRIBUTE.matcher(text);
+        while (attribute.find()) {
+            String value = attribute.group(2) != null ? attribute.group(2)
+                : attribute.group(3) != null ? attribute.group(3)
+                : attribute.group(4) != null ? attribute.group(4)
+                : "";
+            attributes.add(new String[] {attribute.group(1).toLowerCase(Locale.ROOT), value.trim()});
+        }
+        return attributes;
+    }
+
+    private static String getAttribute(List<String[]> attributes, String name) {
+        for (String[] attribute : attributes) {
+            if (attribute[0].equals(name)) {
+                return attribute[1];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Checks if the hints were parsed from a version of index.html.
+     *
+     * @param etag the ETag of the current index.html
+     * @return true if the hints are current
+     */
+    public boolean isCurrent(String etag) {
+        return this.etag.equals(etag);
+    }
+
+    /**
+     * Gets the Link header values.
+     *
+     * @return the values, in document order
+     */
+    public List<String> getLinks() {
+        return links;
+    }
+}
@@ -0,0 +1,158 @@
+package tw.mxp.emui;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * A servable SPA resource with its content-coded variants.
+ * Implemented by cached entries ({@link SpaResourceCache.Entry}) and by files
+ * of an exploded deployment ({@link SpaFileResource}).
+ */
+public interface SpaResource {
+
+    String ENCODING_BROTLI = "br";
+    String ENCODING_GZIP = "gzip";
+
+    String getMimeType();
+
+    /**
+     * Checks if the resource has compressed variants, so responses vary by Accept-Encoding.
+     *
+     * @return true if a gzip or brotli variant exists
+     */
+    boolean hasVariants();
+
+    /**
+     * Selects the smallest variant the client accepts.
+     *
+     * @param acceptEncoding the Accept-Encoding request header, may be null
+     * @return ENCODING_BROTLI, ENCODING_GZIP or null for the raw bytes
+     */
+    String selectEncoding(String acceptEncoding);
+
+    /**
+     * Gets the strong ETag of a variant. Each content coding has its own tag,
+     * as the bytes of the variants differ.
+     *
+     * @param encoding the encoding from selectEncoding
+     * @return the quoted ETag
+     */
+    String getETag(String encoding);
+
+    /**
+     * Gets the modification time of the resource.
+     *
+     * @return the time in milliseconds (whole seconds), or -1 if unknown
+     */
+    long getLastModified();
+
+    /**
+     * Gets the length of a variant.
+     *
+     * @param encoding the encoding from selectEncoding
+     * @return the Content-Length of the variant
+     */
+    long getLength(String encoding);
+
+    /**
+     * Writes a variant to the output.
+     *
+     * @param encoding the encoding from selectEncoding
+     * @param output the response output stream
+     * @throws IOException if an I/O error occurs
+     */
+    default void writeTo(String encoding, OutputStream output) throws IOException {
+        writeTo(encoding, 0, getLength(encoding), output);
+    }
+
+    /**
+     * Writes a byte range of a variant to the output.
+     *
+     * @param encoding the encoding from selectEncoding
+     * @param offset the first byte to write
+     * @param length the number of bytes to write
+     * @param output the response output stream
+     * @throws IOException if an I/O error occurs
+     */
+    void writeTo(String encoding, long offset, long length, OutputStream output) throws IOException;
+
+    /**
+     * Checks if the client copy of a variant is current (RFC 7232).
+     * If-None-Match takes precedence; If-Modified-Since is only evaluated without it.
+     *
+     * @param encoding the encoding from selectEncoding
+     * @param ifNoneMatch the If-None-Match request header, may be null
+     * @param ifModifiedSince the If-Modified-Since request header in milliseconds, or -1
+     * @return true if the response can be 304 Not Modified
+     */
+    default boolean isNotModified(String encoding, String ifNoneMatch, long ifModifiedSince) {
+        if (ifNoneMatch != null) {
+            String etag = getETag(encoding);
+            for (String tag : ifNoneMatch.split(",")) {
+                tag = tag.trim();
+                if (tag.startsWith("W/")) {
+                    // Weak comparison is used for If-None-Match
+                    tag = tag.substring(2);
+                }
+                if (tag.equals("*") || tag.equals(etag)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        long lastModified = getLastModified();
+        return lastModified > 0 && ifModifiedSince >= lastModified;
+    }
+
+    /**
+     * Checks if a Range request applies to the current variant (If-Range, RFC 7233).
+     * An entity tag must match by strong comparison, so a weak tag never matches;
+     * a date must equal the modification time.
+     *
+     * @param encoding the encoding from selectEncoding
+     * @param ifRange the If-Range request header, may be null
+     * @param ifRangeDate the If-Range header as date in milliseconds, or -1 if it is an entity tag
+     * @return true if the ranges are served, false if the full content is sent
+     */
+    default boolean isRangeCurrent(String encoding, String ifRange, long ifRangeDate) {
+        if (ifRange == null) {
+            return true;
+        }
+        if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+            return ifRange.equals(getETag(encoding));
+        }
+        long lastModified = getLastModified();
+        return lastModified > 0 && ifRangeDate == lastModified;
+    }
+
+    /**
+     * Checks if an Accept-Encoding header accepts a coding with a non-zero quality.
+     *
+     * @param acceptEncoding the Accept-Encoding request header, may be null
+     * @param coding the content coding
+     * @return true if the coding is accepted
+     */
+    static boolean accepts(String acceptEncoding, String coding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String part : acceptEncoding.split(",")) {
+            String[] params = part.trim().split(";");
+            if (!params[0].trim().equalsIgnoreCase(coding)) {
+                continue;
+            }
+            for (int i = 1; i < params.length; i++) {
+                String param = params[i].trim();
+                if (param.startsWith("q=")) {
+                    try {
+                        return Double.parseDouble(param.substring(2)) > 0;
+                    } catch (NumberFormatException e) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+}
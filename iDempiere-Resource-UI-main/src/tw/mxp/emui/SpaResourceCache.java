@@ -0,0 +1,476 @@
+package tw.mxp.emui;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+import javax.servlet.ServletContext;
+
+/**
+ * Bounded in-memory cache of SPA resources, keyed by normalized path.
+ * Each entry holds the raw bytes and the gzip / brotli variants, so a response
+ * is written with a known Content-Length in a single write.
+ *
+ * <p>The gzip variant is taken from a precompressed {@code .gz} sibling when present,
+ * otherwise compressed on load for text types. The brotli variant is only available
+ * from a precompressed {@code .br} sibling, as the JDK has no brotli encoder.
+ * Variants that are not smaller than the raw bytes are dropped.</p>
+ *
+ * <p>Validators are stable across restarts: the ETag is a hash of the raw bytes
+ * and Last-Modified is the modification time of the resource in the bundle.</p>
+ */
+public class SpaResourceCache {
+
+    /** Servlet context attribute holding the cache, for statistics. */
+    public static final String CONTEXT_ATTRIBUTE = SpaResourceCache.class.getName();
+
+    private static final String DEFAULT_MIME_TYPE = "application/octet-stream";
+    private static final int BUFFER_SIZE = 8192;
+    /** Bytes of the SHA-256 hash used in the ETag. */
+    private static final int ETAG_HASH_BYTES = 16;
+
+    private final ServletContext context;
+    private final long maxBytes;
+    private final long maxEntryBytes;
+    private final boolean offHeap;
+
+    /** Access-ordered, so the eldest entry is the least recently used. */
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private long totalBytes = 0;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * Creates a cache.
+     *
+     * @param context the servlet context to load resources from
+     * @param maxBytes maximum bytes of all entries (raw and variants)
+     * @param maxEntryBytes maximum bytes of a cached entry (raw and variants); larger resources are served without caching
+     * @param offHeap true to hold the bytes in direct buffers outside the Java heap
+     */
+    public SpaResourceCache(ServletContext context, long maxBytes, long maxEntryBytes, boolean offHeap) {
+        this.context = context;
+        this.maxBytes = maxBytes;
+        this.maxEntryBytes = maxEntryBytes;
+        this.offHeap = offHeap;
+    }
+
+    /**
+     * Gets the entry of a path, loading it on a miss.
+     *
+     * @param path the normalized resource path
+     * @return the entry, or null if the resource does not exist
+     * @throws IOException if the resource cannot be read
+     */
+    public Entry get(String path) throws IOException {
+        Entry entry = getCached(path);
+        if (entry != null) {
+            return entry;
+        }
+        misses.incrementAndGet();
+
+        entry = load(path);
+        if (entry == null || entry.size() > maxEntryBytes) {
+            return entry;
+        }
+
+        synchronized (entries) {
+            Entry previous = entries.put(path, entry);
+            if (previous != null) {
+                totalBytes -= previous.size();
+            }
+            totalBytes += entry.size();
+            evict();
+        }
+        return entry;
+    }
+
+    /**
+     * Gets the entry of a path without loading it.
+     *
+     * @param path the normalized resource path
+     * @return the entry, or null if the path is not cached
+     */
+    public Entry getCached(String path) {
+        synchronized (entries) {
+            Entry entry = entries.get(path);
+            if (entry != null) {
+                hits.incrementAndGet();
+            }
+            return entry;
+        }
+    }
+
+    /**
+     * Removes the least recently used entries until the cache fits into maxBytes.
+     * Must be called holding the lock of entries.
+     */
+    private void evict() {
+        Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+        while (totalBytes > maxBytes && iterator.hasNext()) {
+            totalBytes -= iterator.next().getValue().size();
+            iterator.remove();
+            evictions.incrementAndGet();
+        }
+    }
+
+    /**
+     * Loads a resource and its variants from the servlet context.
+     *
+     * @param path the normalized resource path
+     * @return the entry, or null if the resource does not exist
+     * @throws IOException if the resource cannot be read
+     */
+    private Entry load(String path) throws IOException {
+        byte[] raw = read(path);
+        if (raw == null) {
+            return null;
+        }
+
+        String mimeType = context.getMimeType(path);
+        if (mimeType == null) {
+            mimeType = DEFAULT_MIME_TYPE;
+        }
+
+        byte[] gzip = read(path + ".gz");
+        if (gzip == null && isCompressible(mimeType)) {
+            gzip = gzip(raw);
+        }
+        byte[] brotli = read(path + ".br");
+
+        return new Entry(mimeType, toBuffer(raw), toSmallerBuffer(gzip, raw.length), toSmallerBuffer(brotli, raw.length),
+            hash(raw), getLastModified(path));
+    }
+
+    /**
+     * Creates an uncached entry of generated content, e.g. a rendered page.
+     * The gzip variant is compressed for text types; there is no brotli variant.
+     *
+     * @param mimeType the MIME type
+     * @param raw the content
+     * @param lastModified the modification time in milliseconds (whole seconds), or -1 if unknown
+     * @return the entry
+     * @throws UncheckedIOException if the content cannot be compressed
+     */
+    public Entry createEntry(String mimeType, byte[] raw, long lastModified) {
+        byte[] gzip = null;
+        if (isCompressible(mimeType)) {
+            try {
+                gzip = gzip(raw);
+            } catch (IOException e) {
+                // In-memory streams do not fail
+                throw new UncheckedIOException(e);
+            }
+        }
+        return new Entry(mimeType, toBuffer(raw), toSmallerBuffer(gzip, raw.length), null, hash(raw), lastModified);
+    }
+
+    /**
+     * Hashes the content for the ETag.
+     *
+     * @param raw the raw bytes
+     * @return URL-safe Base64 of the first bytes of the SHA-256 hash
+     */
+    private String hash(byte[] raw) {
+        MessageDigest digest = createDigest();
+        return encodeHash(digest.digest(raw));
+    }
+
+    /**
+     * Creates the digest of the ETag hash.
+     *
+     * @return a SHA-256 digest
+     */
+    static MessageDigest createDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // SHA-256 is required on every Java platform
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Encodes a digest for the ETag.
+     *
+     * @param digest the SHA-256 hash
+     * @return URL-safe Base64 of the first bytes of the hash
+     */
+    static String encodeHash(byte[] digest) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(Arrays.copyOf(digest, ETAG_HASH_BYTES));
+    }
+
+    /**
+     * Gets the modification time of a resource, truncated to seconds as HTTP dates are.
+     *
+     * @param path the resource path
+     * @return the modification time in milliseconds, or -1 if unknown
+     */
+    private long getLastModified(String path) {
+        try {
+            URL url = context.getResource(path);
+            if (url == null) {
+                return -1;
+            }
+            URLConnection connection = url.openConnection();
+            long lastModified = connection.getLastModified();
+            if (connection.getDoInput()) {
+                // Opening the connection may open a stream; close it
+                try {
+                    connection.getInputStream().close();
+                } catch (IOException e) {
+                    // Nothing to close
+                }
+            }
+            return lastModified > 0 ? lastModified / 1000 * 1000 : -1;
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    private byte[] read(String path) throws IOException {
+        InputStream inputStream = context.getResourceAsStream(path);
+        if (inputStream == null) {
+            return null;
+        }
+
+        try (InputStream input = inputStream) {
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int bytesRead;
+            while ((bytesRead = input.read(buffer)) != -1) {
+                output.write(buffer, 0, bytesRead);
+            }
+            return output.toByteArray();
+        }
+    }
+
+    private byte[] gzip(byte[] raw) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream(raw.length / 2 + 64);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(output)) {
+            gzip.write(raw);
+        }
+        return output.toByteArray();
+    }
+
+    /**
+     * Checks if a MIME type is text that compresses well.
+     *
+     * @param mimeType the MIME type
+     * @return true for text, JavaScript, JSON, XML and SVG
+     */
+    private boolean isCompressible(String mimeType) {
+        return mimeType.startsWith("text/")
+            || mimeType.contains("javascript")
+            || mimeType.contains("json")
+            || mimeType.contains("xml")
+            || mimeType.startsWith("image/svg");
+    }
+
+    private ByteBuffer toSmallerBuffer(byte[] bytes, int rawLength) {
+        if (bytes == null || bytes.length >= rawLength) {
+            return null;
+        }
+        return toBuffer(bytes);
+    }
+
+    private ByteBuffer toBuffer(byte[] bytes) {
+        if (!offHeap) {
+            return ByteBuffer.wrap(bytes);
+        }
+        ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length);
+        buffer.put(bytes);
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Gets the maximum bytes of a cached entry. Larger resources are served without caching.
+     *
+     * @return the maximum bytes of an entry (raw and variants)
+     */
+    public long getMaxEntryBytes() {
+        return maxEntryBytes;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    public int getEntryCount() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    public long getTotalBytes() {
+        synchronized (entries) {
+            return totalBytes;
+        }
+    }
+
+    /**
+     * Removes all entries. Counters are kept.
+     */
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+            totalBytes = 0;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "SpaResourceCache[entries=" + getEntryCount()
+            + ", bytes=" + getTotalBytes()
+            + ", hits=" + getHits()
+            + ", misses=" + getMisses()
+            + ", evictions=" + getEvictions() + "]";
+    }
+
+    /**
+     * Cached resource: MIME type, raw bytes and compressed variants.
+     * Buffers are shared and never modified; they are duplicated for each write.
+     */
+    public static final class Entry implements SpaResource {
+
+        private final String mimeType;
+        private final ByteBuffer raw;
+        private final ByteBuffer gzip;
+        private final ByteBuffer brotli;
+        private final String hash;
+        private final long lastModified;
+
+        Entry(String mimeType, ByteBuffer raw, ByteBuffer gzip, ByteBuffer brotli, String hash, long lastModified) {
+            this.mimeType = mimeType;
+            this.raw = raw;
+            this.gzip = gzip;
+            this.brotli = brotli;
+            this.hash = hash;
+            this.lastModified = lastModified;
+        }
+
+        @Override
+        public String getETag(String encoding) {
+            if (encoding == null) {
+                return "\"" + hash + "\"";
+            }
+            return "\"" + hash + "-" + encoding + "\"";
+        }
+
+        @Override
+        public long getLastModified() {
+            return lastModified;
+        }
+
+        @Override
+        public String getMimeType() {
+            return mimeType;
+        }
+
+        @Override
+        public boolean hasVariants() {
+            return gzip != null || brotli != null;
+        }
+
+        @Override
+        public String selectEncoding(String acceptEncoding) {
+            if (brotli != null && SpaResource.accepts(acceptEncoding, ENCODING_BROTLI)) {
+                return ENCODING_BROTLI;
+            }
+            if (gzip != null && SpaResource.accepts(acceptEncoding, ENCODING_GZIP)) {
+                return ENCODING_GZIP;
+            }
+            return null;
+        }
+
+        @Override
+        public long getLength(String encoding) {
+            return variant(encoding).remaining();
+        }
+
+        /**
+         * Writes a byte range of a variant to the output in a single write.
+         *
+         * @param encoding the encoding from selectEncoding
+         * @param offset the first byte to write
+         * @param length the number of bytes to write
+         * @param output the response output stream
+         * @throws IOException if an I/O error occurs
+         */
+        @Override
+        public void writeTo(String encoding, long offset, long length, OutputStream output) throws IOException {
+            ByteBuffer buffer = getBuffer(encoding, offset, length);
+            if (buffer.hasArray()) {
+                output.write(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+            } else {
+                Channels.newChannel(output).write(buffer);
+            }
+        }
+
+        /**
+         * Gets a variant for a non-blocking write.
+         *
+         * @param encoding the encoding from selectEncoding
+         * @return a duplicate of the shared buffer, positioned at the first byte
+         */
+        public ByteBuffer getBuffer(String encoding) {
+            return variant(encoding).duplicate();
+        }
+
+        /**
+         * Gets a byte range of a variant for a non-blocking write.
+         *
+         * @param encoding the encoding from selectEncoding
+         * @param offset the first byte of the range
+         * @param length the number of bytes of the range
+         * @return a duplicate of the shared buffer, limited to the range
+         */
+        public ByteBuffer getBuffer(String encoding, long offset, long length) {
+            ByteBuffer buffer = getBuffer(encoding);
+            buffer.limit((int) (offset + length));
+            buffer.position((int) offset);
+            return buffer;
+        }
+
+        private ByteBuffer variant(String encoding) {
+            if (ENCODING_BROTLI.equals(encoding)) {
+                return brotli;
+            }
+            if (ENCODING_GZIP.equals(encoding)) {
+                return gzip;
+            }
+            return raw;
+        }
+
+        long size() {
+            return raw.capacity()
+                + (gzip == null ? 0 : gzip.capacity())
+                + (brotli == null ? 0 : brotli.capacity());
+        }
+    }
+}
@@ -1,8 +1,14 @@
 package tw.mxp.emui;
 
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ThreadLocalRandom;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
@@ -11,15 +17,164 @@ import javax.servlet.http.HttpServletResponse;
 /**
  * Servlet for serving Single Page Application (SPA) resources.
  * Handles resource serving with fallback to index.html for client-side routes.
+ * Resources are served from a bounded in-memory cache ({@link SpaResourceCache})
+ * with precompressed variants and Content-Length. In an exploded deployment, files larger
+ * than cacheMaxEntryBytes are streamed from disk in fixed-size chunks without loading the whole
+ * file ({@link SpaFileResource});
+ * otherwise they are read through the servlet context.
+ *
+ * <p>Cached bodies of GET responses are written asynchronously ({@link SpaAsyncWriter}),
+ * so a slow client does not hold a container thread while its response is sent.</p>
+ *
+ * <p>Byte ranges (RFC 7233) of the selected variant are served as 206 responses, a single
+ * range directly and several ranges as multipart/byteranges, validated by If-Range.</p>
+ *
+ * <p>index.html responses carry {@code Link} preload headers of the critical assets it
+ * references ({@link SpaPreloadHints}). On Jetty 10 or later the links last parsed from
+ * index.html are sent as 103 Early Hints first, before the page is looked up and rendered.
+ * Inside iDempiere, index.html also carries the public SysConfig values the SPA needs
+ * at startup ({@link SpaBootstrap}).</p>
+ *
+ * <p>Init parameters:</p>
+ * <ul>
+ *   <li>cacheMaxBytes - maximum bytes of the cache (default 64 MB)</li>
+ *   <li>cacheMaxEntryBytes - maximum bytes of one cached resource (default 8 MB)</li>
+ *   <li>cacheOffHeap - true to hold the cache in direct buffers (default false)</li>
+ *   <li>immutablePaths - content-hashed resources (default /assets/*)</li>
+ *   <li>noCachePaths - resources revalidated on every use (default /index.html)</li>
+ *   <li>immutableCacheControl, noCacheControl, defaultCacheControl - Cache-Control values</li>
+ *   <li>asyncWrite - true to write cached responses with non-blocking I/O (default true)</li>
+ *   <li>asyncMinBytes - smaller responses are written directly, as they fit into the response buffer (default 32 KB)</li>
+ *   <li>asyncTimeout - timeout of an asynchronous response in milliseconds (default 60 s)</li>
+ *   <li>preloadHints - true to send Link preload headers with index.html (default true)</li>
+ *   <li>earlyHints - true to send 103 Early Hints where the container supports them (default true)</li>
+ *   <li>bootstrap - true to render the bootstrap block into index.html (default true)</li>
+ *   <li>bootstrapNames - comma-separated AD_SysConfig names of global, non-sensitive values
+ *       (default none, so no block is rendered)</li>
+ *   <li>bootstrapClientIds - comma-separated AD_Client_IDs whose values are rendered
+ *       besides System (default 0, System only)</li>
+ * </ul>
  */
 public class SpaServlet extends HttpServlet {
 
     private static final String INDEX_HTML = "/index.html";
     private static final String PATH_SEPARATOR = "/";
-    private static final String DEFAULT_MIME_TYPE = "application/octet-stream";
-    private static final int BUFFER_SIZE = 4096;
     private static final String ERROR_MESSAGE_INDEX_MISSING = "index.html missing";
 
+    private static final long DEFAULT_CACHE_MAX_BYTES = 64L * 1024 * 1024;
+    private static final long DEFAULT_CACHE_MAX_ENTRY_BYTES = 8L * 1024 * 1024;
+    private static final long DEFAULT_ASYNC_MIN_BYTES = 32L * 1024;
+    private static final long DEFAULT_ASYNC_TIMEOUT = 60L * 1000;
+    private static final String METHOD_GET = "GET";
+    private static final String MULTIPART_BYTERANGES = "multipart/byteranges; boundary=";
+    private static final int SC_EARLY_HINTS = 103;
+    /** Jetty sends 103 Early Hints for sendError(103) since version 10. */
+    private static final String JETTY_SERVER_INFO = "jetty/";
+    private static final int JETTY_EARLY_HINTS_VERSION = 10;
+
+    private SpaResourceCache resourceCache;
+    private SpaCachePolicy cachePolicy;
+    private boolean asyncWrite;
+    private long asyncMinBytes;
+    private long asyncTimeout;
+    private boolean preloadHints;
+    private boolean earlyHints;
+    /** Hints of the current index.html, replaced when its ETag changes */
+    private volatile SpaPreloadHints indexHints;
+    /** Renderer of the bootstrap block, or null if disabled */
+    private SpaBootstrap bootstrap;
+
+    @Override
+    public void init() throws ServletException {
+        resourceCache = new SpaResourceCache(
+            getServletContext(),
+            getLongParameter("cacheMaxBytes", DEFAULT_CACHE_MAX_BYTES),
+            getLongParameter("cacheMaxEntryBytes", DEFAULT_CACHE_MAX_ENTRY_BYTES),
+            Boolean.parseBoolean(getInitParameter("cacheOffHeap")));
+        cachePolicy = new SpaCachePolicy(
+            getStringParameter("immutablePaths", SpaCachePolicy.DEFAULT_IMMUTABLE_PATHS),
+            getStringParameter("noCachePaths", SpaCachePolicy.DEFAULT_NO_CACHE_PATHS),
+            getStringParameter("immutableCacheControl", SpaCachePolicy.DEFAULT_IMMUTABLE_CACHE_CONTROL),
+            getStringParameter("noCacheControl", SpaCachePolicy.DEFAULT_NO_CACHE_CONTROL),
+            getStringParameter("defaultCacheControl", null));
+        asyncWrite = Boolean.parseBoolean(getStringParameter("asyncWrite", "true"));
+        asyncMinBytes = getLongParameter("asyncMinBytes", DEFAULT_ASYNC_MIN_BYTES);
+        asyncTimeout = getLongParameter("asyncTimeout", DEFAULT_ASYNC_TIMEOUT);
+        preloadHints = Boolean.parseBoolean(getStringParameter("preloadHints", "true"));
+        earlyHints = preloadHints
+            && Boolean.parseBoolean(getStringParameter("earlyHints", "true"))
+            && isEarlyHintsSupported(getServletContext().getServerInfo());
+        if (Boolean.parseBoolean(getStringParameter("bootstrap", "true"))) {
+            bootstrap = new SpaBootstrap(
+                getServletContext(),
+                resourceCache,
+                getStringParameter("bootstrapNames", SpaBootstrap.DEFAULT_NAMES),
+                getStringParameter("bootstrapClientIds", SpaBootstrap.DEFAULT_CLIENT_IDS));
+            if (!bootstrap.isAvailable()) {
+                bootstrap = null;
+            }
+        }
+        getServletContext().setAttribute(SpaResourceCache.CONTEXT_ATTRIBUTE, resourceCache);
+
+        // Parse index.html at startup, so the first visitor already gets the hints
+        if (preloadHints) {
+            try {
+                SpaResource index = getResource(INDEX_HTML);
+                if (index != null) {
+                    getPreloadLinks(index);
+                }
+            } catch (IOException e) {
+                log("Cannot parse preload hints of " + INDEX_HTML, e);
+            }
+        }
+    }
+
+    @Override
+    public void destroy() {
+        log("Resource cache: " + resourceCache);
+        log("Async responses: started=" + SpaAsyncWriter.getStarted()
+            + ", active=" + SpaAsyncWriter.getActive()
+            + ", failed=" + SpaAsyncWriter.getFailed()
+            + ", timeouts=" + SpaAsyncWriter.getTimeouts());
+        getServletContext().removeAttribute(SpaResourceCache.CONTEXT_ATTRIBUTE);
+        resourceCache.clear();
+    }
+
+    /**
+     * Reads a text init parameter.
+     *
+     * @param name the init parameter name
+     * @param defaultValue the value when the parameter is missing or blank
+     * @return the parameter value
+     */
+    private String getStringParameter(String name, String defaultValue) {
+        String value = getInitParameter(name);
+        if (value == null || value.trim().isEmpty()) {
+            return defaultValue;
+        }
+        return value.trim();
+    }
+
+    /**
+     * Reads a numeric init parameter.
+     *
+     * @param name the init parameter name
+     * @param defaultValue the value when the parameter is missing or invalid
+     * @return the parameter value
+     */
+    private long getLongParameter(String name, long defaultValue) {
+        String value = getInitParameter(name);
+        if (value == null || value.trim().isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            log("Invalid init parameter " + name + ": " + value);
+            return defaultValue;
+        }
+    }
+
     @Override
     protected void doGet(
             HttpServletRequest request,
@@ -28,7 +183,7 @@ public class SpaServlet extends HttpServlet {
         String path = buildPath(request);
 
         // Try to serve the requested resource
-        if (serveResource(path, request, response)) {
+        if (serveResource(path, false, request, response)) {
             return;
         }
 
@@ -80,7 +235,7 @@ public class SpaServlet extends HttpServlet {
         }
 
         // Serve index.html for client-side routes
-        if (serveResource(INDEX_HTML, request, response)) {
+        if (serveResource(INDEX_HTML, true, request, response)) {
             return;
         }
         response.sendError(
@@ -92,6 +247,7 @@ public class SpaServlet extends HttpServlet {
      * Serves a resource from the web context.
      *
      * @param path the resource path to serve
+     * @param fallback true if index.html is served for a client-side route
      * @param request the HTTP servlet request
      * @param response the HTTP servlet response
      * @return true if the resource was served successfully, false otherwise
@@ -99,57 +255,318 @@ public class SpaServlet extends HttpServlet {
      */
     private boolean serveResource(
             String path,
+            boolean fallback,
             HttpServletRequest request,
             HttpServletResponse response) throws IOException {
 
         // Normalize path: append index.html for directory paths
         String normalizedPath = normalizePath(path);
+        boolean index = preloadHints && INDEX_HTML.equals(normalizedPath);
+        if (index && earlyHints) {
+            // The browser fetches the assets while the page is looked up and rendered
+            sendEarlyHints(response);
+        }
 
-        InputStream inputStream = getServletContext().getResourceAsStream(normalizedPath);
-        if (inputStream == null) {
+        SpaResource entry = getResource(normalizedPath);
+        if (entry == null) {
             return false;
         }
+        if (bootstrap != null && INDEX_HTML.equals(normalizedPath) && entry instanceof SpaResourceCache.Entry) {
+            // Rendered page with its own ETag; it changes with the bootstrap values
+            entry = bootstrap.render((SpaResourceCache.Entry) entry);
+        }
 
-        try (InputStream input = inputStream) {
-            String mimeType = getServletContext().getMimeType(normalizedPath);
-            if (mimeType == null) {
-                mimeType = DEFAULT_MIME_TYPE;
-            }
-            response.setContentType(mimeType);
+        String encoding = entry.selectEncoding(request.getHeader("Accept-Encoding"));
+        if (entry.hasVariants()) {
+            response.setHeader("Vary", "Accept-Encoding");
+        }
+        String cacheControl = cachePolicy.getCacheControl(normalizedPath, fallback);
+        if (cacheControl != null) {
+            response.setHeader("Cache-Control", cacheControl);
+        }
+        response.setHeader("ETag", entry.getETag(encoding));
+        if (entry.getLastModified() > 0) {
+            response.setDateHeader("Last-Modified", entry.getLastModified());
+        }
+        response.setHeader("Accept-Ranges", SpaByteRanges.UNIT);
+
+        // Conditional GET: the client copy is current
+        if (entry.isNotModified(encoding, request.getHeader("If-None-Match"), getIfModifiedSince(request))) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return true;
+        }
 
-            // Copy input stream to response output stream
-            copyStream(input, response.getOutputStream());
+        if (index) {
+            addPreloadLinks(entry, response);
+        }
+
+        long length = entry.getLength(encoding);
+        List<SpaByteRanges.Range> ranges = getRanges(entry, encoding, length, request);
+        if (ranges != null && ranges.isEmpty()) {
+            response.setHeader("Content-Range", SpaByteRanges.getUnsatisfiedContentRange(length));
+            response.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+            response.setContentLength(0);
+            return true;
+        }
+
+        if (encoding != null) {
+            response.setHeader("Content-Encoding", encoding);
+        }
+        if (ranges != null && ranges.size() > 1) {
+            serveMultipartRanges(entry, encoding, length, ranges, response);
+            return true;
+        }
+
+        response.setContentType(entry.getMimeType());
+        long offset = 0;
+        long count = length;
+        if (ranges != null) {
+            SpaByteRanges.Range range = ranges.get(0);
+            response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+            response.setHeader("Content-Range", range.getContentRange(length));
+            offset = range.getStart();
+            count = range.getLength();
+        }
+        response.setContentLengthLong(count);
+
+        if (isAsyncWrite(entry, count, request)) {
+            // Non-blocking write of the cached bytes; the thread returns to the container
+            SpaAsyncWriter.start(request, response,
+                ((SpaResourceCache.Entry) entry).getBuffer(encoding, offset, count), asyncTimeout);
+        } else {
+            // Single write of the cached bytes, or the file streamed in fixed-size chunks
+            entry.writeTo(encoding, offset, count, response.getOutputStream());
         }
 
         return true;
     }
 
     /**
-     * Normalizes a path by appending index.html if it ends with a slash.
+     * Sends the preload links last parsed from index.html as 103 Early Hints.
      *
-     * @param path the path to normalize
-     * @return the normalized path
+     * @param response the HTTP servlet response
+     * @throws IOException if an I/O error occurs
      */
-    private String normalizePath(String path) {
-        if (!path.endsWith(PATH_SEPARATOR)) {
-            return path;
+    private void sendEarlyHints(HttpServletResponse response) throws IOException {
+        SpaPreloadHints hints = indexHints;
+        if (hints == null || hints.getLinks().isEmpty()) {
+            return;
         }
-        return path + "index.html";
+        for (String link : hints.getLinks()) {
+            response.addHeader("Link", link);
+        }
+        // Jetty sends the Link headers set so far as an interim response and keeps them for the final one
+        response.sendError(SC_EARLY_HINTS);
+    }
+
+    /**
+     * Sets the Link preload headers of index.html, replacing the early hints if the page changed.
+     *
+     * @param index the index.html resource
+     * @param response the HTTP servlet response
+     */
+    private void addPreloadLinks(SpaResource index, HttpServletResponse response) {
+        List<String> links = getPreloadLinks(index);
+        if (links.isEmpty()) {
+            return;
+        }
+        response.setHeader("Link", links.get(0));
+        for (String link : links.subList(1, links.size())) {
+            response.addHeader("Link", link);
+        }
+    }
+
+    /**
+     * Gets the preload links of index.html, parsing it again when its content changed.
+     *
+     * @param index the index.html resource
+     * @return the Link header values
+     */
+    private List<String> getPreloadLinks(SpaResource index) {
+        if (!(index instanceof SpaResourceCache.Entry)) {
+            return Collections.emptyList();
+        }
+        String etag = index.getETag(null);
+        SpaPreloadHints hints = indexHints;
+        if (hints == null || !hints.isCurrent(etag)) {
+            ByteBuffer buffer = ((SpaResourceCache.Entry) index).getBuffer(null);
+            hints = SpaPreloadHints.parse(StandardCharsets.UTF_8.decode(buffer).toString(), etag);
+            indexHints = hints;
+            log("Preload hints of " + INDEX_HTML + ": " + hints.getLinks());
+        }
+        return hints.getLinks();
+    }
+
+    /**
+     * Checks if the container sends 103 Early Hints for sendError(103).
+     * Other containers would commit an error response instead.
+     *
+     * @param serverInfo the server info of the servlet context, e.g. jetty/12.0.16
+     * @return true for Jetty 10 or later
+     */
+    private boolean isEarlyHintsSupported(String serverInfo) {
+        if (serverInfo == null || !serverInfo.toLowerCase(Locale.ROOT).startsWith(JETTY_SERVER_INFO)) {
+            return false;
+        }
+        String version = serverInfo.substring(JETTY_SERVER_INFO.length());
+        int dot = version.indexOf('.');
+        try {
+            return Integer.parseInt(dot < 0 ? version : version.substring(0, dot)) >= JETTY_EARLY_HINTS_VERSION;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Gets the requested byte ranges of a GET request.
+     *
+     * @param entry the resource to serve
+     * @param encoding the encoding from selectEncoding
+     * @param length the length of the selected variant
+     * @param request the HTTP servlet request
+     * @return the ranges, an empty list if none is satisfiable, or null to send the full content
+     */
+    private List<SpaByteRanges.Range> getRanges(
+            SpaResource entry,
+            String encoding,
+            long length,
+            HttpServletRequest request) {
+        String range = request.getHeader("Range");
+        if (range == null || !METHOD_GET.equals(request.getMethod())) {
+            return null;
+        }
+        // The client copy changed since the first part was received: send the full content
+        if (!entry.isRangeCurrent(encoding, request.getHeader("If-Range"), getIfRangeDate(request))) {
+            return null;
+        }
+        return SpaByteRanges.parse(range, length);
     }
 
     /**
-     * Copies data from an input stream to an output stream.
+     * Writes several byte ranges as a multipart/byteranges response.
      *
-     * @param input the input stream to read from
-     * @param output the output stream to write to
+     * @param entry the resource to serve
+     * @param encoding the encoding from selectEncoding
+     * @param length the length of the selected variant
+     * @param ranges the ranges in ascending order
+     * @param response the HTTP servlet response
      * @throws IOException if an I/O error occurs
      */
-    private void copyStream(InputStream input, OutputStream output) throws IOException {
-        byte[] buffer = new byte[BUFFER_SIZE];
-        int bytesRead;
-        while ((bytesRead = input.read(buffer)) != -1) {
-            output.write(buffer, 0, bytesRead);
+    private void serveMultipartRanges(
+            SpaResource entry,
+            String encoding,
+            long length,
+            List<SpaByteRanges.Range> ranges,
+            HttpServletResponse response) throws IOException {
+
+        String boundary = Long.toHexString(ThreadLocalRandom.current().nextLong())
+            + Long.toHexString(ThreadLocalRandom.current().nextLong());
+
+        // Part headers are built first, so the Content-Length is known
+        List<byte[]> partHeaders = new ArrayList<>();
+        long contentLength = 0;
+        for (SpaByteRanges.Range range : ranges) {
+            byte[] partHeader = ("\r\n--" + boundary
+                + "\r\nContent-Type: " + entry.getMimeType()
+                + "\r\nContent-Range: " + range.getContentRange(length)
+                + "\r\n\r\n").getBytes(StandardCharsets.ISO_8859_1);
+            partHeaders.add(partHeader);
+            contentLength += partHeader.length + range.getLength();
         }
+        byte[] closeDelimiter = ("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.ISO_8859_1);
+        contentLength += closeDelimiter.length;
+
+        response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+        response.setContentType(MULTIPART_BYTERANGES + boundary);
+        response.setContentLengthLong(contentLength);
+
+        OutputStream output = response.getOutputStream();
+        for (int i = 0; i < ranges.size(); i++) {
+            SpaByteRanges.Range range = ranges.get(i);
+            output.write(partHeaders.get(i));
+            entry.writeTo(encoding, range.getStart(), range.getLength(), output);
+        }
+        output.write(closeDelimiter);
+    }
+
+    /**
+     * Checks if a response body is written asynchronously.
+     * Only cached GET responses of at least asyncMinBytes are; HEAD responses have no body
+     * and file resources are copied with a blocking transfer.
+     *
+     * @param entry the resource to write
+     * @param count the number of bytes to write
+     * @param request the HTTP servlet request
+     * @return true to write with SpaAsyncWriter
+     */
+    private boolean isAsyncWrite(SpaResource entry, long count, HttpServletRequest request) {
+        return asyncWrite
+            && entry instanceof SpaResourceCache.Entry
+            && count >= asyncMinBytes
+            && METHOD_GET.equals(request.getMethod())
+            && request.isAsyncSupported()
+            && !request.isAsyncStarted();
+    }
+
+    /**
+     * Gets a resource from the cache, from the file system for files too large to cache,
+     * or through the servlet context.
+     *
+     * @param path the normalized resource path
+     * @return the resource, or null if it does not exist
+     * @throws IOException if the resource cannot be read
+     */
+    private SpaResource getResource(String path) throws IOException {
+        SpaResource resource = resourceCache.getCached(path);
+        if (resource != null) {
+            return resource;
+        }
+        resource = SpaFileResource.resolve(getServletContext(), path, resourceCache.getMaxEntryBytes());
+        if (resource != null) {
+            return resource;
+        }
+        return resourceCache.get(path);
+    }
+
+    /**
+     * Reads the If-Range header as a date.
+     *
+     * @param request the HTTP servlet request
+     * @return the date in milliseconds, or -1 if missing or an entity tag
+     */
+    private long getIfRangeDate(HttpServletRequest request) {
+        try {
+            return request.getDateHeader("If-Range");
+        } catch (IllegalArgumentException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Reads the If-Modified-Since header.
+     *
+     * @param request the HTTP servlet request
+     * @return the date in milliseconds, or -1 if missing or malformed
+     */
+    private long getIfModifiedSince(HttpServletRequest request) {
+        try {
+            return request.getDateHeader("If-Modified-Since");
+        } catch (IllegalArgumentException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Normalizes a path by appending index.html if it ends with a slash.
+     *
+     * @param path the path to normalize
+     * @return the normalized path
+     */
+    private String normalizePath(String path) {
+        if (!path.endsWith(PATH_SEPARATOR)) {
+            return path;
+        }
+        return path + "index.html";
     }
 
     /**
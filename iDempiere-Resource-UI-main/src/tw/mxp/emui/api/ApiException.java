@@ -0,0 +1,32 @@
+package tw.mxp.emui.api;
+
+/**
+ * Error of an API request, answered with its HTTP status.
+ * The message is sent to the client as the error title.
+ */
+public class ApiException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int status;
+
+    /**
+     * Creates the error.
+     *
+     * @param status the HTTP status of the response
+     * @param message the error title
+     */
+    public ApiException(int status, String message) {
+        super(message);
+        this.status = status;
+    }
+
+    /**
+     * Gets the HTTP status of the response.
+     *
+     * @return the status
+     */
+    public int getStatus() {
+        return status;
+    }
+}
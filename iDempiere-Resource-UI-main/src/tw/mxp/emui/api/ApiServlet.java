@@ -0,0 +1,158 @@
+package tw.mxp.emui.api;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.adempiere.exceptions.AdempiereException;
+import org.adempiere.util.ServerContext;
+import org.compiere.util.CLogger;
+
+import com.google.gson.Gson;
+
+/**
+ * Base of the API servlets of this bundle, mapped under /api/ of the context.
+ *
+ * <p>Every request is authenticated with the bearer token of the iDempiere REST API
+ * ({@link ApiToken}), including its issuer and whether its login session was ended; the login of the token is the context of the request while it is
+ * handled, so Env.getCtx() and the model classes work as in the REST plugin. Errors are
+ * answered as JSON in the shape of the REST plugin: {@code {"title":..,"status":..,"detail":..}}.</p>
+ *
+ * <p>Init parameters:</p>
+ * <ul>
+ *   <li>tokenSecretSysConfig - the AD_SysConfig name of the token secret
+ *       (default {@value ApiToken#DEFAULT_SECRET_SYSCONFIG})</li>
+ *   <li>tokenIssuer - the required issuer of the token (default {@value ApiToken#DEFAULT_ISSUER})</li>
+ *   <li>tokenRevocationSQL - additional query counting the revocations of the token, bound as
+ *       its only parameter (default none; the AD_Session of the token is always checked)</li>
+ *   <li>tokenCheckMillis - how long a session and revocation check of a token is reused (default 60000)</li>
+ * </ul>
+ */
+public abstract class ApiServlet extends HttpServlet {
+
+    private static final long serialVersionUID = 1L;
+
+    protected static final Gson GSON = new Gson();
+
+    protected final transient CLogger log = CLogger.getCLogger(getClass());
+
+    private String tokenSecretSysConfig;
+    private String tokenIssuer;
+    private String tokenRevocationSql;
+    private long tokenCheckMillis;
+
+    @Override
+    public void init() throws ServletException {
+        tokenSecretSysConfig = getStringParameter("tokenSecretSysConfig", ApiToken.DEFAULT_SECRET_SYSCONFIG);
+        tokenIssuer = getStringParameter("tokenIssuer", ApiToken.DEFAULT_ISSUER);
+        tokenRevocationSql = getStringParameter("tokenRevocationSQL", null);
+        tokenCheckMillis = getLongParameter("tokenCheckMillis", ApiToken.DEFAULT_CHECK_MILLIS);
+    }
+
+    @Override
+    protected void service(HttpServletRequest request, HttpServletResponse response)
+            throws ServletException, IOException {
+        response.setHeader("Cache-Control", "no-store");
+        try {
+            ApiToken token = ApiToken.verify(request.getHeader("Authorization"), tokenSecretSysConfig, tokenIssuer);
+            token.checkRevoked(tokenRevocationSql, tokenCheckMillis);
+            ServerContext.setCurrentInstance(token.createContext());
+            request.setAttribute(ApiToken.class.getName(), token);
+            super.service(request, response);
+        } catch (ApiException e) {
+            writeError(response, e.getStatus(), e.getMessage(), null);
+        } catch (AdempiereException e) {
+            log.log(Level.WARNING, request.getRequestURI(), e);
+            writeError(response, HttpServletResponse.SC_BAD_REQUEST, "Request failed", e.getLocalizedMessage());
+        } catch (RuntimeException e) {
+            log.log(Level.SEVERE, request.getRequestURI(), e);
+            writeError(response, HttpServletResponse.SC_INTERNAL_SERVER_ERROR, "Request failed", e.getMessage());
+        } finally {
+            ServerContext.dispose();
+        }
+    }
+
+    /**
+     * Gets the verified token of the request.
+     *
+     * @param request the request
+     * @return the token
+     */
+    protected static ApiToken getToken(HttpServletRequest request) {
+        return (ApiToken) request.getAttribute(ApiToken.class.getName());
+    }
+
+    /**
+     * Writes a JSON response.
+     *
+     * @param response the response
+     * @param status the HTTP status
+     * @param json the serialized JSON body
+     */
+    protected static void writeJson(HttpServletResponse response, int status, String json) throws IOException {
+        response.setStatus(status);
+        response.setContentType("application/json");
+        response.setCharacterEncoding("UTF-8");
+        response.getWriter().write(json);
+    }
+
+    /**
+     * Writes an error response, unless the response is already committed.
+     *
+     * @param response the response
+     * @param status the HTTP status
+     * @param title the error title
+     * @param detail the error detail, or null
+     */
+    protected static void writeError(HttpServletResponse response, int status, String title, String detail)
+            throws IOException {
+        if (response.isCommitted()) {
+            return;
+        }
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("title", title);
+        body.put("status", status);
+        if (detail != null) {
+            body.put("detail", detail);
+        }
+        response.resetBuffer();
+        writeJson(response, status, GSON.toJson(body));
+    }
+
+    /**
+     * Gets a string init parameter.
+     *
+     * @param name the parameter name
+     * @param defaultValue the value if the parameter is not set
+     * @return the value
+     */
+    protected String getStringParameter(String name, String defaultValue) {
+        String value = getInitParameter(name);
+        return value == null || value.trim().isEmpty() ? defaultValue : value.trim();
+    }
+
+    /**
+     * Gets a long init parameter.
+     *
+     * @param name the parameter name
+     * @param defaultValue the value if the parameter is not set or invalid
+     * @return the value
+     */
+    protected long getLongParameter(String name, long defaultValue) {
+        String value = getInitParameter(name);
+        if (value == null || value.trim().isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            log("Invalid value of " + name + ": " + value);
+            return defaultValue;
+        }
+    }
+}
@@ -0,0 +1,304 @@
+package tw.mxp.emui.api;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.sql.Timestamp;
+import java.util.Base64;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import javax.servlet.http.HttpServletResponse;
+
+import org.compiere.model.MSysConfig;
+import org.compiere.util.DB;
+import org.compiere.util.Env;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+/**
+ * Bearer token of the iDempiere REST API, accepted by the servlets of this bundle, so the SPA
+ * calls them with the token it already holds for /api/v1.
+ *
+ * <p>The token is a JWT signed with HMAC (HS256, HS384 or HS512) by the REST plugin. Its secret
+ * is read from the System AD_SysConfig value the REST plugin signs with (REST_TOKEN_SECRET); if
+ * it is not set, the plugin signs with a secret of its own and every token is rejected here.
+ * The issuer must be the issuer of the plugin, and the login claims (client, role, organization,
+ * user, warehouse and language) are taken as the context of the request. A token issued before
+ * a role was selected, or without the AD_Session_ID of its login, is rejected.</p>
+ *
+ * <p>A verified token is still rejected when its user, role or user role is no longer active,
+ * when its AD_Session was ended (the logout of the REST plugin processes it), or when the
+ * optional revocation query counts it. These are checked at most once per check interval
+ * for a token.</p>
+ */
+public final class ApiToken {
+
+    public static final String DEFAULT_SECRET_SYSCONFIG = "REST_TOKEN_SECRET";
+    /** Issuer of the tokens of the REST plugin */
+    public static final String DEFAULT_ISSUER = "idempiere.org";
+    public static final long DEFAULT_CHECK_MILLIS = 60L * 1000;
+
+    private static final String LOGIN_SQL = "SELECT COUNT(*) FROM AD_User u"
+        + " INNER JOIN AD_User_Roles ur ON (ur.AD_User_ID=u.AD_User_ID AND ur.IsActive='Y')"
+        + " INNER JOIN AD_Role r ON (r.AD_Role_ID=ur.AD_Role_ID AND r.IsActive='Y')"
+        + " WHERE u.AD_User_ID=? AND u.IsActive='Y' AND r.AD_Role_ID=? AND r.AD_Client_ID IN (0,?)";
+    /** Login session of the token, open until logout */
+    private static final String SESSION_SQL = "SELECT COUNT(*) FROM AD_Session"
+        + " WHERE AD_Session_ID=? AND AD_Client_ID=? AND IsActive='Y' AND Processed='N'";
+    /** Checked tokens are forgotten beyond this, and checked again */
+    private static final int MAX_CHECKED = 10000;
+
+    /** Time until a token is checked again, by signature */
+    private static final Map<String, Long> checked = new ConcurrentHashMap<>();
+
+    private static final String BEARER = "Bearer ";
+
+    private final int clientId;
+    private final int orgId;
+    private final int roleId;
+    private final int userId;
+    private final int warehouseId;
+    private final int sessionId;
+    private final String language;
+    private final String raw;
+    private final String signature;
+
+    private ApiToken(JsonObject claims, String raw, String signature) {
+        this.raw = raw;
+        this.signature = signature;
+        this.clientId = getInt(claims, "AD_Client_ID");
+        this.orgId = getInt(claims, "AD_Org_ID");
+        this.roleId = getInt(claims, "AD_Role_ID");
+        this.userId = getInt(claims, "AD_User_ID");
+        this.warehouseId = getInt(claims, "M_Warehouse_ID");
+        this.sessionId = getInt(claims, "AD_Session_ID");
+        JsonElement language = claims.get("AD_Language");
+        this.language = language != null && language.isJsonPrimitive() ? language.getAsString() : null;
+    }
+
+    /**
+     * Verifies the token of a request.
+     *
+     * @param authorization the Authorization header
+     * @param secretName the System AD_SysConfig name of the signing secret
+     * @param issuer the required issuer (iss), or null to accept any
+     * @return the token
+     * @throws ApiException 401 if the token is missing, invalid, expired or has no session,
+     *         403 if it has no role
+     */
+    public static ApiToken verify(String authorization, String secretName, String issuer) {
+        String secret = MSysConfig.getValue(secretName, null);
+        if (secret == null || secret.isEmpty()) {
+            throw new ApiException(HttpServletResponse.SC_UNAUTHORIZED, "Token secret is not configured: " + secretName);
+        }
+        return verify(authorization, secret, issuer, System.currentTimeMillis());
+    }
+
+    /**
+     * Verifies a token with a known secret.
+     *
+     * @param authorization the Authorization header
+     * @param secret the signing secret
+     * @param issuer the required issuer (iss), or null to accept any
+     * @param now the current time in milliseconds
+     * @return the token
+     * @throws ApiException 401 if the token is missing, invalid, expired or has no session,
+     *         403 if it has no role
+     */
+    static ApiToken verify(String authorization, String secret, String issuer, long now) {
+        if (authorization == null || !authorization.regionMatches(true, 0, BEARER, 0, BEARER.length())) {
+            throw new ApiException(HttpServletResponse.SC_UNAUTHORIZED, "Missing bearer token");
+        }
+        String raw = authorization.substring(BEARER.length()).trim();
+        String[] parts = raw.split("\\.", -1);
+        if (parts.length != 3) {
+            throw new ApiException(HttpServletResponse.SC_UNAUTHORIZED, "Invalid token");
+        }
+
+        JsonObject header = decode(parts[0]);
+        JsonObject claims = decode(parts[1]);
+        String algorithm = getAlgorithm(header);
+
+        byte[] signature;
+        try {
+            signature = Base64.getUrlDecoder().decode(parts[2]);
+        } catch (IllegalArgumentException e) {
+            throw new ApiException(HttpServletResponse.SC_UNAUTHORIZED, "Invalid token");
+        }
+        if (!MessageDigest.isEqual(signature, sign(algorithm, secret, parts[0] + "." + parts[1]))) {
+            throw new ApiException(HttpServletResponse.SC_UNAUTHORIZED, "Invalid token signature");
+        }
+
+        JsonElement exp = claims.get("exp");
+        if (getSeconds(exp) * 1000 <= now) {
+            throw new ApiException(HttpServletResponse.SC_UNAUTHORIZED, "Token expired");
+        }
+        JsonElement nbf = claims.get("nbf");
+        if (nbf != null && getSeconds(nbf) * 1000 > now) {
+            throw new ApiException(HttpServletResponse.SC_UNAUTHORIZED, "Token not yet valid");
+        }
+        if (issuer != null && !issuer.isEmpty()) {
+            JsonElement iss = claims.get("iss");
+            if (iss == null || !iss.isJsonPrimitive() || !issuer.equals(iss.getAsString())) {
+                throw new ApiException(HttpServletResponse.SC_UNAUTHORIZED, "Invalid token issuer");
+            }
+        }
+
+        ApiToken token = new ApiToken(claims, raw, parts[2]);
+        if (token.clientId < 0 || token.roleId < 0 || token.userId < 0) {
+            throw new ApiException(HttpServletResponse.SC_FORBIDDEN, "Token has no role");
+        }
+        if (token.sessionId <= 0) {
+            // without its session a logout can not be seen, so the token is not accepted
+            throw new ApiException(HttpServletResponse.SC_UNAUTHORIZED, "Token has no session");
+        }
+        return token;
+    }
+
+    /**
+     * Checks that the login of the token is still valid: the user, the role and the user role
+     * are active, the session of the login is not ended, and the revocation query does not
+     * count the token. The result is reused for the check interval.
+     *
+     * @param revocationSql query counting the revocations of the token bound as its only
+     *        parameter, or null
+     * @param checkMillis the interval between checks of the same token
+     * @throws ApiException 401 if the login is no longer valid
+     */
+    public void checkRevoked(String revocationSql, long checkMillis) {
+        long now = System.currentTimeMillis();
+        Long next = checked.get(signature);
+        if (next != null && next.longValue() > now) {
+            return;
+        }
+
+        boolean active = DB.getSQLValueEx(null, LOGIN_SQL, userId, roleId, clientId) > 0
+            && DB.getSQLValueEx(null, SESSION_SQL, sessionId, clientId) > 0;
+        if (active && revocationSql != null && !revocationSql.isEmpty()) {
+            active = DB.getSQLValueEx(null, revocationSql, raw) <= 0;
+        }
+        if (!active) {
+            checked.remove(signature);
+            throw new ApiException(HttpServletResponse.SC_UNAUTHORIZED, "Token revoked");
+        }
+
+        if (checked.size() >= MAX_CHECKED) {
+            checked.clear();
+        }
+        checked.put(signature, now + checkMillis);
+    }
+
+    /**
+     * Creates the context of the login described by the token.
+     *
+     * @return the context
+     */
+    public Properties createContext() {
+        Properties ctx = new Properties();
+        Env.setContext(ctx, "#AD_Client_ID", clientId);
+        Env.setContext(ctx, "#AD_Org_ID", Math.max(orgId, 0));
+        Env.setContext(ctx, "#AD_Role_ID", roleId);
+        Env.setContext(ctx, "#AD_User_ID", userId);
+        Env.setContext(ctx, "#SalesRep_ID", userId);
+        if (warehouseId > 0) {
+            Env.setContext(ctx, "#M_Warehouse_ID", warehouseId);
+        }
+        if (language != null) {
+            Env.setContext(ctx, "#AD_Language", language);
+        }
+        Env.setContext(ctx, "#Date", new Timestamp(System.currentTimeMillis()));
+        return ctx;
+    }
+
+    /**
+     * Gets the login client.
+     *
+     * @return the AD_Client_ID
+     */
+    public int getClientId() {
+        return clientId;
+    }
+
+    /**
+     * Gets the login role.
+     *
+     * @return the AD_Role_ID
+     */
+    public int getRoleId() {
+        return roleId;
+    }
+
+    /**
+     * Gets the login session.
+     *
+     * @return the AD_Session_ID
+     */
+    public int getSessionId() {
+        return sessionId;
+    }
+
+    /**
+     * Gets the login user.
+     *
+     * @return the AD_User_ID
+     */
+    public int getUserId() {
+        return userId;
+    }
+
+    private static JsonObject decode(String part) {
+        try {
+            String json = new String(Base64.getUrlDecoder().decode(part), StandardCharsets.UTF_8);
+            return JsonParser.parseString(json).getAsJsonObject();
+        } catch (RuntimeException e) {
+            throw new ApiException(HttpServletResponse.SC_UNAUTHORIZED, "Invalid token");
+        }
+    }
+
+    private static String getAlgorithm(JsonObject header) {
+        JsonElement alg = header.get("alg");
+        String name = alg != null && alg.isJsonPrimitive() ? alg.getAsString() : "";
+        switch (name) {
+            case "HS256":
+                return "HmacSHA256";
+            case "HS384":
+                return "HmacSHA384";
+            case "HS512":
+                return "HmacSHA512";
+            default:
+                throw new ApiException(HttpServletResponse.SC_UNAUTHORIZED, "Unsupported token algorithm: " + name);
+        }
+    }
+
+    private static byte[] sign(String algorithm, String secret, String content) {
+        try {
+            Mac mac = Mac.getInstance(algorithm);
+            mac.init(new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), algorithm));
+            return mac.doFinal(content.getBytes(StandardCharsets.US_ASCII));
+        } catch (GeneralSecurityException e) {
+            throw new ApiException(HttpServletResponse.SC_UNAUTHORIZED, "Cannot verify token: " + e.getMessage());
+        }
+    }
+
+    private static long getSeconds(JsonElement value) {
+        try {
+            return value != null && value.isJsonPrimitive() ? value.getAsLong() : 0;
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static int getInt(JsonObject claims, String name) {
+        JsonElement value = claims.get(name);
+        try {
+            return value != null && value.isJsonPrimitive() ? value.getAsInt() : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
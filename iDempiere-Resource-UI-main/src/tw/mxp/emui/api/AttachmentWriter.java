@@ -0,0 +1,355 @@
+package tw.mxp.emui.api;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.regex.Pattern;
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import javax.servlet.http.HttpServletResponse;
+
+import org.adempiere.util.ServerContext;
+import org.compiere.model.MAttachment;
+import org.compiere.model.MRole;
+import org.compiere.model.MTable;
+import org.compiere.model.PO;
+import org.compiere.model.Query;
+import org.compiere.util.CLogger;
+import org.compiere.util.Env;
+import org.compiere.util.Trx;
+
+/**
+ * Adds uploaded files to the attachment of a record, and creates thumbnails of images.
+ *
+ * <p>The file is added from disk, so the request body is never held as one string or array
+ * by the upload servlets. Updates of the attachment of one record are serialized, as
+ * MAttachment rewrites all entries of the record on save; the lock is per server.</p>
+ *
+ * <p>The thumbnail of an image is created by a background executor after the upload is
+ * answered, and added as {@value #THUMBNAIL_PREFIX}{@code <name>.jpg}, e.g. thumb_a.png.jpg.
+ * Names with that prefix are reserved for thumbnails. The size of an image is read from its
+ * header first; an image of more pixels than the limit gets no thumbnail, and a large image is
+ * decoded subsampled, so the decoded pixels stay near the thumbnail size.</p>
+ */
+public final class AttachmentWriter {
+
+    public static final String THUMBNAIL_PREFIX = "thumb_";
+    public static final int DEFAULT_THUMBNAIL_SIZE = 320;
+    public static final int DEFAULT_THUMBNAIL_THREADS = 2;
+    public static final long DEFAULT_THUMBNAIL_MAX_PIXELS = 50_000_000L;
+
+    private static final CLogger log = CLogger.getCLogger(AttachmentWriter.class);
+
+    private static final Pattern IMAGE_NAME = Pattern.compile(".*\\.(jpe?g|png|gif|bmp)$", Pattern.CASE_INSENSITIVE);
+    private static final Pattern INVALID_NAME = Pattern.compile(".*[\\\\/:*?\"<>|\\p{Cntrl}].*");
+    private static final float THUMBNAIL_QUALITY = 0.8f;
+
+    /** Locks of the attachments, by table and record */
+    private static final Object[] LOCKS = new Object[64];
+
+    static {
+        for (int i = 0; i < LOCKS.length; i++) {
+            LOCKS[i] = new Object();
+        }
+    }
+
+    private final int thumbnailSize;
+    private final long thumbnailMaxPixels;
+    private final ExecutorService thumbnails;
+
+    /**
+     * Creates the writer.
+     *
+     * @param thumbnailSize the maximum width and height of thumbnails, 0 to create none
+     * @param thumbnailMaxPixels the maximum width times height of an image with a thumbnail
+     * @param thumbnailThreads the threads creating thumbnails
+     */
+    public AttachmentWriter(int thumbnailSize, long thumbnailMaxPixels, int thumbnailThreads) {
+        this.thumbnailSize = thumbnailSize;
+        this.thumbnailMaxPixels = thumbnailMaxPixels;
+        this.thumbnails = thumbnailSize > 0 ? Executors.newFixedThreadPool(Math.max(1, thumbnailThreads), new ThumbnailThreads()) : null;
+    }
+
+    /**
+     * Checks that the login role can update a record and its attachment.
+     *
+     * @param tableName the table of the record
+     * @param recordId the record
+     * @return the AD_Table_ID
+     * @throws ApiException 404 if the record is not found, 403 without access
+     */
+    public static int checkAccess(String tableName, int recordId) {
+        MTable table = tableName == null ? null : MTable.get(Env.getCtx(), tableName);
+        if (table == null || table.getAD_Table_ID() <= 0 || recordId <= 0) {
+            throw new ApiException(HttpServletResponse.SC_NOT_FOUND, "Record not found: " + tableName + " " + recordId);
+        }
+        int tableId = table.getAD_Table_ID();
+        MRole role = MRole.getDefault(Env.getCtx(), false);
+        if (!role.isTableAccess(tableId, false) || !role.isRecordAccess(tableId, recordId, false)) {
+            throw new ApiException(HttpServletResponse.SC_FORBIDDEN, "No access to " + tableName);
+        }
+        PO po = table.getPO(recordId, null);
+        if (po == null || po.get_ID() != recordId || po.getAD_Client_ID() != Env.getAD_Client_ID(Env.getCtx())) {
+            throw new ApiException(HttpServletResponse.SC_NOT_FOUND, "Record not found: " + tableName + " " + recordId);
+        }
+        if (!role.isOrgAccess(po.getAD_Org_ID(), true)) {
+            throw new ApiException(HttpServletResponse.SC_FORBIDDEN, "No access to the organization of the record");
+        }
+        return tableId;
+    }
+
+    /**
+     * Validates an attachment name.
+     *
+     * @param name the file name sent by the client
+     * @return the name
+     * @throws ApiException 400 if the name is empty, a path, or reserved for thumbnails
+     */
+    public static String checkName(String name) {
+        String trimmed = name == null ? "" : name.trim();
+        if (trimmed.isEmpty() || trimmed.length() > 255
+                || INVALID_NAME.matcher(trimmed).matches() || trimmed.startsWith(".")
+                || trimmed.toLowerCase(Locale.ROOT).startsWith(THUMBNAIL_PREFIX)) {
+            throw new ApiException(HttpServletResponse.SC_BAD_REQUEST, "Invalid file name: " + name);
+        }
+        return trimmed;
+    }
+
+    /**
+     * Gets the name of the thumbnail of an attachment. The name keeps the extension, so
+     * a.png and a.jpg have different thumbnails.
+     *
+     * @param name the attachment name
+     * @return {@value #THUMBNAIL_PREFIX}{@code <name>.jpg}
+     */
+    public static String getThumbnailName(String name) {
+        return THUMBNAIL_PREFIX + name + ".jpg";
+    }
+
+    /**
+     * Gets the subsampling of an image decoded for a thumbnail: every n-th pixel, so the
+     * decoded image is still at least twice the thumbnail size.
+     *
+     * @param width the width of the image
+     * @param height the height of the image
+     * @param thumbnailSize the thumbnail size, positive
+     * @return the step, at least 1
+     */
+    static int getSubsampling(int width, int height, int thumbnailSize) {
+        return Math.max(1, Math.max(width, height) / (2 * thumbnailSize));
+    }
+
+    /**
+     * Adds a file to the attachment of a record. The file is deleted afterwards, after its
+     * thumbnail is created if it is an image.
+     *
+     * @param tableId the table of the record
+     * @param recordId the record
+     * @param file the file, named as the attachment entry
+     */
+    public void attach(int tableId, int recordId, File file) {
+        boolean thumbnail = false;
+        try {
+            synchronized (getLock(tableId, recordId)) {
+                Trx.run(trxName -> {
+                    MAttachment attachment = getAttachment(tableId, recordId, trxName);
+                    if (!attachment.addEntry(file)) {
+                        throw new ApiException(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, "Cannot add " + file.getName());
+                    }
+                    attachment.saveEx();
+                });
+            }
+            thumbnail = thumbnails != null && IMAGE_NAME.matcher(file.getName()).matches();
+            if (thumbnail) {
+                Properties ctx = new Properties();
+                ctx.putAll(Env.getCtx());
+                thumbnails.execute(() -> createThumbnail(ctx, tableId, recordId, file));
+            }
+        } catch (RejectedExecutionException e) {
+            thumbnail = false;
+        } finally {
+            if (!thumbnail) {
+                delete(file);
+            }
+        }
+    }
+
+    /**
+     * Stops creating thumbnails. Queued thumbnails are dropped.
+     */
+    public void shutdown() {
+        if (thumbnails != null) {
+            thumbnails.shutdownNow();
+        }
+    }
+
+    private void createThumbnail(Properties ctx, int tableId, int recordId, File file) {
+        ServerContext.setCurrentInstance(ctx);
+        try {
+            BufferedImage image = read(file);
+            if (image == null) {
+                return;
+            }
+            byte[] data = scale(image);
+            String thumbnailName = getThumbnailName(file.getName());
+            synchronized (getLock(tableId, recordId)) {
+                Trx.run(trxName -> {
+                    MAttachment attachment = getAttachment(tableId, recordId, trxName);
+                    attachment.addEntry(thumbnailName, data);
+                    attachment.saveEx();
+                });
+            }
+        } catch (IOException | RuntimeException e) {
+            log.log(Level.WARNING, "Cannot create thumbnail of " + file.getName(), e);
+        } finally {
+            ServerContext.dispose();
+            delete(file);
+        }
+    }
+
+    /**
+     * Reads an image for its thumbnail, subsampled.
+     *
+     * @return the image, or null if it is not a readable image or has too many pixels
+     */
+    private BufferedImage read(File file) throws IOException {
+        try (ImageInputStream stream = ImageIO.createImageInputStream(file)) {
+            Iterator<ImageReader> readers = stream == null ? null : ImageIO.getImageReaders(stream);
+            if (readers == null || !readers.hasNext()) {
+                return null;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(stream, true, true);
+                // The size is in the header; nothing is decoded yet
+                int width = reader.getWidth(0);
+                int height = reader.getHeight(0);
+                if ((long) width * height > thumbnailMaxPixels) {
+                    log.warning("No thumbnail of " + file.getName() + ", " + width + "x" + height + " pixels");
+                    return null;
+                }
+                ImageReadParam param = reader.getDefaultReadParam();
+                int step = getSubsampling(width, height, thumbnailSize);
+                param.setSourceSubsampling(step, step, 0, 0);
+                return reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * Scales an image to fit the thumbnail size, as JPEG.
+     */
+    private byte[] scale(BufferedImage image) throws IOException {
+        double ratio = Math.min(1.0, (double) thumbnailSize / Math.max(image.getWidth(), image.getHeight()));
+        int width = Math.max(1, (int) Math.round(image.getWidth() * ratio));
+        int height = Math.max(1, (int) Math.round(image.getHeight() * ratio));
+
+        // JPEG has no alpha; transparent areas become white
+        BufferedImage thumbnail = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = thumbnail.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            g.drawImage(image, 0, 0, width, height, Color.WHITE, null);
+        } finally {
+            g.dispose();
+        }
+
+        Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName("jpeg");
+        if (!writers.hasNext()) {
+            throw new IOException("No JPEG writer");
+        }
+        ImageWriter writer = writers.next();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ImageOutputStream stream = ImageIO.createImageOutputStream(out)) {
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(THUMBNAIL_QUALITY);
+            writer.setOutput(stream);
+            writer.write(null, new IIOImage(thumbnail, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return out.toByteArray();
+    }
+
+    private static MAttachment getAttachment(int tableId, int recordId, String trxName) {
+        MAttachment attachment = new Query(Env.getCtx(), MAttachment.Table_Name, "AD_Table_ID=? AND Record_ID=?", trxName)
+            .setParameters(tableId, recordId)
+            .first();
+        return attachment != null ? attachment : new MAttachment(Env.getCtx(), tableId, recordId, trxName);
+    }
+
+    private static Object getLock(int tableId, int recordId) {
+        return LOCKS[Math.floorMod(31 * tableId + recordId, LOCKS.length)];
+    }
+
+    /**
+     * Creates an empty file named as the attachment entry, in a new directory of its own.
+     *
+     * @param uploadDir the directory of uploads
+     * @param name the attachment name, checked by {@link #checkName(String)}
+     * @return the file
+     */
+    static File createFile(File uploadDir, String name) throws IOException {
+        Path dir = Files.createTempDirectory(Files.createDirectories(uploadDir.toPath()), "upload");
+        return Files.createFile(dir.resolve(name)).toFile();
+    }
+
+    /**
+     * Deletes a file and its directory, if the directory is empty.
+     *
+     * @param file the file
+     */
+    static void delete(File file) {
+        try {
+            Path path = file.toPath();
+            Files.deleteIfExists(path);
+            Path dir = path.getParent();
+            if (dir != null) {
+                try {
+                    Files.deleteIfExists(dir);
+                } catch (IOException e) {
+                    // Not empty
+                }
+            }
+        } catch (IOException e) {
+            log.log(Level.WARNING, "Cannot delete " + file, e);
+        }
+    }
+
+    private static final class ThumbnailThreads implements ThreadFactory {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "emui-thumbnail-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,210 @@
+package tw.mxp.emui.api;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.compiere.model.MDocType;
+import org.compiere.model.MInOut;
+import org.compiere.model.MInOutLine;
+import org.compiere.model.MLocator;
+import org.compiere.model.MOrder;
+import org.compiere.model.MOrderLine;
+import org.compiere.model.MRole;
+import org.compiere.model.MTable;
+import org.compiere.model.MWarehouse;
+import org.compiere.model.Query;
+import org.compiere.process.DocAction;
+import org.compiere.util.Env;
+import org.compiere.util.Trx;
+
+import com.google.gson.JsonParseException;
+
+/**
+ * Material receipt of a purchase order in one request: {@code POST /api/receipts}.
+ *
+ * <pre>
+ * {"orderId":1000001,"movementDate":"2024-01-31","locatorId":0,"docTypeId":0,
+ *  "lines":[{"orderLineId":1000010,"qty":5},{"orderLineId":1000011,"qty":2.5}]}
+ * </pre>
+ *
+ * <p>The receipt header and its lines are created and completed in one transaction, so a
+ * failure leaves no partial receipt. The order lines are read with one query and locked for
+ * the transaction, so concurrent receipts of the same order cannot both receive the open
+ * quantity. A quantity must be positive and not more than the open quantity of the line.</p>
+ *
+ * <p>A docTypeId must be a material receipt (MMR) document type of the login client or System.
+ * Without docTypeId the default material receipt document type is used, and without
+ * locatorId the default locator of the order warehouse. The response is
+ * {@code {"id":..,"documentNo":..,"docStatus":"CO","lines":2}} with status 201.</p>
+ */
+public class ReceiptServlet extends ApiServlet {
+
+    private static final long serialVersionUID = 1L;
+
+    @Override
+    protected void doPost(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        if (request.getCharacterEncoding() == null) {
+            request.setCharacterEncoding("UTF-8");
+        }
+        ReceiptRequest receipt;
+        try {
+            receipt = GSON.fromJson(request.getReader(), ReceiptRequest.class);
+        } catch (JsonParseException e) {
+            throw new ApiException(HttpServletResponse.SC_BAD_REQUEST, "Invalid receipt: " + e.getMessage());
+        }
+        if (receipt == null || receipt.orderId <= 0 || receipt.lines == null || receipt.lines.isEmpty()) {
+            throw new ApiException(HttpServletResponse.SC_BAD_REQUEST, "Receipt needs orderId and lines");
+        }
+        Timestamp movementDate = parseDate(receipt.movementDate);
+
+        MRole role = MRole.getDefault(Env.getCtx(), false);
+        if (!role.isTableAccess(MTable.getTable_ID(MInOut.Table_Name), false)
+                || !role.isTableAccess(MTable.getTable_ID(MInOutLine.Table_Name), false)) {
+            throw new ApiException(HttpServletResponse.SC_FORBIDDEN, "No access to " + MInOut.Table_Name);
+        }
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        Trx.run(trxName -> {
+            MInOut inOut = createReceipt(role, receipt, movementDate, trxName);
+            result.put("id", inOut.getM_InOut_ID());
+            result.put("documentNo", inOut.getDocumentNo());
+            result.put("docStatus", inOut.getDocStatus());
+            result.put("lines", receipt.lines.size());
+        });
+        writeJson(response, HttpServletResponse.SC_CREATED, GSON.toJson(result));
+    }
+
+    /**
+     * Creates and completes the receipt.
+     *
+     * @param role the login role
+     * @param receipt the request
+     * @param movementDate the movement date
+     * @param trxName the transaction
+     * @return the completed receipt
+     */
+    private MInOut createReceipt(MRole role, ReceiptRequest receipt, Timestamp movementDate, String trxName) {
+        MOrder order = new MOrder(Env.getCtx(), receipt.orderId, trxName);
+        if (order.get_ID() <= 0 || order.getAD_Client_ID() != Env.getAD_Client_ID(Env.getCtx())) {
+            throw new ApiException(HttpServletResponse.SC_NOT_FOUND, "Order not found: " + receipt.orderId);
+        }
+        if (order.isSOTrx()) {
+            throw new ApiException(HttpServletResponse.SC_BAD_REQUEST, "Order is not a purchase order: " + order.getDocumentNo());
+        }
+        if (!MOrder.DOCSTATUS_Completed.equals(order.getDocStatus())
+                && !MOrder.DOCSTATUS_InProgress.equals(order.getDocStatus())) {
+            throw new ApiException(HttpServletResponse.SC_CONFLICT, "Order cannot be received: " + order.getDocumentNo());
+        }
+        if (!role.isOrgAccess(order.getAD_Org_ID(), true)) {
+            throw new ApiException(HttpServletResponse.SC_FORBIDDEN, "No access to the organization of the order");
+        }
+
+        int locatorId = getLocatorId(receipt.locatorId, order.getM_Warehouse_ID());
+        int docTypeId = receipt.docTypeId > 0 ? getDocTypeId(receipt.docTypeId)
+            : MDocType.getDocType(MDocType.DOCBASETYPE_MaterialReceipt);
+
+        // One query for all lines; the lock serializes receipts of the same order
+        List<MOrderLine> orderLines = new Query(Env.getCtx(), MOrderLine.Table_Name, "C_Order_ID=?", trxName)
+            .setParameters(order.getC_Order_ID())
+            .setForUpdate(true)
+            .list();
+        Map<Integer, MOrderLine> linesById = new HashMap<>();
+        Map<Integer, BigDecimal> openQty = new HashMap<>();
+        for (MOrderLine orderLine : orderLines) {
+            linesById.put(orderLine.getC_OrderLine_ID(), orderLine);
+            openQty.put(orderLine.getC_OrderLine_ID(), orderLine.getQtyOrdered().subtract(orderLine.getQtyDelivered()));
+        }
+
+        MInOut inOut = new MInOut(order, docTypeId, movementDate);
+        inOut.set_TrxName(trxName);
+        inOut.saveEx();
+
+        for (ReceiptLine line : receipt.lines) {
+            MOrderLine orderLine = linesById.get(line.orderLineId);
+            if (orderLine == null) {
+                throw new ApiException(HttpServletResponse.SC_BAD_REQUEST, "Order line not found: " + line.orderLineId);
+            }
+            // An order line may be listed more than once; together they stay within the open quantity
+            BigDecimal open = openQty.get(line.orderLineId);
+            if (line.qty == null || line.qty.signum() <= 0 || line.qty.compareTo(open) > 0) {
+                throw new ApiException(HttpServletResponse.SC_BAD_REQUEST,
+                    "Invalid quantity " + line.qty + " of line " + orderLine.getLine() + ", open " + open);
+            }
+            openQty.put(line.orderLineId, open.subtract(line.qty));
+            MInOutLine inOutLine = new MInOutLine(inOut);
+            inOutLine.setOrderLine(orderLine, locatorId, line.qty);
+            inOutLine.setQty(line.qty);
+            inOutLine.saveEx();
+        }
+
+        if (!inOut.processIt(DocAction.ACTION_Complete)) {
+            throw new ApiException(HttpServletResponse.SC_CONFLICT, "Cannot complete receipt: " + inOut.getProcessMsg());
+        }
+        inOut.saveEx();
+        return inOut;
+    }
+
+    /**
+     * Checks a requested document type: a material receipt of the login client or System.
+     *
+     * @param docTypeId the requested C_DocType_ID
+     * @return docTypeId
+     */
+    private static int getDocTypeId(int docTypeId) {
+        MDocType docType = MDocType.get(Env.getCtx(), docTypeId);
+        if (docType == null || docType.get_ID() != docTypeId
+                || (docType.getAD_Client_ID() != 0 && docType.getAD_Client_ID() != Env.getAD_Client_ID(Env.getCtx()))
+                || !MDocType.DOCBASETYPE_MaterialReceipt.equals(docType.getDocBaseType())) {
+            throw new ApiException(HttpServletResponse.SC_BAD_REQUEST, "Not a material receipt document type: " + docTypeId);
+        }
+        return docTypeId;
+    }
+
+    private static int getLocatorId(int locatorId, int warehouseId) {
+        if (locatorId > 0) {
+            MLocator locator = MLocator.get(Env.getCtx(), locatorId);
+            if (locator == null || locator.getM_Warehouse_ID() != warehouseId) {
+                throw new ApiException(HttpServletResponse.SC_BAD_REQUEST, "Locator is not in the order warehouse: " + locatorId);
+            }
+            return locatorId;
+        }
+        MLocator locator = MWarehouse.get(Env.getCtx(), warehouseId).getDefaultLocator();
+        if (locator == null) {
+            throw new ApiException(HttpServletResponse.SC_BAD_REQUEST, "Warehouse has no locator: " + warehouseId);
+        }
+        return locator.getM_Locator_ID();
+    }
+
+    private static Timestamp parseDate(String date) {
+        if (date == null || date.isEmpty()) {
+            return new Timestamp(System.currentTimeMillis());
+        }
+        try {
+            // yyyy-mm-dd, or the date part of an ISO date-time
+            return Timestamp.valueOf(date.substring(0, Math.min(date.length(), 10)) + " 00:00:00");
+        } catch (IllegalArgumentException e) {
+            throw new ApiException(HttpServletResponse.SC_BAD_REQUEST, "Invalid movementDate: " + date);
+        }
+    }
+
+    /** Request body */
+    private static final class ReceiptRequest {
+        private int orderId;
+        private String movementDate;
+        private int docTypeId;
+        private int locatorId;
+        private List<ReceiptLine> lines;
+    }
+
+    private static final class ReceiptLine {
+        private int orderLineId;
+        private BigDecimal qty;
+    }
+}
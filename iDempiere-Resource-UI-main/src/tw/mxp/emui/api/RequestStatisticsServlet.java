@@ -0,0 +1,190 @@
+package tw.mxp.emui.api;
+
+import java.io.IOException;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.adempiere.exceptions.DBException;
+import org.compiere.model.MRole;
+import org.compiere.model.MTable;
+import org.compiere.util.CCache;
+import org.compiere.util.DB;
+import org.compiere.util.Env;
+
+/**
+ * Request statistics per sales representative, aggregated in the database:
+ * {@code GET /api/statistics/requests}.
+ *
+ * <pre>
+ * {"generated":1700000000000,"total":42,"salesReps":[
+ *   {"id":100,"name":"SuperUser","total":40,"byType":{"101":30,"102":10},"byStatus":{"100":40}},
+ *   {"id":0,"name":null,"total":2,"byType":{},"byStatus":{}}]}
+ * </pre>
+ *
+ * <p>One GROUP BY query replaces downloading every R_Request. The query is restricted by the
+ * access of the login role (client, organization and record access), so the counts match the
+ * requests the role can read. Requests without sales representative, type or status are
+ * counted under 0; they are not listed in byType and byStatus.</p>
+ *
+ * <p>Results are cached per client, role and user for the cache interval, and the cache is
+ * reset when an R_Request is saved or deleted through the model.</p>
+ *
+ * <p>Init parameters:</p>
+ * <ul>
+ *   <li>cacheMillis - how long a result is reused (default 30000, 0 disables the cache)</li>
+ * </ul>
+ */
+public class RequestStatisticsServlet extends ApiServlet {
+
+    private static final long serialVersionUID = 1L;
+
+    public static final long DEFAULT_CACHE_MILLIS = 30L * 1000;
+
+    private static final String TABLE_NAME = "R_Request";
+
+    private static final String SQL = "SELECT COALESCE(r.SalesRep_ID,0), u.Name,"
+        + " COALESCE(r.R_RequestType_ID,0), COALESCE(r.R_Status_ID,0), COUNT(*)"
+        + " FROM R_Request r"
+        + " LEFT OUTER JOIN AD_User u ON (u.AD_User_ID=r.SalesRep_ID)"
+        + " WHERE r.AD_Client_ID=?";
+
+    private static final String GROUP_BY = " GROUP BY COALESCE(r.SalesRep_ID,0), u.Name,"
+        + " COALESCE(r.R_RequestType_ID,0), COALESCE(r.R_Status_ID,0)"
+        + " ORDER BY 1";
+
+    /** Serialized results by client, role and user; any change of R_Request resets all of them */
+    private static final CCache<String, CachedResult> s_cache =
+        new CCache<String, CachedResult>(TABLE_NAME, "EMUI_RequestStatistics", 20, 1, false) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            public int reset(int recordId) {
+                return reset();
+            }
+
+            @Override
+            public void newRecord(int recordId) {
+                reset();
+            }
+        };
+
+    private long cacheMillis;
+
+    @Override
+    public void init() throws ServletException {
+        super.init();
+        cacheMillis = getLongParameter("cacheMillis", DEFAULT_CACHE_MILLIS);
+    }
+
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        ApiToken token = getToken(request);
+        String key = token.getClientId() + "_" + token.getRoleId() + "_" + token.getUserId();
+        long now = System.currentTimeMillis();
+
+        CachedResult result = cacheMillis > 0 ? s_cache.get(key) : null;
+        if (result == null || now - result.generated >= cacheMillis) {
+            result = new CachedResult(now, GSON.toJson(load(now)));
+            if (cacheMillis > 0) {
+                s_cache.put(key, result);
+            }
+        }
+        writeJson(response, HttpServletResponse.SC_OK, result.json);
+    }
+
+    /**
+     * Runs the aggregation with the access of the login role.
+     *
+     * @param now the generation time
+     * @return the statistics
+     */
+    private Statistics load(long now) {
+        MRole role = MRole.getDefault(Env.getCtx(), false);
+        if (!role.isTableAccess(MTable.getTable_ID(TABLE_NAME), true)) {
+            throw new ApiException(HttpServletResponse.SC_FORBIDDEN, "No access to " + TABLE_NAME);
+        }
+        String sql = role.addAccessSQL(SQL, "r", MRole.SQL_FULLYQUALIFIED, MRole.SQL_RO) + GROUP_BY;
+
+        Map<Integer, SalesRep> salesReps = new LinkedHashMap<>();
+        int total = 0;
+        PreparedStatement pstmt = null;
+        ResultSet rs = null;
+        try {
+            pstmt = DB.prepareStatement(sql, null);
+            pstmt.setInt(1, Env.getAD_Client_ID(Env.getCtx()));
+            rs = pstmt.executeQuery();
+            while (rs.next()) {
+                int salesRepId = rs.getInt(1);
+                SalesRep salesRep = salesReps.get(salesRepId);
+                if (salesRep == null) {
+                    salesRep = new SalesRep(salesRepId, rs.getString(2));
+                    salesReps.put(salesRepId, salesRep);
+                }
+                int count = rs.getInt(5);
+                salesRep.add(rs.getInt(3), rs.getInt(4), count);
+                total += count;
+            }
+        } catch (SQLException e) {
+            throw new DBException(e, sql);
+        } finally {
+            DB.close(rs, pstmt);
+        }
+        return new Statistics(now, total, new ArrayList<>(salesReps.values()));
+    }
+
+    private static final class CachedResult {
+        private final long generated;
+        private final String json;
+
+        private CachedResult(long generated, String json) {
+            this.generated = generated;
+            this.json = json;
+        }
+    }
+
+    /** Response body */
+    private static final class Statistics {
+        private final long generated;
+        private final int total;
+        private final List<SalesRep> salesReps;
+
+        private Statistics(long generated, int total, List<SalesRep> salesReps) {
+            this.generated = generated;
+            this.total = total;
+            this.salesReps = salesReps;
+        }
+    }
+
+    /** Counts of one sales representative, 0 for requests without one */
+    private static final class SalesRep {
+        private final int id;
+        private final String name;
+        private int total;
+        private final Map<Integer, Integer> byType = new TreeMap<>();
+        private final Map<Integer, Integer> byStatus = new TreeMap<>();
+
+        private SalesRep(int id, String name) {
+            this.id = id;
+            this.name = name;
+        }
+
+        private void add(int requestTypeId, int statusId, int count) {
+            total += count;
+            if (requestTypeId > 0) {
+                byType.merge(requestTypeId, count, Integer::sum);
+            }
+            if (statusId > 0) {
+                byStatus.merge(statusId, count, Integer::sum);
+            }
+        }
+    }
+}
@@ -0,0 +1,410 @@
+package tw.mxp.emui.api;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.Part;
+
+import com.google.gson.JsonParseException;
+
+/**
+ * Uploads of attachments, streamed to disk instead of posted as base64 JSON.
+ *
+ * <p>One-shot upload of small files as multipart/form-data, every file part is attached:</p>
+ * <pre>
+ * POST /api/uploads/{table}/{recordId}          -&gt; 201 {"attachments":[{"name":..,"size":..}]}
+ * </pre>
+ *
+ * <p>Resumable upload in chunks, for unreliable networks:</p>
+ * <pre>
+ * POST   /api/uploads {"table":..,"recordId":..,"name":..,"size":..}
+ *                                               -&gt; 201 {"id":..,"offset":0,"size":..,"chunkSize":..}
+ * PUT    /api/uploads/{id}  Content-Range: bytes 0-262143/1048576, the bytes as body
+ *                                               -&gt; 200 {"offset":262144,..,"complete":false}
+ *                                                  201 {..,"complete":true} after the last byte
+ * GET    /api/uploads/{id}                      -&gt; 200 {"offset":..}, to resume after a failure
+ * DELETE /api/uploads/{id}                      -&gt; 204
+ * </pre>
+ *
+ * <p>A chunk must start at the current offset, or 409 answers the offset to continue from;
+ * 409 also answers a chunk sent while another chunk of the session is still being written.
+ * The session is locked only to check the offset and to commit the chunk, not while the body
+ * is read. Bytes received before a connection broke are kept, so a retry sends only the rest.
+ * When the last byte is written, the file is added to the attachment of the record; the
+ * session stays until it expires, so a client that lost the answer gets it again. Sessions
+ * are kept in memory and idle ones are removed by a background sweep; after a restart the
+ * upload starts again.</p>
+ *
+ * <p>Init parameters: maxUploadBytes (default 50 MB), chunkSize (default 256 KB, a hint to
+ * the client), sessionTimeoutMillis (default 1 hour), sweepMillis (default 1 minute, how
+ * often expired sessions are removed), maxSessions (default 256), thumbnailSize (default
+ * 320, 0 disables thumbnails), thumbnailMaxPixels (default 50 million, larger images get no
+ * thumbnail) and thumbnailThreads (default 2). The multipart limits are set by the
+ * multipart-config of the servlet.</p>
+ */
+public class UploadServlet extends ApiServlet {
+
+    private static final long serialVersionUID = 1L;
+
+    public static final long DEFAULT_MAX_UPLOAD_BYTES = 50L * 1024 * 1024;
+    public static final long DEFAULT_CHUNK_SIZE = 256L * 1024;
+    public static final long DEFAULT_SESSION_TIMEOUT_MILLIS = 60L * 60 * 1000;
+    public static final long DEFAULT_SWEEP_MILLIS = 60L * 1000;
+    public static final long DEFAULT_MAX_SESSIONS = 256;
+
+    private static final String UPLOAD_DIR = "emui-uploads";
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final Pattern SESSION_PATH = Pattern.compile("/([0-9a-f]{32})");
+    private static final Pattern RECORD_PATH = Pattern.compile("/([A-Za-z0-9_]+)/(\\d{1,9})");
+    private static final Pattern CONTENT_RANGE = Pattern.compile("bytes\\s+(?:(\\d+)-(\\d+)|\\*)/(\\d+)");
+
+    private final transient Map<String, Session> sessions = new ConcurrentHashMap<>();
+
+    private transient AttachmentWriter writer;
+    private transient ScheduledExecutorService sweeper;
+    private File uploadDir;
+    private long maxUploadBytes;
+    private long chunkSize;
+    private long sessionTimeoutMillis;
+    private long maxSessions;
+
+    @Override
+    public void init() throws ServletException {
+        super.init();
+        maxUploadBytes = getLongParameter("maxUploadBytes", DEFAULT_MAX_UPLOAD_BYTES);
+        chunkSize = getLongParameter("chunkSize", DEFAULT_CHUNK_SIZE);
+        sessionTimeoutMillis = getLongParameter("sessionTimeoutMillis", DEFAULT_SESSION_TIMEOUT_MILLIS);
+        maxSessions = getLongParameter("maxSessions", DEFAULT_MAX_SESSIONS);
+        writer = new AttachmentWriter(
+            (int) getLongParameter("thumbnailSize", AttachmentWriter.DEFAULT_THUMBNAIL_SIZE),
+            getLongParameter("thumbnailMaxPixels", AttachmentWriter.DEFAULT_THUMBNAIL_MAX_PIXELS),
+            (int) getLongParameter("thumbnailThreads", AttachmentWriter.DEFAULT_THUMBNAIL_THREADS));
+
+        long sweepMillis = Math.max(1000, getLongParameter("sweepMillis", DEFAULT_SWEEP_MILLIS));
+        sweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "emui-upload-sweep");
+            thread.setDaemon(true);
+            return thread;
+        });
+        sweeper.scheduleWithFixedDelay(this::expireSessions, sweepMillis, sweepMillis, TimeUnit.MILLISECONDS);
+
+        File tempDir = (File) getServletContext().getAttribute(ServletContext.TEMPDIR);
+        uploadDir = new File(tempDir != null ? tempDir : new File(System.getProperty("java.io.tmpdir")), UPLOAD_DIR);
+    }
+
+    @Override
+    public void destroy() {
+        sweeper.shutdownNow();
+        writer.shutdown();
+        for (Session session : sessions.values()) {
+            AttachmentWriter.delete(session.file);
+        }
+        sessions.clear();
+        super.destroy();
+    }
+
+    @Override
+    protected void doPost(HttpServletRequest request, HttpServletResponse response) throws IOException, ServletException {
+        String path = request.getPathInfo();
+        Matcher record = RECORD_PATH.matcher(path == null ? "" : path);
+        if (record.matches()) {
+            uploadParts(request, response, record.group(1), Integer.parseInt(record.group(2)));
+        } else if (path == null || "/".equals(path)) {
+            createSession(request, response);
+        } else {
+            throw new ApiException(HttpServletResponse.SC_NOT_FOUND, "Not found");
+        }
+    }
+
+    @Override
+    protected void doPut(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        Session session = getSession(request);
+        long[] range;
+        synchronized (session) {
+            if (session.attached) {
+                // The answer to the last chunk was lost; the client asks again
+                writeJson(response, HttpServletResponse.SC_CREATED, GSON.toJson(session.toJson()));
+                return;
+            }
+            range = parseContentRange(request.getHeader("Content-Range"), session.size);
+            if (session.writing || range[0] != session.offset) {
+                writeJson(response, HttpServletResponse.SC_CONFLICT, GSON.toJson(session.toJson()));
+                return;
+            }
+            session.writing = true;
+        }
+        try {
+            // The body is read without the lock; other requests of the session see writing
+            writeChunk(request, session, range[1]);
+
+            synchronized (session) {
+                if (session.offset < session.size) {
+                    writeJson(response, HttpServletResponse.SC_OK, GSON.toJson(session.toJson()));
+                    return;
+                }
+                if (sessions.get(session.id) != session) {
+                    // Deleted while the chunk was written
+                    throw new ApiException(HttpServletResponse.SC_NOT_FOUND, "Upload not found");
+                }
+                try {
+                    writer.attach(session.tableId, session.recordId, session.file);
+                } catch (RuntimeException e) {
+                    // The file is gone; the upload has to start again
+                    sessions.remove(session.id);
+                    throw e;
+                }
+                session.attached = true;
+                writeJson(response, HttpServletResponse.SC_CREATED, GSON.toJson(session.toJson()));
+            }
+        } finally {
+            synchronized (session) {
+                session.writing = false;
+            }
+        }
+    }
+
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        Session session = getSession(request);
+        synchronized (session) {
+            writeJson(response, HttpServletResponse.SC_OK, GSON.toJson(session.toJson()));
+        }
+    }
+
+    @Override
+    protected void doDelete(HttpServletRequest request, HttpServletResponse response) {
+        Session session = getSession(request);
+        synchronized (session) {
+            sessions.remove(session.id);
+            AttachmentWriter.delete(session.file);
+        }
+        response.setStatus(HttpServletResponse.SC_NO_CONTENT);
+    }
+
+    /**
+     * Attaches the file parts of a multipart request.
+     */
+    private void uploadParts(HttpServletRequest request, HttpServletResponse response, String tableName, int recordId)
+            throws IOException, ServletException {
+        String contentType = request.getContentType();
+        if (contentType == null || !contentType.toLowerCase(Locale.ROOT).startsWith("multipart/form-data")) {
+            throw new ApiException(HttpServletResponse.SC_UNSUPPORTED_MEDIA_TYPE, "Expected multipart/form-data");
+        }
+        int tableId = AttachmentWriter.checkAccess(tableName, recordId);
+
+        List<Map<String, Object>> attachments = new ArrayList<>();
+        try {
+            for (Part part : request.getParts()) {
+                if (part.getSubmittedFileName() == null) {
+                    continue;
+                }
+                String name = AttachmentWriter.checkName(new File(part.getSubmittedFileName()).getName());
+                File file = AttachmentWriter.createFile(uploadDir, name);
+                try (InputStream in = part.getInputStream()) {
+                    Files.copy(in, file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                } catch (IOException e) {
+                    AttachmentWriter.delete(file);
+                    throw e;
+                } finally {
+                    part.delete();
+                }
+                long size = file.length();
+                writer.attach(tableId, recordId, file);
+
+                Map<String, Object> attachment = new LinkedHashMap<>();
+                attachment.put("name", name);
+                attachment.put("size", size);
+                attachments.add(attachment);
+            }
+        } catch (IllegalStateException e) {
+            // Thrown by getParts when the multipart-config limits are exceeded
+            throw new ApiException(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE, "Upload too large");
+        }
+        if (attachments.isEmpty()) {
+            throw new ApiException(HttpServletResponse.SC_BAD_REQUEST, "No file part");
+        }
+
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("attachments", attachments);
+        writeJson(response, HttpServletResponse.SC_CREATED, GSON.toJson(body));
+    }
+
+    /**
+     * Starts a resumable upload.
+     */
+    private void createSession(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        if (request.getCharacterEncoding() == null) {
+            request.setCharacterEncoding("UTF-8");
+        }
+        CreateRequest create;
+        try {
+            create = GSON.fromJson(request.getReader(), CreateRequest.class);
+        } catch (JsonParseException e) {
+            throw new ApiException(HttpServletResponse.SC_BAD_REQUEST, "Invalid upload: " + e.getMessage());
+        }
+        if (create == null || create.size <= 0) {
+            throw new ApiException(HttpServletResponse.SC_BAD_REQUEST, "Upload needs table, recordId, name and size");
+        }
+        if (create.size > maxUploadBytes) {
+            throw new ApiException(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE, "Upload too large, max " + maxUploadBytes + " bytes");
+        }
+        int tableId = AttachmentWriter.checkAccess(create.table, create.recordId);
+        String name = AttachmentWriter.checkName(create.name);
+
+        if (sessions.size() >= maxSessions) {
+            throw new ApiException(HttpServletResponse.SC_SERVICE_UNAVAILABLE, "Too many uploads in progress");
+        }
+        ApiToken token = getToken(request);
+        Session session = new Session(UUID.randomUUID().toString().replace("-", ""), token.getClientId(), token.getUserId(),
+            tableId, create.recordId, AttachmentWriter.createFile(uploadDir, name), create.size);
+        sessions.put(session.id, session);
+
+        Map<String, Object> body = session.toJson();
+        body.put("chunkSize", chunkSize);
+        writeJson(response, HttpServletResponse.SC_CREATED, GSON.toJson(body));
+    }
+
+    /**
+     * Appends the body of a chunk to the session file, up to the end of the chunk.
+     * The offset advances with every written buffer, so bytes received before a broken
+     * connection are kept. Called only by the request that set the writing flag.
+     */
+    private static void writeChunk(HttpServletRequest request, Session session, long end) throws IOException {
+        try (FileChannel channel = FileChannel.open(session.file.toPath(), StandardOpenOption.WRITE);
+                InputStream in = request.getInputStream()) {
+            channel.position(session.offset);
+            byte[] buffer = new byte[BUFFER_SIZE];
+            while (session.offset < end) {
+                int count = in.read(buffer, 0, (int) Math.min(buffer.length, end - session.offset));
+                if (count < 0) {
+                    break;
+                }
+                ByteBuffer data = ByteBuffer.wrap(buffer, 0, count);
+                while (data.hasRemaining()) {
+                    channel.write(data);
+                }
+                session.offset += count;
+            }
+        }
+    }
+
+    /**
+     * Parses the Content-Range of a chunk.
+     *
+     * @param header the Content-Range header
+     * @param size the size of the upload
+     * @return the first byte and the end (exclusive); {@code bytes *}/size is an empty chunk at the end
+     */
+    private static long[] parseContentRange(String header, long size) {
+        Matcher matcher = CONTENT_RANGE.matcher(header == null ? "" : header.trim());
+        if (!matcher.matches() || Long.parseLong(matcher.group(3)) != size) {
+            throw new ApiException(HttpServletResponse.SC_BAD_REQUEST, "Invalid Content-Range: " + header);
+        }
+        if (matcher.group(1) == null) {
+            return new long[] {size, size};
+        }
+        long start = Long.parseLong(matcher.group(1));
+        long end = Long.parseLong(matcher.group(2)) + 1;
+        if (start >= end || end > size) {
+            throw new ApiException(HttpServletResponse.SC_BAD_REQUEST, "Invalid Content-Range: " + header);
+        }
+        return new long[] {start, end};
+    }
+
+    private Session getSession(HttpServletRequest request) {
+        String path = request.getPathInfo();
+        Matcher matcher = SESSION_PATH.matcher(path == null ? "" : path);
+        Session session = matcher.matches() ? sessions.get(matcher.group(1)) : null;
+        ApiToken token = getToken(request);
+        if (session == null || session.clientId != token.getClientId() || session.userId != token.getUserId()) {
+            throw new ApiException(HttpServletResponse.SC_NOT_FOUND, "Upload not found");
+        }
+        session.lastAccess = System.currentTimeMillis();
+        return session;
+    }
+
+    /**
+     * Removes the sessions idle for longer than the timeout, run by the sweeper.
+     * A session with a chunk being written is not idle.
+     */
+    private void expireSessions() {
+        long now = System.currentTimeMillis();
+        for (Iterator<Session> it = sessions.values().iterator(); it.hasNext();) {
+            Session session = it.next();
+            synchronized (session) {
+                if (!session.writing && now - session.lastAccess >= sessionTimeoutMillis) {
+                    it.remove();
+                    AttachmentWriter.delete(session.file);
+                }
+            }
+        }
+    }
+
+    /** Request body of a resumable upload */
+    private static final class CreateRequest {
+        private String table;
+        private int recordId;
+        private String name;
+        private long size;
+    }
+
+    /**
+     * Resumable upload. The flags are guarded by the session monitor; the offset is changed
+     * only by the request holding the writing flag, and read by the others.
+     */
+    private static final class Session {
+        private final String id;
+        private final int clientId;
+        private final int userId;
+        private final int tableId;
+        private final int recordId;
+        private final File file;
+        private final long size;
+        private volatile long offset;
+        private boolean writing;
+        private boolean attached;
+        private volatile long lastAccess = System.currentTimeMillis();
+
+        private Session(String id, int clientId, int userId, int tableId, int recordId, File file, long size) {
+            this.id = id;
+            this.clientId = clientId;
+            this.userId = userId;
+            this.tableId = tableId;
+            this.recordId = recordId;
+            this.file = file;
+            this.size = size;
+        }
+
+        private Map<String, Object> toJson() {
+            Map<String, Object> json = new LinkedHashMap<>();
+            json.put("id", id);
+            json.put("name", file.getName());
+            json.put("offset", offset);
+            json.put("size", size);
+            json.put("complete", offset == size);
+            return json;
+        }
+    }
+}
@@ -0,0 +1,285 @@
+package tw.mxp.emui;
+
+import java.lang.reflect.Proxy;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.servlet.AsyncContext;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Load comparison of writing cached responses to slow clients with asyncWrite off and on.
+ *
+ * <p>A small pool stands for the container threads. Each client reads at a fixed rate
+ * through a bounded send buffer, drained by a network thread. With asyncWrite off, the
+ * container thread blocks in write until the client has read the body; with asyncWrite
+ * on, {@link SpaAsyncWriter} writes while the buffer has room and the network thread
+ * dispatches onWritePossible to the pool when it drains, as the container does. While
+ * the responses are sent, a probe request is queued to the pool every few milliseconds,
+ * standing for an API call that needs a container thread.</p>
+ *
+ * <p>Reported per mode: the peak and mean of busy container threads, the thread time per
+ * response, the response latency, and how long the probes waited for a thread. Run with
+ * the servlet API on the class path:</p>
+ *
+ * <pre>java tw.mxp.emui.SpaAsyncWriterBenchmark [threads] [responses] [kilobytes] [clientKBps]</pre>
+ */
+public class SpaAsyncWriterBenchmark {
+
+    private static final int SEND_BUFFER = 64 * 1024;
+    private static final long TICK_MILLIS = 5;
+    private static final long PROBE_MILLIS = 10;
+
+    public static void main(String[] args) throws Exception {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int responses = args.length > 1 ? Integer.parseInt(args[1]) : 64;
+        int kilobytes = args.length > 2 ? Integer.parseInt(args[2]) : 256;
+        int clientKBps = args.length > 3 ? Integer.parseInt(args[3]) : 1024;
+
+        System.out.println(threads + " container threads, " + responses + " responses of " + kilobytes
+            + " KB, clients reading " + clientKBps + " KB/s");
+        ByteBuffer body = ByteBuffer.wrap(new byte[kilobytes * 1024]);
+        for (boolean async : new boolean[] {false, true}) {
+            System.out.println(new Run(async, threads, responses, body, clientKBps * 1024L).execute());
+        }
+    }
+
+    /** One load run in one mode */
+    private static final class Run {
+        private final boolean async;
+        private final int threads;
+        private final int responses;
+        private final ByteBuffer body;
+        private final int bytesPerTick;
+
+        private final AtomicInteger busy = new AtomicInteger();
+        private final AtomicInteger peakBusy = new AtomicInteger();
+        private final AtomicLong busyNanos = new AtomicLong();
+        private final List<Connection> connections = new CopyOnWriteArrayList<>();
+        private final List<Long> probeWaits = new CopyOnWriteArrayList<>();
+        private ExecutorService container;
+        private CountDownLatch received;
+
+        private Run(boolean async, int threads, int responses, ByteBuffer body, long clientBytesPerSecond) {
+            this.async = async;
+            this.threads = threads;
+            this.responses = responses;
+            this.body = body;
+            this.bytesPerTick = (int) Math.max(1, clientBytesPerSecond * TICK_MILLIS / 1000);
+        }
+
+        private String execute() throws InterruptedException {
+            container = Executors.newFixedThreadPool(threads);
+            ScheduledExecutorService network = Executors.newScheduledThreadPool(2);
+            received = new CountDownLatch(responses);
+            network.scheduleAtFixedRate(this::drain, TICK_MILLIS, TICK_MILLIS, TimeUnit.MILLISECONDS);
+            network.scheduleAtFixedRate(this::probe, 0, PROBE_MILLIS, TimeUnit.MILLISECONDS);
+
+            long start = System.nanoTime();
+            for (int i = 0; i < responses; i++) {
+                Connection connection = new Connection(body.remaining());
+                connections.add(connection);
+                dispatch(() -> serve(connection));
+            }
+            if (!received.await(10, TimeUnit.MINUTES)) {
+                throw new IllegalStateException("Responses not received");
+            }
+            long elapsed = System.nanoTime() - start;
+            network.shutdownNow();
+            container.shutdown();
+            container.awaitTermination(1, TimeUnit.MINUTES);
+
+            long[] latencies = connections.stream().mapToLong(c -> c.done - start).sorted().toArray();
+            long[] waits = probeWaits.stream().mapToLong(Long::longValue).sorted().toArray();
+            return String.format("asyncWrite=%-5s busy threads peak %d mean %.1f, thread time per response %.1f ms,"
+                    + " latency p50 %d ms p99 %d ms, probe wait p50 %.1f ms max %.1f ms",
+                async, peakBusy.get(), (double) busyNanos.get() / elapsed, busyNanos.get() / 1e6 / responses,
+                percentile(latencies, 50) / 1000000, percentile(latencies, 99) / 1000000,
+                percentile(waits, 50) / 1e6, (waits.length == 0 ? 0 : waits[waits.length - 1]) / 1e6);
+        }
+
+        /** Writes one response on a container thread */
+        private void serve(Connection connection) {
+            try {
+                if (async) {
+                    SpaAsyncWriter.start(connection.request(), connection.response(), body.duplicate(), 60000);
+                } else {
+                    byte[] array = body.array();
+                    connection.output.write(array, 0, array.length);
+                }
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        /** Network thread: every client reads its share of the send buffer */
+        private void drain() {
+            for (Connection connection : connections) {
+                WriteListener wake = null;
+                synchronized (connection) {
+                    if (connection.done != 0) {
+                        continue;
+                    }
+                    int read = Math.min(connection.buffered, bytesPerTick);
+                    connection.buffered -= read;
+                    connection.received += read;
+                    if (connection.received == connection.size) {
+                        connection.done = System.nanoTime();
+                        received.countDown();
+                    }
+                    if (connection.waiting && connection.buffered < SEND_BUFFER) {
+                        connection.waiting = false;
+                        wake = connection.listener;
+                    }
+                    connection.notifyAll();
+                }
+                if (wake != null) {
+                    WriteListener listener = wake;
+                    dispatch(() -> {
+                        try {
+                            listener.onWritePossible();
+                        } catch (Exception e) {
+                            listener.onError(e);
+                        }
+                    });
+                }
+            }
+        }
+
+        /** Queues a request that only needs a thread, and records how long it waited */
+        private void probe() {
+            long queued = System.nanoTime();
+            container.execute(() -> probeWaits.add(System.nanoTime() - queued));
+        }
+
+        /** Runs a task on a container thread, counting the thread as busy */
+        private void dispatch(Runnable task) {
+            container.execute(() -> {
+                int now = busy.incrementAndGet();
+                peakBusy.accumulateAndGet(now, Math::max);
+                long start = System.nanoTime();
+                try {
+                    task.run();
+                } finally {
+                    busyNanos.addAndGet(System.nanoTime() - start);
+                    busy.decrementAndGet();
+                }
+            });
+        }
+
+        private static long percentile(long[] sorted, int percent) {
+            if (sorted.length == 0) {
+                return 0;
+            }
+            return sorted[Math.min(sorted.length - 1, sorted.length * percent / 100)];
+        }
+    }
+
+    /** Connection of one client: the send buffer, guarded by the connection monitor */
+    private static final class Connection {
+        private final long size;
+        private final Output output = new Output(this);
+        private int buffered;
+        private long received;
+        private boolean waiting;
+        private WriteListener listener;
+        private long done;
+
+        private Connection(long size) {
+            this.size = size;
+        }
+
+        private HttpServletRequest request() {
+            AsyncContext asyncContext = proxy(AsyncContext.class, (method, args) -> null);
+            return proxy(HttpServletRequest.class, (method, args) ->
+                "startAsync".equals(method) ? asyncContext : null);
+        }
+
+        private HttpServletResponse response() {
+            return proxy(HttpServletResponse.class, (method, args) ->
+                "getOutputStream".equals(method) ? output : null);
+        }
+    }
+
+    /**
+     * Output into the send buffer of a connection. Blocking writes wait for room; in
+     * non-blocking mode a write is taken whole and isReady is false while the buffer is full.
+     */
+    private static final class Output extends ServletOutputStream {
+        private final Connection connection;
+
+        private Output(Connection connection) {
+            this.connection = connection;
+        }
+
+        @Override
+        public boolean isReady() {
+            synchronized (connection) {
+                if (connection.buffered < SEND_BUFFER) {
+                    return true;
+                }
+                connection.waiting = true;
+                return false;
+            }
+        }
+
+        @Override
+        public void setWriteListener(WriteListener writeListener) {
+            synchronized (connection) {
+                connection.listener = writeListener;
+            }
+            try {
+                writeListener.onWritePossible();
+            } catch (Exception e) {
+                writeListener.onError(e);
+            }
+        }
+
+        @Override
+        public void write(int b) {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            synchronized (connection) {
+                if (connection.listener != null) {
+                    connection.buffered += len;
+                    return;
+                }
+                while (len > 0) {
+                    while (connection.buffered >= SEND_BUFFER) {
+                        try {
+                            connection.wait();
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            return;
+                        }
+                    }
+                    int taken = Math.min(len, SEND_BUFFER - connection.buffered);
+                    connection.buffered += taken;
+                    len -= taken;
+                }
+            }
+        }
+    }
+
+    private interface Handler {
+        Object invoke(String method, Object[] args) throws Throwable;
+    }
+
+    private static <T> T proxy(Class<T> type, Handler handler) {
+        return type.cast(Proxy.newProxyInstance(SpaAsyncWriterBenchmark.class.getClassLoader(),
+            new Class<?>[] {type}, (proxy, method, args) -> handler.invoke(method.getName(), args)));
+    }
+}
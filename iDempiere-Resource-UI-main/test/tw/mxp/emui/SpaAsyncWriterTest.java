@@ -0,0 +1,206 @@
+package tw.mxp.emui;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test of the bookkeeping of {@link SpaAsyncWriter}: many concurrent responses that
+ * complete, stall until the async timeout, or fail, are each completed and counted once.
+ * Container thread occupancy with asyncWrite off and on is measured by
+ * {@link SpaAsyncWriterBenchmark}.
+ */
+public class SpaAsyncWriterTest {
+
+    private static final int RESPONSES = 3000;
+    private static final int BODY_SIZE = 200 * 1024;
+
+    @Test
+    public void everyResponseIsCompletedOnce() throws Exception {
+        long started = SpaAsyncWriter.getStarted();
+        long failed = SpaAsyncWriter.getFailed();
+        long timeouts = SpaAsyncWriter.getTimeouts();
+        long active = SpaAsyncWriter.getActive();
+        ByteBuffer body = ByteBuffer.allocateDirect(BODY_SIZE);
+
+        ExecutorService container = Executors.newFixedThreadPool(16);
+        List<Future<FakeResponse>> responses = new ArrayList<>();
+        for (int i = 0; i < RESPONSES; i++) {
+            int outcome = i % 3;
+            responses.add(container.submit(() -> serve(body.duplicate(), outcome)));
+        }
+        List<FakeResponse> served = new ArrayList<>();
+        for (Future<FakeResponse> response : responses) {
+            served.add(response.get());
+        }
+        container.shutdown();
+        assertTrue(container.awaitTermination(30, TimeUnit.SECONDS));
+
+        for (FakeResponse response : served) {
+            assertEquals(1, response.completions.get(), "complete() calls");
+            if (response.outcome == 0) {
+                assertEquals(BODY_SIZE, response.output.bytes.size());
+            }
+        }
+        assertEquals(started + RESPONSES, SpaAsyncWriter.getStarted());
+        assertEquals(failed + RESPONSES / 3, SpaAsyncWriter.getFailed());
+        assertEquals(timeouts + RESPONSES / 3, SpaAsyncWriter.getTimeouts());
+        assertEquals(active, SpaAsyncWriter.getActive());
+    }
+
+    @Test
+    public void writeAfterTimeoutIsIgnored() throws Exception {
+        long active = SpaAsyncWriter.getActive();
+        FakeResponse response = new FakeResponse(1);
+        SpaAsyncWriter.start(response.request(), response.response(), ByteBuffer.wrap(new byte[BODY_SIZE]), 1000);
+
+        response.output.chunksPerReady = 1;
+        response.output.ready = true;
+        response.writeListener().onWritePossible();
+        response.asyncListener.onTimeout(new AsyncEvent(response.asyncContext()));
+        response.output.ready = true;
+        response.writeListener().onWritePossible();
+        response.asyncListener.onComplete(new AsyncEvent(response.asyncContext()));
+
+        assertEquals(1, response.completions.get(), "complete() calls");
+        assertEquals(64 * 1024, response.output.bytes.size());
+        assertEquals(active, SpaAsyncWriter.getActive());
+    }
+
+    /**
+     * Serves one response as a container would: the output is ready for a few chunks
+     * at a time, then the client is either fast, stalls until the timeout, or fails.
+     */
+    private static FakeResponse serve(ByteBuffer body, int outcome) throws IOException {
+        FakeResponse response = new FakeResponse(outcome);
+        SpaAsyncWriter.start(response.request(), response.response(), body, 30000);
+        WriteListener writer = response.writeListener();
+
+        response.output.ready = true;
+        writer.onWritePossible();
+        switch (outcome) {
+            case 0:
+                while (response.completions.get() == 0) {
+                    response.output.ready = true;
+                    writer.onWritePossible();
+                }
+                break;
+            case 1:
+                response.asyncListener.onTimeout(new AsyncEvent(response.asyncContext()));
+                break;
+            default:
+                writer.onError(new IOException("Connection reset"));
+                break;
+        }
+        // The container reports completion to the listeners afterwards
+        response.asyncListener.onComplete(new AsyncEvent(response.asyncContext()));
+        return response;
+    }
+
+    private static final class FakeResponse {
+        private final int outcome;
+        private final AtomicInteger completions = new AtomicInteger();
+        private final FakeOutput output = new FakeOutput();
+        private AsyncListener asyncListener;
+        private AsyncContext asyncContext;
+
+        private FakeResponse(int outcome) {
+            this.outcome = outcome;
+        }
+
+        private WriteListener writeListener() {
+            return output.listener;
+        }
+
+        private AsyncContext asyncContext() {
+            if (asyncContext == null) {
+                asyncContext = proxy(AsyncContext.class, (method, args) -> {
+                    switch (method) {
+                        case "addListener":
+                            asyncListener = (AsyncListener) args[0];
+                            return null;
+                        case "complete":
+                            if (completions.incrementAndGet() > 1) {
+                                throw new IllegalStateException("Completed twice");
+                            }
+                            return null;
+                        default:
+                            return null;
+                    }
+                });
+            }
+            return asyncContext;
+        }
+
+        private HttpServletRequest request() {
+            return proxy(HttpServletRequest.class, (method, args) ->
+                "startAsync".equals(method) ? asyncContext() : null);
+        }
+
+        private HttpServletResponse response() {
+            return proxy(HttpServletResponse.class, (method, args) ->
+                "getOutputStream".equals(method) ? output : null);
+        }
+    }
+
+    /** Output that takes a few chunks each time it is ready */
+    private static final class FakeOutput extends ServletOutputStream {
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private volatile boolean ready;
+        private int chunksPerReady = 3;
+        private int chunks;
+        private WriteListener listener;
+
+        @Override
+        public boolean isReady() {
+            return ready;
+        }
+
+        @Override
+        public void setWriteListener(WriteListener writeListener) {
+            this.listener = writeListener;
+        }
+
+        @Override
+        public void write(int b) {
+            bytes.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            bytes.write(b, off, len);
+            if (++chunks % chunksPerReady == 0) {
+                ready = false;
+            }
+        }
+    }
+
+    private interface Handler {
+        Object invoke(String method, Object[] args) throws Throwable;
+    }
+
+    private static <T> T proxy(Class<T> type, Handler handler) {
+        return type.cast(Proxy.newProxyInstance(SpaAsyncWriterTest.class.getClassLoader(),
+            new Class<?>[] { type }, (proxy, method, args) -> handler.invoke(method.getName(), args)));
+    }
+}
@@ -0,0 +1,99 @@
+package tw.mxp.emui;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests of Range header parsing and of If-Range.
+ */
+public class SpaByteRangesTest {
+
+    private static long[] bounds(List<SpaByteRanges.Range> ranges) {
+        long[] bounds = new long[ranges.size() * 2];
+        for (int i = 0; i < ranges.size(); i++) {
+            bounds[2 * i] = ranges.get(i).getStart();
+            bounds[2 * i + 1] = ranges.get(i).getEnd();
+        }
+        return bounds;
+    }
+
+    @Test
+    public void singleRanges() {
+        assertArrayEquals(new long[] {0, 99}, bounds(SpaByteRanges.parse("bytes=0-99", 1000)));
+        assertArrayEquals(new long[] {900, 999}, bounds(SpaByteRanges.parse("bytes=900-", 1000)));
+        assertArrayEquals(new long[] {900, 999}, bounds(SpaByteRanges.parse("bytes=-100", 1000)));
+        assertArrayEquals(new long[] {0, 999}, bounds(SpaByteRanges.parse("bytes=-5000", 1000)));
+        assertArrayEquals(new long[] {500, 999}, bounds(SpaByteRanges.parse("BYTES=500-5000", 1000)));
+    }
+
+    @Test
+    public void rangesAreSortedAndCoalesced() {
+        assertArrayEquals(new long[] {0, 199, 500, 599},
+            bounds(SpaByteRanges.parse("bytes=500-599, 100-199, 0-99", 1000)));
+        assertArrayEquals(new long[] {0, 299}, bounds(SpaByteRanges.parse("bytes=0-150,100-299", 1000)));
+    }
+
+    @Test
+    public void unsatisfiableRangesGiveEmptyList() {
+        assertTrue(SpaByteRanges.parse("bytes=1000-", 1000).isEmpty());
+        assertTrue(SpaByteRanges.parse("bytes=-0", 1000).isEmpty());
+        assertTrue(SpaByteRanges.parse("bytes=-10", 0).isEmpty());
+        assertEquals("bytes */1000", SpaByteRanges.getUnsatisfiedContentRange(1000));
+    }
+
+    @Test
+    public void invalidHeadersAreIgnored() {
+        assertNull(SpaByteRanges.parse(null, 1000));
+        assertNull(SpaByteRanges.parse("items=0-1", 1000));
+        assertNull(SpaByteRanges.parse("bytes=5-1", 1000));
+        assertNull(SpaByteRanges.parse("bytes=a-b", 1000));
+        assertNull(SpaByteRanges.parse("bytes=10", 1000));
+        StringBuilder many = new StringBuilder("bytes=0-0");
+        for (int i = 1; i <= 16; i++) {
+            many.append(",").append(i * 10).append("-").append(i * 10);
+        }
+        assertNull(SpaByteRanges.parse(many.toString(), 1000));
+    }
+
+    @Test
+    public void contentRangeHeader() {
+        SpaByteRanges.Range range = SpaByteRanges.parse("bytes=10-19", 1000).get(0);
+
+        assertEquals(10, range.getLength());
+        assertEquals("bytes 10-19/1000", range.getContentRange(1000));
+    }
+
+    @Test
+    public void ifRangeNeedsStrongMatch() {
+        SpaResourceCache cache = new SpaResourceCache(null, 1024, 1024, false);
+        SpaResourceCache.Entry entry = cache.createEntry("application/octet-stream", new byte[] {1, 2, 3, 4}, 1700000000000L);
+        String etag = entry.getETag(null);
+
+        assertTrue(entry.isRangeCurrent(null, null, -1));
+        assertTrue(entry.isRangeCurrent(null, etag, -1));
+        assertFalse(entry.isRangeCurrent(null, "W/" + etag, -1));
+        assertFalse(entry.isRangeCurrent(null, "\"other\"", -1));
+        assertTrue(entry.isRangeCurrent(null, "Tue, 14 Nov 2023 22:13:20 GMT", 1700000000000L));
+        assertFalse(entry.isRangeCurrent(null, "Tue, 14 Nov 2023 22:13:21 GMT", 1700000001000L));
+    }
+
+    @Test
+    public void entryWritesRange() throws IOException {
+        SpaResourceCache cache = new SpaResourceCache(null, 1024, 1024, false);
+        SpaResourceCache.Entry entry = cache.createEntry("application/octet-stream", new byte[] {1, 2, 3, 4, 5}, -1);
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+        entry.writeTo(null, 1, 3, output);
+
+        assertArrayEquals(new byte[] {2, 3, 4}, output.toByteArray());
+    }
+}
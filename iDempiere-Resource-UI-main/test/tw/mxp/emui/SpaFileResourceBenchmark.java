@@ -0,0 +1,114 @@
+package tw.mxp.emui;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import javax.servlet.ServletContext;
+
+/**
+ * Micro benchmark of serving a large SPA file.
+ *
+ * <p>Compares reading the file into the heap for each request, as the servlet did for
+ * files above the cache limit, with {@link SpaFileResource#writeTo}. The response is a
+ * stream that discards the bytes, so only the copy is measured. Run with the servlet API
+ * on the class path:</p>
+ *
+ * <pre>java tw.mxp.emui.SpaFileResourceBenchmark [megabytes] [requests]</pre>
+ */
+public class SpaFileResourceBenchmark {
+
+    private static final int WARMUP = 20;
+
+    public static void main(String[] args) throws IOException {
+        int megabytes = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int requests = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+
+        Path dir = Files.createTempDirectory("spa-benchmark");
+        Path file = dir.resolve("vendor.js");
+        byte[] content = new byte[megabytes * 1024 * 1024];
+        new Random(1).nextBytes(content);
+        Files.write(file, content);
+        content = null;
+
+        try {
+            SpaFileResource resource = SpaFileResource.resolve(context(dir), "/vendor.js", 0);
+            long length = resource.getLength(null);
+            NullOutputStream output = new NullOutputStream();
+            for (int i = 0; i < WARMUP; i++) {
+                readIntoHeap(file, output);
+                resource.writeTo(null, 0, length, output);
+            }
+
+            long heapBytes = allocatedBytes();
+            long start = System.nanoTime();
+            for (int i = 0; i < requests; i++) {
+                readIntoHeap(file, output);
+            }
+            long heapNanos = (System.nanoTime() - start) / requests;
+            heapBytes = (allocatedBytes() - heapBytes) / requests;
+
+            long transferBytes = allocatedBytes();
+            start = System.nanoTime();
+            for (int i = 0; i < requests; i++) {
+                resource.writeTo(null, 0, length, output);
+            }
+            long transferNanos = (System.nanoTime() - start) / requests;
+            transferBytes = (allocatedBytes() - transferBytes) / requests;
+
+            System.out.println("File     : " + length + " bytes, " + requests + " requests");
+            System.out.println("Heap     : " + (heapNanos / 1000) + " us/request, " + (heapBytes / 1024) + " KiB allocated/request");
+            System.out.println("Transfer : " + (transferNanos / 1000) + " us/request, " + (transferBytes / 1024) + " KiB allocated/request");
+            System.out.println("Written  : " + output.count + " bytes");
+        } finally {
+            Files.deleteIfExists(file);
+            Files.deleteIfExists(dir);
+        }
+    }
+
+    /** The copy of the servlet before the file resource */
+    private static void readIntoHeap(Path file, OutputStream output) throws IOException {
+        try (InputStream input = Files.newInputStream(file)) {
+            byte[] data = input.readAllBytes();
+            output.write(data);
+        }
+    }
+
+    private static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+            .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /** Servlet context of an exploded deployment in dir */
+    private static ServletContext context(Path dir) {
+        return (ServletContext) Proxy.newProxyInstance(SpaFileResourceBenchmark.class.getClassLoader(),
+            new Class<?>[] { ServletContext.class }, (proxy, method, args) -> {
+                switch (method.getName()) {
+                    case "getRealPath":
+                        return dir.resolve(((String) args[0]).substring(1)).toString();
+                    case "getMimeType":
+                        return "text/javascript";
+                    default:
+                        throw new UnsupportedOperationException(method.getName());
+                }
+            });
+    }
+
+    private static final class NullOutputStream extends OutputStream {
+        private long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package tw.mxp.emui;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests of the validators of cached entries: ETag, If-None-Match and If-Modified-Since.
+ */
+public class SpaResourceCacheTest {
+
+    private static final long LAST_MODIFIED = 1700000000000L;
+
+    private final SpaResourceCache cache = new SpaResourceCache(null, 1024 * 1024, 1024 * 1024, false);
+
+    private SpaResourceCache.Entry entry(String content) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            text.append(content);
+        }
+        return cache.createEntry("text/javascript", text.toString().getBytes(StandardCharsets.UTF_8), LAST_MODIFIED);
+    }
+
+    @Test
+    public void etagDependsOnContentAndEncoding() {
+        SpaResourceCache.Entry entry = entry("console.log('a');");
+        String etag = entry.getETag(null);
+
+        assertTrue(etag.startsWith("\"") && etag.endsWith("\""));
+        assertEquals(etag, entry("console.log('a');").getETag(null));
+        assertFalse(etag.equals(entry("console.log('b');").getETag(null)));
+        assertEquals(etag.substring(0, etag.length() - 1) + "-gzip\"", entry.getETag(SpaResource.ENCODING_GZIP));
+    }
+
+    @Test
+    public void ifNoneMatchComparesWeakly() {
+        SpaResourceCache.Entry entry = entry("console.log('a');");
+        String etag = entry.getETag(null);
+
+        assertTrue(entry.isNotModified(null, etag, -1));
+        assertTrue(entry.isNotModified(null, "\"other\", " + etag, -1));
+        assertTrue(entry.isNotModified(null, "W/" + etag, -1));
+        assertTrue(entry.isNotModified(null, "*", -1));
+        assertFalse(entry.isNotModified(null, "\"other\"", -1));
+        // The tag of another encoding is another representation
+        assertFalse(entry.isNotModified(SpaResource.ENCODING_GZIP, etag, -1));
+    }
+
+    @Test
+    public void ifNoneMatchTakesPrecedenceOverIfModifiedSince() {
+        SpaResourceCache.Entry entry = entry("console.log('a');");
+
+        assertTrue(entry.isNotModified(null, null, LAST_MODIFIED));
+        assertTrue(entry.isNotModified(null, null, LAST_MODIFIED + 1000));
+        assertFalse(entry.isNotModified(null, null, LAST_MODIFIED - 1000));
+        assertFalse(entry.isNotModified(null, null, -1));
+        assertFalse(entry.isNotModified(null, "\"other\"", LAST_MODIFIED));
+    }
+
+    @Test
+    public void unknownModificationTimeIsNeverCurrent() {
+        SpaResourceCache.Entry entry = cache.createEntry("text/plain", new byte[] {1, 2, 3}, -1);
+
+        assertFalse(entry.isNotModified(null, null, LAST_MODIFIED));
+    }
+
+    @Test
+    public void encodingFollowsAcceptEncoding() {
+        SpaResourceCache.Entry entry = entry("console.log('a');");
+
+        assertNotNull(entry.selectEncoding("gzip, deflate"));
+        assertEquals(SpaResource.ENCODING_GZIP, entry.selectEncoding("br;q=1, GZIP;q=0.5"));
+        assertNull(entry.selectEncoding("gzip;q=0"));
+        assertNull(entry.selectEncoding(null));
+        assertTrue(entry.getLength(SpaResource.ENCODING_GZIP) < entry.getLength(null));
+    }
+}
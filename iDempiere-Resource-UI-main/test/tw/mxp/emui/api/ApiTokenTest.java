@@ -0,0 +1,106 @@
+package tw.mxp.emui.api;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import javax.servlet.http.HttpServletResponse;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests of the verification of REST tokens.
+ */
+public class ApiTokenTest {
+
+    private static final String SECRET = "test-secret-of-the-rest-plugin";
+    private static final long NOW = 1700000000000L;
+    private static final String CLAIMS = "\"AD_Client_ID\":11,\"AD_Org_ID\":11,\"AD_Role_ID\":102,\"AD_User_ID\":101,\"AD_Session_ID\":1000001";
+
+    private static String encode(String json) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String token(String alg, String claims, String secret) throws Exception {
+        String content = encode("{\"alg\":\"" + alg + "\",\"typ\":\"JWT\"}") + "." + encode("{" + claims + "}");
+        String algorithm = "HS512".equals(alg) ? "HmacSHA512" : "HmacSHA256";
+        Mac mac = Mac.getInstance(algorithm);
+        mac.init(new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), algorithm));
+        byte[] signature = mac.doFinal(content.getBytes(StandardCharsets.US_ASCII));
+        return "Bearer " + content + "." + Base64.getUrlEncoder().withoutPadding().encodeToString(signature);
+    }
+
+    private static String claims(String more) {
+        return CLAIMS + ",\"iss\":\"idempiere.org\",\"exp\":" + (NOW / 1000 + 3600) + more;
+    }
+
+    private static int status(String authorization, String issuer) {
+        return assertThrows(ApiException.class, () -> ApiToken.verify(authorization, SECRET, issuer, NOW)).getStatus();
+    }
+
+    @Test
+    public void validTokenGivesLogin() throws Exception {
+        ApiToken token = ApiToken.verify(token("HS256", claims(""), SECRET), SECRET, ApiToken.DEFAULT_ISSUER, NOW);
+
+        assertEquals(11, token.getClientId());
+        assertEquals(102, token.getRoleId());
+        assertEquals(101, token.getUserId());
+        assertEquals(1000001, token.getSessionId());
+        assertEquals(101, ApiToken.verify(token("HS512", claims(""), SECRET), SECRET, null, NOW).getUserId());
+    }
+
+    @Test
+    public void signatureMustMatch() throws Exception {
+        assertEquals(HttpServletResponse.SC_UNAUTHORIZED, status(token("HS256", claims(""), "other-secret"), null));
+
+        String token = token("HS256", claims(""), SECRET);
+        String tampered = token.replace(encode("{" + claims("") + "}"), encode("{" + claims("").replace(":101", ":100") + "}"));
+        assertEquals(HttpServletResponse.SC_UNAUTHORIZED, status(tampered, null));
+    }
+
+    @Test
+    public void unsignedAndMalformedTokensAreRejected() throws Exception {
+        String unsigned = "Bearer " + encode("{\"alg\":\"none\"}") + "." + encode("{" + claims("") + "}") + ".";
+
+        assertEquals(HttpServletResponse.SC_UNAUTHORIZED, status(unsigned, null));
+        assertEquals(HttpServletResponse.SC_UNAUTHORIZED, status(null, null));
+        assertEquals(HttpServletResponse.SC_UNAUTHORIZED, status("Basic dXNlcjpwYXNz", null));
+        assertEquals(HttpServletResponse.SC_UNAUTHORIZED, status("Bearer a.b", null));
+    }
+
+    @Test
+    public void validityPeriodIsChecked() throws Exception {
+        String expired = CLAIMS + ",\"iss\":\"idempiere.org\",\"exp\":" + (NOW / 1000 - 1);
+        String noExpiry = CLAIMS + ",\"iss\":\"idempiere.org\"";
+
+        assertEquals(HttpServletResponse.SC_UNAUTHORIZED, status(token("HS256", expired, SECRET), null));
+        assertEquals(HttpServletResponse.SC_UNAUTHORIZED, status(token("HS256", noExpiry, SECRET), null));
+        assertEquals(HttpServletResponse.SC_UNAUTHORIZED, status(token("HS256", claims(",\"nbf\":" + (NOW / 1000 + 60)), SECRET), null));
+    }
+
+    @Test
+    public void issuerMustMatch() throws Exception {
+        String otherIssuer = claims("").replace("idempiere.org", "example.com");
+
+        assertEquals(HttpServletResponse.SC_UNAUTHORIZED, status(token("HS256", otherIssuer, SECRET), ApiToken.DEFAULT_ISSUER));
+        assertEquals(HttpServletResponse.SC_UNAUTHORIZED,
+            status(token("HS256", CLAIMS + ",\"exp\":" + (NOW / 1000 + 60), SECRET), ApiToken.DEFAULT_ISSUER));
+    }
+
+    @Test
+    public void tokenWithoutRoleIsForbidden() throws Exception {
+        String noRole = "\"AD_Client_ID\":11,\"AD_User_ID\":101,\"iss\":\"idempiere.org\",\"exp\":" + (NOW / 1000 + 60);
+
+        assertEquals(HttpServletResponse.SC_FORBIDDEN, status(token("HS256", noRole, SECRET), null));
+    }
+
+    @Test
+    public void tokenWithoutSessionIsRejected() throws Exception {
+        String noSession = claims("").replace(",\"AD_Session_ID\":1000001", "");
+
+        assertEquals(HttpServletResponse.SC_UNAUTHORIZED, status(token("HS256", noSession, SECRET), null));
+    }
+}
@@ -0,0 +1,83 @@
+package tw.mxp.emui.api;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests of the attachment names and thumbnail sizes.
+ */
+public class AttachmentWriterTest {
+
+    private static void assertInvalid(String name) {
+        ApiException e = assertThrows(ApiException.class, () -> AttachmentWriter.checkName(name));
+        assertEquals(HttpServletResponse.SC_BAD_REQUEST, e.getStatus(), name);
+    }
+
+    @Test
+    public void validNameIsTrimmed() {
+        assertEquals("photo 1.jpg", AttachmentWriter.checkName("  photo 1.jpg "));
+        assertEquals("a.b.c", AttachmentWriter.checkName("a.b.c"));
+        assertEquals("x".repeat(255), AttachmentWriter.checkName("x".repeat(255)));
+    }
+
+    @Test
+    public void emptyNameIsRejected() {
+        assertInvalid(null);
+        assertInvalid("");
+        assertInvalid("   ");
+    }
+
+    @Test
+    public void pathIsRejected() {
+        assertInvalid("../a.jpg");
+        assertInvalid("dir/a.jpg");
+        assertInvalid("dir\\a.jpg");
+        assertInvalid("C:a.jpg");
+    }
+
+    @Test
+    public void hiddenNameIsRejected() {
+        assertInvalid(".htaccess");
+        assertInvalid(".");
+    }
+
+    @Test
+    public void thumbnailPrefixIsRejected() {
+        assertInvalid("thumb_a.jpg");
+        assertInvalid("THUMB_a.jpg");
+        assertInvalid(" Thumb_a.jpg");
+    }
+
+    @Test
+    public void controlAndReservedCharactersAreRejected() {
+        assertInvalid("a\nb.jpg");
+        assertInvalid("a\u0000.jpg");
+        assertInvalid("a?.jpg");
+        assertInvalid("a*.jpg");
+        assertInvalid("a|b.jpg");
+        assertInvalid("\"a\".jpg");
+    }
+
+    @Test
+    public void longNameIsRejected() {
+        assertInvalid("x".repeat(256));
+    }
+
+    @Test
+    public void thumbnailNameKeepsExtension() {
+        assertEquals("thumb_a.png.jpg", AttachmentWriter.getThumbnailName("a.png"));
+        assertEquals("thumb_a.jpg.jpg", AttachmentWriter.getThumbnailName("a.jpg"));
+    }
+
+    @Test
+    public void subsamplingKeepsTwiceTheThumbnailSize() {
+        assertEquals(1, AttachmentWriter.getSubsampling(320, 200, 320));
+        assertEquals(1, AttachmentWriter.getSubsampling(1279, 800, 320));
+        assertEquals(2, AttachmentWriter.getSubsampling(1280, 800, 320));
+        assertEquals(6, AttachmentWriter.getSubsampling(3000, 4000, 320));
+    }
+}
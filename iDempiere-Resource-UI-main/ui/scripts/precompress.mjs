@@ -0,0 +1,57 @@
+// Precompress the built SPA: writes .br (brotli 11) and .gz (gzip 9) siblings of every text asset,
+// so SpaServlet serves them by Accept-Encoding without compressing at runtime.
+// Usage: node scripts/precompress.mjs [web-content dir]
+import { readdirSync, readFileSync, rmSync, statSync, writeFileSync } from 'node:fs'
+import { extname, join, relative, resolve } from 'node:path'
+import { brotliCompressSync, constants, gzipSync } from 'node:zlib'
+
+const TEXT_EXTENSIONS = new Set(['.html', '.js', '.mjs', '.css', '.json', '.svg', '.txt', '.xml', '.webmanifest'])
+// Smaller files fit into one packet; the servlet would also drop variants that are not smaller
+const MIN_BYTES = 1024
+
+const root = resolve(process.argv[2] ?? '../web-content')
+
+function listFiles(dir) {
+  return readdirSync(dir, { withFileTypes: true }).flatMap((entry) => {
+    const path = join(dir, entry.name)
+    return entry.isDirectory() ? listFiles(path) : [path]
+  })
+}
+
+// Writes a variant only if it is smaller, and removes a stale one otherwise
+function writeVariant(path, raw, compressed) {
+  if (compressed.length < raw.length) {
+    writeFileSync(path, compressed)
+    return compressed.length
+  }
+  rmSync(path, { force: true })
+  return 0
+}
+
+let files = 0
+let rawBytes = 0
+let brBytes = 0
+let gzBytes = 0
+
+for (const file of listFiles(root)) {
+  if (!TEXT_EXTENSIONS.has(extname(file)) || statSync(file).size < MIN_BYTES)
+    continue
+
+  const raw = readFileSync(file)
+  const br = brotliCompressSync(raw, {
+    params: {
+      [constants.BROTLI_PARAM_QUALITY]: constants.BROTLI_MAX_QUALITY,
+      [constants.BROTLI_PARAM_MODE]: constants.BROTLI_MODE_TEXT,
+      [constants.BROTLI_PARAM_SIZE_HINT]: raw.length,
+    },
+  })
+  const gz = gzipSync(raw, { level: constants.Z_BEST_COMPRESSION })
+
+  files++
+  rawBytes += raw.length
+  brBytes += writeVariant(`${file}.br`, raw, br)
+  gzBytes += writeVariant(`${file}.gz`, raw, gz)
+  console.log(`  ${relative(root, file)}: ${raw.length} -> br ${br.length}, gz ${gz.length}`)
+}
+
+console.log(`Precompressed ${files} files in ${root}: ${rawBytes} bytes -> br ${brBytes}, gz ${gzBytes}`)
@@ -18,6 +18,14 @@ export async function setLoginParameters(params: AuthParameters, token: string):
   })
 }
 
+// Ends the login session of the token, so the servlets of this bundle reject it
+export async function logout(token: string): Promise<void> {
+  await apiFetch<unknown>(`${API_V1}/auth/logout`, {
+    method: 'POST',
+    json: { token },
+  })
+}
+
 export async function getRoles(clientId: number, token: string): Promise<NamedId[]> {
   const res = await apiFetch<{ roles: NamedId[] }>(`${API_V1}/auth/roles`, { token, searchParams: { client: clientId } })
   return res.roles ?? []
@@ -1,5 +1,5 @@
-import ky from "ky";
-import { apiFetch } from "../../shared/api/http";
+import ky, { HTTPError } from "ky";
+import { apiFetch, EMUI_API } from "../../shared/api/http";
 import { GoogleGenerativeAI } from "@google/generative-ai";
 
 const API_V1 = "/api/v1";
@@ -133,43 +133,93 @@ export async function getLatestMomRecordId(
 }
 
 /**
- * Upload a PDF as an attachment to a Mom record.
- * Uses the Postman-verified pattern: POST to the /attachments sub-resource with a JSON body.
+ * Thumbnails are created by the server for uploaded photos, named thumb_<name>.jpg
+ * with the extension kept, e.g. thumb_a.png.jpg.
  */
-export async function uploadMomAttachment(
+export const THUMBNAIL_PREFIX = "thumb_";
+
+export function getMomThumbnailName(filename: string): string {
+  return `${THUMBNAIL_PREFIX}${filename}.jpg`;
+}
+
+interface UploadState {
+  id: string;
+  offset: number;
+  size: number;
+  complete: boolean;
+  chunkSize?: number;
+}
+
+const UPLOAD_MAX_RETRIES = 5;
+
+/**
+ * Upload a file as an attachment in chunks (tw.mxp.emui UploadServlet).
+ * The bytes are sent as they are, without base64. When a chunk fails, e.g. on unstable
+ * Wi-Fi, the upload waits, asks the server for the received offset and continues from there.
+ */
+async function uploadAttachment(
   token: string,
+  tableName: string,
   recordId: number,
   blob: Blob,
   filename: string,
 ): Promise<void> {
-  // 1. Convert Blob to Base64
-  const reader = new FileReader();
-  const base64Promise = new Promise<string>((resolve, reject) => {
-    reader.onload = () => {
-      const result = reader.result as string;
-      // Remove the data URL prefix (e.g., "data:application/pdf;base64,")
-      const base64 = result.split(",")[1];
-      resolve(base64);
-    };
-    reader.onerror = reject;
-    reader.readAsDataURL(blob);
+  const session = await apiFetch<UploadState>(`${EMUI_API}/uploads`, {
+    method: "POST",
+    token,
+    json: { table: tableName, recordId, name: filename, size: blob.size },
   });
+  const url = `${EMUI_API}/uploads/${session.id}`;
+  const chunkSize = session.chunkSize || 256 * 1024;
+  let offset = session.offset;
+  let failures = 0;
 
-  const base64Data = await base64Promise;
-
-  // 2. Perform POST request to the record's attachments sub-resource
-  // Pattern: /api/v1/models/{tableName}/{recordId}/attachments
-  const url = `${API_V1}/models/Z_momSystem/${recordId}/attachments`;
+  while (offset < blob.size) {
+    const end = Math.min(offset + chunkSize, blob.size);
+    try {
+      const state = await ky
+        .put(url, {
+          headers: {
+            Authorization: `Bearer ${token}`,
+            "Content-Range": `bytes ${offset}-${end - 1}/${blob.size}`,
+            "Content-Type": "application/octet-stream",
+          },
+          body: blob.slice(offset, end),
+          retry: 0,
+        })
+        .json<UploadState>();
+      offset = state.offset;
+      failures = 0;
+    } catch (error) {
+      // Only network errors and offset conflicts can be resumed
+      const status = error instanceof HTTPError ? error.response.status : 0;
+      if ((status !== 0 && status !== 409 && status < 500) || ++failures > UPLOAD_MAX_RETRIES) {
+        throw error;
+      }
+      await new Promise((resolve) => setTimeout(resolve, 1000 * 2 ** (failures - 1)));
+      try {
+        const state = await ky
+          .get(url, { headers: { Authorization: `Bearer ${token}` }, retry: 0 })
+          .json<UploadState>();
+        if (state.complete) return;
+        offset = state.offset;
+      } catch {
+        // Still offline; the next attempt asks again
+      }
+    }
+  }
+}
 
-  await ky.post(url, {
-    headers: {
-      Authorization: `Bearer ${token}`,
-    },
-    json: {
-      name: filename,
-      data: base64Data,
-    },
-  });
+/**
+ * Upload a PDF as an attachment to a Mom record.
+ */
+export async function uploadMomAttachment(
+  token: string,
+  recordId: number,
+  blob: Blob,
+  filename: string,
+): Promise<void> {
+  await uploadAttachment(token, "Z_momSystem", recordId, blob, filename);
 }
 
 /**
@@ -284,7 +334,7 @@ async function compressImage(
 
 /**
  * Upload a photo attachment to a Mom record.
- * Uses same pattern as PDF upload, but with image compression.
+ * The photo is compressed in the browser, as it is sent over the shop-floor network.
  */
 export async function uploadMomPhoto(
   token: string,
@@ -294,21 +344,7 @@ export async function uploadMomPhoto(
   // 1. Compress Image
   const compressedBlob = await compressImage(file);
 
-  // 2. Convert Blob to Base64
-  const reader = new FileReader();
-  const base64Promise = new Promise<string>((resolve, reject) => {
-    reader.onload = () => {
-      const result = reader.result as string;
-      const base64 = result.split(",")[1];
-      resolve(base64);
-    };
-    reader.onerror = reject;
-    reader.readAsDataURL(compressedBlob);
-  });
-
-  const base64Data = await base64Promise;
-
-  // 3. Generate filename with timestamp
+  // 2. Generate filename with timestamp
   const ext = "jpg"; // Always jpeg after compression
   const now = new Date();
   const timestamp =
@@ -320,15 +356,8 @@ export async function uploadMomPhoto(
     now.getSeconds().toString().padStart(2, "0");
   const filename = `Photo_${timestamp}.${ext}`;
 
-  // 4. Upload
-  const url = `${API_V1}/models/Z_momSystem/${recordId}/attachments`;
-  await ky.post(url, {
-    headers: { Authorization: `Bearer ${token}` },
-    json: {
-      name: filename,
-      data: base64Data,
-    },
-  });
+  // 3. Upload the JPEG bytes; the server creates the thumbnail
+  await uploadAttachment(token, "Z_momSystem", recordId, compressedBlob, filename);
 }
 
 /**
@@ -1,4 +1,4 @@
-import { apiFetch } from '../../shared/api/http'
+import { apiFetch, EMUI_API } from '../../shared/api/http'
 
 const API_V1 = '/api/v1'
 
@@ -756,50 +756,41 @@ export async function getRequestsByCustomer(token: string, bPartnerId: number):
   return result.records
 }
 
+export interface RequestStatistics {
+  name: string | null
+  total: number
+  byType: Map<number, number>
+  byStatus: Map<number, number>
+}
+
+function toCountMap(counts: Record<string, number> | undefined): Map<number, number> {
+  return new Map(Object.entries(counts ?? {}).map(([id, count]): [number, number] => [Number(id), Number(count)]))
+}
+
 /**
  * 統計所有員工的諮詢單數量
+ * 由伺服器端 GROUP BY 彙總（含業務員名稱），依登入角色的權限過濾
  */
 export async function getRequestStatistics(
   token: string,
-): Promise<Map<number, { total: number, byType: Map<number, number>, byStatus: Map<number, number> }>> {
+): Promise<Map<number, RequestStatistics>> {
   try {
-    const res = await apiFetch<{ records: any[] }>(
-      `${API_V1}/models/R_Request`,
-      {
-        token,
-        searchParams: {
-          $select: 'R_Request_ID,SalesRep_ID,R_RequestType_ID,R_Status_ID',
-        } satisfies SearchParams,
-      },
+    const res = await apiFetch<{
+      salesReps: { id: number, name: string | null, total: number, byType: Record<string, number>, byStatus: Record<string, number> }[]
+    }>(
+      `${EMUI_API}/statistics/requests`,
+      { token },
     )
 
-    const stats = new Map<number, { total: number, byType: Map<number, number>, byStatus: Map<number, number> }>()
-
-    for (const r of res.records ?? []) {
-      const salesRepId = r.SalesRep_ID?.id ? Number(r.SalesRep_ID.id) : 0
-      const requestTypeId = r.R_RequestType_ID?.id ? Number(r.R_RequestType_ID.id) : 0
-      const requestStatusId = r.R_Status_ID?.id ? Number(r.R_Status_ID.id) : 0
-
-      if (!stats.has(salesRepId)) {
-        stats.set(salesRepId, {
-          total: 0,
-          byType: new Map(),
-          byStatus: new Map(),
-        })
-      }
-
-      const stat = stats.get(salesRepId)!
-      stat.total++
-
-      if (requestTypeId > 0) {
-        stat.byType.set(requestTypeId, (stat.byType.get(requestTypeId) || 0) + 1)
-      }
-
-      if (requestStatusId > 0) {
-        stat.byStatus.set(requestStatusId, (stat.byStatus.get(requestStatusId) || 0) + 1)
-      }
+    const stats = new Map<number, RequestStatistics>()
+    for (const r of res.salesReps ?? []) {
+      stats.set(Number(r.id), {
+        name: r.name ?? null,
+        total: Number(r.total) || 0,
+        byType: toCountMap(r.byType),
+        byStatus: toCountMap(r.byStatus),
+      })
     }
-
     return stats
   }
   catch (error) {
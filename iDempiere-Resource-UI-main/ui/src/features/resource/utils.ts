@@ -2,7 +2,9 @@
  * Resource 相關工具函數
  */
 
+import { useAuth } from '../../features/auth/store'
 import { apiFetch } from '../../shared/api/http'
+import { getBootstrapSysConfig, setBootstrapSysConfig } from '../../shared/bootstrap'
 
 const API_V1 = '/api/v1'
 
@@ -12,6 +14,21 @@ const API_V1 = '/api/v1'
 export async function getSysConfig(
   token: string,
   configName: string,
+): Promise<{ id: number, value: string } | null> {
+  // Rendered into index.html: no round trip
+  const bootstrapped = getBootstrapSysConfig(configName, useAuth().clientId.value)
+  if (bootstrapped !== undefined)
+    return bootstrapped
+
+  return fetchSysConfig(token, configName)
+}
+
+/**
+ * 從 REST 讀取 SysConfig（不使用 index.html 的 bootstrap 資料）
+ */
+async function fetchSysConfig(
+  token: string,
+  configName: string,
 ): Promise<{ id: number, value: string } | null> {
   try {
     const res = await apiFetch<{ records: any[] }>(
@@ -44,7 +61,8 @@ export async function setSysConfig(
   configLevel: 'S' | 'C' | 'O' = 'S',
 ): Promise<boolean> {
   try {
-    const existing = await getSysConfig(token, configName)
+    // The bootstrap block is a snapshot of the page; the record may have been created since
+    const existing = await fetchSysConfig(token, configName)
 
     if (existing) {
       // 更新現有配置
@@ -62,6 +80,7 @@ export async function setSysConfig(
         throw new Error(`PUT failed: ${response.status} ${errText}`)
       }
 
+      setBootstrapSysConfig(configName, useAuth().clientId.value, { id: existing.id, value })
       return true
     }
     else {
@@ -87,6 +106,9 @@ export async function setSysConfig(
         throw new Error(`POST failed: ${response.status} ${errText}`)
       }
 
+      const created = await response.json().catch(() => null) as { id?: number } | null
+      if (created?.id)
+        setBootstrapSysConfig(configName, useAuth().clientId.value, { id: created.id, value })
       return true
     }
   }
@@ -108,6 +130,17 @@ export async function batchGetSysConfig(
   if (configNames.length === 0)
     return configMap
 
+  // Rendered into index.html: no round trip when every name can be answered
+  const clientId = useAuth().clientId.value
+  const bootstrapped = configNames.map(name => [name, getBootstrapSysConfig(name, clientId)] as const)
+  if (bootstrapped.every(([, config]) => config !== undefined)) {
+    for (const [name, config] of bootstrapped) {
+      if (config?.value)
+        configMap.set(name, config.value)
+    }
+    return configMap
+  }
+
   try {
     const filter = configNames.map(name => `Name eq '${name}'`).join(' or ')
     const res = await apiFetch<{ records: any[] }>(
@@ -8,6 +8,9 @@ export interface ApiError {
   isTokenExpired?: boolean
 }
 
+// Servlets of the tw.mxp.emui bundle itself (/emui/api), authenticated with the same REST token
+export const EMUI_API = `${import.meta.env.BASE_URL}api`
+
 // Callback for token expiration - set by app initialization
 let onTokenExpired: (() => void) | null = null
 
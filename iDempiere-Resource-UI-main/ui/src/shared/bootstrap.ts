@@ -0,0 +1,87 @@
+/**
+ * Bootstrap data rendered into index.html by SpaServlet (SpaBootstrap)
+ *
+ * index.html carries the values of an explicit list of global AD_SysConfig names
+ * (bootstrapNames) for each client, so reading them at startup needs no REST round trip.
+ * Only listed names are answered, and only when the block holds both the system section
+ * and the section of the login client; otherwise the caller falls back to REST.
+ * Per-record values (e.g. EMUI_RESOURCE_ASSIGNMENT_COLOR_<id>) are never in the block.
+ */
+
+export interface BootstrapSysConfig {
+  id: number
+  value: string
+}
+
+interface Bootstrap {
+  names: string[]
+  sysConfig: Record<string, Record<string, BootstrapSysConfig>>
+}
+
+const SYSTEM_CLIENT_ID = '0'
+
+let bootstrap: Bootstrap | null | undefined
+
+function readBootstrap(): Bootstrap | null {
+  if (bootstrap !== undefined)
+    return bootstrap
+
+  bootstrap = null
+  const element = typeof document !== 'undefined' ? document.getElementById('emui-bootstrap') : null
+  if (element?.textContent) {
+    try {
+      bootstrap = JSON.parse(element.textContent) as Bootstrap
+    }
+    catch (error) {
+      console.error('Failed to parse bootstrap data:', error)
+    }
+  }
+  return bootstrap
+}
+
+function getSections(name: string, clientId: number | string | null): Record<string, BootstrapSysConfig>[] | null {
+  const data = readBootstrap()
+  if (!data || clientId == null || !data.names?.includes(name))
+    return null
+
+  const system = data.sysConfig[SYSTEM_CLIENT_ID]
+  const client = data.sysConfig[String(clientId)]
+  if (!system || !client)
+    return null
+  // Client value overrides the system value
+  return client === system ? [system] : [client, system]
+}
+
+/**
+ * Get a SysConfig value from the bootstrap data
+ * @returns the value, null if the name does not exist, or undefined if the bootstrap data cannot answer
+ */
+export function getBootstrapSysConfig(name: string, clientId: number | string | null): BootstrapSysConfig | null | undefined {
+  const sections = getSections(name, clientId)
+  if (!sections)
+    return undefined
+
+  for (const section of sections) {
+    if (section[name])
+      return section[name]
+  }
+  return null
+}
+
+/**
+ * Update a value after it was saved, so later reads of this page see it
+ */
+export function setBootstrapSysConfig(name: string, clientId: number | string | null, value: BootstrapSysConfig) {
+  const sections = getSections(name, clientId)
+  if (!sections)
+    return
+
+  for (const section of sections) {
+    if (section[name]) {
+      section[name] = value
+      return
+    }
+  }
+  // New records are created in the login client
+  sections[0][name] = value
+}
@@ -10,6 +10,10 @@ export default defineConfig(({ mode }) => {
     plugins: [vue()],
     server: {
       proxy: {
+        '/emui/api': {
+          target: `http://${apiIP}:8080`,
+          changeOrigin: true,
+        },
         '/api': {
           target: `http://${apiIP}:8080`,
           changeOrigin: true,
@@ -0,0 +1,493 @@
+/******************************************************************************
+ * Product: JPiere                                                            *
+ * Copyright (C) Hideaki Hagiwara (h.hagiwara@oss-erp.co.jp)                  *
+ *                                                                            *
+ * This program is free software, you can redistribute it and/or modify it    *
+ * under the terms version 2 of the GNU General Public License as published   *
+ * by the Free Software Foundation. This program is distributed in the hope   *
+ * that it will be useful, but WITHOUT ANY WARRANTY.                          *
+ * See the GNU General Public License for more details.                       *
+ *                                                                            *
+ * JPiere is maintained by OSS ERP Solutions Co., Ltd.                        *
+ * (http://www.oss-erp.co.jp)                                                 *
+ *****************************************************************************/
+package jpiere.plugin.delete.model;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.logging.Level;
+
+import org.adempiere.exceptions.DBException;
+import org.compiere.util.CCache;
+import org.compiere.util.CLogger;
+import org.compiere.util.DB;
+import org.compiere.util.Trx;
+import org.compiere.util.TrxEventListener;
+
+/**
+ * 	Delete Profile Tree.
+ *
+ *  Immutable snapshot of a Delete Profile with all Custom Delete Profiles and Lines.
+ *  The tree is loaded in two queries and cached per JP_DeleteProfile_ID.
+ *  The cache is reset when the Delete Profile, a Custom Delete Profile or a Line is saved or deleted,
+ *  and again when the transaction of the change ends.
+ *
+ *  The tree is shared by all sessions, so it is always read outside of the transaction of the caller
+ *  and never holds uncommitted rows.
+ *
+ */
+public class DeleteProfileTree
+{
+	private static final CLogger log = CLogger.getCLogger(DeleteProfileTree.class);
+
+	/**	Cache	*/
+	private static CCache<Integer, DeleteProfileTree> s_cache = new CCache<Integer, DeleteProfileTree>(MDeleteProfile.Table_Name, "JP_DeleteProfileTree", 20);
+
+	/**	Index of the cached trees : JP_CustomDeleteProfile_ID -> JP_DeleteProfile_ID	*/
+	private static CCache<Integer, Integer> s_customProfileIndex = new CCache<Integer, Integer>(MCustomDeleteProfile.Table_Name, "JP_DeleteProfileTree_Custom", 100);
+
+	private final int JP_DeleteProfile_ID;
+	private final String value;
+	private final String name;
+	private final String name2;
+	private final String JP_Delete_Client;
+	private final String JP_AD_Org_ID_Where;
+	private final String JP_AD_Role_ID_Where;
+	private final String JP_AD_User_ID_Where;
+	private final String JP_C_BPartner_ID_Where;
+	private final String JP_M_Product_ID_Where;
+
+	/** All Custom Delete Profiles include inactive, ordered by SeqNo	*/
+	private final List<CustomProfile> allCustomProfiles;
+	/** Active Custom Delete Profiles, ordered by SeqNo	*/
+	private final List<CustomProfile> customProfiles;
+	/** All Custom Delete Profiles include inactive, by JP_CustomDeleteProfile_ID	*/
+	private final Map<Integer, CustomProfile> customProfilesByID;
+
+	/**
+	 * Custom Delete Profile of the tree
+	 */
+	public static class CustomProfile
+	{
+		public final int JP_CustomDeleteProfile_ID;
+		public final int JP_DeleteProfile_ID;
+		public final boolean isActive;
+		public final int seqNo;
+		public final int AD_Table_ID;
+		public final String tableName;
+		public final String accessLevel;
+		public final String whereClause;
+		public final String treat;
+		public final int value;
+		public final boolean isDeleteDataNotUse;
+		/** Active Lines, ordered by SeqNo	*/
+		public final List<Line> lines;
+
+		private CustomProfile(ResultSet rs, int JP_DeleteProfile_ID, List<Line> lines) throws SQLException
+		{
+			this.JP_CustomDeleteProfile_ID = rs.getInt("JP_CustomDeleteProfile_ID");
+			this.JP_DeleteProfile_ID = JP_DeleteProfile_ID;
+			this.isActive = "Y".equals(rs.getString("IsActive"));
+			this.seqNo = rs.getInt("SeqNo");
+			this.AD_Table_ID = rs.getInt("AD_Table_ID");
+			this.tableName = rs.getString("TableName");
+			this.accessLevel = rs.getString("AccessLevel");
+			this.whereClause = rs.getString("WhereClause");
+			this.treat = rs.getString("JP_TreatForeignKey");
+			this.value = rs.getInt("JP_ForeignKey_Value");
+			this.isDeleteDataNotUse = "Y".equals(rs.getString("IsDeleteDataNotUseJP"));
+			this.lines = Collections.unmodifiableList(lines);
+		}
+	}
+
+	/**
+	 * Custom Delete Profile Line of the tree
+	 */
+	public static class Line
+	{
+		public final int JP_CustomDeleteProfileLine_ID;
+		public final int JP_CustomDeleteProfile_ID;
+		public final int seqNo;
+		public final int AD_Table_ID;
+		public final String tableName;
+		public final int AD_Column_ID;
+		public final String columnName;
+		public final String treat;
+		public final int value;
+
+		private Line(ResultSet rs) throws SQLException
+		{
+			this.JP_CustomDeleteProfileLine_ID = rs.getInt("JP_CustomDeleteProfileLine_ID");
+			this.JP_CustomDeleteProfile_ID = rs.getInt("JP_CustomDeleteProfile_ID");
+			this.seqNo = rs.getInt("SeqNo");
+			this.AD_Table_ID = rs.getInt("AD_Table_ID");
+			this.tableName = rs.getString("TableName");
+			this.AD_Column_ID = rs.getInt("AD_Column_ID");
+			this.columnName = rs.getString("ColumnName");
+			this.treat = rs.getString("JP_TreatForeignKey");
+			this.value = rs.getInt("JP_ForeignKey_Value");
+		}
+	}
+
+	/**
+	 * Get Delete Profile Tree (cached)
+	 *
+	 * @param ctx
+	 * @param JP_DeleteProfile_ID
+	 * @param trxName not used; the tree is read outside of the transaction
+	 * @return Delete Profile Tree or null if not found
+	 */
+	public static DeleteProfileTree get(Properties ctx, int JP_DeleteProfile_ID, String trxName)
+	{
+		if(JP_DeleteProfile_ID <= 0)
+			return null;
+
+		Integer key = Integer.valueOf(JP_DeleteProfile_ID);
+		DeleteProfileTree tree = s_cache.get(key);
+		if(tree != null)
+			return tree;
+
+		tree = load(JP_DeleteProfile_ID, null);
+		if(tree != null)
+		{
+			s_cache.put(key, tree);
+			for(Integer JP_CustomDeleteProfile_ID : tree.customProfilesByID.keySet())
+				s_customProfileIndex.put(JP_CustomDeleteProfile_ID, key);
+		}
+
+		return tree;
+	}
+
+	/**
+	 * Get Custom Delete Profile of the tree (include inactive)
+	 *
+	 * @param ctx
+	 * @param JP_DeleteProfile_ID
+	 * @param JP_CustomDeleteProfile_ID
+	 * @param trxName not used; the tree is read outside of the transaction
+	 * @return Custom Delete Profile or null if not found
+	 */
+	public static CustomProfile getCustomProfile(Properties ctx, int JP_DeleteProfile_ID, int JP_CustomDeleteProfile_ID, String trxName)
+	{
+		DeleteProfileTree tree = get(ctx, JP_DeleteProfile_ID, trxName);
+		if(tree == null)
+			return null;
+
+		return tree.customProfilesByID.get(Integer.valueOf(JP_CustomDeleteProfile_ID));
+	}
+
+	/**
+	 * Get Custom Delete Profile of the tree (include inactive).
+	 * The index of the cached trees is looked up first, so the Delete Profile is queried only if not cached.
+	 *
+	 * @param ctx
+	 * @param JP_CustomDeleteProfile_ID
+	 * @param trxName not used; the tree is read outside of the transaction
+	 * @return Custom Delete Profile or null if not found
+	 */
+	public static CustomProfile getCustomProfile(Properties ctx, int JP_CustomDeleteProfile_ID, String trxName)
+	{
+		if(JP_CustomDeleteProfile_ID <= 0)
+			return null;
+
+		Integer JP_DeleteProfile_ID = s_customProfileIndex.get(Integer.valueOf(JP_CustomDeleteProfile_ID));
+		if(JP_DeleteProfile_ID != null)
+		{
+			CustomProfile customProfile = getCustomProfile(ctx, JP_DeleteProfile_ID.intValue(), JP_CustomDeleteProfile_ID, trxName);
+			if(customProfile != null)
+				return customProfile;
+		}
+
+		int id = DB.getSQLValueEx(null
+				, "SELECT JP_DeleteProfile_ID FROM JP_CustomDeleteProfile WHERE JP_CustomDeleteProfile_ID=?", JP_CustomDeleteProfile_ID);
+
+		return getCustomProfile(ctx, id, JP_CustomDeleteProfile_ID, trxName);
+	}
+
+	/**
+	 * Reset cache of the Delete Profile
+	 *
+	 * @param JP_DeleteProfile_ID
+	 */
+	public static void reset(int JP_DeleteProfile_ID)
+	{
+		Integer key = Integer.valueOf(JP_DeleteProfile_ID);
+		DeleteProfileTree tree = s_cache.remove(key);
+		if(tree != null)
+		{
+			for(Integer JP_CustomDeleteProfile_ID : tree.customProfilesByID.keySet())
+				s_customProfileIndex.remove(JP_CustomDeleteProfile_ID);
+		}
+	}
+
+	/**
+	 * Reset cache of the Delete Profile now and when the transaction ends.
+	 * A session that reads the tree before the commit caches the old rows, so the cache is reset again.
+	 *
+	 * @param JP_DeleteProfile_ID
+	 * @param trxName transaction of the change or null
+	 */
+	public static void reset(int JP_DeleteProfile_ID, String trxName)
+	{
+		reset(JP_DeleteProfile_ID);
+		resetAfterTrx(trxName, () -> reset(JP_DeleteProfile_ID));
+	}
+
+	/**
+	 * Reset cache of the Delete Profile that has the Custom Delete Profile
+	 *
+	 * @param JP_CustomDeleteProfile_ID
+	 */
+	public static void resetByCustomDeleteProfile(int JP_CustomDeleteProfile_ID)
+	{
+		Integer JP_DeleteProfile_ID = s_customProfileIndex.get(Integer.valueOf(JP_CustomDeleteProfile_ID));
+		if(JP_DeleteProfile_ID != null)
+		{
+			reset(JP_DeleteProfile_ID.intValue());
+			return;
+		}
+
+		//The index may have been reset apart from the trees
+		for(DeleteProfileTree tree : new ArrayList<DeleteProfileTree>(s_cache.values()))
+		{
+			if(tree.customProfilesByID.containsKey(Integer.valueOf(JP_CustomDeleteProfile_ID)))
+				reset(tree.JP_DeleteProfile_ID);
+		}
+	}
+
+	/**
+	 * Reset cache of the Delete Profile that has the Custom Delete Profile, now and when the transaction ends.
+	 *
+	 * @param JP_CustomDeleteProfile_ID
+	 * @param trxName transaction of the change or null
+	 */
+	public static void resetByCustomDeleteProfile(int JP_CustomDeleteProfile_ID, String trxName)
+	{
+		resetByCustomDeleteProfile(JP_CustomDeleteProfile_ID);
+		resetAfterTrx(trxName, () -> resetByCustomDeleteProfile(JP_CustomDeleteProfile_ID));
+	}
+
+	private static void resetAfterTrx(String trxName, Runnable reset)
+	{
+		Trx trx = trxName == null ? null : Trx.get(trxName, false);
+		if(trx == null)
+			return;
+
+		trx.addTrxEventListener(new TrxEventListener()
+		{
+			@Override
+			public void afterCommit(Trx trx, boolean success)
+			{
+				reset.run();
+			}
+
+			@Override
+			public void afterRollback(Trx trx, boolean success)
+			{
+				reset.run();
+			}
+
+			@Override
+			public void afterClose(Trx trx)
+			{
+				;//Nothing to do
+			}
+		});
+	}
+
+	/**
+	 * Load Delete Profile with Custom Delete Profiles (1st query) and Lines (2nd query)
+	 */
+	private static DeleteProfileTree load(int JP_DeleteProfile_ID, String trxName)
+	{
+		//Lines
+		LinkedHashMap<Integer, List<Line>> lineMap = new LinkedHashMap<Integer, List<Line>>();
+		String sql = "SELECT l.JP_CustomDeleteProfileLine_ID, l.JP_CustomDeleteProfile_ID, l.SeqNo, l.AD_Table_ID, t.TableName"
+				+ ", l.AD_Column_ID, c.ColumnName, l.JP_TreatForeignKey, l.JP_ForeignKey_Value"
+				+ " FROM JP_CustomDeleteProfileLine l"
+				+ " INNER JOIN JP_CustomDeleteProfile cdp ON (cdp.JP_CustomDeleteProfile_ID = l.JP_CustomDeleteProfile_ID)"
+				+ " LEFT OUTER JOIN AD_Table t ON (t.AD_Table_ID = l.AD_Table_ID)"
+				+ " LEFT OUTER JOIN AD_Column c ON (c.AD_Column_ID = l.AD_Column_ID)"
+				+ " WHERE cdp.JP_DeleteProfile_ID = ? AND l.IsActive='Y'"
+				+ " ORDER BY l.JP_CustomDeleteProfile_ID, l.SeqNo, l.JP_CustomDeleteProfileLine_ID";
+
+		PreparedStatement pstmt = null;
+		ResultSet rs = null;
+		try
+		{
+			pstmt = DB.prepareStatement(sql, trxName);
+			pstmt.setInt(1, JP_DeleteProfile_ID);
+			rs = pstmt.executeQuery();
+			while (rs.next())
+			{
+				Line line = new Line(rs);
+				List<Line> lines = lineMap.get(Integer.valueOf(line.JP_CustomDeleteProfile_ID));
+				if(lines == null)
+				{
+					lines = new ArrayList<Line>();
+					lineMap.put(Integer.valueOf(line.JP_CustomDeleteProfile_ID), lines);
+				}
+				lines.add(line);
+			}
+		}
+		catch (SQLException e)
+		{
+			log.log(Level.SEVERE, sql, e);
+			throw new DBException(e, sql);
+		} finally {
+			DB.close(rs, pstmt);
+			rs = null; pstmt = null;
+		}
+
+		//Delete Profile and Custom Delete Profiles
+		sql = "SELECT dp.Value, dp.Name, dp.Name2, dp.JP_Delete_Client"
+				+ ", dp.JP_AD_Org_ID_Where, dp.JP_AD_Role_ID_Where, dp.JP_AD_User_ID_Where, dp.JP_C_BPartner_ID_Where, dp.JP_M_Product_ID_Where"
+				+ ", cdp.JP_CustomDeleteProfile_ID, cdp.IsActive, cdp.SeqNo, cdp.AD_Table_ID, t.TableName, t.AccessLevel"
+				+ ", cdp.WhereClause, cdp.JP_TreatForeignKey, cdp.JP_ForeignKey_Value, cdp.IsDeleteDataNotUseJP"
+				+ " FROM JP_DeleteProfile dp"
+				+ " LEFT OUTER JOIN JP_CustomDeleteProfile cdp ON (cdp.JP_DeleteProfile_ID = dp.JP_DeleteProfile_ID)"
+				+ " LEFT OUTER JOIN AD_Table t ON (t.AD_Table_ID = cdp.AD_Table_ID)"
+				+ " WHERE dp.JP_DeleteProfile_ID = ?"
+				+ " ORDER BY cdp.SeqNo, cdp.JP_CustomDeleteProfile_ID";
+
+		DeleteProfileTree tree = null;
+		ArrayList<CustomProfile> customProfiles = new ArrayList<CustomProfile>();
+		try
+		{
+			pstmt = DB.prepareStatement(sql, trxName);
+			pstmt.setInt(1, JP_DeleteProfile_ID);
+			rs = pstmt.executeQuery();
+			String[] header = null;
+			while (rs.next())
+			{
+				if(header == null)
+				{
+					header = new String[9];
+					for(int i = 0; i < header.length; i++)
+						header[i] = rs.getString(i + 1);
+				}
+
+				int JP_CustomDeleteProfile_ID = rs.getInt("JP_CustomDeleteProfile_ID");
+				if(JP_CustomDeleteProfile_ID <= 0)
+					continue;
+
+				List<Line> lines = lineMap.get(Integer.valueOf(JP_CustomDeleteProfile_ID));
+				customProfiles.add(new CustomProfile(rs, JP_DeleteProfile_ID, lines == null ? new ArrayList<Line>() : lines));
+			}
+
+			if(header != null)
+				tree = new DeleteProfileTree(JP_DeleteProfile_ID, header, customProfiles);
+		}
+		catch (SQLException e)
+		{
+			log.log(Level.SEVERE, sql, e);
+			throw new DBException(e, sql);
+		} finally {
+			DB.close(rs, pstmt);
+			rs = null; pstmt = null;
+		}
+
+		return tree;
+	}
+
+	private DeleteProfileTree(int JP_DeleteProfile_ID, String[] header, List<CustomProfile> customProfiles)
+	{
+		this.JP_DeleteProfile_ID = JP_DeleteProfile_ID;
+		this.value = header[0];
+		this.name = header[1];
+		this.name2 = header[2];
+		this.JP_Delete_Client = header[3];
+		this.JP_AD_Org_ID_Where = header[4];
+		this.JP_AD_Role_ID_Where = header[5];
+		this.JP_AD_User_ID_Where = header[6];
+		this.JP_C_BPartner_ID_Where = header[7];
+		this.JP_M_Product_ID_Where = header[8];
+
+		this.allCustomProfiles = Collections.unmodifiableList(customProfiles);
+		ArrayList<CustomProfile> activeList = new ArrayList<CustomProfile>();
+		HashMap<Integer, CustomProfile> byID = new HashMap<Integer, CustomProfile>();
+		for(CustomProfile customProfile : customProfiles)
+		{
+			if(customProfile.isActive)
+				activeList.add(customProfile);
+			byID.put(Integer.valueOf(customProfile.JP_CustomDeleteProfile_ID), customProfile);
+		}
+		this.customProfiles = Collections.unmodifiableList(activeList);
+		this.customProfilesByID = Collections.unmodifiableMap(byID);
+	}
+
+	public int getJP_DeleteProfile_ID()
+	{
+		return JP_DeleteProfile_ID;
+	}
+
+	public String getValue()
+	{
+		return value;
+	}
+
+	public String getName()
+	{
+		return name;
+	}
+
+	public String getName2()
+	{
+		return name2;
+	}
+
+	public String getJP_Delete_Client()
+	{
+		return JP_Delete_Client;
+	}
+
+	public String getJP_AD_Org_ID_Where()
+	{
+		return JP_AD_Org_ID_Where;
+	}
+
+	public String getJP_AD_Role_ID_Where()
+	{
+		return JP_AD_Role_ID_Where;
+	}
+
+	public String getJP_AD_User_ID_Where()
+	{
+		return JP_AD_User_ID_Where;
+	}
+
+	public String getJP_C_BPartner_ID_Where()
+	{
+		return JP_C_BPartner_ID_Where;
+	}
+
+	public String getJP_M_Product_ID_Where()
+	{
+		return JP_M_Product_ID_Where;
+	}
+
+	/**
+	 * @return Active Custom Delete Profiles, ordered by SeqNo
+	 */
+	public List<CustomProfile> getCustomProfiles()
+	{
+		return customProfiles;
+	}
+
+	/**
+	 * @return All Custom Delete Profiles include inactive, ordered by SeqNo
+	 */
+	public List<CustomProfile> getAllCustomProfiles()
+	{
+		return allCustomProfiles;
+	}
+
+}
@@ -403,6 +403,60 @@ public interface I_T_DeleteClientLogJP
 	/** Get Delete or Initialize Tenant	  */
 	public String getJP_Delete_Client();
 
+    /** Column name JP_EstimatedRows */
+    public static final String COLUMNNAME_JP_EstimatedRows = "JP_EstimatedRows";
+
+	/** Set Estimated Rows	  */
+	public void setJP_EstimatedRows (BigDecimal JP_EstimatedRows);
+
+	/** Get Estimated Rows	  */
+	public BigDecimal getJP_EstimatedRows();
+
+    /** Column name JP_ExplainPlan */
+    public static final String COLUMNNAME_JP_ExplainPlan = "JP_ExplainPlan";
+
+	/** Set Explain Plan	  */
+	public void setJP_ExplainPlan (String JP_ExplainPlan);
+
+	/** Get Explain Plan	  */
+	public String getJP_ExplainPlan();
+
+    /** Column name JP_IndexSize */
+    public static final String COLUMNNAME_JP_IndexSize = "JP_IndexSize";
+
+	/** Set Index Size	  */
+	public void setJP_IndexSize (BigDecimal JP_IndexSize);
+
+	/** Get Index Size	  */
+	public BigDecimal getJP_IndexSize();
+
+    /** Column name JP_ReferencingClientRows */
+    public static final String COLUMNNAME_JP_ReferencingClientRows = "JP_ReferencingClientRows";
+
+	/** Set Referencing Rows of Tenant	  */
+	public void setJP_ReferencingClientRows (BigDecimal JP_ReferencingClientRows);
+
+	/** Get Referencing Rows of Tenant	  */
+	public BigDecimal getJP_ReferencingClientRows();
+
+    /** Column name JP_ReferencingRows */
+    public static final String COLUMNNAME_JP_ReferencingRows = "JP_ReferencingRows";
+
+	/** Set Referencing Rows	  */
+	public void setJP_ReferencingRows (BigDecimal JP_ReferencingRows);
+
+	/** Get Referencing Rows	  */
+	public BigDecimal getJP_ReferencingRows();
+
+    /** Column name JP_TotalSize */
+    public static final String COLUMNNAME_JP_TotalSize = "JP_TotalSize";
+
+	/** Set Total Size	  */
+	public void setJP_TotalSize (BigDecimal JP_TotalSize);
+
+	/** Get Total Size	  */
+	public BigDecimal getJP_TotalSize();
+
     /** Column name JP_TreatForeignKey */
     public static final String COLUMNNAME_JP_TreatForeignKey = "JP_TreatForeignKey";
 
@@ -51,7 +51,9 @@ public class MCustomDeleteProfile extends X_JP_CustomDeleteProfile {
 			MTable table = MTable.get(getCtx(), getAD_Table_ID());
 			if(table.getAccessLevel().equals(String.valueOf(MTable.ACCESSLEVEL_SYSTEM)))
 			{
-				if(MDeleteProfile.JP_DELETE_CLIENT_CustomDelete.equals(getParent().getJP_Delete_Client()))
+				DeleteProfileTree parent = DeleteProfileTree.get(getCtx(), getJP_DeleteProfile_ID(), get_TrxName());
+				String JP_Delete_Client = parent == null ? getParent().getJP_Delete_Client() : parent.getJP_Delete_Client();
+				if(MDeleteProfile.JP_DELETE_CLIENT_CustomDelete.equals(JP_Delete_Client))
 				{
 					if(table.columnExistsInDictionary("EntityType"))
 					{
@@ -90,6 +92,22 @@ public class MCustomDeleteProfile extends X_JP_CustomDeleteProfile {
 		return true;
 	}
 
+	@Override
+	protected boolean afterSave(boolean newRecord, boolean success)
+	{
+		DeleteProfileTree.reset(getJP_DeleteProfile_ID(), get_TrxName());
+		if(!newRecord && is_ValueChanged(COLUMNNAME_JP_DeleteProfile_ID))
+			DeleteProfileTree.reset(get_ValueOldAsInt(COLUMNNAME_JP_DeleteProfile_ID), get_TrxName());
+		return success;
+	}
+
+	@Override
+	protected boolean afterDelete(boolean success)
+	{
+		DeleteProfileTree.reset(getJP_DeleteProfile_ID(), get_TrxName());
+		return success;
+	}
+
 	public MCustomDeleteProfileLine[] getCustomDeleteProfileLines (String whereClause, String orderClause)
 	{
 		StringBuilder whereClauseFinal = new StringBuilder("IsActive='Y' AND "+MCustomDeleteProfileLine.COLUMNNAME_JP_CustomDeleteProfile_ID+"=? ");
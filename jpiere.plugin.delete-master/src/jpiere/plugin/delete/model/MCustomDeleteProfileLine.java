@@ -16,6 +16,7 @@ package jpiere.plugin.delete.model;
 import java.sql.ResultSet;
 import java.util.Properties;
 
+import org.compiere.model.MColumn;
 import org.compiere.model.MRefTable;
 import org.compiere.model.MTable;
 import org.compiere.util.DisplayType;
@@ -50,10 +51,17 @@ public class MCustomDeleteProfileLine extends X_JP_CustomDeleteProfileLine {
 	{
 		if(newRecord || is_ValueChanged("AD_Table_ID") || is_ValueChanged("AD_Column_ID"))
 		{
+			//Parent is read from the cached Delete Profile Tree
+			DeleteProfileTree.CustomProfile parent = DeleteProfileTree.getCustomProfile(getCtx(), getJP_CustomDeleteProfile_ID(), get_TrxName());
+			DeleteProfileTree parentProfile = parent == null ? null : DeleteProfileTree.get(getCtx(), parent.JP_DeleteProfile_ID, get_TrxName());
+			int parent_AD_Table_ID = parent == null ? getParent().getAD_Table_ID() : parent.AD_Table_ID;
+			String parentTableName = parent == null ? getParent().getAD_Table().getTableName() : parent.tableName;
+			String JP_Delete_Client = parentProfile == null ? getParent().getParent().getJP_Delete_Client() : parentProfile.getJP_Delete_Client();
+
 			MTable table = MTable.get(getCtx(), getAD_Table_ID());
 			if(table.getAccessLevel().equals(String.valueOf(MTable.ACCESSLEVEL_SYSTEM)))
 			{
-				if(MDeleteProfile.JP_DELETE_CLIENT_CustomDelete.equals(getParent().getParent().getJP_Delete_Client()))
+				if(MDeleteProfile.JP_DELETE_CLIENT_CustomDelete.equals(JP_Delete_Client))
 				{
 					if(table.columnExistsInDictionary("EntityType"))
 					{
@@ -70,7 +78,9 @@ public class MCustomDeleteProfileLine extends X_JP_CustomDeleteProfileLine {
 				}
 			}
 
-			if(!DisplayType.isID(getAD_Column().getAD_Reference_ID()))
+			MColumn column = MColumn.get(getCtx(), getAD_Column_ID());
+			int AD_Reference_ID = column.getAD_Reference_ID();
+			if(!DisplayType.isID(AD_Reference_ID))
 			{
 				//Irrelevant Column. Not Referenced Table.
 				log.saveError("Error", Msg.getMsg(getCtx(), "JP_Delete_NotReferencedTable"));
@@ -78,14 +88,14 @@ public class MCustomDeleteProfileLine extends X_JP_CustomDeleteProfileLine {
 			}else{
 
 				//Can not check.
-				if(getAD_Column().getAD_Reference_ID() == DisplayType.Account
-						|| getAD_Column().getAD_Reference_ID() == DisplayType.Assignment
-						|| getAD_Column().getAD_Reference_ID() == DisplayType.Chart
-						|| getAD_Column().getAD_Reference_ID() == DisplayType.Color
-						|| getAD_Column().getAD_Reference_ID() == DisplayType.Image
-						|| getAD_Column().getAD_Reference_ID() == DisplayType.Location
-						|| getAD_Column().getAD_Reference_ID() == DisplayType.Locator
-						|| getAD_Column().getAD_Reference_ID() == DisplayType.Image
+				if(AD_Reference_ID == DisplayType.Account
+						|| AD_Reference_ID == DisplayType.Assignment
+						|| AD_Reference_ID == DisplayType.Chart
+						|| AD_Reference_ID == DisplayType.Color
+						|| AD_Reference_ID == DisplayType.Image
+						|| AD_Reference_ID == DisplayType.Location
+						|| AD_Reference_ID == DisplayType.Locator
+						|| AD_Reference_ID == DisplayType.Image
 						)
 				{
 					return true;
@@ -93,10 +103,10 @@ public class MCustomDeleteProfileLine extends X_JP_CustomDeleteProfileLine {
 
 			}
 
-			if(getAD_Table_ID() == getParent().getAD_Table_ID()) //Same Table
+			if(getAD_Table_ID() == parent_AD_Table_ID) //Same Table
 			{
 				//Same Table and Same Column.
-				if(getAD_Column().getColumnName().equalsIgnoreCase((getParent().getAD_Table().getTableName()+"_ID")))
+				if(column.getColumnName().equalsIgnoreCase((parentTableName+"_ID")))
 				{
 					//Table and Column are the same as Referenced Table
 					log.saveError("Error", Msg.getMsg(getCtx(), "JP_Delete_SameTableColumn"));
@@ -104,14 +114,14 @@ public class MCustomDeleteProfileLine extends X_JP_CustomDeleteProfileLine {
 				}
 
 				//Same Table and Difference Column.
-				MRefTable refTable = new MRefTable(getCtx(), getAD_Column().getAD_Reference_Value_ID(), null);
+				MRefTable refTable = column.getAD_Reference_Value_ID() == 0 ? null : MRefTable.get(getCtx(), column.getAD_Reference_Value_ID());
 				if(refTable == null || refTable.get_ID()== 0)
 				{
 					//Irrelevant Column. Not Referenced Table.
 					log.saveError("Error", Msg.getMsg(getCtx(), "JP_Delete_NotReferencedTable"));
 					return false;
 
-				}else if(refTable.getAD_Table_ID() != getParent().getAD_Table_ID()){//Not Same Table
+				}else if(refTable.getAD_Table_ID() != parent_AD_Table_ID){//Not Same Table
 					//Irrelevant Column. Not Referenced Table.
 					log.saveError("Error", Msg.getMsg(getCtx(), "JP_Delete_NotReferencedTable"));
 					return false;
@@ -120,19 +130,19 @@ public class MCustomDeleteProfileLine extends X_JP_CustomDeleteProfileLine {
 			}else{
 
 				//Difference Table and Same PK & FK Column Name
-				if(getAD_Column().getColumnName().equalsIgnoreCase((getParent().getAD_Table().getTableName()+"_ID")))
+				if(column.getColumnName().equalsIgnoreCase((parentTableName+"_ID")))
 				{
 					;//Nothing to do;
 				}else{ //Deference Table and Deference Column
 
-					MRefTable refTable = new MRefTable(getCtx(), getAD_Column().getAD_Reference_Value_ID(), null);
+					MRefTable refTable = column.getAD_Reference_Value_ID() == 0 ? null : MRefTable.get(getCtx(), column.getAD_Reference_Value_ID());
 					if(refTable == null || refTable.get_ID()== 0)
 					{
 						//Irrelevant Column. Not Referenced Table.
 						log.saveError("Error", Msg.getMsg(getCtx(), "JP_Delete_NotReferencedTable"));
 						return false;
 
-					}else if(refTable.getAD_Table_ID() != getParent().getAD_Table_ID()){//Not Same Table
+					}else if(refTable.getAD_Table_ID() != parent_AD_Table_ID){//Not Same Table
 						//Irrelevant Column. Not Referenced Table.
 						log.saveError("Error", Msg.getMsg(getCtx(), "JP_Delete_NotReferencedTable"));
 						return false;
@@ -146,6 +156,20 @@ public class MCustomDeleteProfileLine extends X_JP_CustomDeleteProfileLine {
 		return true;
 	}
 
+	@Override
+	protected boolean afterSave(boolean newRecord, boolean success)
+	{
+		DeleteProfileTree.resetByCustomDeleteProfile(getJP_CustomDeleteProfile_ID(), get_TrxName());
+		return success;
+	}
+
+	@Override
+	protected boolean afterDelete(boolean success)
+	{
+		DeleteProfileTree.resetByCustomDeleteProfile(getJP_CustomDeleteProfile_ID(), get_TrxName());
+		return success;
+	}
+
 	public MCustomDeleteProfile getParent()
 	{
 		if(m_Parent==null)
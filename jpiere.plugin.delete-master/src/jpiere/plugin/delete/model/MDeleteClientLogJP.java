@@ -13,8 +13,23 @@
  *****************************************************************************/
 package jpiere.plugin.delete.model;
 
+import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.List;
 import java.util.Properties;
+import java.util.TreeMap;
+import java.util.logging.Level;
+
+import org.adempiere.exceptions.DBException;
+import org.compiere.util.CLogger;
+import org.compiere.util.DB;
 
 /**
  * 	Delete Client and Initialize Client Log.
@@ -38,4 +53,209 @@ public class MDeleteClientLogJP extends X_T_DeleteClientLogJP {
 		super(ctx, rs, trxName);
 	}
 
+	/**	Logger							*/
+	private static CLogger	s_log = CLogger.getCLogger (MDeleteClientLogJP.class);
+
+	/**
+	 * Insert the Logs with JDBC batch instead of saving one by one.
+	 * Logs must be new. ID, UU and Created / Updated are set by {@link POBatchInsert}.
+	 *
+	 * @param ctx
+	 * @param logs
+	 * @param trxName
+	 * @return number of inserted records
+	 */
+	public static int insertBatch(Properties ctx, List<MDeleteClientLogJP> logs, String trxName)
+	{
+		return POBatchInsert.insert(ctx, logs, trxName);
+	}
+
+
+	/** Prefix of monthly partitions : T_DeleteClientLogJP_YYYYMM */
+	public static final String PARTITION_PREFIX = "t_deleteclientlogjp_";
+
+	/** Default partition that holds the rows out of monthly partitions */
+	public static final String PARTITION_DEFAULT = "t_deleteclientlogjp_default";
+
+	private static final DateTimeFormatter PARTITION_MONTH = DateTimeFormatter.ofPattern("yyyyMM");
+
+	/**
+	 * @param trxName
+	 * @return true if T_DeleteClientLogJP is partitioned (JPIERE-0158-T_DeleteClientLogJP-Partition)
+	 */
+	public static boolean isPartitioned(String trxName)
+	{
+		int count = DB.getSQLValueEx(trxName, "SELECT COUNT(*) FROM pg_partitioned_table pt"
+				+ " INNER JOIN pg_class c ON (c.oid = pt.partrelid)"
+				+ " INNER JOIN pg_namespace n ON (n.oid = c.relnamespace AND n.nspname = current_schema())"
+				+ " WHERE c.relname = ?", "t_deleteclientlogjp");
+
+		return count > 0;
+	}
+
+	/**
+	 * Create monthly partitions from the month of the date, if they do not exist.
+	 * The partitions are created outside of the transaction of the process,
+	 * so the lock of T_DeleteClientLogJP is not held while the process runs.
+	 *
+	 * @param date
+	 * @param months number of months
+	 * @return number of created partitions
+	 */
+	public static int createPartitions(Timestamp date, int months)
+	{
+		if(!isPartitioned(null))
+			return 0;
+
+		int created = 0;
+		YearMonth month = YearMonth.from(date.toLocalDateTime());
+		for(int i = 0; i < months; i++)
+		{
+			if(createPartition(month.plusMonths(i)))
+				created++;
+		}
+
+		return created;
+	}
+
+	private static boolean createPartition(YearMonth month)
+	{
+		String partition = PARTITION_PREFIX + month.format(PARTITION_MONTH);
+		int count = DB.getSQLValueEx(null, "SELECT COUNT(*) FROM pg_class c"
+				+ " INNER JOIN pg_namespace n ON (n.oid = c.relnamespace AND n.nspname = current_schema())"
+				+ " WHERE c.relname = ?", partition);
+		if(count > 0)
+			return false;
+
+		String sql = null;
+		try
+		{
+			//Identifiers and bounds are quoted by the database (%I / %L)
+			sql = DB.getSQLValueStringEx(null, "SELECT format('CREATE TABLE IF NOT EXISTS %I PARTITION OF %I FOR VALUES FROM (%L) TO (%L)', ?, ?, ?, ?)"
+					, partition, "t_deleteclientlogjp", month.atDay(1).toString(), month.plusMonths(1).atDay(1).toString());
+			DB.executeUpdateEx(sql, null);
+		}
+		catch (DBException e)
+		{
+			//e.g. Default partition has rows of the month. The rows stay in default partition.
+			s_log.log(Level.WARNING, sql, e);
+			return false;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Drop a monthly partition without blocking T_DeleteClientLogJP.
+	 * A plain DROP of a partition takes ACCESS EXCLUSIVE lock on T_DeleteClientLogJP.
+	 * The partition is detached CONCURRENTLY first (PostgreSQL 14 or later), which takes only
+	 * SHARE UPDATE EXCLUSIVE lock, and then dropped as a plain table.
+	 * CONCURRENTLY can not run in a transaction block, so an auto commit connection is used.
+	 * A detach that was interrupted before is finalized.
+	 *
+	 * @param partition Partition Name
+	 */
+	public static void dropPartition(String partition)
+	{
+		String table = quoteIdentifier(partition, null);
+		String pending = DB.getSQLValueStringEx(null, "SELECT CASE WHEN i.inhdetachpending THEN 'Y' ELSE 'N' END FROM pg_inherits i"
+				+ " INNER JOIN pg_class c ON (c.oid = i.inhrelid)"
+				+ " INNER JOIN pg_namespace n ON (n.oid = c.relnamespace AND n.nspname = current_schema())"
+				+ " WHERE c.relname = ?", partition);
+
+		String sql = null;
+		Connection conn = null;
+		Statement stmt = null;
+		try
+		{
+			conn = DB.createConnection(true, Connection.TRANSACTION_READ_COMMITTED);
+			stmt = conn.createStatement();
+			if(pending != null)
+			{
+				sql = "ALTER TABLE t_deleteclientlogjp DETACH PARTITION " + table + ("Y".equals(pending) ? " FINALIZE" : " CONCURRENTLY");
+				stmt.execute(sql);
+			}
+			sql = "DROP TABLE " + table;
+			stmt.execute(sql);
+		}
+		catch (SQLException e)
+		{
+			s_log.log(Level.SEVERE, sql, e);
+			throw new DBException(e, sql);
+		} finally {
+			DB.close(stmt);
+			stmt = null;
+			try
+			{
+				if(conn != null)
+					conn.close();
+			}
+			catch (SQLException e)
+			{
+				;//Nothing to do
+			}
+			conn = null;
+		}
+	}
+
+	/**
+	 * Quote identifier of partition for DDL
+	 *
+	 * @param partition Partition Name
+	 * @param trxName
+	 * @return quoted identifier (quote_ident)
+	 */
+	public static String quoteIdentifier(String partition, String trxName)
+	{
+		return DB.getSQLValueStringEx(trxName, "SELECT quote_ident(?)", partition);
+	}
+
+	/**
+	 * Get monthly partitions of T_DeleteClientLogJP
+	 *
+	 * @param trxName
+	 * @return Partition Name and Month, ordered by month
+	 */
+	public static TreeMap<YearMonth, String> getPartitions(String trxName)
+	{
+		TreeMap<YearMonth, String> partitions = new TreeMap<YearMonth, String>();
+		String sql = "SELECT c.relname FROM pg_inherits i"
+				+ " INNER JOIN pg_class p ON (p.oid = i.inhparent)"
+				+ " INNER JOIN pg_namespace n ON (n.oid = p.relnamespace AND n.nspname = current_schema())"
+				+ " INNER JOIN pg_class c ON (c.oid = i.inhrelid)"
+				+ " WHERE p.relname = ?";
+
+		PreparedStatement pstmt = null;
+		ResultSet rs = null;
+		try
+		{
+			pstmt = DB.prepareStatement(sql, trxName);
+			pstmt.setString(1, "t_deleteclientlogjp");
+			rs = pstmt.executeQuery();
+			while (rs.next())
+			{
+				String partition = rs.getString(1);
+				if(!partition.startsWith(PARTITION_PREFIX))
+					continue;
+
+				try
+				{
+					partitions.put(YearMonth.parse(partition.substring(PARTITION_PREFIX.length()), PARTITION_MONTH), partition);
+				}catch (DateTimeParseException e) {
+					;//Not monthly partition (e.g. Default partition)
+				}
+			}
+		}
+		catch (SQLException e)
+		{
+			s_log.log(Level.SEVERE, sql, e);
+			throw new DBException(e, sql);
+		} finally {
+			DB.close(rs, pstmt);
+			rs = null; pstmt = null;
+		}
+
+		return partitions;
+	}
+
 }
@@ -86,5 +86,19 @@ public class MDeleteProfile extends X_JP_DeleteProfile {
 		return getCustomDeleteProfiles(true, null);
 	}	//
 
+	@Override
+	protected boolean afterSave(boolean newRecord, boolean success)
+	{
+		DeleteProfileTree.reset(get_ID(), get_TrxName());
+		return success;
+	}
+
+	@Override
+	protected boolean afterDelete(boolean success)
+	{
+		DeleteProfileTree.reset(get_ID(), get_TrxName());
+		return success;
+	}
+
 
 }
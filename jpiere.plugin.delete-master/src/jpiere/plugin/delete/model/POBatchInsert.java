@@ -0,0 +1,305 @@
+/******************************************************************************
+ * Product: JPiere                                                            *
+ * Copyright (C) Hideaki Hagiwara (h.hagiwara@oss-erp.co.jp)                  *
+ *                                                                            *
+ * This program is free software, you can redistribute it and/or modify it    *
+ * under the terms version 2 of the GNU General Public License as published   *
+ * by the Free Software Foundation. This program is distributed in the hope   *
+ * that it will be useful, but WITHOUT ANY WARRANTY.                          *
+ * See the GNU General Public License for more details.                       *
+ *                                                                            *
+ * JPiere is maintained by OSS ERP Solutions Co., Ltd.                        *
+ * (http://www.oss-erp.co.jp)                                                 *
+ *****************************************************************************/
+package jpiere.plugin.delete.model;
+
+import java.math.BigDecimal;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.logging.Level;
+
+import org.adempiere.exceptions.DBException;
+import org.compiere.model.MSysConfig;
+import org.compiere.model.PO;
+import org.compiere.model.POInfo;
+import org.compiere.util.CLogger;
+import org.compiere.util.DB;
+import org.compiere.util.Env;
+import org.compiere.util.Ini;
+import org.compiere.util.Trx;
+
+/**
+ * 	Insert new POs of one table with JDBC batch instead of saving one by one.
+ *
+ *  Only for T_DeleteClientLogJP and JP_CustomDeleteProfileLine, whose records are generated by the processes
+ *  of this plugin. Other tables are rejected, because PO.saveNew is not used:
+ *  <ul>
+ *  <li>beforeSave / afterSave and Model Validators are not called, so the POs must be validated by the caller.</li>
+ *  <li>No Change Log is written.</li>
+ *  <li>Columns without value get the constant Default Logic of AD_Column. Context (@...@) and SQL defaults are not evaluated.</li>
+ *  </ul>
+ *  ID, UU and Created / Updated are set by this class. IDs are reserved for all POs at once.
+ *
+ */
+public final class POBatchInsert
+{
+	/**	Logger							*/
+	private static CLogger	s_log = CLogger.getCLogger (POBatchInsert.class);
+
+	/** Records per JDBC batch		*/
+	private static final int BATCH_SIZE = 1000;
+
+	/** Tables that can be inserted	*/
+	private static final List<String> TABLES = Arrays.asList(I_T_DeleteClientLogJP.Table_Name, I_JP_CustomDeleteProfileLine.Table_Name);
+
+	private POBatchInsert()
+	{
+	}
+
+	/**
+	 * Insert the POs
+	 *
+	 * @param ctx
+	 * @param pos new POs of same table
+	 * @param trxName
+	 * @return number of inserted records
+	 */
+	public static int insert(Properties ctx, List<? extends PO> pos, String trxName)
+	{
+		if(pos == null || pos.size() == 0)
+			return 0;
+
+		PO first = pos.get(0);
+		String tableName = first.get_TableName();
+		if(!TABLES.contains(tableName))
+			throw new IllegalArgumentException("POBatchInsert does not support " + tableName);
+
+		String keyColumn = tableName + "_ID";
+		String uuColumn = tableName + "_UU";
+		POInfo poInfo = POInfo.getPOInfo(ctx, first.get_Table_ID(), trxName);
+
+		ArrayList<String> columnNames = new ArrayList<String>();
+		ArrayList<Object> defaultValues = new ArrayList<Object>();
+		StringBuilder columns = new StringBuilder();
+		StringBuilder values = new StringBuilder();
+		for(int i = 0; i < poInfo.getColumnCount(); i++)
+		{
+			if(poInfo.isVirtualColumn(i))
+				continue;
+
+			if(columns.length() > 0)
+			{
+				columns.append(",");
+				values.append(",");
+			}
+			columns.append(poInfo.getColumnName(i));
+			values.append("?");
+			columnNames.add(poInfo.getColumnName(i));
+			defaultValues.add(getDefaultValue(poInfo.getDefaultLogic(i), poInfo.getColumnClass(i)));
+		}
+
+		String sql = "INSERT INTO " + tableName + " (" + columns.toString() + ") VALUES (" + values.toString() + ")";
+		Timestamp now = new Timestamp(System.currentTimeMillis());
+		Integer AD_User_ID = Integer.valueOf(Env.getAD_User_ID(ctx));
+		int[] IDs = getNextIDs(first.getAD_Client_ID(), tableName, pos.size());
+		int inserts = 0;
+		PreparedStatement pstmt = null;
+		try
+		{
+			pstmt = DB.prepareStatement(sql, trxName);
+			int batch = 0;
+			for(int p = 0; p < pos.size(); p++)
+			{
+				PO po = pos.get(p);
+				Integer ID = Integer.valueOf(IDs[p]);
+				int parameterIndex = 1;
+				for(int c = 0; c < columnNames.size(); c++)
+				{
+					String columnName = columnNames.get(c);
+					Object value = null;
+					if(columnName.equalsIgnoreCase(keyColumn))
+						value = ID;
+					else if(columnName.equalsIgnoreCase(uuColumn))
+						value = UUID.randomUUID().toString();
+					else if(columnName.equals("Created") || columnName.equals("Updated"))
+						value = now;
+					else if(columnName.equals("CreatedBy") || columnName.equals("UpdatedBy"))
+						value = AD_User_ID;
+					else
+						value = po.get_Value(columnName);
+
+					if(value == null)
+						value = defaultValues.get(c);
+
+					if(value == null)
+						pstmt.setNull(parameterIndex, Types.NULL);
+					else if(value instanceof Boolean)
+						pstmt.setString(parameterIndex, ((Boolean)value).booleanValue() ? "Y" : "N");
+					else
+						pstmt.setObject(parameterIndex, value);
+					parameterIndex++;
+				}
+
+				pstmt.addBatch();
+				batch++;
+				if(batch == BATCH_SIZE)
+				{
+					inserts = inserts + sum(pstmt.executeBatch());
+					batch = 0;
+				}
+			}
+
+			if(batch > 0)
+				inserts = inserts + sum(pstmt.executeBatch());
+
+		}
+		catch (SQLException e)
+		{
+			s_log.log(Level.SEVERE, sql, e);
+			throw new DBException(e, sql);
+		} finally {
+			DB.close(pstmt);
+			pstmt = null;
+		}
+
+		return inserts;
+	}
+
+	/**
+	 * Get constant value of Default Logic
+	 *
+	 * @param defaultLogic Default Logic of AD_Column
+	 * @param columnClass
+	 * @return value, or null if no default or not a constant (context, SQL or several values)
+	 */
+	static Object getDefaultValue(String defaultLogic, Class<?> columnClass)
+	{
+		if(defaultLogic == null || columnClass == null)
+			return null;
+
+		String value = defaultLogic.trim();
+		if(value.length() == 0 || value.indexOf('@') >= 0 || value.indexOf(';') >= 0)
+			return null;
+
+		if(value.length() >= 2 && value.startsWith("'") && value.endsWith("'"))
+			value = value.substring(1, value.length() - 1);
+
+		try
+		{
+			if(columnClass == Boolean.class)
+				return "Y".equals(value) || "true".equalsIgnoreCase(value) ? "Y" : "N";
+			else if(columnClass == Integer.class)
+				return Integer.valueOf(value);
+			else if(columnClass == BigDecimal.class)
+				return new BigDecimal(value);
+			else if(columnClass == String.class)
+				return value;
+		}
+		catch (NumberFormatException e)
+		{
+			s_log.log(Level.WARNING, "Default Logic : " + defaultLogic, e);
+		}
+
+		return null;
+	}
+
+	/**
+	 * Reserve IDs of the records at once.
+	 * The IDs are reserved outside of the transaction like DB.getNextID, so the sequence is not locked
+	 * until the end of the transaction.
+	 *
+	 * @param AD_Client_ID
+	 * @param tableName
+	 * @param count
+	 * @return IDs
+	 */
+	private static int[] getNextIDs(int AD_Client_ID, String tableName, int count)
+	{
+		int[] IDs = new int[count];
+
+		//System IDs of dictionary maintenance are allocated by MSequence
+		if(AD_Client_ID < 11 && Ini.isPropertyBool(Ini.P_ADEMPIERESYS))
+		{
+			for(int i = 0; i < count; i++)
+				IDs[i] = DB.getNextID(AD_Client_ID, tableName, null);
+			return IDs;
+		}
+
+		boolean isNativeSequence = MSysConfig.getBooleanValue(MSysConfig.SYSTEM_NATIVE_SEQUENCE, false);
+		String sql = null;
+		Object[] params = null;
+		if(isNativeSequence)
+		{
+			sql = "SELECT nextval(?::regclass) FROM generate_series(1, ?)";
+			params = new Object[] {tableName + "_SQ", Integer.valueOf(count)};
+		}else{
+			sql = "UPDATE AD_Sequence SET CurrentNext = CurrentNext + IncrementNo * ?, Updated = now()"
+					+ " WHERE Name = ? AND IsActive = 'Y' AND IsTableID = 'Y' AND IsAutoSequence = 'Y'"
+					+ " RETURNING CurrentNext - IncrementNo * ?, IncrementNo";
+			params = new Object[] {Integer.valueOf(count), tableName, Integer.valueOf(count)};
+		}
+
+		int reserved = 0;
+		Trx trx = Trx.get(Trx.createTrxName("POBatchInsert"), true);
+		PreparedStatement pstmt = null;
+		ResultSet rs = null;
+		try
+		{
+			pstmt = DB.prepareStatement(sql, trx.getTrxName());
+			DB.setParameters(pstmt, params);
+			rs = pstmt.executeQuery();
+			while (rs.next() && reserved < count)
+			{
+				if(isNativeSequence)
+				{
+					IDs[reserved++] = rs.getInt(1);
+				}else{
+					int next = rs.getInt(1);
+					int increment = rs.getInt(2);
+					for(; reserved < count; reserved++)
+						IDs[reserved] = next + increment * reserved;
+				}
+			}
+			trx.commit(true);
+		}
+		catch (SQLException e)
+		{
+			trx.rollback();
+			s_log.log(Level.SEVERE, sql, e);
+			throw new DBException(e, sql);
+		} finally {
+			DB.close(rs, pstmt);
+			rs = null; pstmt = null;
+			trx.close();
+		}
+
+		//No Table ID sequence
+		for(; reserved < count; reserved++)
+			IDs[reserved] = DB.getNextID(AD_Client_ID, tableName, null);
+
+		return IDs;
+	}
+
+	private static int sum(int[] counts)
+	{
+		int sum = 0;
+		for(int i = 0; i < counts.length; i++)
+		{
+			if(counts[i] > 0)
+				sum = sum + counts[i];
+			else if(counts[i] == java.sql.Statement.SUCCESS_NO_INFO)
+				sum++;
+		}
+
+		return sum;
+	}
+
+}
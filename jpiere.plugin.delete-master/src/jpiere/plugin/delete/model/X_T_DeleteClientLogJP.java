@@ -17,9 +17,11 @@
 /** Generated Model - DO NOT CHANGE */
 package jpiere.plugin.delete.model;
 
+import java.math.BigDecimal;
 import java.sql.ResultSet;
 import java.util.Properties;
 import org.compiere.model.*;
+import org.compiere.util.Env;
 import org.compiere.util.KeyNamePair;
 
 /** Generated Model for T_DeleteClientLogJP
@@ -682,6 +684,111 @@ public class X_T_DeleteClientLogJP extends PO implements I_T_DeleteClientLogJP,
 		return (String)get_Value(COLUMNNAME_JP_Delete_Client);
 	}
 
+	/** Set Estimated Rows.
+		@param JP_EstimatedRows Estimated Rows
+	*/
+	public void setJP_EstimatedRows (BigDecimal JP_EstimatedRows)
+	{
+		set_Value (COLUMNNAME_JP_EstimatedRows, JP_EstimatedRows);
+	}
+
+	/** Get Estimated Rows.
+		@return Estimated Rows	  */
+	public BigDecimal getJP_EstimatedRows()
+	{
+		BigDecimal bd = (BigDecimal)get_Value(COLUMNNAME_JP_EstimatedRows);
+		if (bd == null)
+			 return Env.ZERO;
+		return bd;
+	}
+
+	/** Set Explain Plan.
+		@param JP_ExplainPlan Explain Plan
+	*/
+	public void setJP_ExplainPlan (String JP_ExplainPlan)
+	{
+		set_Value (COLUMNNAME_JP_ExplainPlan, JP_ExplainPlan);
+	}
+
+	/** Get Explain Plan.
+		@return Explain Plan	  */
+	public String getJP_ExplainPlan()
+	{
+		return (String)get_Value(COLUMNNAME_JP_ExplainPlan);
+	}
+
+	/** Set Index Size.
+		@param JP_IndexSize Index Size
+	*/
+	public void setJP_IndexSize (BigDecimal JP_IndexSize)
+	{
+		set_Value (COLUMNNAME_JP_IndexSize, JP_IndexSize);
+	}
+
+	/** Get Index Size.
+		@return Index Size	  */
+	public BigDecimal getJP_IndexSize()
+	{
+		BigDecimal bd = (BigDecimal)get_Value(COLUMNNAME_JP_IndexSize);
+		if (bd == null)
+			 return Env.ZERO;
+		return bd;
+	}
+
+	/** Set Referencing Rows of Tenant.
+		@param JP_ReferencingClientRows Referencing Rows of Tenant
+	*/
+	public void setJP_ReferencingClientRows (BigDecimal JP_ReferencingClientRows)
+	{
+		set_Value (COLUMNNAME_JP_ReferencingClientRows, JP_ReferencingClientRows);
+	}
+
+	/** Get Referencing Rows of Tenant.
+		@return Referencing Rows of Tenant	  */
+	public BigDecimal getJP_ReferencingClientRows()
+	{
+		BigDecimal bd = (BigDecimal)get_Value(COLUMNNAME_JP_ReferencingClientRows);
+		if (bd == null)
+			 return Env.ZERO;
+		return bd;
+	}
+
+	/** Set Referencing Rows.
+		@param JP_ReferencingRows Referencing Rows
+	*/
+	public void setJP_ReferencingRows (BigDecimal JP_ReferencingRows)
+	{
+		set_Value (COLUMNNAME_JP_ReferencingRows, JP_ReferencingRows);
+	}
+
+	/** Get Referencing Rows.
+		@return Referencing Rows	  */
+	public BigDecimal getJP_ReferencingRows()
+	{
+		BigDecimal bd = (BigDecimal)get_Value(COLUMNNAME_JP_ReferencingRows);
+		if (bd == null)
+			 return Env.ZERO;
+		return bd;
+	}
+
+	/** Set Total Size.
+		@param JP_TotalSize Total Size
+	*/
+	public void setJP_TotalSize (BigDecimal JP_TotalSize)
+	{
+		set_Value (COLUMNNAME_JP_TotalSize, JP_TotalSize);
+	}
+
+	/** Get Total Size.
+		@return Total Size	  */
+	public BigDecimal getJP_TotalSize()
+	{
+		BigDecimal bd = (BigDecimal)get_Value(COLUMNNAME_JP_TotalSize);
+		if (bd == null)
+			 return Env.ZERO;
+		return bd;
+	}
+
 	/** Mandatory = true ? Delete : NULL = IDN */
 	public static final String JP_TREATFOREIGNKEY_MandatoryEqTrueDeleteNULL = "IDN";
 	/** Mandatory = true ? Delete : Value = IDV */
@@ -19,15 +19,15 @@ import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.logging.Level;
 
-import jpiere.plugin.delete.model.MCustomDeleteProfile;
+import jpiere.plugin.delete.model.DeleteProfileTree;
 import jpiere.plugin.delete.model.MCustomDeleteProfileLine;
-import jpiere.plugin.delete.process.JPiereDeleteClientRecords.TableColumn;
+import jpiere.plugin.delete.model.POBatchInsert;
 
 import org.adempiere.exceptions.DBException;
-import org.compiere.model.MColumn;
 import org.compiere.model.MTable;
 import org.compiere.process.SvrProcess;
 import org.compiere.util.DB;
+import org.compiere.util.DisplayType;
 import org.compiere.util.Msg;
 
 /**
@@ -65,128 +65,94 @@ public class JPiereCreateDeleteProfileLine extends SvrProcess
 	protected String doIt() throws Exception
 	{
 
-		MCustomDeleteProfile customDeleteProfile = new MCustomDeleteProfile(getCtx(), p_JP_CustomDeleteProfile_ID, null);
-		String treat = customDeleteProfile.getJP_TreatForeignKey();
+		DeleteProfileTree.CustomProfile customDeleteProfile = DeleteProfileTree.getCustomProfile(getCtx(), p_JP_CustomDeleteProfile_ID, get_TrxName());
+		if(customDeleteProfile == null)
+			return Msg.getMsg(getCtx(), "NotFound") +" : " + Msg.getElement(getCtx(), "JP_CustomDeleteProfile_ID");
 
-		if(customDeleteProfile.getCustomDeleteProfileLines().length != 0)
+		String treat = customDeleteProfile.treat;
+
+		if(customDeleteProfile.lines.size() != 0)
 		{
 			String msg = Msg.getElement(getCtx(), "JP_Delete_AlreadySomeLines");//Error : There are some lines already
 			throw new Exception(msg);
 		}
 
-		MTable parent_Table = MTable.get(getCtx(), customDeleteProfile.getAD_Table().getTableName());
-		if(parent_Table.get_ID()==0)
+		MTable parent_Table = MTable.get(getCtx(), customDeleteProfile.AD_Table_ID);
+		if(parent_Table == null || parent_Table.get_ID()==0)
 			return Msg.getMsg(getCtx(), "NotFound") +" : " + Msg.getElement(getCtx(), "AD_Table_ID");
 
-		//Can Refer Table Direct
-		String getTableSQL = "SELECT UPPER(TableName) FROM AD_Table t INNER JOIN AD_Column c ON(t.AD_Table_ID = C.AD_Table_ID)"
-				+ " WHERE IsView='N' and UPPER(ColumnName)=?";
-
+		//Referencing columns of Can Refer Table Direct and Can't Refer Table Direct in one pass
+		long start = System.currentTimeMillis();
+		String column_ID = (parent_Table.getTableName()+"_ID").toUpperCase();
+		String getColumnSQL = "SELECT t.TableName, t.AccessLevel, c.AD_Table_ID, c.AD_Column_ID, c.ColumnName, c.IsMandatory, c.AD_Reference_ID"
+				+ ", CASE WHEN UPPER(c.ColumnName) = ? THEN 0 ELSE 1 END AS ReferType"
+				+ " FROM AD_Column c INNER JOIN AD_Table t ON (t.AD_Table_ID = c.AD_Table_ID)"
+				+ " WHERE t.IsView='N'"
+				+ " AND ( (UPPER(c.ColumnName) = ? AND c.AD_Table_ID <> ?)" //Can Refer Table Direct
+				+ " OR (UPPER(c.ColumnName) <> ? AND c.AD_Reference_Value_ID IN"
+				+ " (SELECT rt.AD_Reference_ID FROM AD_Ref_Table rt WHERE rt.AD_Table_ID = ?)) )" //Can't Refer Table Direct
+				+ " ORDER BY ReferType, t.TableName, c.ColumnName";
+
+		ArrayList<MCustomDeleteProfileLine> lines = new ArrayList<MCustomDeleteProfileLine>();
+		int skips = 0;
 		PreparedStatement pstmt = null;
 		ResultSet rs = null;
 		int seqNo = 0;
 		try
 		{
-			pstmt = DB.prepareStatement(getTableSQL, get_TrxName());
-			pstmt.setString(1, (parent_Table.getTableName()+"_ID").toUpperCase());
+			pstmt = DB.prepareStatement(getColumnSQL, get_TrxName());
+			pstmt.setString(1, column_ID);
+			pstmt.setString(2, column_ID);
+			pstmt.setInt(3, parent_Table.get_ID());
+			pstmt.setString(4, column_ID);
+			pstmt.setInt(5, parent_Table.get_ID());
 			rs = pstmt.executeQuery();
 			while (rs.next ())
 			{
-				if(rs.getString(1).equals(parent_Table.getTableName().toUpperCase()))//Same Table and Same Column
-					continue;
-
-				MTable table = MTable.get(getCtx(), rs.getString(1));
-				if(table.get_ID()==0)
+				String tableName = rs.getString(1);
+				if(String.valueOf(MTable.ACCESSLEVEL_SYSTEM).equals(rs.getString(2)))//System Table
 					continue;
 
-				if(table.getAccessLevel().equals(String.valueOf(MTable.ACCESSLEVEL_SYSTEM)))//System Table
-					continue;
-
-				MColumn[] columns = table.getColumns(false);
-				MColumn col = null;
-				for(int i = 0 ; i < columns.length; i++)
+				//Same validation as MCustomDeleteProfileLine.beforeSave() with the metadata of the query
+				if(!DisplayType.isID(rs.getInt(7)))
 				{
-					if(columns[i].getColumnName().toUpperCase().equals((parent_Table.getTableName()+"_ID").toUpperCase()))
-					{
-						col = MColumn.get(getCtx(), columns[i].get_ID());
-						break;
-					}
-				}
-
-				if(col == null)
+					//Irrelevant Column. Not Referenced Table.
+					addLog(Msg.getMsg(getCtx(), "JP_Delete_NotReferencedTable") + " : " + tableName + "." + rs.getString(5));
+					skips++;
 					continue;
+				}
 
-				MCustomDeleteProfileLine cdpl = new MCustomDeleteProfileLine(getCtx(),0,null);
-				cdpl.setJP_CustomDeleteProfile_ID(customDeleteProfile.get_ID());
+				MCustomDeleteProfileLine cdpl = new MCustomDeleteProfileLine(getCtx(),0,get_TrxName());
+				cdpl.setJP_CustomDeleteProfile_ID(customDeleteProfile.JP_CustomDeleteProfile_ID);
 
 				seqNo = seqNo + 10;
 				cdpl.setSeqNo(seqNo);
-				cdpl.setAD_Table_ID(table.get_ID());
-				cdpl.setAD_Column_ID(col.getAD_Column_ID());
-				cdpl.setJP_TreatForeignKey(deleteClientRecordsProcess.treatAutoJudge(table.getTableName(), col.getColumnName()
-														, treat, customDeleteProfile.getJP_ForeignKey_Value()));
-				cdpl.setJP_ForeignKey_Value(customDeleteProfile.getJP_ForeignKey_Value());
+				cdpl.setAD_Table_ID(rs.getInt(3));
+				cdpl.setAD_Column_ID(rs.getInt(4));
+				cdpl.setJP_TreatForeignKey(deleteClientRecordsProcess.treatAutoJudge(tableName, rs.getString(5), "Y".equals(rs.getString(6))
+														, treat, customDeleteProfile.value));
+				cdpl.setJP_ForeignKey_Value(customDeleteProfile.value);
 
-				cdpl.saveEx();
+				lines.add(cdpl);
 
 			}//while
 
 		}catch (SQLException e){
-			log.log(Level.SEVERE, getTableSQL.toString(), e);
-			throw new DBException(e, getTableSQL.toString());
+			log.log(Level.SEVERE, getColumnSQL, e);
+			throw new DBException(e, getColumnSQL);
 		} finally {
 			DB.close(rs, pstmt);
 			rs = null; pstmt = null;
 		}
+		long generated = System.currentTimeMillis();
+		addLog("Generate Lines : " + lines.size() + " (" + (generated - start) + "ms)");
 
+		//Insert all lines in the transaction of the process
+		int inserts = POBatchInsert.insert(getCtx(), lines, get_TrxName());
+		DeleteProfileTree.resetByCustomDeleteProfile(customDeleteProfile.JP_CustomDeleteProfile_ID, get_TrxName());
+		addLog("Insert Lines : " + inserts + " (" + (System.currentTimeMillis() - generated) + "ms)");
 
-		//Can't Refer Table Direct
-		ArrayList<Integer> list_of_reference = deleteClientRecordsProcess.getReferenceList(parent_Table.getTableName());
-		if(list_of_reference.size()!=0)
-		{
-			ArrayList<TableColumn> tableColumnList= deleteClientRecordsProcess.getIndirectReferTableColumn(parent_Table.getTableName() +"_ID", list_of_reference);
-			for(TableColumn tableColumn :tableColumnList)
-			{
-				MTable table = MTable.get(getCtx(), tableColumn.tableName);
-				if(table.get_ID()==0)
-					continue;
-
-				if(table.getAccessLevel().equals(String.valueOf(MTable.ACCESSLEVEL_SYSTEM)))//System Table
-				{
-					continue;
-				}
-
-				MColumn[] columns = table.getColumns(false);
-				MColumn col = null;
-				for(int i = 0 ; i < columns.length; i++)
-				{
-					if(columns[i].getColumnName().toUpperCase().equals(tableColumn.columnName.toUpperCase()))
-					{
-						col = MColumn.get(getCtx(), columns[i].get_ID());
-						break;
-					}
-				}
-
-				if(col == null)
-					continue;
-
-				MCustomDeleteProfileLine cdpl = new MCustomDeleteProfileLine(getCtx(),0,null);
-				cdpl.setJP_CustomDeleteProfile_ID(customDeleteProfile.get_ID());
-
-				seqNo = seqNo + 10;
-				cdpl.setSeqNo(seqNo);
-				cdpl.setAD_Table_ID(table.get_ID());
-				cdpl.setAD_Column_ID(col.getAD_Column_ID());
-				cdpl.setJP_TreatForeignKey(deleteClientRecordsProcess.treatAutoJudge(table.getTableName(), col.getColumnName()
-														, treat, customDeleteProfile.getJP_ForeignKey_Value()));
-				cdpl.setJP_ForeignKey_Value(customDeleteProfile.getJP_ForeignKey_Value());
-
-				cdpl.saveEx();
-			}
-
-		}//if(list_of_reference.size()!=0)
-
-		return "";
+		return Msg.getMsg(getCtx(), "Created") + " : " + inserts + (skips > 0 ? " / Skip : " + skips : "");
 	}
 
 
@@ -0,0 +1,105 @@
+/******************************************************************************
+ * Product: JPiere                                                            *
+ * Copyright (C) Hideaki Hagiwara (h.hagiwara@oss-erp.co.jp)                  *
+ *                                                                            *
+ * This program is free software, you can redistribute it and/or modify it    *
+ * under the terms version 2 of the GNU General Public License as published   *
+ * by the Free Software Foundation. This program is distributed in the hope   *
+ * that it will be useful, but WITHOUT ANY WARRANTY.                          *
+ * See the GNU General Public License for more details.                       *
+ *                                                                            *
+ * JPiere is maintained by OSS ERP Solutions Co., Ltd.                        *
+ * (http://www.oss-erp.co.jp)                                                 *
+ *****************************************************************************/
+package jpiere.plugin.delete.process;
+
+import java.sql.Timestamp;
+import java.time.YearMonth;
+import java.util.Map;
+import java.util.logging.Level;
+
+import org.compiere.model.MSysConfig;
+import org.compiere.process.ProcessInfoParameter;
+import org.compiere.process.SvrProcess;
+import org.compiere.util.DB;
+
+import jpiere.plugin.delete.model.MDeleteClientLogJP;
+
+/**
+ * 	Retention of Delete Client Log.
+ *
+ *  Drops the monthly partitions of T_DeleteClientLogJP that are older than the retention months,
+ *  instead of deleting the rows, and creates the partitions of this month and next month.
+ *  A partition is detached concurrently before it is dropped, so the log window and running
+ *  processes are not blocked.
+ *  Rows of the default partition, or of T_DeleteClientLogJP that is not partitioned, are deleted.
+ *
+ */
+public class JPiereDeleteClientLogRetention extends SvrProcess
+{
+	/** SysConfig : Retention months of Delete Client Log */
+	public static final String JP_DELETE_CLIENT_LOG_RETENTION_MONTHS = "JP_DELETE_CLIENT_LOG_RETENTION_MONTHS";
+
+	//Parameters
+	private int p_JP_RetentionMonths = 0;
+
+	/**
+	 *  Prepare - e.g., get Parameters.
+	 */
+	protected void prepare()
+	{
+		ProcessInfoParameter[] para = getParameter();
+		for (int i = 0; i < para.length; i++)
+		{
+			String name = para[i].getParameterName();
+			if(name.equals("JP_RetentionMonths")){
+				p_JP_RetentionMonths = para[i].getParameterAsInt();
+			}else{
+				log.log(Level.SEVERE, "Unknown Parameter: " + name);
+			}
+		}
+	}	//	prepare
+
+	/**
+	 * 	Process
+	 *	@return info
+	 *	@throws Exception
+	 */
+	protected String doIt() throws Exception
+	{
+		int months = p_JP_RetentionMonths > 0 ? p_JP_RetentionMonths : MSysConfig.getIntValue(JP_DELETE_CLIENT_LOG_RETENTION_MONTHS, 6);
+
+		//Rows before the first day of cutoff month are removed
+		YearMonth cutoff = YearMonth.now().minusMonths(months);
+		Timestamp cutoffDate = Timestamp.valueOf(cutoff.atDay(1).atStartOfDay());
+
+		if(!MDeleteClientLogJP.isPartitioned(get_TrxName()))
+		{
+			int deletes = DB.executeUpdateEx("DELETE FROM T_DeleteClientLogJP WHERE Created < ?", new Object[] {cutoffDate}, get_TrxName());
+			addLog("DELETE T_DeleteClientLogJP : " + deletes);
+			return "DELETE : " + deletes;
+		}
+
+		int created = MDeleteClientLogJP.createPartitions(new Timestamp(System.currentTimeMillis()), 2);
+		if(created > 0)
+			addLog("CREATE PARTITION : " + created);
+
+		int drops = 0;
+		for(Map.Entry<YearMonth, String> partition : MDeleteClientLogJP.getPartitions(get_TrxName()).entrySet())
+		{
+			if(!partition.getKey().isBefore(cutoff))
+				break;
+
+			MDeleteClientLogJP.dropPartition(partition.getValue());
+			addLog("DROP PARTITION : " + partition.getValue());
+			drops++;
+		}
+
+		int deletes = DB.executeUpdateEx("DELETE FROM " + MDeleteClientLogJP.quoteIdentifier(MDeleteClientLogJP.PARTITION_DEFAULT, get_TrxName()) + " WHERE Created < ?", new Object[] {cutoffDate}, get_TrxName());
+		if(deletes > 0)
+			addLog("DELETE " + MDeleteClientLogJP.PARTITION_DEFAULT + " : " + deletes);
+
+		return "DROP PARTITION : " + drops + " / DELETE : " + deletes;
+	}	//	doIt
+
+}
@@ -16,7 +16,10 @@ package jpiere.plugin.delete.process;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.sql.Timestamp;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.TreeMap;
 import java.util.TreeSet;
@@ -39,16 +42,16 @@ import org.compiere.model.MUser;
 import org.compiere.model.Query;
 import org.compiere.process.ProcessInfoParameter;
 import org.compiere.process.SvrProcess;
+import org.compiere.util.CacheMgt;
 import org.compiere.util.DB;
 import org.compiere.util.DisplayType;
 import org.compiere.util.Env;
 import org.compiere.util.Msg;
+import org.compiere.util.Trx;
 import org.compiere.util.Util;
 
-import jpiere.plugin.delete.model.MCustomDeleteProfile;
-import jpiere.plugin.delete.model.MCustomDeleteProfileLine;
 import jpiere.plugin.delete.model.MDeleteClientLogJP;
-import jpiere.plugin.delete.model.MDeleteProfile;
+import jpiere.plugin.delete.model.DeleteProfileTree;
 
 /**
  * 	Process of Initialize Client and Delete Client.
@@ -108,10 +111,26 @@ public class JPiereDeleteClientRecords extends SvrProcess
 	private String[] Tables_Not_DeleteAllRecords;
 	private String[] Tables_CustomDelete;
 
+	//Table Classification (Transaction / Initialize / Custom Delete)
+	private JPiereTableIndex m_TableIndex = JPiereTableIndex.get();
+
 	//Process UI
 	private IProcessUI processMonitor = null;
+	private JPiereDeleteProgress m_Progress = null;
+
+	private DeleteProfileTree m_DeleteProfile = null;
+	private JPiereDeletePlan m_DeletePlan = null;
+
+	//Temporary FK Index
+	private JPiereTemporaryIndexAdvisor indexAdvisor = null;
+
+	//Prepared Statements of the run
+	private JPiereStatementCache m_StatementCache = null;
 
-	private MDeleteProfile m_DeleteProfile = null;
+	//Slow Statement
+	private int slowStatementMillis = 0;
+	private boolean isExplainAnalyze = false;
+	private int explainAnalyzeTimeoutMillis = 0;
 
 	/**
 	 *  Prepare - e.g., get Parameters.
@@ -146,6 +165,9 @@ public class JPiereDeleteClientRecords extends SvrProcess
 	 */
 	protected String doIt() throws Exception
 	{
+		//Monthly partitions of the log (if T_DeleteClientLogJP is partitioned)
+		MDeleteClientLogJP.createPartitions(new Timestamp(System.currentTimeMillis()), 2);
+
 		//Super User can not delete data.
 		int AD_User_ID = Env.getAD_User_ID(Env.getCtx());
 		if(AD_User_ID==100)//AD_User_ID == 100 that is SuperUser
@@ -199,7 +221,8 @@ public class JPiereDeleteClientRecords extends SvrProcess
 		{
 			if(p_JP_DeleteProfile_ID != 0)
 			{
-				m_DeleteProfile = new MDeleteProfile(getCtx(), p_JP_DeleteProfile_ID, null);
+				m_DeleteProfile = DeleteProfileTree.get(getCtx(), p_JP_DeleteProfile_ID, null);
+				m_DeletePlan = JPiereDeletePlan.get(getCtx(), p_JP_DeleteProfile_ID, null);
 			}
 
 			if(p_JP_DeleteProfile_ID==0 && (p_JP_Delete_Client.equals(TYPE_INITIALIZE_CLIENT)
@@ -217,7 +240,12 @@ public class JPiereDeleteClientRecords extends SvrProcess
 		addBufferLog(0, null, null, "Process Log", MTable.getTable_ID("AD_PInstance"), getAD_PInstance_ID());
 
 		processMonitor = Env.getProcessUI(getCtx());
+		m_Progress = new JPiereDeleteProgress(getAD_PInstance_ID(), p_LookupClientID, p_JP_Delete_Client, processMonitor);
+		slowStatementMillis = MSysConfig.getIntValue("JP_DELETE_SLOW_STATEMENT_MS", 60000);
+		isExplainAnalyze = MSysConfig.getBooleanValue("JP_DELETE_EXPLAIN_ANALYZE", false);
+		explainAnalyzeTimeoutMillis = MSysConfig.getIntValue("JP_DELETE_EXPLAIN_ANALYZE_TIMEOUT_MS", 10000);
 		StringBuilder message = new StringBuilder();
+		m_StatementCache = new JPiereStatementCache(get_TrxName());
 		try
 		{
 			executeUpdateConstraint("D");
@@ -227,6 +255,9 @@ public class JPiereDeleteClientRecords extends SvrProcess
 			TABLELIST_AD = createTableList_AD();
 
 			doBeforeCheck(p_JP_Delete_Client);
+			m_Progress.setPlan(getPlanTables(), get_TrxName());
+
+			createTemporaryIndexes();
 
 			String msg = beforJPiereDeleteProcess();
 			if(!Util.isEmpty(msg))
@@ -237,6 +268,7 @@ public class JPiereDeleteClientRecords extends SvrProcess
 				p_IsTruncateJP = false;
 				p_JP_DeleteProfile_ID = 0;
 				m_DeleteProfile = null;
+				m_DeletePlan = null;
 				msg = doDeleteClient();
 				if(!Util.isEmpty(msg))
 					message.append("-->Delete Client : "+ msg);
@@ -253,7 +285,7 @@ public class JPiereDeleteClientRecords extends SvrProcess
 					message.append("-->Initialize Client : "+ msg);
 			}else if(p_JP_Delete_Client.equals(TYPE_CUSTOM_DELETE)){
 				p_IsTruncateJP = false;
-				msg = doCustomDeleteProfile(m_DeleteProfile);
+				msg = doCustomDeleteProfile(m_DeletePlan);
 				if(!Util.isEmpty(msg))
 					message.append("-->Custom Delete : "+ msg);
 			}
@@ -279,8 +311,20 @@ public class JPiereDeleteClientRecords extends SvrProcess
 			}
 			throw new Exception(e.toString() + message.toString());
 		} finally {
-			executeUpdateConstraint("O");
-			commitEx();
+			if (log.isLoggable(Level.INFO)) log.info(m_StatementCache.getStatistics());
+			m_StatementCache.close();
+			try
+			{
+				executeUpdateConstraint("O");
+				commitEx();
+			}catch (RuntimeException e){
+				//The open transaction would block DROP INDEX CONCURRENTLY
+				rollback();
+				throw e;
+			} finally {
+				dropTemporaryIndexes();
+				m_Progress.finish();
+			}
 		}
 
 		if(Util.isEmpty(message.toString()))
@@ -312,7 +356,7 @@ public class JPiereDeleteClientRecords extends SvrProcess
 
 		createLog("", "", "##### DELETE U_RoleMenu Table that data  may be inconsistent #####", "", "", "",false);
 		ArrayList<Integer> AD_Role_IDs = getIDList("AD_Role_ID", "AD_Role", "AD_Client_ID = 0", TYPE_ALL_TRANSACTION);
-		executeDeleteSQL("U_RoleMenu", createWhereInIDs("AD_Role_ID", AD_Role_IDs, WHERE_NOT_IN), TYPE_ALL_TRANSACTION, false,"BEFORE_PROCESS");
+		executeDeleteSQL("U_RoleMenu", JPiereSQLBuilder.Where.inIDs("AD_Role_ID", AD_Role_IDs, WHERE_NOT_IN), TYPE_ALL_TRANSACTION, false,"BEFORE_PROCESS");
 		commitEx();
 		createLog("", "", "COMMIT", "", "", "",false);
 
@@ -334,8 +378,9 @@ public class JPiereDeleteClientRecords extends SvrProcess
 				(p_JP_Delete_Client.equals(TYPE_INITIALIZE_CLIENT) ||  p_JP_Delete_Client.equals(TYPE_DELETE_CLIENT)) )
 		{
 			createLog("", "", "### DELETE AD_Preference Table that data may be inconsistent ###", "", "", "",false);
-			ArrayList<Integer> AD_User_IDs = getIDList("AD_User_ID", "AD_User", "AD_Client_ID <> " + p_LookupClientID, TYPE_ALL_TRANSACTION);
-			executeDeleteSQL("AD_Preference", createWhereInIDs("AD_User_ID", AD_User_IDs, WHERE_NOT_IN) + " AND AD_Client_ID <> " + p_LookupClientID
+			JPiereSQLBuilder.Where otherClients = JPiereSQLBuilder.Where.notEqualsID("AD_Client_ID", p_LookupClientID);
+			ArrayList<Integer> AD_User_IDs = getIDList("AD_User_ID", "AD_User", otherClients, TYPE_ALL_TRANSACTION);
+			executeDeleteSQL("AD_Preference", JPiereSQLBuilder.Where.inIDs("AD_User_ID", AD_User_IDs, WHERE_NOT_IN).and(otherClients)
 																										, TYPE_ALL_TRANSACTION, false, "BEFORE_PROCESS");
 			commitEx();
 			createLog("", "", "COMMIT", "", "", "",false);
@@ -346,13 +391,13 @@ public class JPiereDeleteClientRecords extends SvrProcess
 		{
 			if(IorT_TABLE.startsWith("I_"))
 			{
-				executeDeleteSQL(IorT_TABLE, null, TYPE_ALL_TRANSACTION, false, "BEFORE_PROCESS");
+				executeDeleteSQL(IorT_TABLE, JPiereSQLBuilder.Where.NONE, TYPE_ALL_TRANSACTION, false, "BEFORE_PROCESS");
 				continue;
 			}
 
 			if(IorT_TABLE.startsWith("T_") && !IorT_TABLE.toUpperCase().equals("T_DeleteClientLogJP".toUpperCase()))
 			{
-				executeDeleteSQL(IorT_TABLE, null, TYPE_ALL_TRANSACTION, false, "BEFORE_PROCESS");
+				executeDeleteSQL(IorT_TABLE, JPiereSQLBuilder.Where.NONE, TYPE_ALL_TRANSACTION, false, "BEFORE_PROCESS");
 				continue;
 			}
 		}
@@ -420,7 +465,7 @@ public class JPiereDeleteClientRecords extends SvrProcess
 				}
 			}
 
-			ArrayList<Integer> C_AcctSchema_IDs = getIDList("C_AcctSchema_ID", "C_AcctSchema", null, TYPE_INITIALIZE_CLIENT);
+			ArrayList<Integer> C_AcctSchema_IDs = getIDList("C_AcctSchema_ID", "C_AcctSchema", JPiereSQLBuilder.Where.NONE, TYPE_INITIALIZE_CLIENT);
 			for(Integer C_AcctSchema_ID : C_AcctSchema_IDs)
 			{
 				MAcctSchema as = new MAcctSchema(getCtx(), C_AcctSchema_ID.intValue(), get_TrxName());
@@ -431,7 +476,7 @@ public class JPiereDeleteClientRecords extends SvrProcess
 				}
 			}
 
-			ArrayList<Integer>  M_CostType_IDs = getIDList(" M_CostType_ID", " M_CostType", null, TYPE_INITIALIZE_CLIENT);
+			ArrayList<Integer>  M_CostType_IDs = getIDList(" M_CostType_ID", " M_CostType", JPiereSQLBuilder.Where.NONE, TYPE_INITIALIZE_CLIENT);
 			for(Integer  M_CostType_ID :  M_CostType_IDs)
 			{
 				MCostType costType = new MCostType(getCtx(), M_CostType_ID.intValue(),get_TrxName());
@@ -463,26 +508,17 @@ public class JPiereDeleteClientRecords extends SvrProcess
 		createLog("", "", "### DELETE A CLIENT ###", "", "", "",true);
 
 		StringBuilder message = new StringBuilder("");
-		String[] exceptionTables ={};
-		String[] ExclusionTable = stringArray_Merge(TrxTables, exceptionTables);
+		String[] ExclusionTable = JPiereTableIndex.TRX_TABLES.toArray();
 
 		//Delete All Recond belong to Delete Client Except Transaction Tables.
 		addLog("##### DELETE ALL RECORDS BELONG TO DELETE CLIENT EXCEPT TRANSACTION TABLES #####");
 		createLog("", "", "##### DELETE ALL RECORDS BELONG TO DELETE CLIENT EXCEPT TRANSACTION TABLES #####", "", "", "",false);
-		boolean isContaine = false;
 		for(String AD_TABLE : TABLELIST_AD)
 		{
-			isContaine = false;
-			for(int i = 0; i < ExclusionTable.length; i++)
-			{
-				if(AD_TABLE.toUpperCase().equals(ExclusionTable[i].toUpperCase()))
-					isContaine = true;
-			}
-
-			if(isContaine)
+			if(m_TableIndex.isTrxTable(AD_TABLE))
 				continue;
 
-			int deletes = executeDeleteSQL(AD_TABLE, null, TYPE_DELETE_CLIENT, false, "DELETE_CLIENT");
+			int deletes = executeDeleteSQL(AD_TABLE, JPiereSQLBuilder.Where.NONE, TYPE_DELETE_CLIENT, false, "DELETE_CLIENT");
 			if(deletes==-1)
 			{
 				createLog("","","NOT FOUND: "+ AD_TABLE,"","","", true);
@@ -530,10 +566,10 @@ public class JPiereDeleteClientRecords extends SvrProcess
 		for(int i = 0; i< TrxTables.length; i++)
 		{
 
-			if(Tables_CustomDelete != null && stringArray_IsIN(Tables_CustomDelete, TrxTables[i]))
+			if(m_TableIndex.isCustomTable(TrxTables[i]))
 				continue;
 
-			int deletes = executeDeleteSQL(TrxTables[i], null, type, p_IsTruncateJP,"TRX_TABLE");
+			int deletes = executeDeleteSQL(TrxTables[i], JPiereSQLBuilder.Where.NONE, type, p_IsTruncateJP,"TRX_TABLE");
 
 			if(deletes==-1)
 			{
@@ -561,7 +597,7 @@ public class JPiereDeleteClientRecords extends SvrProcess
 				for(int i = 0; i< TrxTables.length; i++)
 				{
 					returnInt = bulkUpdate_canReferTableDirect(TrxTables[i], null, WHERE_NOT_IN, TREAT_IF_MANDATORY_DELETE_ELSE_NULL, 0
-							,stringArray_Merge(TrxTables,Tables_CustomDelete), WHERE_NOT_IN, type);
+							,m_TableIndex.getTrxAndCustomTables().toArray(), WHERE_NOT_IN, type);
 					bulkUpdate_Log(returnInt,TrxTables[i], DEBUG_BULK_UPDATE_LOG);
 				}
 				commitEx();
@@ -573,7 +609,7 @@ public class JPiereDeleteClientRecords extends SvrProcess
 				for(int i = 0; i< TrxTables.length; i++)
 				{
 					returnInt = bulkUpdate_canNotReferTableDirect(TrxTables[i], null, WHERE_NOT_IN, TREAT_IF_MANDATORY_DELETE_ELSE_NULL,0
-							,stringArray_Merge(TrxTables,Tables_CustomDelete), WHERE_NOT_IN, type);
+							,m_TableIndex.getTrxAndCustomTables().toArray(), WHERE_NOT_IN, type);
 					bulkUpdate_Log(returnInt,TrxTables[i], DEBUG_BULK_UPDATE_LOG);
 				}
 				commitEx();
@@ -585,33 +621,26 @@ public class JPiereDeleteClientRecords extends SvrProcess
 			createLog("", "", "##### INITIALIZE DOCUMENT NUMBER THAT ARE USED BY DOCUMENT TYPE ONLY #####", "", "", "",false);
 			ArrayList<Integer> DocSequenceList = getIDList("DocNoSequence_ID", "C_DocType", "DocNoSequence_ID is not null", p_JP_Delete_Client);
 
+			ArrayList<JPiereSQLBuilder.Statement> updateSequenceSQLs = new ArrayList<JPiereSQLBuilder.Statement>();
 			for(Integer AD_Sequence_ID:DocSequenceList)
 			{
-				String updateSequenceSQL = "UPDATE AD_Sequence SET CurrentNext = StartNo WHERE AD_Sequence_ID="+AD_Sequence_ID.toString();
-				PreparedStatement pstmt = null;
-				ResultSet rs = null;
-				int updates = 0;
-				try
-				{
-					pstmt = DB.prepareStatement(updateSequenceSQL, get_TrxName());
-					updates = pstmt.executeUpdate();
-					if(updates != 1)
-					{
-						createLog("AD_Sequence", null, "UPDETE Doc Sequence ERROR", updateSequenceSQL, "", "",false);
-					}
-				}
-				catch (SQLException e)
+				JPiereSQLBuilder.Statement updateSequenceSQL = JPiereSQLBuilder.updateSQL("UPDATE AD_Sequence SET CurrentNext = StartNo")
+						.where(JPiereSQLBuilder.Where.equalsID("AD_Sequence_ID", AD_Sequence_ID.intValue())).build();
+				m_StatementCache.addBatch(updateSequenceSQL);
+				updateSequenceSQLs.add(updateSequenceSQL);
+			}
+
+			int[] updates = m_StatementCache.executeBatch();
+			for(int i = 0; i < DocSequenceList.size(); i++)
+			{
+				if(updates[i] != 1)
 				{
-					log.log(Level.SEVERE, updateSequenceSQL, e);
-					throw new DBException(e, updateSequenceSQL);
-				} finally {
-					DB.close(rs, pstmt);
-					rs = null; pstmt = null;
+					createLog("AD_Sequence", null, "UPDETE Doc Sequence ERROR", updateSequenceSQLs.get(i).toString(), "", "",false);
 				}
 
-				MSequence m_sequence = new MSequence(getCtx(), AD_Sequence_ID.intValue(), null);
+				MSequence m_sequence = new MSequence(getCtx(), DocSequenceList.get(i).intValue(), null);
 				createLog("AD_Sequence", null, "RESET DOCNO - " + m_sequence.getName() + " : " + Msg.getElement(getCtx(), "CurrentNext") +" ---> " + m_sequence.getStartNo()
-						, updateSequenceSQL, "", "DOCUMENT_NUMBER",false);
+						, updateSequenceSQLs.get(i).toString(), "", "DOCUMENT_NUMBER",false);
 			}//for(Integer AD_Sequence_ID:DocSequenceList)
 
 			commitEx();
@@ -620,14 +649,14 @@ public class JPiereDeleteClientRecords extends SvrProcess
 
 			for(Integer AD_Sequence_ID:DocSequenceList)
 			{
-				executeDeleteSQL("AD_Sequence_No", "AD_Sequence_ID=" + AD_Sequence_ID.toString(), p_JP_Delete_Client, false, "DOCUMENT_NUMBER");
+				executeDeleteSQL("AD_Sequence_No", JPiereSQLBuilder.Where.equalsID("AD_Sequence_ID", AD_Sequence_ID.intValue()), p_JP_Delete_Client, false, "DOCUMENT_NUMBER");
 			}
 
 			commitEx();
 			createLog("", "", "COMMIT", "", "", "",false);
 
-			if(m_DeleteProfile != null && (p_JP_Delete_Client.equals(TYPE_ALL_TRANSACTION) || p_JP_Delete_Client.equals(TYPE_CLIENT_TRANSACTION)))
-				doCustomDeleteProfile(m_DeleteProfile);
+			if(m_DeletePlan != null && (p_JP_Delete_Client.equals(TYPE_ALL_TRANSACTION) || p_JP_Delete_Client.equals(TYPE_CLIENT_TRANSACTION)))
+				doCustomDeleteProfile(m_DeletePlan);
 
 		}//if(!p_JP_Delete_Client.equals(TYPE_DELETE_CLIENT))
 
@@ -644,10 +673,8 @@ public class JPiereDeleteClientRecords extends SvrProcess
 		commitEx();
 
 		//Reset Table+_ID
-		if(Tables_CustomDelete != null && (p_JP_Delete_Client.equals(TYPE_ALL_TRANSACTION) || p_JP_Delete_Client.equals(TYPE_CLIENT_TRANSACTION)))
-			doResetKeyID(stringArray_Merge(TrxTables, Tables_CustomDelete));
-		else if(Tables_CustomDelete == null && (p_JP_Delete_Client.equals(TYPE_ALL_TRANSACTION) || p_JP_Delete_Client.equals(TYPE_CLIENT_TRANSACTION)))
-			doResetKeyID(TrxTables);
+		if(p_JP_Delete_Client.equals(TYPE_ALL_TRANSACTION) || p_JP_Delete_Client.equals(TYPE_CLIENT_TRANSACTION))
+			doResetKeyID(m_TableIndex.getTrxAndCustomTables().toArray());
 		else
 			;//Nothing to do.
 
@@ -665,7 +692,7 @@ public class JPiereDeleteClientRecords extends SvrProcess
 	private String doInitializeClient()throws Exception
 	{
 		//Prepare
-		if(m_DeleteProfile == null || m_DeleteProfile.get_ID()==0)
+		if(m_DeleteProfile == null || m_DeleteProfile.getJP_DeleteProfile_ID()==0)
 		{
 			return Msg.getMsg(getCtx(), "NotFound") +" "+ Msg.getElement(getCtx(), "JP_DeleteProfile_ID");
 		}
@@ -684,59 +711,19 @@ public class JPiereDeleteClientRecords extends SvrProcess
 		for(String AD_TABLE : TABLELIST_AD)
 		{
 
-			boolean isContain = false;
-
 			//Check Transaction Table
-			for(int i = 0; i < TrxTables.length; i++)
-			{
-				if(TrxTables[i].toUpperCase().equals(AD_TABLE))
-				{
-					isContain = true;
-					break;
-				}
-			}
-
-			if(isContain) continue;
+			if(m_TableIndex.isTrxTable(AD_TABLE))
+				continue;
 
 			//Check Initialize Table
-			for(int i = 0; i < IniTables.length; i++)
-			{
-				if(IniTables[i].toUpperCase().equals(AD_TABLE))
-				{
-					isContain = true;
-
-					break;
-				}
-			}
-
-			if(isContain) continue;
+			if(m_TableIndex.isIniTable(AD_TABLE))
+				continue;
 
 			//Check Custom Delete Table
-			MCustomDeleteProfile[] customDPs = m_DeleteProfile.getCustomDeleteProfiles();
-			for(int i = 0; i < customDPs.length; i++)
-			{
-				if(customDPs[i].getAD_Table().getTableName().toUpperCase().equals(AD_TABLE))
-				{
-					isContain = true;
-					break;
-				}
-
-				MCustomDeleteProfileLine[] customDPLines= customDPs[i].getCustomDeleteProfileLines();
-				for(int j = 0; j < customDPLines.length; j++)
-				{
-					if(customDPLines[j].getAD_Table().getTableName().toUpperCase().equals(AD_TABLE))
-					{
-						isContain = true;
-						break;
-					}
-				}
-
-				if(isContain) break;
-			}
-
-			if(isContain) continue;
+			if(m_DeletePlan.isCustomDeleteTable(AD_TABLE))
+				continue;
 
-			int deletes =executeDeleteSQL(AD_TABLE, null, TYPE_INITIALIZE_CLIENT, false,"DELETE_OTEHR_TEBLES");
+			int deletes =executeDeleteSQL(AD_TABLE, JPiereSQLBuilder.Where.NONE, TYPE_INITIALIZE_CLIENT, false,"DELETE_OTEHR_TEBLES");
 			if(deletes==-1)
 			{
 				createLog("","","NOT FOUND: "+ AD_TABLE,"","","", true);
@@ -755,8 +742,9 @@ public class JPiereDeleteClientRecords extends SvrProcess
 		commitEx();
 		createLog("", "", "COMMIT", "", "", "",false);
 
-		Tables_DeleteAllRecords = stringArray_Merge(list_of_DeleteTables.toArray(new String[list_of_DeleteTables.size()]),TrxTables);
-		Tables_Not_DeleteAllRecords = stringArray_Subtraction(TABLELIST_AD.toArray(new String[TABLELIST_AD.size()]), Tables_DeleteAllRecords);
+		JPiereTableIndex.TableSet deleteAllRecords = new JPiereTableIndex.TableSet(list_of_DeleteTables).union(JPiereTableIndex.TRX_TABLES);
+		Tables_DeleteAllRecords = deleteAllRecords.toArray();
+		Tables_Not_DeleteAllRecords = new JPiereTableIndex.TableSet(TABLELIST_AD).minus(deleteAllRecords).toArray();
 
 		createLog("","","####### SPECIAL TREATMENT TABLES THAT ARE DELETED ALL DATA. REFERRED RECORDS DELETE. #######","","","", true);
 		for(String table : list_of_DeleteTables)
@@ -812,7 +800,7 @@ public class JPiereDeleteClientRecords extends SvrProcess
 		deleteProduct(m_DeleteProfile.getJP_M_Product_ID_Where());
 
 		//Delete Tables of Custom Delete Profile
-		doCustomDeleteProfile(m_DeleteProfile);
+		doCustomDeleteProfile(m_DeletePlan);
 
 		//Rest Table ID
 		doResetKeyID(TABLELIST_AD.toArray(new String[TABLELIST_AD.size()]));
@@ -823,77 +811,62 @@ public class JPiereDeleteClientRecords extends SvrProcess
 	/**
 	 * Do Delete Custom Profile
 	 *
-	 * @param deleteProfile
+	 * @param deletePlan
 	 * @return
 	 * @throws Exception
 	 */
-	private String doCustomDeleteProfile(MDeleteProfile deleteProfile) throws Exception
+	private String doCustomDeleteProfile(JPiereDeletePlan deletePlan) throws Exception
 	{
+		if(deletePlan == null)
+			return Msg.getMsg(getCtx(), "NotFound") +" "+ Msg.getElement(getCtx(), "JP_DeleteProfile_ID");
+
 		addLog("### DELETE TABLES OF CUSTOM DELETE PROFILE ###");
 		createLog("", "", "### DELETE TABLES OF CUSTOM DELETE PROFILE ###", "", "", "",true);
 
-		MCustomDeleteProfile[] customDeleteProfiles = deleteProfile.getCustomDeleteProfiles();
 		int returnInt = 0;
-		MTable m_Table = null;
-		for(int i = 0; i < customDeleteProfiles.length; i++)
+		for(JPiereDeletePlan.Step step : deletePlan.getSteps())
 		{
-			JP_CustomDeleteProfile_ID =customDeleteProfiles[i].get_ID();//for logging
-			m_Table = MTable.get(getCtx(), customDeleteProfiles[i].getAD_Table_ID());
-			if(m_Table.columnExistsInDictionary("EntityType"))
+			JP_CustomDeleteProfile_ID = step.JP_CustomDeleteProfile_ID;//for logging
+			String tableName = step.tableName;
+			if(step.isDictionaryTable)
 			{
-				createLog("","","##### DON'T DELETE " + m_Table.getTableName() + " #####", "","",Msg.getMsg(getCtx(), "JP_Delete_ADTable"), false);
+				createLog("","","##### DON'T DELETE " + tableName + " #####", "","",Msg.getMsg(getCtx(), "JP_Delete_ADTable"), false);
 				continue;
 			}
-			
-			if(customDeleteProfiles[i].isDeleteDataNotUseJP())
+
+			if(step.isDeleteDataNotUse)
 			{
-				createLog("","","##### DELETE " + m_Table.getTableName() + " RECORDS THAT ARE NOTE USED #####", "","","", true);
-				returnInt = bulkDelete_NotUseRecords(m_Table.getTableName(), deleteProfile.getJP_Delete_Client());
-				bulkUpdate_Log(returnInt, m_Table.getTableName(), DEBUG_BULK_UPDATE_LOG);
+				createLog("","","##### DELETE " + tableName + " RECORDS THAT ARE NOTE USED #####", "","","", true);
+				returnInt = bulkDelete_NotUseRecords(tableName, deletePlan.getJP_Delete_Client());
+				bulkUpdate_Log(returnInt, tableName, DEBUG_BULK_UPDATE_LOG);
 
 			}else{
 
-				if(deleteProfile.getJP_Delete_Client().equals(TYPE_ALL_TRANSACTION) && p_IsTruncateJP) //TRUNCATE
+				if(deletePlan.getJP_Delete_Client().equals(TYPE_ALL_TRANSACTION) && p_IsTruncateJP) //TRUNCATE
 				{
-					String tableName = m_Table.getTableName();
-					executeDeleteSQL(tableName, null, TYPE_ALL_TRANSACTION, true,"CUSTOM_TABLE_TRUNCATE");
+					executeDeleteSQL(tableName, JPiereSQLBuilder.Where.NONE, TYPE_ALL_TRANSACTION, true,"CUSTOM_TABLE_TRUNCATE");
 
 				}else{
 
-					if(Util.isEmpty(customDeleteProfiles[i].getWhereClause()))
+					if(Util.isEmpty(step.whereClause))
 					{
-						createLog("","","##### DON'T DELETE " + m_Table.getTableName() + " #####", "","","", false);
+						createLog("","","##### DON'T DELETE " + tableName + " #####", "","","", false);
 						continue;
 					}else{
-						createLog("","","##### DELETE " + m_Table.getTableName() + " #####", "","","", true);
-					}
-
-					MCustomDeleteProfileLine[] m_ProfileLines = customDeleteProfiles[i].getCustomDeleteProfileLines();
-					ArrayList<String> list_of_excludeTables = new ArrayList<String>();
-					for(int j = 0; j < m_ProfileLines.length; j++)
-					{
-						list_of_excludeTables.add(m_ProfileLines[j].getAD_Table().getTableName());
+						createLog("","","##### DELETE " + tableName + " #####", "","","", true);
 					}
-					String[] excludeTables=list_of_excludeTables.toArray(new String[list_of_excludeTables.size()]);
-					String tableName = m_Table.getTableName();
-					ArrayList<Integer> IDs = getIDList(tableName+"_ID", tableName, customDeleteProfiles[i].getWhereClause(), deleteProfile.getJP_Delete_Client());
-					String treat = customDeleteProfiles[i].getJP_TreatForeignKey();
-					int value = customDeleteProfiles[i].getJP_ForeignKey_Value();
 
+					ArrayList<Integer> IDs = getIDList(step.keyColumn, tableName, step.whereClause, deletePlan.getJP_Delete_Client());
 
-					executeDeleteSQL(tableName, createWhereInIDs(tableName+"_ID", IDs, WHERE_NOT_IN), deleteProfile.getJP_Delete_Client(), p_IsTruncateJP,"CUSTOM_TABLE_DELETE");
-					bulkUpdate_canReferTableDirect(tableName, IDs, WHERE_NOT_IN, treat, value, excludeTables, WHERE_NOT_IN, deleteProfile.getJP_Delete_Client());
-					bulkUpdate_canNotReferTableDirect(tableName, IDs, WHERE_NOT_IN, treat, value, excludeTables, WHERE_NOT_IN, deleteProfile.getJP_Delete_Client());
+					executeDeleteSQL(tableName, JPiereSQLBuilder.Where.inIDs(step.keyColumn, IDs, WHERE_NOT_IN), deletePlan.getJP_Delete_Client(), p_IsTruncateJP,"CUSTOM_TABLE_DELETE");
+					bulkUpdate_canReferTableDirect(tableName, IDs, WHERE_NOT_IN, step.treat, step.value, step.excludeTables, WHERE_NOT_IN, deletePlan.getJP_Delete_Client());
+					bulkUpdate_canNotReferTableDirect(tableName, IDs, WHERE_NOT_IN, step.treat, step.value, step.excludeTables, WHERE_NOT_IN, deletePlan.getJP_Delete_Client());
 
-					for(int j = 0; j < m_ProfileLines.length; j++)
+					for(JPiereDeletePlan.LineStep line : step.lines)
 					{
-						JP_CustomDeleteProfileLine_ID = m_ProfileLines[j].get_ID();//for logging
-						String lineTableName = m_ProfileLines[j].getAD_Table().getTableName();
-						String linkColumn =  m_ProfileLines[j].getAD_Column().getColumnName();
-						String lineTreat = m_ProfileLines[j].getJP_TreatForeignKey();
-						int lineValue =  m_ProfileLines[j].getJP_ForeignKey_Value();
-						executeUpdateSQL(lineTableName, linkColumn, lineTreat, lineValue
-								, createWhereInIDs(linkColumn, IDs, WHERE_NOT_IN), deleteProfile.getJP_Delete_Client(),"CUSTOM_TABLE_LINE_UPDATE");
+						JP_CustomDeleteProfileLine_ID = line.JP_CustomDeleteProfileLine_ID;//for logging
+						executeUpdateSQL(line.tableName, line.columnName, line.treat, line.value
+								, JPiereSQLBuilder.Where.inIDs(line.columnName, IDs, WHERE_NOT_IN), deletePlan.getJP_Delete_Client(),"CUSTOM_TABLE_LINE_UPDATE");
 					}//for
 				}
 				JP_CustomDeleteProfileLine_ID = 0;//for logging
@@ -906,6 +879,23 @@ public class JPiereDeleteClientRecords extends SvrProcess
 	}
 
 
+	/**
+	 * Tables that are deleted by the main loop of the process type. Used for progress and ETA.
+	 *
+	 * @return Table Names
+	 */
+	private Iterable<String> getPlanTables()
+	{
+		if(p_JP_Delete_Client.equals(TYPE_DELETE_CLIENT))
+			return new JPiereTableIndex.TableSet(TABLELIST_AD).minus(JPiereTableIndex.TRX_TABLES);
+		else if(p_JP_Delete_Client.equals(TYPE_ALL_TRANSACTION) || p_JP_Delete_Client.equals(TYPE_CLIENT_TRANSACTION))
+			return m_TableIndex.getTrxAndCustomTables();
+		else if(p_JP_Delete_Client.equals(TYPE_CUSTOM_DELETE))
+			return m_TableIndex.getCustomTables();
+		else
+			return TABLELIST_AD;
+	}
+
 	/**
 	 * Reset Table_ID
 	 *
@@ -939,28 +929,37 @@ public class JPiereDeleteClientRecords extends SvrProcess
 					StringBuilder msg = new StringBuilder("RESET ID - " + tableNames[i]+" : "+Msg.getElement(getCtx(), "CurrentNext")
 							+" : "+seq.getCurrentNext()+"----->");
 
+					int currentNext = seq.getCurrentNext();
 					int maxID = getMaxPrimaryKey_ID(tableNames[i]);
 					if(maxID < 1) //maxID = 0;
 					{
-						seq.setCurrentNext(seq.getStartNo());
-						seq.saveEx(get_TrxName());
+						currentNext = seq.getStartNo();
 					}else if(maxID < 1000000){
 						;//Nothing to do;
 					}else{
-						seq.setCurrentNext(maxID + seq.getIncrementNo());
-						seq.saveEx(get_TrxName());
+						currentNext = maxID + seq.getIncrementNo();
 					}
 
-					msg.append(seq.getCurrentNext());
+					//Sequences are updated with one batch after the loop
+					if(currentNext != seq.getCurrentNext())
+					{
+						m_StatementCache.addBatch(JPiereSQLBuilder.updateSQL("UPDATE AD_Sequence SET CurrentNext = ?, Updated = now(), UpdatedBy = ?", currentNext, getAD_User_ID())
+								.where(JPiereSQLBuilder.Where.equalsID("AD_Sequence_ID", seq.get_ID())).build());
+					}
+
+					msg.append(currentNext);
 					createLog(tableNames[i], null, msg.toString(), null, null,
 							"Max ID = " + maxID +" # " + Msg.getElement(getCtx(), "StartNo") + " = " + seq.getStartNo() +" # " +
 								Msg.getElement(getCtx(), "IncrementNo") + " = " +  seq.getIncrementNo() +" # "  +
-									Msg.getElement(getCtx(), "CurrentNext") + " = " +  seq.getCurrentNext(),false);
+									Msg.getElement(getCtx(), "CurrentNext") + " = " +  currentNext,false);
 
 				}
 			}
 		}
 
+		m_StatementCache.executeBatch();
+		CacheMgt.get().reset(MSequence.Table_Name);
+
 		return true;
 	}//Reset Table_ID
 
@@ -987,58 +986,34 @@ public class JPiereDeleteClientRecords extends SvrProcess
 
 		for(String AD_TABLE : TABLELIST_AD)
 		{
-			beforDeleteTableInfo.put(AD_TABLE.toUpperCase(), countRecords(AD_TABLE, null, TYPE_ALL_TRANSACTION));
+			beforDeleteTableInfo.put(AD_TABLE.toUpperCase(), countRecords(AD_TABLE, JPiereSQLBuilder.Where.NONE, TYPE_ALL_TRANSACTION));
 		}
 
+		JPiereTableIndex.TableSet adTables = new JPiereTableIndex.TableSet(TABLELIST_AD);
+		JPiereTableIndex.TableSet dbTables = new JPiereTableIndex.TableSet(TABLELIST_DB);
+		ArrayList<String> allTableNames = new ArrayList<String>();
+		for(int i = 0; i < AD_TABLE_Alls.length; i++)
+			allTableNames.add(AD_TABLE_Alls[i].getTableName());
+		JPiereTableIndex.TableSet allTables = new JPiereTableIndex.TableSet(allTableNames);
+
 		ArrayList<String> NotHave_AD_Client_ID = new ArrayList<String>();
-		boolean isContain = false;
 		for(int i = 0; i < AD_TABLE_Alls.length; i++)
 		{
-			isContain = false;
-			for(String AD_TABLE : TABLELIST_AD)
-			{
-				if(AD_TABLE_Alls[i].getTableName().toUpperCase().equals(AD_TABLE))
-				{
-					isContain=true;
-					break;
-				}
-			}
-
-			if(!isContain)
+			if(!adTables.contains(AD_TABLE_Alls[i].getTableName()))
 				NotHave_AD_Client_ID.add(AD_TABLE_Alls[i].getTableName());
 		}
 
 		ArrayList<String> Not_IN_AD = new ArrayList<String>();
 		for(String DB_TABLE : TABLELIST_DB)
 		{
-			isContain = false;
-			for(int i = 0; i < AD_TABLE_Alls.length; i++)
-			{
-				if(DB_TABLE.equals(AD_TABLE_Alls[i].getTableName().toUpperCase()))
-				{
-					isContain=true;
-					break;
-				}
-			}
-
-			if(!isContain)
+			if(!allTables.contains(DB_TABLE))
 				Not_IN_AD.add(DB_TABLE);
 		}
 
 		ArrayList<String> Not_IN_DB = new ArrayList<String>();
 		for(int i = 0; i < AD_TABLE_Alls.length; i++)
 		{
-			isContain = false;
-			for(String DB_TABLE : TABLELIST_DB)
-			{
-				if(AD_TABLE_Alls[i].getTableName().toUpperCase().equals(DB_TABLE))
-				{
-					isContain=true;
-					break;
-				}
-			}
-
-			if(!isContain)
+			if(!dbTables.contains(AD_TABLE_Alls[i].getTableName()))
 				Not_IN_DB.add(AD_TABLE_Alls[i].getTableName());
 		}
 
@@ -1086,17 +1061,7 @@ public class JPiereDeleteClientRecords extends SvrProcess
 		{
 			for(int i = 0; i < TrxTables.length; i++)
 			{
-				isContain = false;
-				for(String table : TABLELIST_AD)
-				{
-					if(TrxTables[i].toUpperCase().equals(table))
-					{
-						isContain = true;
-						break;
-					}
-				}
-
-				if(isContain)
+				if(adTables.contains(TrxTables[i]))
 					deleteTrxTableList.add(TrxTables[i]);
 				else
 					unexpectedTrxTableList.add(TrxTables[i]);
@@ -1114,17 +1079,7 @@ public class JPiereDeleteClientRecords extends SvrProcess
 		{
 			for(int i = 0; i < IniTables.length; i++)
 			{
-				isContain = false;
-				for(String table : TABLELIST_AD)
-				{
-					if(IniTables[i].toUpperCase().equals(table))
-					{
-						isContain = true;
-						break;
-					}
-				}
-
-				if(isContain)
+				if(adTables.contains(IniTables[i]))
 					deleteIniTableList.add(IniTables[i]);
 				else
 					unexpectedIniTableList.add(IniTables[i]);
@@ -1136,21 +1091,14 @@ public class JPiereDeleteClientRecords extends SvrProcess
 		}
 
 
-		if(m_DeleteProfile != null && !type.equals(TYPE_DELETE_CLIENT))
+		if(m_DeletePlan != null && !type.equals(TYPE_DELETE_CLIENT))
 		{
-			MCustomDeleteProfile[] customDPs = m_DeleteProfile.getCustomDeleteProfiles();
+			Tables_CustomDelete = m_DeletePlan.getCustomDeleteTables();
+			m_TableIndex = m_DeletePlan.getTableIndex();
 			ArrayList<String> customDeleteTableList = new ArrayList<String>();
-			for(int i = 0; i < customDPs.length; i++)
-			{
-				customDeleteTableList.add(customDPs[i].getAD_Table().getTableName());
-				MCustomDeleteProfileLine[] customDPLines= customDPs[i].getCustomDeleteProfileLines();
-				for(int j = 0; j < customDPLines.length; j++)
-				{
-					customDeleteTableList.add(customDPLines[j].getAD_Table().getTableName());
-				}
-			}
+			for(String table : Tables_CustomDelete)
+				customDeleteTableList.add(table);
 
-			Tables_CustomDelete = customDeleteTableList.toArray(new String[customDeleteTableList.size()]);
 			msg = "Custom Delete Tables are " + Tables_CustomDelete.length + ". ";
 			addLog(msg);
 			createLog("", "", msg +" " + ArrayListToString(customDeleteTableList) +". " , "", "", "", false);
@@ -1158,15 +1106,8 @@ public class JPiereDeleteClientRecords extends SvrProcess
 			if(type.equals(TYPE_ALL_TRANSACTION) || type.equals(TYPE_CLIENT_TRANSACTION))
 			{
 				ArrayList<String> commonTables = new ArrayList<String>();
-				for(int i = 0; i <TrxTables.length; i++)
-				{
-					if(stringArray_IsIN(Tables_CustomDelete, TrxTables[i]))
-					{
-						commonTables.add(TrxTables[i]);
-					}else{
-						;
-					}
-				}
+				for(String table : JPiereTableIndex.TRX_TABLES.intersect(m_TableIndex.getCustomTables()))
+					commonTables.add(table);
 
 				msg = "Tables that are included in Transaction Tables and Custom Tables are " +  commonTables.size()
 						+ " " + ArrayListToString(commonTables) +". ";
@@ -1176,15 +1117,8 @@ public class JPiereDeleteClientRecords extends SvrProcess
 
 			}else if(type.equals(TYPE_INITIALIZE_CLIENT)){
 				ArrayList<String> commonTables = new ArrayList<String>();
-				for(int i = 0; i <IniTables.length; i++)
-				{
-					if(stringArray_IsIN(Tables_CustomDelete, IniTables[i]))
-					{
-						commonTables.add(IniTables[i]);
-					}else{
-						;
-					}
-				}
+				for(String table : JPiereTableIndex.INI_TABLES.intersect(m_TableIndex.getCustomTables()))
+					commonTables.add(table);
 
 				msg =  "Tables that are included in Initialize Tables and Custom Tables are "  +  commonTables.size()+". ";
 				addLog(msg);
@@ -1213,67 +1147,64 @@ public class JPiereDeleteClientRecords extends SvrProcess
 
 		String[] checkTables = null;
 		if(type.equals(TYPE_CLIENT_TRANSACTION) || type.equals(TYPE_ALL_TRANSACTION))
-			checkTables = Tables_CustomDelete == null ? TrxTables : stringArray_Merge(TrxTables, Tables_CustomDelete);
+			checkTables = m_TableIndex.getTrxAndCustomTables().toArray();
 		else if(Tables_CustomDelete != null && type.equals(TYPE_CUSTOM_DELETE)  )
 			checkTables = Tables_CustomDelete;
 		else
 			checkTables = TABLELIST_AD.toArray(new String[TABLELIST_AD.size()]);
 
+		JPiereTableIndex.TableSet adTables = new JPiereTableIndex.TableSet(TABLELIST_AD);
 		for(int i = 0; i < checkTables.length; i++)
 		{
-			for(String AD_TABLE : TABLELIST_AD)
+			if(!adTables.contains(checkTables[i]))
+				continue;
+
+			int countsALL =countRecords(checkTables[i], JPiereSQLBuilder.Where.NONE, TYPE_ALL_TRANSACTION);
+			int countsClient =countRecords(checkTables[i], JPiereSQLBuilder.Where.NONE, TYPE_DELETE_CLIENT);
+
+			if(countsClient < 0)
 			{
-				if(checkTables[i].toUpperCase().equals(AD_TABLE))
+				createLog("","","Error: unexpected Table: " + checkTables[i], "","","", true);
+				UnexpectedTableList.add(checkTables[i]);
+			}else{
+				int beforeRecords = beforDeleteTableInfo.get(checkTables[i].toUpperCase()).intValue();
+				if(m_TableIndex.isTrxTable(checkTables[i]) || type.equals(TYPE_DELETE_CLIENT))
 				{
-					int countsALL =countRecords(checkTables[i], null, TYPE_ALL_TRANSACTION);
-					int countsClient =countRecords(checkTables[i], null, TYPE_DELETE_CLIENT);
-
-					if(countsClient < 0)
+					boolean isOK = false;
+					if(type.equals(TYPE_ALL_TRANSACTION))
 					{
-						createLog("","","Error: unexpected Table: " + checkTables[i], "","","", true);
-						UnexpectedTableList.add(checkTables[i]);
+						if(countsALL == 0)
+							isOK = true;
 					}else{
-						int beforeRecords = beforDeleteTableInfo.get(checkTables[i].toUpperCase()).intValue();
-						if(stringArray_IsIN(TrxTables, checkTables[i]) || type.equals(TYPE_DELETE_CLIENT))
-						{
-							boolean isOK = false;
-							if(type.equals(TYPE_ALL_TRANSACTION))
-							{
-								if(countsALL == 0)
-									isOK = true;
-							}else{
-								if(countsClient==0)
-									isOK = true;
-							}
+						if(countsClient==0)
+							isOK = true;
+					}
 
-							createLog(checkTables[i], null,
-									"CHECK - " + checkTables[i] + "  -->"
-											+ (type.equals(TYPE_ALL_TRANSACTION) ? "" : "Client Records : " + countsClient)
-											+ ", Deleted Records : " + (beforeRecords-countsALL)
-											+ ", Before Records : " + beforeRecords
-											+ ", Remain Records : " + countsALL
-									, null, null, isOK ? "OK" : "NG"
-									,false
-									);
-						}else{
-							createLog(checkTables[i], null,
-									"CHECK - " + checkTables[i] + "  -->"
-											+ (type.equals(TYPE_ALL_TRANSACTION) ? "" : "Client Records : " + countsClient)
-											+ ", Deleted Records : " + (beforeRecords-countsALL)
-											+ ", Before Records : " + beforeRecords
-											+ ", Remain Records : " + countsALL
-									, null, null, null,false);
-						}
+					createLog(checkTables[i], null,
+							"CHECK - " + checkTables[i] + "  -->"
+									+ (type.equals(TYPE_ALL_TRANSACTION) ? "" : "Client Records : " + countsClient)
+									+ ", Deleted Records : " + (beforeRecords-countsALL)
+									+ ", Before Records : " + beforeRecords
+									+ ", Remain Records : " + countsALL
+							, null, null, isOK ? "OK" : "NG"
+							,false
+							);
+				}else{
+					createLog(checkTables[i], null,
+							"CHECK - " + checkTables[i] + "  -->"
+									+ (type.equals(TYPE_ALL_TRANSACTION) ? "" : "Client Records : " + countsClient)
+									+ ", Deleted Records : " + (beforeRecords-countsALL)
+									+ ", Before Records : " + beforeRecords
+									+ ", Remain Records : " + countsALL
+							, null, null, null,false);
+				}
 
-						if(type.equals(TYPE_DELETE_CLIENT) && countsClient > 0)
-						{
-							RemainRecordsTableList.add(checkTables[i]);
-						}
-					}
+				if(type.equals(TYPE_DELETE_CLIENT) && countsClient > 0)
+				{
+					RemainRecordsTableList.add(checkTables[i]);
+				}
+			}
 
-					break;
-				}//if
-			}//for
 		}//for i
 
 
@@ -1345,7 +1276,7 @@ public class JPiereDeleteClientRecords extends SvrProcess
 		createLog("","","####### UPDATE ORG BEFORE DELETE #######", "","","", true);
 
 		//C_BPartner.AD_OrgBP_ID
-		executeUpdateSQL("C_BPartner", "AD_OrgBP_ID", TREAT_SET_NULL, 0, createWhereInIDs("AD_OrgBP_ID", AD_Org_IDs, WHERE_NOT_IN), TYPE_INITIALIZE_CLIENT);
+		executeUpdateSQL("C_BPartner", "AD_OrgBP_ID", TREAT_SET_NULL, 0, JPiereSQLBuilder.Where.inIDs("AD_OrgBP_ID", AD_Org_IDs, WHERE_NOT_IN), TYPE_INITIALIZE_CLIENT);
 
 		//Account Schemas
 		MAcctSchema[] acctSchemas = MAcctSchema.getClientAcctSchema(getCtx(), p_LookupClientID);
@@ -1369,7 +1300,7 @@ public class JPiereDeleteClientRecords extends SvrProcess
 				if(!isContain)
 				{
 					int as_ID = acctSchemas[i].getC_AcctSchema_ID();
-					executeDeleteSQL("C_AcctSchema", "C_AcctSchema_ID = "+as_ID, TYPE_INITIALIZE_CLIENT, false, "DELETE_ACCTSCHEMA");
+					executeDeleteSQL("C_AcctSchema", JPiereSQLBuilder.Where.equalsID("C_AcctSchema_ID", as_ID), TYPE_INITIALIZE_CLIENT, false, "DELETE_ACCTSCHEMA");
 
 					ArrayList<Integer>  list_of_as_ID = new ArrayList<Integer> ();
 					list_of_as_ID.add(as_ID);
@@ -1444,14 +1375,14 @@ public class JPiereDeleteClientRecords extends SvrProcess
 		bulkUpdate_Log(returnInt, "AD_Org", DEBUG_BULK_UPDATE_LOG);
 
 		createLog("","","####### DELETE AD_Org TABLE #######", "","","", true);
-		executeDeleteSQL("AD_Org", createWhereInIDs("AD_Org_ID", AD_Org_IDs, WHERE_NOT_IN), TYPE_INITIALIZE_CLIENT, false,"DELETE_ORG");
+		executeDeleteSQL("AD_Org", JPiereSQLBuilder.Where.inIDs("AD_Org_ID", AD_Org_IDs, WHERE_NOT_IN), TYPE_INITIALIZE_CLIENT, false,"DELETE_ORG");
 
 		commitEx();
 		createLog("", "", "COMMIT", "", "", "",false);
 
 		//Bank Account
 		createLog("","","####### DELETE RECORDS OR SET NULL TO FK COLUMN THAT REFFERED RECORD OF C_BANKACCOUNT TABLE #######", "","","", true);
-		ArrayList<Integer> C_BankAccount_IDs= getIDList("C_BankAccount_ID", "C_BankAccount", null, TYPE_INITIALIZE_CLIENT);
+		ArrayList<Integer> C_BankAccount_IDs= getIDList("C_BankAccount_ID", "C_BankAccount", JPiereSQLBuilder.Where.NONE, TYPE_INITIALIZE_CLIENT);
 		returnInt = bulkUpdate_canReferTableDirect("C_BankAccount", C_BankAccount_IDs, WHERE_NOT_IN, TREAT_IF_MANDATORY_DELETE_ELSE_NULL, 0
 				,null, WHERE_IN, TYPE_INITIALIZE_CLIENT);
 		bulkUpdate_Log(returnInt, "C_BankAccount", DEBUG_BULK_UPDATE_LOG);
@@ -1483,7 +1414,7 @@ public class JPiereDeleteClientRecords extends SvrProcess
 		ArrayList<Integer> AD_Role_IDs = getIDList("AD_Role_ID", "AD_Role", where, TYPE_INITIALIZE_CLIENT);
 		AD_Role_IDs.add(0);//System Administrator
 
-		executeDeleteSQL("PA_DashboardPreference", createWhereInIDs("AD_Role_ID", AD_Role_IDs, WHERE_NOT_IN), TYPE_INITIALIZE_CLIENT, false,"DELETE_USER");
+		executeDeleteSQL("PA_DashboardPreference", JPiereSQLBuilder.Where.inIDs("AD_Role_ID", AD_Role_IDs, WHERE_NOT_IN), TYPE_INITIALIZE_CLIENT, false,"DELETE_USER");
 
 		String[] tables = {
 				"AD_WF_Responsible","PA_DashboardPreference"
@@ -1502,7 +1433,7 @@ public class JPiereDeleteClientRecords extends SvrProcess
 				, stringArray_Subtraction(Tables_Not_DeleteAllRecords, tables), WHERE_IN, TYPE_INITIALIZE_CLIENT);
 		bulkUpdate_Log(returnInt, "AD_Role", DEBUG_BULK_UPDATE_LOG);
 
-		executeDeleteSQL("AD_Role", createWhereInIDs("AD_Role_ID", AD_Role_IDs, WHERE_NOT_IN), TYPE_INITIALIZE_CLIENT, false, "DELETE_ROLE");
+		executeDeleteSQL("AD_Role", JPiereSQLBuilder.Where.inIDs("AD_Role_ID", AD_Role_IDs, WHERE_NOT_IN), TYPE_INITIALIZE_CLIENT, false, "DELETE_ROLE");
 
 		return "";
 	}
@@ -1528,9 +1459,9 @@ public class JPiereDeleteClientRecords extends SvrProcess
 		for(String AD_TABLE : TABLELIST_AD)
 		{
 			if(hasColumn("CreatedBy",AD_TABLE))
-				executeUpdateSQL(AD_TABLE, "CreatedBy", TREAT_SET_VALUE, 100, null, TYPE_INITIALIZE_CLIENT);
+				executeUpdateSQL(AD_TABLE, "CreatedBy", TREAT_SET_VALUE, 100, JPiereSQLBuilder.Where.NONE, TYPE_INITIALIZE_CLIENT);
 			if(hasColumn("UpdatedBy",AD_TABLE))
-				executeUpdateSQL(AD_TABLE, "UpdatedBy", TREAT_SET_VALUE, 100, null, TYPE_INITIALIZE_CLIENT);
+				executeUpdateSQL(AD_TABLE, "UpdatedBy", TREAT_SET_VALUE, 100, JPiereSQLBuilder.Where.NONE, TYPE_INITIALIZE_CLIENT);
 		}
 
 		ArrayList<Integer> AD_User_IDs = getIDList("AD_User_ID", "AD_User", where, TYPE_INITIALIZE_CLIENT);
@@ -1539,9 +1470,9 @@ public class JPiereDeleteClientRecords extends SvrProcess
 
 		createLog("", "", "####### DELETE PREFERENCE #######","","","",true);
 		//AD_Preference
-		executeDeleteSQL("AD_Preference", createWhereInIDs("AD_User_ID", AD_User_IDs, WHERE_NOT_IN), TYPE_INITIALIZE_CLIENT, false,"DELETE_USER");
-		executeDeleteSQL("PA_DashboardPreference", createWhereInIDs("AD_User_ID", AD_User_IDs, WHERE_NOT_IN), TYPE_INITIALIZE_CLIENT, false,"DELETE_USER");
-		executeDeleteSQL("AD_Password_History", createWhereInIDs("AD_User_ID", AD_User_IDs, WHERE_NOT_IN), TYPE_INITIALIZE_CLIENT, false,"DELETE_USER");
+		executeDeleteSQL("AD_Preference", JPiereSQLBuilder.Where.inIDs("AD_User_ID", AD_User_IDs, WHERE_NOT_IN), TYPE_INITIALIZE_CLIENT, false,"DELETE_USER");
+		executeDeleteSQL("PA_DashboardPreference", JPiereSQLBuilder.Where.inIDs("AD_User_ID", AD_User_IDs, WHERE_NOT_IN), TYPE_INITIALIZE_CLIENT, false,"DELETE_USER");
+		executeDeleteSQL("AD_Password_History", JPiereSQLBuilder.Where.inIDs("AD_User_ID", AD_User_IDs, WHERE_NOT_IN), TYPE_INITIALIZE_CLIENT, false,"DELETE_USER");
 
 		String[] tables = {
 				"AD_Preference","PA_DashboardPreference","AD_Password_History"
@@ -1560,7 +1491,7 @@ public class JPiereDeleteClientRecords extends SvrProcess
 		bulkUpdate_Log(returnInt, "AD_User", DEBUG_BULK_UPDATE_LOG);
 
 		createLog("", "", "####### DELETE AD_User TABLE #######","","","",true);
-		executeDeleteSQL("AD_User", createWhereInIDs("AD_User_ID", AD_User_IDs, WHERE_NOT_IN), TYPE_INITIALIZE_CLIENT, false,"DELETE_USER");
+		executeDeleteSQL("AD_User", JPiereSQLBuilder.Where.inIDs("AD_User_ID", AD_User_IDs, WHERE_NOT_IN), TYPE_INITIALIZE_CLIENT, false,"DELETE_USER");
 
 		return "";
 	}
@@ -1587,7 +1518,7 @@ public class JPiereDeleteClientRecords extends SvrProcess
 				, Tables_Not_DeleteAllRecords, WHERE_IN, TYPE_INITIALIZE_CLIENT);
 		bulkUpdate_Log(returnInt, "C_BPartner", DEBUG_BULK_UPDATE_LOG);
 
-		executeDeleteSQL("C_BPartner", createWhereInIDs("C_BPartner_ID", C_BP_IDs, WHERE_NOT_IN), TYPE_INITIALIZE_CLIENT, false, "DELETE_BP");
+		executeDeleteSQL("C_BPartner", JPiereSQLBuilder.Where.inIDs("C_BPartner_ID", C_BP_IDs, WHERE_NOT_IN), TYPE_INITIALIZE_CLIENT, false, "DELETE_BP");
 
 		return "";
 	}
@@ -1618,11 +1549,112 @@ public class JPiereDeleteClientRecords extends SvrProcess
 				, stringArray_Subtraction(Tables_Not_DeleteAllRecords, tables), WHERE_IN, TYPE_INITIALIZE_CLIENT);
 		bulkUpdate_Log(returnInt, "M_Product", DEBUG_BULK_UPDATE_LOG);
 
-		executeDeleteSQL("M_Product", createWhereInIDs("M_Product_ID", M_Product_IDs, WHERE_NOT_IN), TYPE_INITIALIZE_CLIENT, false, "DELETE_PRODUCT");
+		executeDeleteSQL("M_Product", JPiereSQLBuilder.Where.inIDs("M_Product_ID", M_Product_IDs, WHERE_NOT_IN), TYPE_INITIALIZE_CLIENT, false, "DELETE_PRODUCT");
 
 		return "";
 	}
 
+	/***************(Temporary Index)***************/
+	/**
+	 * Create temporary indexes for FK columns that refer the tables of this run
+	 * and that have no index on large tables.
+	 * The transaction is committed before, because CREATE INDEX CONCURRENTLY can not run in a transaction block.
+	 */
+	private void createTemporaryIndexes()
+	{
+		if(!JPiereTemporaryIndexAdvisor.isEnabled())
+			return;
+
+		if(p_JP_Delete_Client.equals(TYPE_DELETE_CLIENT))
+			return;
+
+		if(p_JP_Delete_Client.equals(TYPE_ALL_TRANSACTION) && p_IsTruncateJP)
+			return;
+
+		TreeSet<String> referencedTables = new TreeSet<String>();
+		if(!p_JP_Delete_Client.equals(TYPE_CUSTOM_DELETE))
+		{
+			for(String table : TrxTables)
+				referencedTables.add(table);
+		}
+
+		if(Tables_CustomDelete != null)
+		{
+			for(String table : Tables_CustomDelete)
+				referencedTables.add(table);
+		}
+
+		if(p_JP_Delete_Client.equals(TYPE_INITIALIZE_CLIENT))
+		{
+			referencedTables.add("AD_Org");
+			referencedTables.add("AD_Role");
+			referencedTables.add("AD_User");
+			referencedTables.add("C_BPartner");
+			referencedTables.add("M_Product");
+		}
+
+		AdempiereDatabase adempiereDB = DB.getDatabase();
+		indexAdvisor = new JPiereTemporaryIndexAdvisor(adempiereDB.getSchema(), getAD_PInstance_ID(), get_TrxName());
+
+		commitEx();
+		int leftover = indexAdvisor.dropLeftoverIndexes();
+		if(leftover > 0)
+			createLog("", "", "### DROP LEFTOVER TEMPORARY INDEX : " + leftover + " ###", "", "", "", false);
+
+		List<JPiereTemporaryIndexAdvisor.TemporaryIndex> candidates = indexAdvisor.findCandidates(referencedTables);
+		if(candidates.size() == 0)
+			return;
+
+		createLog("", "", "### CREATE TEMPORARY INDEX : " + candidates.size() + " ###", "", "", "", true);
+		commitEx();
+		indexAdvisor.createIndexes(candidates);
+
+		for(JPiereTemporaryIndexAdvisor.TemporaryIndex index : candidates)
+		{
+			if(index.isCreated)
+			{
+				createLog(index.tableName, index.columnName, "CREATE TEMPORARY INDEX : " + index.indexName
+						+ " (Rows: " + index.estimatedRows + " / Build: " + index.buildMillis + "ms)", "", "", "", false);
+			}else{
+				createLog(index.tableName, index.columnName, "COULD NOT CREATE TEMPORARY INDEX : " + index.indexName, "", "", "", false);
+			}
+		}
+		commitEx();
+	}
+
+	/**
+	 * Drop temporary indexes and log the estimated time saved by each index.
+	 * The transaction must be committed or rolled back before.
+	 */
+	private void dropTemporaryIndexes()
+	{
+		if(indexAdvisor == null)
+			return;
+
+		List<JPiereTemporaryIndexAdvisor.TemporaryIndex> indexes = indexAdvisor.dropIndexes();
+		indexAdvisor = null;
+		if(indexes.size() == 0)
+			return;
+
+		long totalSavedMillis = 0;
+		for(JPiereTemporaryIndexAdvisor.TemporaryIndex index : indexes)
+		{
+			long savedMillis = index.getEstimatedSavedMillis();
+			totalSavedMillis = totalSavedMillis + savedMillis;
+			createLog(index.tableName, index.columnName, "DROP TEMPORARY INDEX : " + index.indexName
+					+ " (Statements: " + index.statements + " / " + index.statementMillis + "ms"
+					+ " / Build: " + index.buildMillis + "ms / Estimated Saved: " + savedMillis + "ms)", "", "", "", false);
+		}
+
+		createLog("", "", "### DROP TEMPORARY INDEX : " + indexes.size() + " (Estimated Saved: " + totalSavedMillis + "ms) ###", "", "", "", true);
+	}
+
+	private void recordIndexedStatement(String table, String column_ID, long start)
+	{
+		if(indexAdvisor != null)
+			indexAdvisor.recordStatement(table, column_ID, System.currentTimeMillis() - start);
+	}
+
 	/***************(Execute SQL)***************/
 	private int executeDeleteSQL(String table, String where, String type, boolean isTruncate)
 	{
@@ -1638,69 +1670,56 @@ public class JPiereDeleteClientRecords extends SvrProcess
 	 * @return Delete Records or -1(Unexpected Table) , -2(), -3(Not execute for Truncate)
 	 */
 	private int executeDeleteSQL(String table, String where, String type, boolean isTruncate,String help)
+	{
+		return executeDeleteSQL(table, JPiereSQLBuilder.Where.of(where), type, isTruncate, help);
+	}
+
+	/**
+	 * Execute Delete SQL
+	 *
+	 * @param table : Table Name
+	 * @param where : WHERE Clause with parameters (can be null)
+	 * @param type	: DELETE_CLIENT / INITIALIZE_CLIENT / ALL_TRANSACTION / CLIENT_TRANSACTION / TYPE_CUSTOM_DELETE
+	 * @param isTruncate : Incase true and Type is ALL_TRANSACTION execute TRUNCATE
+	 * @return Delete Records or -1(Unexpected Table) , -2(), -3(Not execute for Truncate)
+	 */
+	private int executeDeleteSQL(String table, JPiereSQLBuilder.Where where, String type, boolean isTruncate,String help)
 	{
 		//Check if the "tableName" exists
 		if(table == null || !isAppDictionaryTable(table) || !isDataBaseTable(table))
 			return -1;
 
-		StringBuilder DeleteSQL = new StringBuilder();
-
-		//Create From
+		JPiereSQLBuilder builder = null;
 		if(type.equals(TYPE_ALL_TRANSACTION) && isTruncate)
 		{
-			DeleteSQL.append("TRUNCATE TABLE "+ table + " CASCADE");
+			builder = JPiereSQLBuilder.truncate(table);
 		}else{
-			DeleteSQL.append("DELETE FROM "+ table);
-		}
-
-		//Add Where
-		if(!Util.isEmpty(where))
-		{
-			if(type.equals(TYPE_ALL_TRANSACTION) && isTruncate)
-			{
-				;//Nothing to do;
-			}else if(type.equals(TYPE_ALL_TRANSACTION) && !isTruncate){
-				DeleteSQL.append(" WHERE " + where);
-			}else{
-				DeleteSQL.append(" WHERE " + where + " AND AD_Client_ID = " + p_LookupClientID );
-			}
+			builder = JPiereSQLBuilder.deleteFrom(table).where(where);
+			if(!type.equals(TYPE_ALL_TRANSACTION))
+				builder.whereClient(p_LookupClientID);
+		}
+
+		JPiereSQLBuilder.Statement deleteSQL = builder.build();
+		m_Progress.startTable(table);
+		long start = System.currentTimeMillis();
+		int deletes = m_StatementCache.executeUpdate(deleteSQL);
+		m_Progress.endTable(table, deletes, true);
+		long elapsed = System.currentTimeMillis() - start;
+		String explainPlan = explainSlowStatement(deleteSQL.toString(), elapsed);
+		if(explainPlan != null)
+		{
+			createLog(table, null, "DELETE : " + deletes + " (SLOW STATEMENT : " + elapsed + "ms)", deleteSQL.toString(), null, help, explainPlan, false);
+		}else if(deletes == 0 && !p_IsAllowLogging){
+			;//Nothing to do;
 		}else{
-			if(type.equals(TYPE_ALL_TRANSACTION))
-			{
-				;//Nothing to do;
-			}else{
-				DeleteSQL.append(" WHERE AD_Client_ID = " + p_LookupClientID);
-			}
-		}
-
-		PreparedStatement pstmt = null;
-		ResultSet rs = null;
-		int deletes = 0;
-		try
-		{
-			pstmt = DB.prepareStatement(DeleteSQL.toString(), get_TrxName());
-			deletes = pstmt.executeUpdate();
-			if(deletes == 0 && !p_IsAllowLogging)
-			{
-				;//Nothing to do;
-			}else{
-				createLog(table, null, "DELETE : " + deletes, DeleteSQL.toString(), null, help,false);
-			}
-		}
-		catch (SQLException e)
-		{
-			log.log(Level.SEVERE, DeleteSQL.toString(), e);
-			throw new DBException(e, DeleteSQL.toString());
-		} finally {
-			DB.close(rs, pstmt);
-			rs = null; pstmt = null;
+			createLog(table, null, "DELETE : " + deletes, deleteSQL.toString(), null, help,false);
 		}
 
 		return deletes;
 	}
 
 
-	private int executeUpdateSQL(String table, String column_ID, String treat, int value ,String where, String type)
+	private int executeUpdateSQL(String table, String column_ID, String treat, int value ,JPiereSQLBuilder.Where where, String type)
 	{
 		return executeUpdateSQL(table, column_ID, treat, value ,where, type,null);
 	}
@@ -1712,11 +1731,11 @@ public class JPiereDeleteClientRecords extends SvrProcess
 	 * @param treat : TREAT_SET_NULL / TREAT_SET_VALUE /TREAT_DELETE /TREAT_IF_MANDATORY_DELETE_ELSE_VALUE
 	 * 					TREAT_IF_MANDATORY_DELETE_ELSE_NULL / TREAT_IF_MANDATORY_VALUE_ELSE_NULL / TREAT_IF_MANDATORY_VALUE_ELSE_DELETE
 	 * @param value : Update Value
-	 * @param where : WHERE Clause
+	 * @param where : WHERE Clause with parameters (can be null)
 	 * @param type	: TYPE_DELETE_CLIENT / TYPE_INITIALIZE_CLIENT / TYPE_ALL_TRANSACTION / TYPE_CLIENT_TRANSACTION /TYPE_CUSTOM_DELETE
 	 * @return Updeate Records or -1(Unexpected Table) , -2(), -3(Not execute for Truncate)
 	 */
-	private int executeUpdateSQL(String table, String column_ID, String treat, int value ,String where, String type, String help)
+	private int executeUpdateSQL(String table, String column_ID, String treat, int value ,JPiereSQLBuilder.Where where, String type, String help)
 	{
 		if(type.equals(TYPE_ALL_TRANSACTION) && p_IsTruncateJP)
 			return -3 ;
@@ -1726,7 +1745,10 @@ public class JPiereDeleteClientRecords extends SvrProcess
 		{
 			return -1;
 		}else if (treat.equals(TREAT_DELETE)){
-			return executeDeleteSQL(table, where, type, false);
+			long start = System.currentTimeMillis();
+			int deletes = executeDeleteSQL(table, where, type, false, null);
+			recordIndexedStatement(table, column_ID, start);
+			return deletes;
 		}else if (treat.equals(TREAT_SET_NULL) || treat.equals(TREAT_SET_VALUE)
 					|| treat.equals(TREAT_IF_MANDATORY_DELETE_ELSE_NULL) || treat.equals(TREAT_IF_MANDATORY_DELETE_ELSE_VALUE)
 					|| treat.equals(TREAT_IF_MANDATORY_VALUE_ELSE_DELETE) || treat.equals(TREAT_IF_MANDATORY_VALUE_ELSE_NULL)){
@@ -1754,102 +1776,163 @@ public class JPiereDeleteClientRecords extends SvrProcess
 
 
 		if (treat.equals(TREAT_DELETE))
-			return executeDeleteSQL(table, where, type, false);
+		{
+			long start = System.currentTimeMillis();
+			int deletes = executeDeleteSQL(table, where, type, false, null);
+			recordIndexedStatement(table, column_ID, start);
+			return deletes;
+		}
 
-		StringBuilder updateSQL = new StringBuilder("UPDATE " + table +" SET " + column_ID);
+		JPiereSQLBuilder builder = null;
 		if(treat.equals(TREAT_SET_NULL))
-			updateSQL.append(" = null ");
+			builder = JPiereSQLBuilder.update(table, column_ID, null);
 		else if(treat.equals(TREAT_SET_VALUE))
-			updateSQL.append(" = " + value);
+			builder = JPiereSQLBuilder.update(table, column_ID, Integer.valueOf(value));
 		else
 		{
 			return -1;
 		}
 
 		//Add Where
-		if(!Util.isEmpty(where))
-		{
-			updateSQL.append(" WHERE " + where);
-			if(type.equals(TYPE_ALL_TRANSACTION))
-			{
-				;//Nothing to do;
-			}else{
-				updateSQL.append(" AND AD_Client_ID = " + p_LookupClientID );
-			}
+		builder.where(where);
+		if(!type.equals(TYPE_ALL_TRANSACTION))
+			builder.whereClient(p_LookupClientID);
+
+		JPiereSQLBuilder.Statement updateSQL = builder.build();
+		m_Progress.startTable(table);
+		long start = System.currentTimeMillis();
+		int updates = m_StatementCache.executeUpdate(updateSQL);
+		m_Progress.endTable(table, updates, false);
+		recordIndexedStatement(table, column_ID, start);
+		long elapsed = System.currentTimeMillis() - start;
+		String explainPlan = explainSlowStatement(updateSQL.toString(), elapsed);
+		if(explainPlan != null)
+		{
+			createLog(table, column_ID, "UPDATE : " + updates + " (SLOW STATEMENT : " + elapsed + "ms)", updateSQL.toString(), treat, help, explainPlan, false);
+		}else if(updates == 0 && !p_IsAllowLogging){
+			;//Nothing to do
 		}else{
-			if(type.equals(TYPE_ALL_TRANSACTION))
-			{
-				;//Nothing to do;
-			}else{
-				updateSQL.append(" WHERE AD_Client_ID = " + p_LookupClientID);
-			}
+			createLog(table, column_ID, "UPDATE : " + updates, updateSQL.toString(), treat, help, false);
 		}
 
+		return updates;
+	}
 
-		PreparedStatement pstmt = null;
-		ResultSet rs = null;
-		int updates = 0;
+
+	/**
+	 * Explain the statement if it took longer than JP_DELETE_SLOW_STATEMENT_MS.
+	 *
+	 * By default the plan is taken with plain EXPLAIN, which does not execute the statement.
+	 *
+	 * With JP_DELETE_EXPLAIN_ANALYZE=Y, EXPLAIN (ANALYZE, BUFFERS) executes the statement again
+	 * in a savepoint that is always rolled back. It is limited by statement_timeout of
+	 * JP_DELETE_EXPLAIN_ANALYZE_TIMEOUT_MS (default 10000, 0 disables ANALYZE), not by the slow
+	 * threshold, because a statement that was slow once usually is slow again.
+	 * If it fails or times out, the plan without ANALYZE is returned.
+	 *
+	 * @param sql UPDATE or DELETE statement
+	 * @param elapsed milliseconds of the statement
+	 * @return Plan text or null if the statement was not slow
+	 */
+	private String explainSlowStatement(String sql, long elapsed)
+	{
+		if(slowStatementMillis <= 0 || elapsed < slowStatementMillis)
+			return null;
+
+		if(sql.startsWith("TRUNCATE"))
+			return null;
+
+		//An error in EXPLAIN must not abort the transaction of the process.
+		Trx trx = Trx.get(get_TrxName(), false);
+		Savepoint savepoint = null;
+		String plan = null;
 		try
 		{
-			pstmt = DB.prepareStatement(updateSQL.toString(), get_TrxName());
-			updates = pstmt.executeUpdate();
-			if(updates == 0 && !p_IsAllowLogging)
+			savepoint = trx.setSavepoint(null);
+			if(isExplainAnalyze && explainAnalyzeTimeoutMillis > 0)
 			{
-				;//Nothing to do
-			}else{
-				createLog(table, column_ID, "UPDATE : " + updates, updateSQL.toString(), treat, help, false);
+				try
+				{
+					DB.executeUpdateEx("SET LOCAL statement_timeout = " + explainAnalyzeTimeoutMillis, get_TrxName());
+					plan = explain("EXPLAIN (ANALYZE, BUFFERS) " + sql);
+				}
+				catch (DBException e)
+				{
+					log.log(Level.WARNING, "EXPLAIN ANALYZE: " + sql, e);
+					trx.rollback(savepoint);
+					savepoint = trx.setSavepoint(null);
+				}
 			}
+
+			if(plan == null)
+				plan = explain("EXPLAIN " + sql);
 		}
-		catch (SQLException e)
+		catch (Exception e)
 		{
-			log.log(Level.SEVERE, updateSQL.toString(), e);
-			throw new DBException(e, updateSQL.toString());
+			log.log(Level.WARNING, "EXPLAIN: " + sql, e);
+			plan = e.getMessage();
 		} finally {
-			DB.close(rs, pstmt);
-			rs = null; pstmt = null;
+			try
+			{
+				if(savepoint != null)
+					trx.rollback(savepoint);
+			}
+			catch (SQLException e)
+			{
+				log.log(Level.SEVERE, "Rollback EXPLAIN", e);
+				throw new DBException(e, sql);
+			}
 		}
 
-		return updates;
+		return plan;
 	}
 
-
-	private int executeReset(String TableName, String setClause, String type)
+	private String explain(String explainSQL)
 	{
-		StringBuilder updateSQL = new StringBuilder("UPDATE " + TableName + " SET " + setClause);
-
-		if(type.equals(TYPE_ALL_TRANSACTION))
-		{
-			;//Nothing to do
-		}else{
-			updateSQL.append(" WHERE AD_Client_ID = "+ p_LookupClientID );
-		}
-
-
+		StringBuilder plan = new StringBuilder();
 		PreparedStatement pstmt = null;
 		ResultSet rs = null;
-		int updates = 0;
 		try
 		{
-			pstmt = DB.prepareStatement(updateSQL.toString(), get_TrxName());
-			updates = pstmt.executeUpdate();
-			if(updates == 0 && !p_IsAllowLogging)
+			pstmt = DB.prepareStatement(explainSQL, get_TrxName());
+			rs = pstmt.executeQuery();
+			while (rs.next())
 			{
-				;//Nothing to do
-			}else{
-				createLog(TableName, null, "UPDATE : " + updates, updateSQL.toString(), null, "Reset "+TableName, false);
+				plan.append(rs.getString(1)).append("\n");
 			}
 		}
 		catch (SQLException e)
 		{
-			log.log(Level.SEVERE, updateSQL.toString(), e);
-			throw new DBException(e, updateSQL.toString());
+			throw new DBException(e, explainSQL);
 		} finally {
 			DB.close(rs, pstmt);
 			rs = null; pstmt = null;
 		}
 
-		return updates;
+		return plan.toString();
+	}
+
+	private int executeReset(String TableName, String setClause, String type)
+	{
+		JPiereSQLBuilder builder = JPiereSQLBuilder.updateSQL("UPDATE " + TableName + " SET " + setClause);
+		if(!type.equals(TYPE_ALL_TRANSACTION))
+			builder.whereClient(p_LookupClientID);
+
+		JPiereSQLBuilder.Statement updateSQL = builder.build();
+		long start = System.currentTimeMillis();
+		int updates = m_StatementCache.executeUpdate(updateSQL);
+		long elapsed = System.currentTimeMillis() - start;
+		String explainPlan = explainSlowStatement(updateSQL.toString(), elapsed);
+		if(explainPlan != null)
+		{
+			createLog(TableName, null, "UPDATE : " + updates + " (SLOW STATEMENT : " + elapsed + "ms)", updateSQL.toString(), null, "Reset "+TableName, explainPlan, false);
+		}else if(updates == 0 && !p_IsAllowLogging){
+			;//Nothing to do
+		}else{
+			createLog(TableName, null, "UPDATE : " + updates, updateSQL.toString(), null, "Reset "+TableName, false);
+		}
 
+		return updates;
 	}
 
 
@@ -1962,38 +2045,28 @@ public class JPiereDeleteClientRecords extends SvrProcess
 	 * @return
 	 */
 	private int countRecords(String table, String where, String type)
+	{
+		return countRecords(table, JPiereSQLBuilder.Where.of(where), type);
+	}
+
+	private int countRecords(String table, JPiereSQLBuilder.Where where, String type)
 	{
 		//Check
 		if(!isAppDictionaryTable(table) || !isDataBaseTable(table))
 			return -1;
 
-		StringBuilder countSQL = new StringBuilder("SELECT COUNT(*) FROM " + table);
-
-		//Add Where
-		if(!Util.isEmpty(where))
-		{
-			countSQL.append(" WHERE " + where);
-			if(type.equals(TYPE_ALL_TRANSACTION))
-			{
-				;//Nothing to do;
-			}else{
-				countSQL.append(" AND AD_Client_ID = " + p_LookupClientID );
-			}
-		}else{
-			if(type.equals(TYPE_ALL_TRANSACTION))
-			{
-				;//Nothing to do;
-			}else{
-				countSQL.append(" WHERE AD_Client_ID = " + p_LookupClientID);
-			}
-		}
+		JPiereSQLBuilder builder = JPiereSQLBuilder.select("COUNT(*)", table).where(where);
+		if(!type.equals(TYPE_ALL_TRANSACTION))
+			builder.whereClient(p_LookupClientID);
 
+		JPiereSQLBuilder.Statement countSQL = builder.build();
 		PreparedStatement pstmt = null;
 		ResultSet rs = null;
 		int counts = 0;
 		try
 		{
-			pstmt = DB.prepareStatement(countSQL.toString(), get_TrxName());
+			pstmt = DB.prepareStatement(countSQL.sql, get_TrxName());
+			DB.setParameters(pstmt, countSQL.params);
 			rs = pstmt.executeQuery();
 			if (rs.next ())
 			{
@@ -2023,34 +2096,24 @@ public class JPiereDeleteClientRecords extends SvrProcess
 	 */
 	private ArrayList<Integer> getIDList(String column_ID, String table, String where, String type)
 	{
-		ArrayList<Integer> listID = new ArrayList<Integer>();
+		return getIDList(column_ID, table, JPiereSQLBuilder.Where.of(where), type);
+	}
 
-		StringBuilder distinctSQL = new StringBuilder("SELECT DISTINCT "+ column_ID +" FROM " + table);
+	private ArrayList<Integer> getIDList(String column_ID, String table, JPiereSQLBuilder.Where where, String type)
+	{
+		ArrayList<Integer> listID = new ArrayList<Integer>();
 
-		//Add Where
-		if(!Util.isEmpty(where))
-		{
-			distinctSQL.append(" WHERE " + where);
-			if(type.equals(TYPE_ALL_TRANSACTION))
-			{
-				;//Nothing to do
-			}else{
-				distinctSQL.append(" AND AD_Client_ID = " + p_LookupClientID );
-			}
-		}else{
-			if(type.equals(TYPE_ALL_TRANSACTION))
-			{
-				;//Nothing to do
-			}else{
-				distinctSQL.append(" WHERE AD_Client_ID = " + p_LookupClientID);
-			}
-		}
+		JPiereSQLBuilder builder = JPiereSQLBuilder.select("DISTINCT " + column_ID, table).where(where);
+		if(!type.equals(TYPE_ALL_TRANSACTION))
+			builder.whereClient(p_LookupClientID);
 
+		JPiereSQLBuilder.Statement distinctSQL = builder.build();
 		PreparedStatement pstmt = null;
 		ResultSet rs = null;
 		try
 		{
-			pstmt = DB.prepareStatement(distinctSQL.toString(), get_TrxName());
+			pstmt = DB.prepareStatement(distinctSQL.sql, get_TrxName());
+			DB.setParameters(pstmt, distinctSQL.params);
 			rs = pstmt.executeQuery();
 			while (rs.next ())
 			{
@@ -2179,7 +2242,7 @@ public class JPiereDeleteClientRecords extends SvrProcess
 						continue;
 				}//if(tables != null)
 
-				executeUpdateSQL(rs.getString(1), tableName +"_ID", treat, value, createWhereInIDs(tableName +"_ID", IDs, isIN_IDs), type,"REFERENCE_DIRECT");
+				executeUpdateSQL(rs.getString(1), tableName +"_ID", treat, value, JPiereSQLBuilder.Where.inIDs(tableName +"_ID", IDs, isIN_IDs), type,"REFERENCE_DIRECT");
 
 				processed++;
 
@@ -2274,7 +2337,7 @@ public class JPiereDeleteClientRecords extends SvrProcess
 				continue;
 
 
-			executeUpdateSQL(tableColumn.tableName, tableColumn.columnName, treat, value, createWhereInIDs(tableColumn.columnName, IDs, isIN_IDs), type,"REFERENCE_INDIRECT");
+			executeUpdateSQL(tableColumn.tableName, tableColumn.columnName, treat, value, JPiereSQLBuilder.Where.inIDs(tableColumn.columnName, IDs, isIN_IDs), type,"REFERENCE_INDIRECT");
 
 			processed++;
 		}
@@ -2310,7 +2373,7 @@ public class JPiereDeleteClientRecords extends SvrProcess
 				if(rs.getString(1).equals((tableName).toUpperCase()))
 					continue;
 
-				ArrayList<Integer> list = getIDList(tableName+"_ID", rs.getString(1), null, type);
+				ArrayList<Integer> list = getIDList(tableName+"_ID", rs.getString(1), JPiereSQLBuilder.Where.NONE, type);
 				for(Integer id : list )
 				{
 					set_of_ID.add(id);
@@ -2329,7 +2392,7 @@ public class JPiereDeleteClientRecords extends SvrProcess
 			ArrayList<TableColumn> tableColumnList= getIndirectReferTableColumn(tableName+"_ID", referenceList);
 			for(TableColumn tableColumn :tableColumnList)
 			{
-				ArrayList<Integer> list = getIDList(tableColumn.columnName, tableColumn.tableName, null, type);
+				ArrayList<Integer> list = getIDList(tableColumn.columnName, tableColumn.tableName, JPiereSQLBuilder.Where.NONE, type);
 				for(Integer id : list )
 				{
 					set_of_ID.add(id);
@@ -2338,7 +2401,7 @@ public class JPiereDeleteClientRecords extends SvrProcess
 				processed++;
 			}
 
-			ArrayList<Integer> list_of_mainTable_ID = getIDList(tableName+"_ID", tableName, null, type);
+			ArrayList<Integer> list_of_mainTable_ID = getIDList(tableName+"_ID", tableName, JPiereSQLBuilder.Where.NONE, type);
 			boolean isContain = false;
 			for(Integer id_of_mainTable : list_of_mainTable_ID)
 			{
@@ -2356,7 +2419,7 @@ public class JPiereDeleteClientRecords extends SvrProcess
 				{
 					;//Nothing to do;
 				}else{
-					int deletes = executeDeleteSQL(tableName, tableName+"_ID"+ "=" +id_of_mainTable.intValue(), type, false,"NOT_USE_RECORD");
+					int deletes = executeDeleteSQL(tableName, JPiereSQLBuilder.Where.equalsID(tableName+"_ID", id_of_mainTable.intValue()), type, false,"NOT_USE_RECORD");
 					if(deletes != 1)
 						return -4;
 				}
@@ -2427,29 +2490,44 @@ public class JPiereDeleteClientRecords extends SvrProcess
 		MTable m_Table = MTable.get(getCtx(), tableName);
 		MColumn m_Column = m_Table.getColumn(columnName);
 
+		return treatAutoJudge(tableName, columnName, m_Column.isMandatory(), treat, value);
+	}
+
+	/**
+	 * Judge the treat of Foreign Key with Mandatory of the column that is known by caller.
+	 *
+	 * @param tableName
+	 * @param columnName
+	 * @param isMandatory
+	 * @param treat
+	 * @param value
+	 * @return TREAT_DELETE / TREAT_SET_NULL / TREAT_SET_VALUE or treat
+	 */
+	public String treatAutoJudge(String tableName, String columnName, boolean isMandatory, String treat, int value)
+	{
 		if(treat.equals(TREAT_IF_MANDATORY_DELETE_ELSE_NULL))
 		{
-			if(m_Column.isMandatory())
+			if(isMandatory)
 			{
 				return TREAT_DELETE;
 			}else{
 				return TREAT_SET_NULL;
 			}
 		}else if(treat.equals(TREAT_IF_MANDATORY_DELETE_ELSE_VALUE)){
-			if(m_Column.isMandatory())
+			if(isMandatory)
 			{
 				return TREAT_DELETE;
 			}else{
-				int count = countRecords(tableName, columnName + "=" + value, TYPE_ALL_TRANSACTION);
+				int count = countRecords(tableName, JPiereSQLBuilder.Where.equalsID(columnName, value), TYPE_ALL_TRANSACTION);
 				if(count > 0)
 					return TREAT_SET_VALUE;
 				else
 					return TREAT_SET_NULL;
 			}
 		}else if(treat.equals(TREAT_IF_MANDATORY_VALUE_ELSE_DELETE)){
-			if(m_Column.isMandatory())
+			if(isMandatory)
 			{
-				int count = countRecords(tableName, columnName + "=" + value, TYPE_ALL_TRANSACTION);
+				int count = countRecords(tableName, JPiereSQLBuilder.Where.equalsID(columnName, value), TYPE_ALL_TRANSACTION);
 				if(count > 0)
 					return TREAT_SET_VALUE;
 				else
@@ -2458,9 +2536,9 @@ public class JPiereDeleteClientRecords extends SvrProcess
 				return TREAT_DELETE;
 			}
 		}else if(treat.equals(TREAT_IF_MANDATORY_VALUE_ELSE_NULL)){
-			if(m_Column.isMandatory())
+			if(isMandatory)
 			{
-				int count = countRecords(tableName, columnName + "=" + value, TYPE_ALL_TRANSACTION);
+				int count = countRecords(tableName, JPiereSQLBuilder.Where.equalsID(columnName, value), TYPE_ALL_TRANSACTION);
 				if(count > 0)
 					return TREAT_SET_VALUE;
 				else
@@ -2475,106 +2553,71 @@ public class JPiereDeleteClientRecords extends SvrProcess
 
 
 	/***************Utility Method***************/
+	/**
+	 * Merge Table Names (ignore case).
+	 * All names of the first array are kept, and the names of the second array that are not in the first
+	 * array are appended. If one array is null or empty, the other array is returned.
+	 */
 	public String[] stringArray_Merge(String[] stringArray1, String[] stringArray2)
 	{
 		if(stringArray1 == null || stringArray1.length == 0)
 		{
 			if(stringArray2 != null)
-			{
 				return stringArray2;
-			}
 		}
 
-		if(stringArray2 == null || stringArray2.length == 0){
+		if(stringArray2 == null || stringArray2.length == 0)
+		{
 			if(stringArray1 != null)
-			{
 				return stringArray1;
-			}
 		}
 
 		if(stringArray1 == null && stringArray2 == null)
 			return null;
 
-		ArrayList<String> stringList = new ArrayList<String>();
-		for(int i = 0; i < stringArray1.length; i++)
-		{
-			stringList.add(stringArray1[i]);
-		}
-
-		boolean isContain = false;
-		for(int i = 0; i < stringArray2.length; i++)
+		JPiereTableIndex.TableSet tableSet1 = new JPiereTableIndex.TableSet(stringArray1);
+		ArrayList<String> stringList = new ArrayList<String>(Arrays.asList(stringArray1));
+		for(String string : stringArray2)
 		{
-			isContain = false;
-			for(int j = 0; j < stringArray1.length; j++)
-			{
-				if(stringArray2[i].toUpperCase().equals(stringArray1[j].toUpperCase()))
-				{
-					isContain = true;
-					break;
-				}
-			}
-
-			if(!isContain)
-				stringList.add(stringArray2[i]);
+			if(!tableSet1.contains(string))
+				stringList.add(string);
 		}
 
 		return stringList.toArray(new String[stringList.size()]);
 	}
 
+	/**
+	 * Subtract Table Names (ignore case).
+	 * The names of the first array that are not in the second array are kept in order.
+	 */
 	public String[] stringArray_Subtraction(String[] stringArray1, String[] stringArray2)
 	{
-		if(stringArray1 == null || stringArray1.length == 0)
-		{
-			if(stringArray2 != null)
-			{
-				return stringArray2;
-			}
-		}
-
-		if(stringArray2 == null || stringArray2.length == 0){
-			if(stringArray1 != null)
-			{
-				return stringArray1;
-			}
-		}
-
-		if(stringArray1 == null && stringArray2 == null)
+		if(stringArray1 == null)
 			return null;
 
+		if(stringArray2 == null || stringArray2.length == 0)
+			return stringArray1;
+
+		JPiereTableIndex.TableSet tableSet2 = new JPiereTableIndex.TableSet(stringArray2);
 		ArrayList<String> stringList = new ArrayList<String>();
-		boolean isContain = false;
-		for(int i = 0; i < stringArray1.length; i++)
+		for(String string : stringArray1)
 		{
-			isContain = false;
-			for(int j = 0; j < stringArray2.length; j++)
-			{
-				if(stringArray1[i].toUpperCase().equals(stringArray2[j].toUpperCase()))
-				{
-					isContain = true;
-					break;
-				}
-			}
-
-			if(!isContain)
-				stringList.add(stringArray1[i]);
+			if(!tableSet2.contains(string))
+				stringList.add(string);
 		}
 
 		return stringList.toArray(new String[stringList.size()]);
 	}
 
+	/**
+	 * Is the Table Name in the array (ignore case)
+	 */
 	public boolean stringArray_IsIN(String[] stringArray1, String string)
 	{
-		boolean isContaine = false;
-		for(int i = 0; i < stringArray1.length; i++)
-		{
-			if(stringArray1[i].toUpperCase().equals(string.toUpperCase()))
-			{
-				isContaine = true;
-				break;
-			}
-		}
+		if(stringArray1 == null)
+			return false;
 
-		return isContaine;
+		return new JPiereTableIndex.TableSet(stringArray1).contains(string);
 	}
 
 	private boolean isAccessLevelSystemTable(String tableName, boolean isSystemOnly)
@@ -2631,41 +2674,6 @@ public class JPiereDeleteClientRecords extends SvrProcess
 	}
 
 
-	/**
-	 * Create WHERE clause "Column_ID in (IDs)"
-	 *
-	 * @param column_ID : Column Name that Display Type is Table, Table Direct, Search, ID.
-	 * @param IDs : ID of Records
-	 * @return null or String
-	 */
-	private String createWhereInIDs(String column_ID, ArrayList<Integer> IDs, boolean isIN)
-	{
-		if(column_ID == null)
-			return null;
-
-		if(IDs == null || IDs.size() == 0)
-			return null;
-
-		StringBuilder where = new StringBuilder(column_ID);
-		if(isIN)
-			where.append(" IN (");
-		else
-			where.append(" Not IN (");
-
-		int i = 0;
-		for(Integer ID : IDs)
-		{
-			if(i==0)
-				where.append(ID.toString());
-			else
-				where.append("," + ID.toString());
-			i++;
-		}
-		where.append(")");
-
-		return where.toString();
-	}
-
 	public ArrayList<TableColumn> getIndirectReferTableColumn(String column_ID, ArrayList<Integer> referenceList)
 	{
 		ArrayList<TableColumn> tableColumnList = new ArrayList<TableColumn>();
@@ -2857,7 +2865,14 @@ public class JPiereDeleteClientRecords extends SvrProcess
 	 */
 	private void createLog(String tableName, String columnName, String description, String SQL, String treat,String help, boolean isDisplay)
 	{
-		if(isDisplay && processMonitor != null)
+		createLog(tableName, columnName, description, SQL, treat, help, null, isDisplay);
+	}
+
+	private void createLog(String tableName, String columnName, String description, String SQL, String treat,String help, String explainPlan, boolean isDisplay)
+	{
+		if(isDisplay && m_Progress != null)
+			m_Progress.setSection(description);
+		else if(isDisplay && processMonitor != null)
 			processMonitor.statusUpdate(description);
 
 		MDeleteClientLogJP log = new MDeleteClientLogJP(getCtx(), 0, null);
@@ -2881,6 +2896,8 @@ public class JPiereDeleteClientRecords extends SvrProcess
 			log.setJP_TreatForeignKey(treat);
 		if(!Util.isEmpty(help))
 			log.setHelp(help);
+		if(!Util.isEmpty(explainPlan))
+			log.setJP_ExplainPlan(explainPlan);
 
 		if(Util.isEmpty(tableName))
 		{
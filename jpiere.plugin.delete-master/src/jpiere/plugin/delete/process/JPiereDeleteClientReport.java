@@ -13,10 +13,16 @@
  *****************************************************************************/
 package jpiere.plugin.delete.process;
 
+import java.math.BigDecimal;
+import java.math.RoundingMode;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Timestamp;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.logging.Level;
 
 import org.adempiere.exceptions.DBException;
@@ -26,13 +32,12 @@ import org.compiere.model.MTable;
 import org.compiere.process.ProcessInfoParameter;
 import org.compiere.process.SvrProcess;
 import org.compiere.util.DB;
+import org.compiere.util.Env;
 import org.compiere.util.Msg;
 import org.compiere.util.Util;
 
-import jpiere.plugin.delete.model.MCustomDeleteProfile;
-import jpiere.plugin.delete.model.MCustomDeleteProfileLine;
 import jpiere.plugin.delete.model.MDeleteClientLogJP;
-import jpiere.plugin.delete.model.MDeleteProfile;
+import jpiere.plugin.delete.model.DeleteProfileTree;
 import jpiere.plugin.delete.process.JPiereDeleteClientRecords.TableColumn;
 
 /**
@@ -49,13 +54,15 @@ public class JPiereDeleteClientReport extends SvrProcess
 	private int p_Referenced_Table_ID = 0;
 
 	private boolean p_IsAllowLogging = false; //if true display all Table
+	private int p_LookupClientID = 0; //Tenant of Referencing Rows
+	private boolean p_IsApproximateJP = false; //if true estimate Referencing Rows from statistics
 
 	private int AD_PInstance_ID = 0;
 
 
 	//
-	private MDeleteProfile m_DeleteProfile = null;
-	private String[] customDeleteTables;
+	private DeleteProfileTree m_DeleteProfile = null;
+	private JPiereDeletePlan m_DeletePlan = null;
 	private String[] tables;
 	private JPiereDeleteClientRecords deleteClientRecordsProcess;
 
@@ -74,6 +81,10 @@ public class JPiereDeleteClientReport extends SvrProcess
 				p_Referenced_Table_ID = para[i].getParameterAsInt();
 			}else if(name.equals("IsAllowLogging")){
 					p_IsAllowLogging = para[i].getParameterAsBoolean();
+			}else if(name.equals("LookupClientID")){
+				p_LookupClientID = para[i].getParameterAsInt();
+			}else if(name.equals("IsApproximateJP")){
+				p_IsApproximateJP = para[i].getParameterAsBoolean();
 			}else{
 				log.log(Level.SEVERE, "Unknown Parameter: " + name);
 			}
@@ -96,13 +107,17 @@ public class JPiereDeleteClientReport extends SvrProcess
 
 		deleteClientRecordsProcess = new JPiereDeleteClientRecords();
 
+		//Monthly partitions of the log (if T_DeleteClientLogJP is partitioned)
+		MDeleteClientLogJP.createPartitions(new Timestamp(System.currentTimeMillis()), 2);
+
+		String msg = "";
 		try
 		{
 			if(p_JP_DeleteProfile_ID > 0 )
 			{
-				createTableList();
+				msg = createTableList();
 			}else if(p_Referenced_Table_ID > 0){
-				createReferenceList();
+				msg = createReferenceList();
 			}
 
 		} catch (Exception e) {
@@ -113,46 +128,25 @@ public class JPiereDeleteClientReport extends SvrProcess
 
 
 
-		return "";
+		return msg;
 
 	}	//	delete
 
 	private String createTableList() throws Exception
 	{
 
-		m_DeleteProfile = new MDeleteProfile(getCtx(), p_JP_DeleteProfile_ID, null);
+		m_DeleteProfile = DeleteProfileTree.get(getCtx(), p_JP_DeleteProfile_ID, null);
+		if(m_DeleteProfile == null)
+			return Msg.getMsg(getCtx(), "NotFound") +" : " + Msg.getElement(getCtx(), "JP_DeleteProfile_ID");
 
-		MCustomDeleteProfile[] customDPs = m_DeleteProfile.getCustomDeleteProfiles();
-		ArrayList<String> customDeleteTableList = new ArrayList<String>();
-		for(int i = 0; i < customDPs.length; i++)
-		{
-			customDeleteTableList.add(customDPs[i].getAD_Table().getTableName());
-			MCustomDeleteProfileLine[] customDPLines= customDPs[i].getCustomDeleteProfileLines();
-			for(int j = 0; j < customDPLines.length; j++)
-			{
-				customDeleteTableList.add(customDPLines[j].getAD_Table().getTableName());
-			}
-		}
-
-		customDeleteTables = customDeleteTableList.toArray(new String[customDeleteTableList.size()]);
-
-
-		//TYPE_of_TRANSACTION = TrxTable + CustomTable
-		if(m_DeleteProfile.getJP_Delete_Client().equals(JPiereDeleteClientRecords.TYPE_ALL_TRANSACTION)
-				|| m_DeleteProfile.getJP_Delete_Client().equals(JPiereDeleteClientRecords.TYPE_CLIENT_TRANSACTION))
-		{
-			tables = deleteClientRecordsProcess.stringArray_Merge(JPiereDeleteClientRecords.TrxTables, customDeleteTables);
+		//Tables of the profile are compiled and cached in the Delete Plan
+		m_DeletePlan = JPiereDeletePlan.get(getCtx(), p_JP_DeleteProfile_ID, null);
+		tables = m_DeletePlan.getTables();
 
-		//TYPE_INITIALIZE_CLIENT = IniTable + TrxTable + CustomTable
-		}else if(m_DeleteProfile.getJP_Delete_Client().equals(JPiereDeleteClientRecords.TYPE_INITIALIZE_CLIENT)){
-
-			tables = deleteClientRecordsProcess.stringArray_Merge(JPiereDeleteClientRecords.IniTables,
-					deleteClientRecordsProcess.stringArray_Merge(JPiereDeleteClientRecords.TrxTables, customDeleteTables));
-
-		//TYPE_CUSTOM_DELETE = Custom Table
-		}else if(m_DeleteProfile.getJP_Delete_Client().equals(JPiereDeleteClientRecords.TYPE_CUSTOM_DELETE)){
-			tables = customDeleteTables;
-		}
+		JPiereTableIndex tableIndex = m_DeletePlan.getTableIndex();
+		JPiereTableIndex.TableSet profileTables = new JPiereTableIndex.TableSet(tables);
+		boolean isCustomDelete = m_DeleteProfile.getJP_Delete_Client().equals(JPiereDeleteClientRecords.TYPE_CUSTOM_DELETE);
+		ArrayList<MDeleteClientLogJP> logs = new ArrayList<MDeleteClientLogJP>();
 
 		for(int i = 0; i < tables.length; i++)
 		{
@@ -162,65 +156,35 @@ public class JPiereDeleteClientReport extends SvrProcess
 			log.setJP_DeleteProfile_ID(p_JP_DeleteProfile_ID);
 			log.setReferenced_Table_ID(p_Referenced_Table_ID);
 
+			String classification = tableIndex.getClassification(getCtx(), tables[i]);
+
 			//##### IMPOERT TABLE or TEMPORARY TABLE #####//
-			if(tables[i].toUpperCase().startsWith("I_"))
+			if(classification.equals(JPiereTableIndex.CLASS_IMPORT))
 			{
-				if(m_DeleteProfile.getJP_Delete_Client().equals(JPiereDeleteClientRecords.TYPE_CUSTOM_DELETE))
-					log.setDescription("IMPORT TABLE" + " - " + Msg.getMsg(getCtx(), "JP_Delete_NotDelete"));
-				else
-					log.setDescription("IMPORT TABLE" + " - " + Msg.getMsg(getCtx(), "JP_Delete_AllDelete"));
-			}
+				log.setDescription("IMPORT TABLE" + " - " + Msg.getMsg(getCtx(), isCustomDelete ? "JP_Delete_NotDelete" : "JP_Delete_AllDelete"));
 
-			if(tables[i].toUpperCase().startsWith("T_") && !tables[i].toUpperCase().equals("T_DeleteClientLogJP".toUpperCase()))
-			{
-				if(m_DeleteProfile.getJP_Delete_Client().equals(JPiereDeleteClientRecords.TYPE_CUSTOM_DELETE))
-					log.setDescription("TEMPORARY TABLE" + " - " + Msg.getMsg(getCtx(), "JP_Delete_NotDelete"));
-				else
-					log.setDescription("TEMPORARY TABLE" + " - " + Msg.getMsg(getCtx(), "JP_Delete_AllDelete"));
-			}
+			}else if(classification.equals(JPiereTableIndex.CLASS_TEMP)){
+
+				log.setDescription("TEMPORARY TABLE" + " - " + Msg.getMsg(getCtx(), isCustomDelete ? "JP_Delete_NotDelete" : "JP_Delete_AllDelete"));
 
 			//##### CUSTOM TABLE #####//
-			if(Util.isEmpty(log.getDescription()))
-			{
-				for(int j = 0 ; j < customDeleteTables.length; j++)
-				{
-					if(tables[i].toUpperCase().equals(customDeleteTables[j].toUpperCase()))
-					{
-						log.setDescription(Msg.getMsg(getCtx(), "JP_Delete_CustomDPTable") + " - " + Msg.getMsg(getCtx(), "JP_Delete_FollowDeleteProfile"));
-					}
-				}
-			}
+			}else if(classification.equals(JPiereTableIndex.CLASS_CUSTOM)){
+
+				log.setDescription(Msg.getMsg(getCtx(), "JP_Delete_CustomDPTable") + " - " + Msg.getMsg(getCtx(), "JP_Delete_FollowDeleteProfile"));
+				log.setSQLStatement(m_DeletePlan.getSQLTemplates(tables[i]));
 
 			//##### TRX TABLE #####//
-			if(Util.isEmpty(log.getDescription()))
-			{
+			}else if(classification.equals(JPiereTableIndex.CLASS_TRX)){
 
-				for(int j = 0 ; j < JPiereDeleteClientRecords.TrxTables.length; j++)
-				{
-					if(tables[i].toUpperCase().equals(JPiereDeleteClientRecords.TrxTables[j].toUpperCase()))
-					{
-						if(m_DeleteProfile.getJP_Delete_Client().equals(JPiereDeleteClientRecords.TYPE_CUSTOM_DELETE))
-							log.setDescription(Msg.getMsg(getCtx(), "JP_Delete_TrxTable") + " - " + Msg.getMsg(getCtx(), "JP_Delete_NotDelete"));
-						else
-							log.setDescription(Msg.getMsg(getCtx(), "JP_Delete_TrxTable") + " - " + Msg.getMsg(getCtx(), "JP_Delete_AllDelete"));
-					}
-				}
-			}
+				log.setDescription(Msg.getMsg(getCtx(), "JP_Delete_TrxTable") + " - " + Msg.getMsg(getCtx(), isCustomDelete ? "JP_Delete_NotDelete" : "JP_Delete_AllDelete"));
 
 			//##### INI TABLE #####//
-			if(Util.isEmpty(log.getDescription()))
-			{
+			}else if(classification.equals(JPiereTableIndex.CLASS_INI)){
 
-				for(int j = 0 ; j < JPiereDeleteClientRecords.IniTables.length; j++)
-				{
-					if(tables[i].toUpperCase().equals(JPiereDeleteClientRecords.IniTables[j].toUpperCase()))
-					{
-						if(m_DeleteProfile.getJP_Delete_Client().equals(JPiereDeleteClientRecords.TYPE_INITIALIZE_CLIENT))
-							log.setDescription(Msg.getMsg(getCtx(), "JP_Delete_IniTable") + " - " + Msg.getMsg(getCtx(), "JP_Delete_FollowDeleteProfile"));
-						else
-							log.setDescription(Msg.getMsg(getCtx(), "JP_Delete_IniTable") + " - " + Msg.getMsg(getCtx(), "JP_Delete_NotDelete"));
-					}
-				}
+				if(m_DeleteProfile.getJP_Delete_Client().equals(JPiereDeleteClientRecords.TYPE_INITIALIZE_CLIENT))
+					log.setDescription(Msg.getMsg(getCtx(), "JP_Delete_IniTable") + " - " + Msg.getMsg(getCtx(), "JP_Delete_FollowDeleteProfile"));
+				else
+					log.setDescription(Msg.getMsg(getCtx(), "JP_Delete_IniTable") + " - " + Msg.getMsg(getCtx(), "JP_Delete_NotDelete"));
 			}
 
 			MTable m_Table = MTable.get(getCtx(), tables[i]);
@@ -235,30 +199,18 @@ public class JPiereDeleteClientReport extends SvrProcess
 			if(deleteClientRecordsProcess.hasColumn(tables[i]+"_ID", tables[i]))
 				log.setColumnName(tables[i]+"_ID");
 
-			log.saveEx();
+			logs.add(log);
 		}
 
 		if(!p_IsAllowLogging)
 		{
-			return "";
+			return saveTableList(logs);
 		}
 
 		ArrayList<String> TABLELIST_AD = createTableList_AD();
-		boolean isContain = false;
 		for(String TABLE : TABLELIST_AD)
 		{
-			isContain = false;
-			for(int i = 0; i < tables.length; i++)
-			{
-
-				if(TABLE.equals(tables[i].toUpperCase()))
-				{
-					isContain = true;
-					break;
-				}
-			}
-
-			if(!isContain)
+			if(!profileTables.contains(TABLE))
 			{
 				MTable m_Table = MTable.get(getCtx(), TABLE);
 				if(m_Table.get_ID()==0)
@@ -302,13 +254,104 @@ public class JPiereDeleteClientReport extends SvrProcess
 				if(deleteClientRecordsProcess.hasColumn(m_Table.getTableName()+"_ID", m_Table.getTableName()))
 					log.setColumnName(m_Table.getTableName()+"_ID");
 
-				log.saveEx();
+				logs.add(log);
 
-			}//if(!isContain)
+			}//if(!profileTables.contains(TABLE))
 		}//for(String TABLE : TABLELIST_AD)
 
 
-		return "";
+		return saveTableList(logs);
+	}
+
+	/**
+	 * Set the size of tables, and insert the Logs in descending order of Total Size,
+	 * so the ID order of the Logs lists the largest tables of the Delete Profile first.
+	 */
+	private String saveTableList(ArrayList<MDeleteClientLogJP> logs)
+	{
+		setTableSizes(logs);
+
+		Collections.sort(logs, new Comparator<MDeleteClientLogJP>() {
+			@Override
+			public int compare(MDeleteClientLogJP o1, MDeleteClientLogJP o2)
+			{
+				int compare = o2.getJP_TotalSize().compareTo(o1.getJP_TotalSize());
+				if(compare != 0)
+					return compare;
+				return o1.getTableName().compareTo(o2.getTableName());
+			}
+		});
+
+		MDeleteClientLogJP.insertBatch(getCtx(), logs, null);
+
+		BigDecimal totalSize = Env.ZERO;
+		BigDecimal estimatedRows = Env.ZERO;
+		for(MDeleteClientLogJP log : logs)
+		{
+			totalSize = totalSize.add(log.getJP_TotalSize());
+			estimatedRows = estimatedRows.add(log.getJP_EstimatedRows());
+		}
+
+		return Msg.getElement(getCtx(), "JP_EstimatedRows") + " : " + estimatedRows
+				+ " / " + Msg.getElement(getCtx(), "JP_TotalSize") + " : " + totalSize.divide(BigDecimal.valueOf(1024 * 1024), 0, RoundingMode.HALF_UP) + " MB";
+	}
+
+	/**
+	 * Get Estimated Rows, Total Relation Size and Index Size of the tables with single catalog query.
+	 * Estimated Rows is pg_class.reltuples, or n_live_tup of pg_stat if the table has never been analyzed.
+	 */
+	private void setTableSizes(ArrayList<MDeleteClientLogJP> logs)
+	{
+		if(logs.size() == 0)
+			return;
+
+		HashMap<String, MDeleteClientLogJP> logMap = new HashMap<String, MDeleteClientLogJP>();
+		StringBuilder tableNames = new StringBuilder();
+		for(MDeleteClientLogJP log : logs)
+		{
+			if(tableNames.length() > 0)
+				tableNames.append(",");
+			tableNames.append(log.getTableName().toLowerCase());
+			logMap.put(log.getTableName().toLowerCase(), log);
+		}
+
+		String sql = "SELECT c.relname"
+				+ ", CASE WHEN c.reltuples >= 0 THEN c.reltuples::bigint ELSE COALESCE(s.n_live_tup, 0) END"
+				+ ", pg_total_relation_size(c.oid)"
+				+ ", pg_indexes_size(c.oid)"
+				+ " FROM pg_class c"
+				+ " INNER JOIN pg_namespace n ON (n.oid = c.relnamespace)"
+				+ " LEFT OUTER JOIN pg_stat_user_tables s ON (s.relid = c.oid)"
+				+ " WHERE c.relkind IN ('r','p') AND n.nspname = ?"
+				+ " AND c.relname = ANY(string_to_array(?, ','))";
+
+		PreparedStatement pstmt = null;
+		ResultSet rs = null;
+		try
+		{
+			pstmt = DB.prepareStatement(sql, get_TrxName());
+			pstmt.setString(1, DB.getDatabase().getSchema());
+			pstmt.setString(2, tableNames.toString());
+			rs = pstmt.executeQuery();
+			while (rs.next ())
+			{
+				MDeleteClientLogJP log = logMap.get(rs.getString(1));
+				if(log == null)
+					continue;
+
+				log.setJP_EstimatedRows(rs.getBigDecimal(2));
+				log.setJP_TotalSize(rs.getBigDecimal(3));
+				log.setJP_IndexSize(rs.getBigDecimal(4));
+			}
+		}
+		catch (SQLException e)
+		{
+			log.log(Level.SEVERE, sql, e);
+			throw new DBException(e, sql);
+		} finally {
+			DB.close(rs, pstmt);
+			rs = null; pstmt = null;
+		}
 	}
 
 	private String createReferenceList() throws Exception
@@ -321,6 +364,8 @@ public class JPiereDeleteClientReport extends SvrProcess
 		if(m_Table.get_ID() == 0)
 			return Msg.getMsg(getCtx(), "NotFound") +" : " + Msg.getElement(getCtx(), "AD_Table_ID");
 
+		ArrayList<MDeleteClientLogJP> logs = new ArrayList<MDeleteClientLogJP>();
+
 		//Can Refer Table Direct
 		String getTableSQL = "SELECT UPPER(TableName) FROM AD_Table t INNER JOIN AD_Column c ON(t.AD_Table_ID = C.AD_Table_ID)"
 				+ " WHERE IsView='N' and UPPER(ColumnName)=?";
@@ -348,35 +393,13 @@ public class JPiereDeleteClientReport extends SvrProcess
 				log.setJP_DeleteProfile_ID(p_JP_DeleteProfile_ID);
 
 				//Description
-				boolean isContain = false;
-				for(int i = 0; i < JPiereDeleteClientRecords.TrxTables.length; i++)
-				{
-					if(JPiereDeleteClientRecords.TrxTables[i].toUpperCase().equals(table.getTableName().toUpperCase()))
-					{
-						isContain = true;
-						break;
-					}
-				}
-
-				if(isContain)
+				if(JPiereTableIndex.TRX_TABLES.contains(table.getTableName()))
 				{
 					log.setDescription(Msg.getMsg(getCtx(), "JP_Delete_TrxTable"));
+				}else if(JPiereTableIndex.INI_TABLES.contains(table.getTableName())){
+					log.setDescription(Msg.getMsg(getCtx(), "JP_Delete_IniTable"));
 				}else{
-					for(int i = 0; i < JPiereDeleteClientRecords.IniTables.length; i++)
-					{
-						if(JPiereDeleteClientRecords.IniTables[i].toUpperCase().equals(table.getTableName().toUpperCase()))
-						{
-							isContain = true;
-							break;
-						}
-					}
-
-					if(isContain)
-					{
-						log.setDescription(Msg.getMsg(getCtx(), "JP_Delete_IniTable"));
-					}else{
-						log.setDescription(Msg.getMsg(getCtx(), "JP_Delete_OtherTable"));
-					}
+					log.setDescription(Msg.getMsg(getCtx(), "JP_Delete_OtherTable"));
 				}
 
 				log.setAD_Table_ID(table.get_ID());
@@ -414,7 +437,7 @@ public class JPiereDeleteClientReport extends SvrProcess
 				}
 
 				log.setIsAllowLogging(p_IsAllowLogging);
-				log.saveEx();
+				logs.add(log);
 
 			}//while
 
@@ -444,35 +467,13 @@ public class JPiereDeleteClientReport extends SvrProcess
 				log.setJP_DeleteProfile_ID(p_JP_DeleteProfile_ID);
 
 				//Description
-				boolean isContain = false;
-				for(int i = 0; i < JPiereDeleteClientRecords.TrxTables.length; i++)
-				{
-					if(JPiereDeleteClientRecords.TrxTables[i].toUpperCase().equals(table.getTableName().toUpperCase()))
-					{
-						isContain = true;
-						break;
-					}
-				}
-
-				if(isContain)
+				if(JPiereTableIndex.TRX_TABLES.contains(table.getTableName()))
 				{
 					log.setDescription(Msg.getMsg(getCtx(), "JP_Delete_TrxTable"));
+				}else if(JPiereTableIndex.INI_TABLES.contains(table.getTableName())){
+					log.setDescription(Msg.getMsg(getCtx(), "JP_Delete_IniTable"));
 				}else{
-					for(int i = 0; i < JPiereDeleteClientRecords.IniTables.length; i++)
-					{
-						if(JPiereDeleteClientRecords.IniTables[i].toUpperCase().equals(table.getTableName().toUpperCase()))
-						{
-							isContain = true;
-							break;
-						}
-					}
-
-					if(isContain)
-					{
-						log.setDescription(Msg.getMsg(getCtx(), "JP_Delete_IniTable"));
-					}else{
-						log.setDescription(Msg.getMsg(getCtx(), "JP_Delete_OtherTable"));
-					}
+					log.setDescription(Msg.getMsg(getCtx(), "JP_Delete_OtherTable"));
 				}
 
 				log.setAD_Table_ID(table.get_ID());
@@ -510,11 +511,69 @@ public class JPiereDeleteClientReport extends SvrProcess
 				}
 				
 				log.setIsAllowLogging(p_IsAllowLogging);
-				log.saveEx();
+				logs.add(log);
 			}
 		}//if(list_of_reference.size()!=0)
 
-		return "";
+		return saveReferenceList(logs);
+	}
+
+	/**
+	 * Count Referencing Rows per FK column, and insert the Logs in descending order of Referencing Rows.
+	 */
+	private String saveReferenceList(ArrayList<MDeleteClientLogJP> logs)
+	{
+		HashMap<JPiereReferenceCounter.Reference, MDeleteClientLogJP> referenceMap = new HashMap<JPiereReferenceCounter.Reference, MDeleteClientLogJP>();
+		ArrayList<JPiereReferenceCounter.Reference> references = new ArrayList<JPiereReferenceCounter.Reference>();
+		for(MDeleteClientLogJP log : logs)
+		{
+			log.setLookupClientID(p_LookupClientID);
+			if(log.getAD_Column_ID() == 0 || !Util.isEmpty(log.getColumnSQL()))
+				continue;
+
+			MTable table = MTable.get(getCtx(), log.getAD_Table_ID());
+			JPiereReferenceCounter.Reference reference = new JPiereReferenceCounter.Reference(log.getTableName(), log.getColumnName()
+																	, table.getColumn("AD_Client_ID") != null);
+			references.add(reference);
+			referenceMap.put(reference, log);
+		}
+
+		new JPiereReferenceCounter(p_LookupClientID, p_IsApproximateJP, get_TrxName()).count(references);
+
+		long rows = 0;
+		long clientRows = 0;
+		for(JPiereReferenceCounter.Reference reference : references)
+		{
+			MDeleteClientLogJP log = referenceMap.get(reference);
+			if(reference.rows >= 0)
+			{
+				log.setJP_ReferencingRows(BigDecimal.valueOf(reference.rows));
+				rows = rows + reference.rows;
+			}
+
+			if(reference.clientRows >= 0)
+			{
+				log.setJP_ReferencingClientRows(BigDecimal.valueOf(reference.clientRows));
+				clientRows = clientRows + reference.clientRows;
+			}
+		}
+
+		Collections.sort(logs, new Comparator<MDeleteClientLogJP>() {
+			@Override
+			public int compare(MDeleteClientLogJP o1, MDeleteClientLogJP o2)
+			{
+				int compare = o2.getJP_ReferencingRows().compareTo(o1.getJP_ReferencingRows());
+				if(compare != 0)
+					return compare;
+				return o1.getTableName().compareTo(o2.getTableName());
+			}
+		});
+
+		MDeleteClientLogJP.insertBatch(getCtx(), logs, null);
+
+		return Msg.getElement(getCtx(), "JP_ReferencingRows") + " : " + rows
+				+ (p_LookupClientID > 0 ? " / " + Msg.getElement(getCtx(), "JP_ReferencingClientRows") + " : " + clientRows : "")
+				+ (p_IsApproximateJP ? " (" + Msg.getElement(getCtx(), "IsApproximateJP") + ")" : "");
 	}
 
 	private ArrayList<String> createTableList_AD()
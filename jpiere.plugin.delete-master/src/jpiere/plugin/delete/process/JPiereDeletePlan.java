@@ -0,0 +1,357 @@
+/******************************************************************************
+ * Product: JPiere                                                            *
+ * Copyright (C) Hideaki Hagiwara (h.hagiwara@oss-erp.co.jp)                  *
+ *                                                                            *
+ * This program is free software, you can redistribute it and/or modify it    *
+ * under the terms version 2 of the GNU General Public License as published   *
+ * by the Free Software Foundation. This program is distributed in the hope   *
+ * that it will be useful, but WITHOUT ANY WARRANTY.                          *
+ * See the GNU General Public License for more details.                       *
+ *                                                                            *
+ * JPiere is maintained by OSS ERP Solutions Co., Ltd.                        *
+ * (http://www.oss-erp.co.jp)                                                 *
+ *****************************************************************************/
+package jpiere.plugin.delete.process;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+import org.compiere.model.MColumn;
+import org.compiere.model.MTable;
+import org.compiere.util.CCache;
+import org.compiere.util.CLogger;
+import org.compiere.util.Util;
+
+import jpiere.plugin.delete.model.DeleteProfileTree;
+
+/**
+ * 	Delete Plan.
+ *
+ *  Compiled form of a Delete Profile: the table lists of the profile and the ordered
+ *  steps of the custom delete profiles with the SQL templates and the treat of foreign key.
+ *  The plan is cached per JP_DeleteProfile_ID together with the Delete Profile Tree it was
+ *  compiled from. It is compiled again when the tree cache is reset (save or delete of the
+ *  profile, a custom profile or a line) and when AD_Column is changed. Changes by SQL are
+ *  seen after Cache Reset.
+ *
+ */
+public class JPiereDeletePlan
+{
+	private static final CLogger log = CLogger.getCLogger(JPiereDeletePlan.class);
+
+	/**	Cache : any change of AD_Column resets all plans, because a plan resolves the treat by IsMandatory	*/
+	private static CCache<Integer, JPiereDeletePlan> s_cache = new CCache<Integer, JPiereDeletePlan>(MColumn.Table_Name, "JP_DeletePlan", 20)
+	{
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		public int reset(int recordId)
+		{
+			return reset();
+		}
+
+		@Override
+		public void newRecord(int recordId)
+		{
+			reset();
+		}
+	};
+
+	/** Place holder of ID list in SQL template	*/
+	public static final String IDS_PLACEHOLDER = "@IDs@";
+
+	private final int JP_DeleteProfile_ID;
+	private final String JP_Delete_Client;
+	/** Tree the plan was compiled from. A new tree instance means the profile was changed. */
+	private final DeleteProfileTree deleteProfile;
+
+	private final String[] customDeleteTables;
+	private final String[] tables;
+	private final JPiereTableIndex tableIndex;
+	private final List<Step> steps;
+
+	/**
+	 * Step of Plan : Delete Records of Custom Delete Profile
+	 */
+	public static class Step
+	{
+		public final int JP_CustomDeleteProfile_ID;
+		public final String tableName;
+		public final String keyColumn;
+		public final String whereClause;
+		public final String treat;
+		public final int value;
+		public final boolean isDeleteDataNotUse;
+		public final boolean isDictionaryTable;
+		public final String[] excludeTables;
+		public final List<LineStep> lines;
+
+		private Step(DeleteProfileTree.CustomProfile customDP, MTable table, List<LineStep> lines)
+		{
+			this.JP_CustomDeleteProfile_ID = customDP.JP_CustomDeleteProfile_ID;
+			this.tableName = table.getTableName();
+			this.keyColumn = table.getTableName() + "_ID";
+			this.whereClause = customDP.whereClause;
+			this.treat = customDP.treat;
+			this.value = customDP.value;
+			this.isDeleteDataNotUse = customDP.isDeleteDataNotUse;
+			this.isDictionaryTable = table.columnExistsInDictionary("EntityType");
+			this.lines = Collections.unmodifiableList(lines);
+
+			String[] exclude = new String[lines.size()];
+			for(int i = 0; i < lines.size(); i++)
+				exclude[i] = lines.get(i).tableName;
+			this.excludeTables = exclude;
+		}
+
+		/**
+		 * @return SQL to select IDs of records that remain
+		 */
+		public String getIDSelectSQL()
+		{
+			return "SELECT " + keyColumn + " FROM " + tableName + " WHERE " + whereClause;
+		}
+
+		/**
+		 * @return SQL template of delete. IDS_PLACEHOLDER is replaced by the IDs that remain.
+		 */
+		public String getDeleteSQLTemplate()
+		{
+			return "DELETE FROM " + tableName + " WHERE " + keyColumn + " NOT IN (" + IDS_PLACEHOLDER + ")";
+		}
+	}
+
+	/**
+	 * Step of Plan : Treat Foreign Key of Custom Delete Profile Line
+	 */
+	public static class LineStep
+	{
+		public final int JP_CustomDeleteProfileLine_ID;
+		public final String tableName;
+		public final String columnName;
+		/** Treat of Foreign Key. Resolved at compile time if it depends on the dictionary only. */
+		public final String treat;
+		public final int value;
+
+		private LineStep(DeleteProfileTree.Line line, String treat)
+		{
+			this.JP_CustomDeleteProfileLine_ID = line.JP_CustomDeleteProfileLine_ID;
+			this.tableName = line.tableName;
+			this.columnName = line.columnName;
+			this.treat = treat;
+			this.value = line.value;
+		}
+
+		/**
+		 * @return SQL template of the line. IDS_PLACEHOLDER is replaced by the IDs that remain.
+		 */
+		public String getSQLTemplate()
+		{
+			String where = " WHERE " + columnName + " NOT IN (" + IDS_PLACEHOLDER + ")";
+			if(JPiereDeleteClientRecords.TREAT_DELETE.equals(treat))
+				return "DELETE FROM " + tableName + where;
+			else if(JPiereDeleteClientRecords.TREAT_SET_NULL.equals(treat))
+				return "UPDATE " + tableName + " SET " + columnName + " = null" + where;
+			else if(JPiereDeleteClientRecords.TREAT_SET_VALUE.equals(treat))
+				return "UPDATE " + tableName + " SET " + columnName + " = " + value + where;
+			else
+				return "UPDATE/DELETE(" + treat + ") " + tableName + where;
+		}
+	}
+
+	/**
+	 * Get Delete Plan (cached).
+	 * The plan is compiled again if the profile or the dictionary was changed.
+	 *
+	 * @param ctx
+	 * @param JP_DeleteProfile_ID
+	 * @param trxName
+	 * @return Delete Plan or null if the profile is not found
+	 */
+	public static JPiereDeletePlan get(Properties ctx, int JP_DeleteProfile_ID, String trxName)
+	{
+		DeleteProfileTree deleteProfile = DeleteProfileTree.get(ctx, JP_DeleteProfile_ID, trxName);
+		if(deleteProfile == null)
+			return null;
+
+		Integer key = Integer.valueOf(JP_DeleteProfile_ID);
+		JPiereDeletePlan plan = s_cache.get(key);
+		if(plan != null && plan.deleteProfile == deleteProfile)
+			return plan;
+
+		plan = new JPiereDeletePlan(ctx, deleteProfile);
+		s_cache.put(key, plan);
+
+		return plan;
+	}
+
+	/**
+	 * Compile Delete Profile
+	 *
+	 * @param ctx
+	 * @param deleteProfile
+	 */
+	private JPiereDeletePlan(Properties ctx, DeleteProfileTree deleteProfile)
+	{
+		this.JP_DeleteProfile_ID = deleteProfile.getJP_DeleteProfile_ID();
+		this.JP_Delete_Client = deleteProfile.getJP_Delete_Client();
+		this.deleteProfile = deleteProfile;
+
+		ArrayList<String> customDeleteTableList = new ArrayList<String>();
+		ArrayList<Step> stepList = new ArrayList<Step>();
+
+		for(DeleteProfileTree.CustomProfile customDP : deleteProfile.getCustomProfiles())
+		{
+			MTable table = MTable.get(ctx, customDP.AD_Table_ID);
+			customDeleteTableList.add(table.getTableName());
+
+			ArrayList<LineStep> lineList = new ArrayList<LineStep>();
+			for(DeleteProfileTree.Line line : customDP.lines)
+			{
+				customDeleteTableList.add(line.tableName);
+				lineList.add(new LineStep(line, compileTreat(ctx, line.tableName, line.columnName, line.treat)));
+			}
+
+			stepList.add(new Step(customDP, table, lineList));
+		}
+
+		this.customDeleteTables = customDeleteTableList.toArray(new String[customDeleteTableList.size()]);
+		this.tableIndex = JPiereTableIndex.get(customDeleteTables);
+		this.steps = Collections.unmodifiableList(stepList);
+
+		//TYPE_of_TRANSACTION = TrxTable + CustomTable
+		if(JPiereDeleteClientRecords.TYPE_ALL_TRANSACTION.equals(JP_Delete_Client)
+				|| JPiereDeleteClientRecords.TYPE_CLIENT_TRANSACTION.equals(JP_Delete_Client))
+		{
+			tables = tableIndex.getTrxAndCustomTables().toArray();
+
+		//TYPE_INITIALIZE_CLIENT = IniTable + TrxTable + CustomTable
+		}else if(JPiereDeleteClientRecords.TYPE_INITIALIZE_CLIENT.equals(JP_Delete_Client)){
+
+			tables = JPiereTableIndex.INI_TABLES.union(tableIndex.getTrxAndCustomTables()).toArray();
+
+		//TYPE_CUSTOM_DELETE = Custom Table
+		}else{
+			tables = customDeleteTables;
+		}
+	}
+
+	/**
+	 * Resolve the treat of foreign key that depends on the dictionary only (IsMandatory).
+	 * The treat that depends on the data (existence of the value) is judged at runtime.
+	 */
+	private static String compileTreat(Properties ctx, String tableName, String columnName, String treat)
+	{
+		if(Util.isEmpty(treat))
+			return treat;
+
+		MColumn column = MTable.get(ctx, tableName).getColumn(columnName);
+		if(column == null)
+			return treat;
+
+		if(treat.equals(JPiereDeleteClientRecords.TREAT_IF_MANDATORY_DELETE_ELSE_NULL))
+		{
+			return column.isMandatory() ? JPiereDeleteClientRecords.TREAT_DELETE : JPiereDeleteClientRecords.TREAT_SET_NULL;
+
+		}else if(treat.equals(JPiereDeleteClientRecords.TREAT_IF_MANDATORY_DELETE_ELSE_VALUE)){
+			if(column.isMandatory())
+				return JPiereDeleteClientRecords.TREAT_DELETE;
+
+		}else if(treat.equals(JPiereDeleteClientRecords.TREAT_IF_MANDATORY_VALUE_ELSE_DELETE)){
+			if(!column.isMandatory())
+				return JPiereDeleteClientRecords.TREAT_DELETE;
+
+		}else if(treat.equals(JPiereDeleteClientRecords.TREAT_IF_MANDATORY_VALUE_ELSE_NULL)){
+			if(!column.isMandatory())
+				return JPiereDeleteClientRecords.TREAT_SET_NULL;
+		}
+
+		return treat;
+	}
+
+	public int getJP_DeleteProfile_ID()
+	{
+		return JP_DeleteProfile_ID;
+	}
+
+	public String getJP_Delete_Client()
+	{
+		return JP_Delete_Client;
+	}
+
+	/**
+	 * @return Delete Profile Tree the plan was compiled from
+	 */
+	public DeleteProfileTree getDeleteProfile()
+	{
+		return deleteProfile;
+	}
+
+	/**
+	 * @return Tables of custom delete profiles and lines, in order of the profile
+	 */
+	public String[] getCustomDeleteTables()
+	{
+		return customDeleteTables.clone();
+	}
+
+	/**
+	 * @param tableName
+	 * @return true if the table is a table of custom delete profiles or lines (ignore case)
+	 */
+	public boolean isCustomDeleteTable(String tableName)
+	{
+		return tableIndex.isCustomTable(tableName);
+	}
+
+	/**
+	 * @return Table Classification Index with Custom Delete Tables of the profile
+	 */
+	public JPiereTableIndex getTableIndex()
+	{
+		return tableIndex;
+	}
+
+	/**
+	 * @return Tables that the profile deletes, by type of the profile
+	 */
+	public String[] getTables()
+	{
+		return tables.clone();
+	}
+
+	/**
+	 * @return Steps of custom delete profiles, ordered by SeqNo
+	 */
+	public List<Step> getSteps()
+	{
+		return steps;
+	}
+
+	/**
+	 * SQL templates of the steps that touch the table, for preview.
+	 *
+	 * @param tableName
+	 * @return SQL templates separated by new line, or null
+	 */
+	public String getSQLTemplates(String tableName)
+	{
+		StringBuilder sql = new StringBuilder();
+		for(Step step : steps)
+		{
+			if(step.tableName.equalsIgnoreCase(tableName))
+				sql.append(step.getDeleteSQLTemplate()).append("\n");
+
+			for(LineStep line : step.lines)
+			{
+				if(line.tableName.equalsIgnoreCase(tableName))
+					sql.append(line.getSQLTemplate()).append("\n");
+			}
+		}
+
+		return sql.length() == 0 ? null : sql.toString();
+	}
+
+}
@@ -0,0 +1,270 @@
+/******************************************************************************
+ * Product: JPiere                                                            *
+ * Copyright (C) Hideaki Hagiwara (h.hagiwara@oss-erp.co.jp)                  *
+ *                                                                            *
+ * This program is free software, you can redistribute it and/or modify it    *
+ * under the terms version 2 of the GNU General Public License as published   *
+ * by the Free Software Foundation. This program is distributed in the hope   *
+ * that it will be useful, but WITHOUT ANY WARRANTY.                          *
+ * See the GNU General Public License for more details.                       *
+ *                                                                            *
+ * JPiere is maintained by OSS ERP Solutions Co., Ltd.                        *
+ * (http://www.oss-erp.co.jp)                                                 *
+ *****************************************************************************/
+package jpiere.plugin.delete.process;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.logging.Level;
+
+import org.adempiere.exceptions.DBException;
+import org.adempiere.util.IProcessUI;
+import org.compiere.model.MSysConfig;
+import org.compiere.util.CLogger;
+import org.compiere.util.DB;
+
+/**
+ * 	Progress of Delete Process.
+ *
+ *  Counts the tables of the plan that are done, deleted and updated rows and the current table,
+ *  and calculates rows per second and ETA. ETA is weighted by the estimated rows (pg_class.reltuples)
+ *  of the tables of the plan, so a large table counts more than an empty table.
+ *  The progress is published to the process monitor and to T_DeleteClientProgressJP
+ *  (one row per AD_PInstance_ID, auto commit) at most once per interval,
+ *  so other sessions can poll it without querying T_DeleteClientLogJP.
+ *  (PostgreSQL only)
+ *
+ */
+public class JPiereDeleteProgress
+{
+	private static final CLogger log = CLogger.getCLogger(JPiereDeleteProgress.class);
+
+	/** SysConfig : Interval of publishing progress (milliseconds) */
+	public static final String JP_DELETE_PROGRESS_INTERVAL_MS = "JP_DELETE_PROGRESS_INTERVAL_MS";
+
+	private static final String UPSERT_SQL = "INSERT INTO T_DeleteClientProgressJP"
+			+ " (AD_PInstance_ID, AD_Client_ID, JP_Delete_Client, Description, TableName, JP_StepsDone, JP_StepsTotal"
+			+ ", JP_RowsDeleted, JP_RowsUpdated, JP_RowsPerSecond, JP_ETASeconds, IsProcessing, Created, Updated)"
+			+ " VALUES (?,?,?,?,?,?,?,?,?,?,?,?,now(),now())"
+			+ " ON CONFLICT (AD_PInstance_ID) DO UPDATE SET Description = EXCLUDED.Description, TableName = EXCLUDED.TableName"
+			+ ", JP_StepsDone = EXCLUDED.JP_StepsDone, JP_StepsTotal = EXCLUDED.JP_StepsTotal"
+			+ ", JP_RowsDeleted = EXCLUDED.JP_RowsDeleted, JP_RowsUpdated = EXCLUDED.JP_RowsUpdated"
+			+ ", JP_RowsPerSecond = EXCLUDED.JP_RowsPerSecond, JP_ETASeconds = EXCLUDED.JP_ETASeconds"
+			+ ", IsProcessing = EXCLUDED.IsProcessing, Updated = now()";
+
+	private final int AD_PInstance_ID;
+	private final int AD_Client_ID;
+	private final String JP_Delete_Client;
+	private final IProcessUI processMonitor;
+	private final long interval;
+	private final long startMillis = System.currentTimeMillis();
+
+	/** Key : UPPER(TableName), Value : Weight (Estimated Rows + 1) */
+	private final HashMap<String, Long> m_Plan = new HashMap<String, Long>();
+	/** UPPER(TableName) of the tables of the plan that are done */
+	private final HashSet<String> m_Done = new HashSet<String>();
+	private long totalWeight = 0;
+	private long doneWeight = 0;
+
+	private long rowsDeleted = 0;
+	private long rowsUpdated = 0;
+	private String section = "";
+	private String currentTable = "";
+	private boolean isProcessing = true;
+	private long lastPublish = 0;
+
+	/**
+	 *
+	 * @param AD_PInstance_ID
+	 * @param AD_Client_ID Client of the process
+	 * @param JP_Delete_Client
+	 * @param processMonitor can be null
+	 */
+	public JPiereDeleteProgress(int AD_PInstance_ID, int AD_Client_ID, String JP_Delete_Client, IProcessUI processMonitor)
+	{
+		this.AD_PInstance_ID = AD_PInstance_ID;
+		this.AD_Client_ID = AD_Client_ID;
+		this.JP_Delete_Client = JP_Delete_Client;
+		this.processMonitor = processMonitor;
+		this.interval = MSysConfig.getIntValue(JP_DELETE_PROGRESS_INTERVAL_MS, 5000);
+	}
+
+	/**
+	 * Set the tables of the plan. Estimated rows are read with one catalog query.
+	 *
+	 * @param tables
+	 * @param trxName
+	 */
+	public void setPlan(Iterable<String> tables, String trxName)
+	{
+		StringBuilder array = new StringBuilder("{");
+		for(String table : tables)
+		{
+			String key = table.toUpperCase(Locale.ROOT);
+			if(m_Plan.containsKey(key))
+				continue;
+
+			m_Plan.put(key, Long.valueOf(1));
+			if(array.length() > 1)
+				array.append(",");
+			array.append(table.toLowerCase(Locale.ROOT));
+		}
+		array.append("}");
+
+		String sql = "SELECT c.relname, GREATEST(c.reltuples, 0)::bigint FROM pg_class c"
+				+ " INNER JOIN pg_namespace n ON (n.oid = c.relnamespace AND n.nspname = current_schema())"
+				+ " WHERE c.relkind IN ('r','p') AND c.relname = ANY(?::text[])";
+
+		PreparedStatement pstmt = null;
+		ResultSet rs = null;
+		try
+		{
+			pstmt = DB.prepareStatement(sql, trxName);
+			pstmt.setString(1, array.toString());
+			rs = pstmt.executeQuery();
+			while (rs.next())
+				m_Plan.put(rs.getString(1).toUpperCase(Locale.ROOT), Long.valueOf(rs.getLong(2) + 1));
+		}
+		catch (SQLException e)
+		{
+			log.log(Level.SEVERE, sql, e);
+			throw new DBException(e, sql);
+		} finally {
+			DB.close(rs, pstmt);
+			rs = null; pstmt = null;
+		}
+
+		totalWeight = 0;
+		for(Long weight : m_Plan.values())
+			totalWeight = totalWeight + weight.longValue();
+
+		publish(true);
+	}
+
+	/**
+	 * Section of the process, e.g. ### DELETE TRANSACTION TABLES ###
+	 */
+	public void setSection(String section)
+	{
+		this.section = section;
+		publish(true);
+	}
+
+	/**
+	 * Table that will be processed
+	 */
+	public void startTable(String tableName)
+	{
+		currentTable = tableName;
+		publish(false);
+	}
+
+	/**
+	 * Table that is processed
+	 *
+	 * @param tableName
+	 * @param rows processed rows (negative = not processed)
+	 * @param isDelete true : deleted rows, false : updated rows
+	 */
+	public void endTable(String tableName, int rows, boolean isDelete)
+	{
+		if(rows > 0)
+		{
+			if(isDelete)
+				rowsDeleted = rowsDeleted + rows;
+			else
+				rowsUpdated = rowsUpdated + rows;
+		}
+
+		String key = tableName.toUpperCase(Locale.ROOT);
+		Long weight = m_Plan.get(key);
+		if(weight != null && m_Done.add(key))
+			doneWeight = doneWeight + weight.longValue();
+
+		publish(false);
+	}
+
+	/**
+	 * End of the process
+	 */
+	public void finish()
+	{
+		isProcessing = false;
+		currentTable = "";
+		publish(true);
+	}
+
+	/**
+	 * @return deleted and updated rows per second
+	 */
+	public long getRowsPerSecond()
+	{
+		long elapsed = System.currentTimeMillis() - startMillis;
+		if(elapsed < 1000)
+			return 0;
+
+		return (rowsDeleted + rowsUpdated) * 1000 / elapsed;
+	}
+
+	/**
+	 * @return ETA of the tables of the plan (seconds), -1 = unknown
+	 */
+	public long getETASeconds()
+	{
+		if(doneWeight == 0 || totalWeight == 0)
+			return -1;
+
+		long elapsed = System.currentTimeMillis() - startMillis;
+		return elapsed * (totalWeight - doneWeight) / doneWeight / 1000;
+	}
+
+	@Override
+	public String toString()
+	{
+		StringBuilder msg = new StringBuilder();
+		msg.append("[").append(m_Done.size()).append("/").append(m_Plan.size()).append("] ");
+		if(currentTable.length() > 0)
+			msg.append(currentTable).append(" ");
+		msg.append("DELETE : ").append(rowsDeleted).append(" UPDATE : ").append(rowsUpdated)
+			.append(" (").append(getRowsPerSecond()).append(" rows/s)");
+
+		long eta = getETASeconds();
+		if(eta >= 0 && isProcessing)
+			msg.append(" ETA ").append(String.format("%d:%02d:%02d", eta / 3600, (eta % 3600) / 60, eta % 60));
+
+		if(section.length() > 0)
+			msg.append(" ").append(section);
+
+		return msg.toString();
+	}
+
+	private void publish(boolean force)
+	{
+		long now = System.currentTimeMillis();
+		if(!force && now - lastPublish < interval)
+			return;
+		lastPublish = now;
+
+		String status = toString();
+		if(processMonitor != null)
+			processMonitor.statusUpdate(status);
+
+		//Progress must not stop the process
+		try
+		{
+			DB.executeUpdateEx(UPSERT_SQL, new Object[] {AD_PInstance_ID, AD_Client_ID, JP_Delete_Client
+					, section.length() > 255 ? section.substring(0, 255) : section, currentTable
+					, m_Done.size(), m_Plan.size(), rowsDeleted, rowsUpdated, getRowsPerSecond(), getETASeconds()
+					, isProcessing ? "Y" : "N"}, null);
+		}
+		catch (DBException e)
+		{
+			log.log(Level.WARNING, UPSERT_SQL, e);
+		}
+	}
+
+}
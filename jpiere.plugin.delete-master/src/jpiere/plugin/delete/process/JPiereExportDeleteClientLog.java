@@ -0,0 +1,282 @@
+/******************************************************************************
+ * Product: JPiere                                                            *
+ * Copyright (C) Hideaki Hagiwara (h.hagiwara@oss-erp.co.jp)                  *
+ *                                                                            *
+ * This program is free software, you can redistribute it and/or modify it    *
+ * under the terms version 2 of the GNU General Public License as published   *
+ * by the Free Software Foundation. This program is distributed in the hope   *
+ * that it will be useful, but WITHOUT ANY WARRANTY.                          *
+ * See the GNU General Public License for more details.                       *
+ *                                                                            *
+ * JPiere is maintained by OSS ERP Solutions Co., Ltd.                        *
+ * (http://www.oss-erp.co.jp)                                                 *
+ *****************************************************************************/
+package jpiere.plugin.delete.process;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.logging.Level;
+
+import org.adempiere.exceptions.AdempiereException;
+import org.adempiere.exceptions.DBException;
+import org.compiere.model.MSysConfig;
+import org.compiere.model.POInfo;
+import org.compiere.process.ProcessInfoParameter;
+import org.compiere.process.SvrProcess;
+import org.compiere.util.DB;
+import org.compiere.util.Env;
+import org.compiere.util.Msg;
+import org.compiere.util.Util;
+
+import jpiere.plugin.delete.model.MDeleteClientLogJP;
+
+/**
+ * 	Export Delete Client Log of one run to JSON Lines or CSV.
+ *
+ *  The log is read with a cursor (fetch size) and written row by row,
+ *  so the whole run is never loaded into memory.
+ *
+ *  Without FilePathOrName the log is written to a temporary file and downloaded.
+ *  FilePathOrName is a file name in the directory of SysConfig
+ *  JP_DELETE_CLIENT_LOG_EXPORT_DIR, and can not be used while it is not set.
+ *  Logs of other clients are exported only by System client.
+ *
+ */
+public class JPiereExportDeleteClientLog extends SvrProcess
+{
+	public static final String FORMAT_JSONL = "JSONL";
+	public static final String FORMAT_CSV = "CSV";
+
+	/** SysConfig : Directory that FilePathOrName is written to */
+	public static final String JP_DELETE_CLIENT_LOG_EXPORT_DIR = "JP_DELETE_CLIENT_LOG_EXPORT_DIR";
+
+	/** Rows fetched from database at a time */
+	private static final int FETCH_SIZE = 1000;
+
+	//Parameters
+	private int p_AD_PInstance_ID = 0; //Run of Delete Process. 0 = Last run
+	private String p_JP_FileFormat = FORMAT_JSONL;
+	private String p_FilePathOrName = null; //File name in export directory. null = Temporary file
+
+	/**
+	 *  Prepare - e.g., get Parameters.
+	 */
+	protected void prepare()
+	{
+		ProcessInfoParameter[] para = getParameter();
+		for (int i = 0; i < para.length; i++)
+		{
+			String name = para[i].getParameterName();
+			if(para[i].getParameter() == null){
+				;//Nothing to do
+			}else if(name.equals("AD_PInstance_ID")){
+				p_AD_PInstance_ID = para[i].getParameterAsInt();
+			}else if(name.equals("JP_FileFormat")){
+				p_JP_FileFormat = para[i].getParameterAsString();
+			}else if(name.equals("FilePathOrName")){
+				p_FilePathOrName = para[i].getParameterAsString();
+			}else{
+				log.log(Level.SEVERE, "Unknown Parameter: " + name);
+			}
+		}
+	}	//	prepare
+
+	/**
+	 * 	Process
+	 *	@return info
+	 *	@throws Exception
+	 */
+	protected String doIt() throws Exception
+	{
+		//System client can export the logs of all clients
+		int AD_Client_ID = Env.getAD_Client_ID(getCtx());
+		String clientWhere = AD_Client_ID == 0 ? "" : " AND AD_Client_ID = " + AD_Client_ID;
+
+		int AD_PInstance_ID = p_AD_PInstance_ID;
+		if(AD_PInstance_ID <= 0)
+			AD_PInstance_ID = DB.getSQLValueEx(get_TrxName(), "SELECT COALESCE(MAX(AD_PInstance_ID),0) FROM T_DeleteClientLogJP WHERE AD_PInstance_ID > 0" + clientWhere);
+		if(AD_PInstance_ID <= 0)
+			return Msg.getMsg(getCtx(), "NotFound");
+
+		boolean isCSV = FORMAT_CSV.equals(p_JP_FileFormat);
+		File file = getFile(AD_PInstance_ID, isCSV ? ".csv" : ".jsonl");
+
+		POInfo poInfo = POInfo.getPOInfo(getCtx(), MDeleteClientLogJP.Table_ID, get_TrxName());
+		ArrayList<String> columns = new ArrayList<String>();
+		for(int i = 0; i < poInfo.getColumnCount(); i++)
+		{
+			if(!poInfo.isVirtualColumn(i))
+				columns.add(poInfo.getColumnName(i));
+		}
+
+		StringBuilder sql = new StringBuilder("SELECT ");
+		for(int i = 0; i < columns.size(); i++)
+		{
+			if(i > 0)
+				sql.append(",");
+			sql.append(columns.get(i));
+		}
+		sql.append(" FROM T_DeleteClientLogJP WHERE AD_PInstance_ID = ?").append(clientWhere).append(" ORDER BY T_DeleteClientLogJP_ID");
+
+		int rows = 0;
+		PreparedStatement pstmt = null;
+		ResultSet rs = null;
+		try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)))
+		{
+			if(isCSV)
+				writeCSVHeader(writer, columns);
+
+			//Cursor is used because the transaction is not auto commit
+			pstmt = DB.prepareStatement(sql.toString(), ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY, get_TrxName());
+			pstmt.setFetchSize(FETCH_SIZE);
+			pstmt.setInt(1, AD_PInstance_ID);
+			rs = pstmt.executeQuery();
+			while (rs.next())
+			{
+				if(isCSV)
+					writeCSV(writer, rs, columns.size());
+				else
+					writeJSON(writer, rs, columns);
+
+				rows++;
+				if(rows % 10000 == 0)
+					statusUpdate(file.getName() + " : " + rows);
+			}
+		}
+		catch (SQLException e)
+		{
+			log.log(Level.SEVERE, sql.toString(), e);
+			throw new DBException(e, sql.toString());
+		} finally {
+			DB.close(rs, pstmt);
+			rs = null; pstmt = null;
+		}
+
+		if(processUI != null)
+			processUI.download(file);
+
+		return file.getAbsolutePath() + " : " + rows;
+	}	//	doIt
+
+	private File getFile(int AD_PInstance_ID, String suffix) throws IOException
+	{
+		String prefix = "DeleteClientLog_" + AD_PInstance_ID;
+		if(Util.isEmpty(p_FilePathOrName, true))
+			return File.createTempFile(prefix + "_", suffix);
+
+		String exportDir = MSysConfig.getValue(JP_DELETE_CLIENT_LOG_EXPORT_DIR, null);
+		if(Util.isEmpty(exportDir, true))
+			throw new AdempiereException(Msg.getMsg(getCtx(), "NotFound") + " : SysConfig " + JP_DELETE_CLIENT_LOG_EXPORT_DIR);
+
+		File dir = new File(exportDir.trim()).getCanonicalFile();
+		if(!dir.isDirectory())
+			throw new AdempiereException(Msg.getMsg(getCtx(), "NotFound") + " : " + JP_DELETE_CLIENT_LOG_EXPORT_DIR + " = " + exportDir);
+
+		//Only a file name; paths can not leave the export directory
+		String name = p_FilePathOrName.trim();
+		File file = new File(dir, name).getCanonicalFile();
+		if(!name.equals(new File(name).getName()) || !dir.equals(file.getParentFile()))
+			throw new AdempiereException(Msg.getMsg(getCtx(), "Invalid") + " : FilePathOrName = " + p_FilePathOrName);
+
+		return file;
+	}
+
+	private void writeJSON(Writer writer, ResultSet rs, ArrayList<String> columns) throws SQLException, IOException
+	{
+		writer.write('{');
+		for(int i = 0; i < columns.size(); i++)
+		{
+			if(i > 0)
+				writer.write(',');
+			writeJSONString(writer, columns.get(i));
+			writer.write(':');
+
+			Object value = rs.getObject(i + 1);
+			if(value == null)
+				writer.write("null");
+			else if(value instanceof BigDecimal)
+				writer.write(((BigDecimal)value).toPlainString());
+			else if(value instanceof Number)
+				writer.write(value.toString());
+			else
+				writeJSONString(writer, value.toString());
+		}
+		writer.write("}\n");
+	}
+
+	private void writeJSONString(Writer writer, String value) throws IOException
+	{
+		writer.write('"');
+		for(int i = 0; i < value.length(); i++)
+		{
+			char c = value.charAt(i);
+			switch (c)
+			{
+				case '"': writer.write("\\\""); break;
+				case '\\': writer.write("\\\\"); break;
+				case '\n': writer.write("\\n"); break;
+				case '\r': writer.write("\\r"); break;
+				case '\t': writer.write("\\t"); break;
+				default:
+					if(c < 0x20)
+						writer.write(String.format("\\u%04x", (int)c));
+					else
+						writer.write(c);
+			}
+		}
+		writer.write('"');
+	}
+
+	private void writeCSVHeader(Writer writer, ArrayList<String> columns) throws IOException
+	{
+		for(int i = 0; i < columns.size(); i++)
+		{
+			if(i > 0)
+				writer.write(',');
+			writeCSVValue(writer, columns.get(i));
+		}
+		writer.write("\r\n");
+	}
+
+	private void writeCSV(Writer writer, ResultSet rs, int columnCount) throws SQLException, IOException
+	{
+		for(int i = 0; i < columnCount; i++)
+		{
+			if(i > 0)
+				writer.write(',');
+
+			Object value = rs.getObject(i + 1);
+			if(value == null)
+				continue;
+			else if(value instanceof BigDecimal)
+				writer.write(((BigDecimal)value).toPlainString());
+			else
+				writeCSVValue(writer, value.toString());
+		}
+		writer.write("\r\n");
+	}
+
+	private void writeCSVValue(Writer writer, String value) throws IOException
+	{
+		if(value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0)
+		{
+			writer.write(value);
+			return;
+		}
+
+		writer.write('"');
+		writer.write(value.replace("\"", "\"\""));
+		writer.write('"');
+	}
+
+}
@@ -4,16 +4,25 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Properties;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.logging.Level;
 
+import org.adempiere.exceptions.AdempiereException;
 import org.adempiere.exceptions.DBException;
 import org.adempiere.util.ProcessUtil;
+import org.adempiere.util.ServerContext;
 import org.compiere.db.AdempiereDatabase;
 import org.compiere.model.MAcctSchema;
-import org.compiere.model.MBPGroup;
 import org.compiere.model.MClient;
-import org.compiere.model.MProductCategory;
-import org.compiere.model.PO;
+import org.compiere.model.MColumn;
+import org.compiere.model.MSysConfig;
+import org.compiere.model.MTable;
 import org.compiere.process.ProcessInfo;
 import org.compiere.process.ProcessInfoParameter;
 import org.compiere.process.SvrProcess;
@@ -27,7 +36,8 @@ public class JPiereInitializeDefaultAccountOnly extends SvrProcess {
 
 	private int p_LookupClientID = 0;
 
-	private ArrayList<Integer> defaultAccount_List = new ArrayList<Integer>();
+	/** Account_ID (C_ElementValue_ID) of Default Accounts	*/
+	private TreeSet<Integer> defaultAccount_Set = new TreeSet<Integer>();
 
 	@Override
 	protected void prepare()
@@ -81,10 +91,8 @@ public class JPiereInitializeDefaultAccountOnly extends SvrProcess {
 			executeUpdateConstraint("D");
 			commitEx();
 
-			//Copy Defaut Account
-			doAcctSchemaDefaultCopy();
-			doAcctProductCategoryAcctCopy();
-			doBPGroupAcctCopyAcctCopy();
+			//Copy Defaut Account (Accounting Schemas in parallel)
+			doCopyDefaultAccounts();
 
 			//Delete Relation Data
 			deletePA_Report_Tables();
@@ -92,8 +100,6 @@ public class JPiereInitializeDefaultAccountOnly extends SvrProcess {
 			deleteC_SubAcct_Tables();
 
 			//Get Default Accont
-			getAcctSchemaElementAccounts();
-			getDefaultGLAccounts();
 			getDefaultAccounts();
 
 			//Delete ValidCombination
@@ -182,105 +188,180 @@ public class JPiereInitializeDefaultAccountOnly extends SvrProcess {
 		//SELECT * from pg_trigger where oid in ( select tr.oid from pg_class cl, pg_trigger tr, pg_namespace ns where tr.tgrelid = cl.oid and  cl.relnamespace = ns.oid and ns.nspname = 'adempiere')
 	}
 
-	private boolean doAcctSchemaDefaultCopy()
+	/**
+	 * Copy Default Accounts of each Accounting Schema.
+	 * Accounting Schemas are processed in parallel, each in own transaction.
+	 */
+	private void doCopyDefaultAccounts() throws Exception
 	{
-		ProcessInfo pi = new ProcessInfo("OverWrite Default Account", 0);
-		String className = "org.compiere.process.AcctSchemaDefaultCopy";
-		pi.setClassName(className);
-		pi.setAD_Client_ID(getAD_Client_ID());
-		pi.setAD_User_ID(getAD_User_ID());
-		pi.setAD_PInstance_ID(getAD_PInstance_ID());
-
 		MAcctSchema[] acctSchemas = MAcctSchema.getClientAcctSchema(getCtx(), p_LookupClientID);
+		if(acctSchemas.length == 0)
+			return;
+
+		int parallel = Math.max(1, Math.min(acctSchemas.length, MSysConfig.getIntValue("JP_INITIALIZE_ACCT_PARALLEL", 4)));
+		ExecutorService executor = Executors.newFixedThreadPool(parallel);
+		ArrayList<Future<String>> futures = new ArrayList<Future<String>>();
+		final Properties ctx = getCtx();
 		for(int i = 0; i < acctSchemas.length; i++)
 		{
-			ArrayList<ProcessInfoParameter> list = new ArrayList<ProcessInfoParameter>();
-			list.add (new ProcessInfoParameter("C_AcctSchema_ID", acctSchemas[i].getC_AcctSchema_ID(), null, null, null ));
-			list.add (new ProcessInfoParameter("CopyOverwriteAcct", "Y", null, null, null ));
-			ProcessInfoParameter[] pars = new ProcessInfoParameter[list.size()];
-			list.toArray(pars);
-			pi.setParameter(pars);
+			final int C_AcctSchema_ID = acctSchemas[i].getC_AcctSchema_ID();
+			futures.add(executor.submit(new Callable<String>() {
+				@Override
+				public String call() throws Exception
+				{
+					return copyDefaultAccounts(ctx, C_AcctSchema_ID);
+				}
+			}));
+		}
 
-			if(processUI == null)
+		executor.shutdown();
+		try
+		{
+			for(Future<String> future : futures)
 			{
-				processUI = Env.getProcessUI(getCtx());
-
+				try
+				{
+					addLog(future.get());
+				}
+				catch (ExecutionException e)
+				{
+					Throwable cause = e.getCause();
+					if(cause instanceof Exception)
+						throw (Exception)cause;
+					throw new AdempiereException(cause);
+				}
 			}
-
-			ProcessUtil.startJavaProcess(getCtx(), pi, Trx.get(get_TrxName(), true), false, processUI);
+		} finally {
+			executor.shutdownNow();
 		}
-
-		return true;
 	}
 
-	private boolean doAcctProductCategoryAcctCopy()
+	/**
+	 * Copy Default Accounts of the Accounting Schema
+	 *
+	 * 1. AcctSchemaDefaultCopy (Overwrite) : C_AcctSchema_Default to Product Category, BP Group and others.
+	 * 2. Product Category to Product : UPDATE and INSERT ... SELECT for all Product Categories at once.
+	 * 3. BP Group to Business Partner : UPDATE and INSERT ... SELECT for all BP Groups at once.
+	 *
+	 * @param ctx
+	 * @param C_AcctSchema_ID
+	 * @return message
+	 */
+	private String copyDefaultAccounts(Properties ctx, int C_AcctSchema_ID) throws Exception
 	{
-		ProcessInfo pi = new ProcessInfo("OverWrite Default Product Account", 0);
-		String className = "org.compiere.process.ProductCategoryAcctCopy";
-		pi.setClassName(className);
-		pi.setAD_Client_ID(getAD_Client_ID());
-		pi.setAD_User_ID(getAD_User_ID());
-		pi.setAD_PInstance_ID(getAD_PInstance_ID());
-
-		MAcctSchema[] acctSchemas = MAcctSchema.getClientAcctSchema(getCtx(), p_LookupClientID);
-		for(int i = 0; i < acctSchemas.length; i++)
+		ServerContext.setCurrentInstance(ctx);
+		Trx trx = Trx.get(Trx.createTrxName("JPInitAcct"), true);
+		try
 		{
-			int[] M_ProductCategory_IDs = PO.getAllIDs(MProductCategory.Table_Name, " AD_Client_ID="+p_LookupClientID, get_TrxName());
-			for(int j=0 ; j <M_ProductCategory_IDs.length; j++)
-			{
-				ArrayList<ProcessInfoParameter> list = new ArrayList<ProcessInfoParameter>();
-				list.add (new ProcessInfoParameter("C_AcctSchema_ID", acctSchemas[i].getC_AcctSchema_ID(), null, null, null ));
-				list.add (new ProcessInfoParameter("M_Product_Category_ID", M_ProductCategory_IDs[j], null, null, null ));
-				ProcessInfoParameter[] pars = new ProcessInfoParameter[list.size()];
-				list.toArray(pars);
-				pi.setParameter(pars);
-
-				if(processUI == null)
-				{
-					processUI = Env.getProcessUI(getCtx());
+			long start = System.currentTimeMillis();
+
+			ProcessInfo pi = new ProcessInfo("OverWrite Default Account", 0);
+			pi.setClassName("org.compiere.process.AcctSchemaDefaultCopy");
+			pi.setAD_Client_ID(getAD_Client_ID());
+			pi.setAD_User_ID(getAD_User_ID());
+			pi.setAD_PInstance_ID(getAD_PInstance_ID());
+			ProcessInfoParameter[] pars = new ProcessInfoParameter[] {
+					new ProcessInfoParameter("C_AcctSchema_ID", C_AcctSchema_ID, null, null, null )
+					, new ProcessInfoParameter("CopyOverwriteAcct", "Y", null, null, null )};
+			pi.setParameter(pars);
+			ProcessUtil.startJavaProcess(ctx, pi, trx, false, null);
+			if(pi.isError())
+				throw new AdempiereException(pi.getSummary());
 
-				}
+			int products = copyGroupAccounts(ctx, trx.getTrxName(), C_AcctSchema_ID
+					, "M_Product_Acct", "M_Product", "M_Product_Category_Acct", "M_Product_Category_ID");
 
-				ProcessUtil.startJavaProcess(getCtx(), pi, Trx.get(get_TrxName(), true), false, processUI);
+			int bPartners = 0;
+			String[] bpAcctTables = {"C_BP_Customer_Acct", "C_BP_Vendor_Acct", "C_BP_Employee_Acct"};
+			for(int i = 0; i < bpAcctTables.length; i++)
+			{
+				bPartners = bPartners + copyGroupAccounts(ctx, trx.getTrxName(), C_AcctSchema_ID
+						, bpAcctTables[i], "C_BPartner", "C_BP_Group_Acct", "C_BP_Group_ID");
 			}
-		}
 
-		return true;
+			trx.commit(true);
+
+			return "C_AcctSchema_ID=" + C_AcctSchema_ID + " : M_Product_Acct #" + products + " / C_BPartner Acct #" + bPartners
+					+ " (" + (System.currentTimeMillis() - start) + "ms)";
+
+		}catch (Exception e) {
+			trx.rollback();
+			throw e;
+		} finally {
+			trx.close();
+			ServerContext.dispose();
+		}
 	}
 
-	private boolean doBPGroupAcctCopyAcctCopy()
+	/**
+	 * Copy Accounts of the Group (e.g. Product Category) to the Entities (e.g. Product) of the Group.
+	 * The columns are the Account columns that exist in both of Accounting tables.
+	 *
+	 * @param ctx
+	 * @param trxName
+	 * @param C_AcctSchema_ID
+	 * @param acctTable Accounting table of Entity (e.g. M_Product_Acct)
+	 * @param entityTable Entity table (e.g. M_Product)
+	 * @param groupAcctTable Accounting table of Group (e.g. M_Product_Category_Acct)
+	 * @param groupKey Key column of Group (e.g. M_Product_Category_ID)
+	 * @return updated and inserted records
+	 */
+	private int copyGroupAccounts(Properties ctx, String trxName, int C_AcctSchema_ID
+			, String acctTable, String entityTable, String groupAcctTable, String groupKey)
 	{
-		ProcessInfo pi = new ProcessInfo("OverWrite Default BP Account", 0);
-		String className = "org.compiere.process.BPGroupAcctCopy";
-		pi.setClassName(className);
-		pi.setAD_Client_ID(getAD_Client_ID());
-		pi.setAD_User_ID(getAD_User_ID());
-		pi.setAD_PInstance_ID(getAD_PInstance_ID());
+		MTable m_AcctTable = MTable.get(ctx, acctTable);
+		MTable m_GroupAcctTable = MTable.get(ctx, groupAcctTable);
+		if(m_AcctTable == null || m_AcctTable.get_ID() == 0 || m_GroupAcctTable == null || m_GroupAcctTable.get_ID() == 0)
+			return 0;
 
-		MAcctSchema[] acctSchemas = MAcctSchema.getClientAcctSchema(getCtx(), p_LookupClientID);
-		for(int i = 0; i < acctSchemas.length; i++)
+		ArrayList<String> columns = new ArrayList<String>();
+		for(MColumn column : m_AcctTable.getColumns(false))
 		{
-			int[] C_BP_Group_IDs = PO.getAllIDs(MBPGroup.Table_Name, " AD_Client_ID="+p_LookupClientID, get_TrxName());
-			for(int j=0 ; j <C_BP_Group_IDs.length; j++)
-			{
-				ArrayList<ProcessInfoParameter> list = new ArrayList<ProcessInfoParameter>();
-				list.add (new ProcessInfoParameter("C_AcctSchema_ID", acctSchemas[i].getC_AcctSchema_ID(), null, null, null ));
-				list.add (new ProcessInfoParameter("C_BP_Group_ID", C_BP_Group_IDs[j], null, null, null ));
-				ProcessInfoParameter[] pars = new ProcessInfoParameter[list.size()];
-				list.toArray(pars);
-				pi.setParameter(pars);
-
-				if(processUI == null)
-				{
-					processUI = Env.getProcessUI(getCtx());
-
-				}
+			if(column.isKey() || !Util.isEmpty(column.getColumnSQL()) || !column.getColumnName().endsWith("_Acct"))
+				continue;
 
-				ProcessUtil.startJavaProcess(getCtx(), pi, Trx.get(get_TrxName(), true), false, processUI);
-			}
+			if(m_GroupAcctTable.getColumn(column.getColumnName()) != null)
+				columns.add(column.getColumnName());
 		}
 
-		return true;
+		if(columns.size() == 0)
+			return 0;
+
+		String entityKey = entityTable + "_ID";
+		StringBuilder updateSQL = new StringBuilder("UPDATE " + acctTable + " a SET ");
+		StringBuilder insertColumns = new StringBuilder();
+		StringBuilder selectColumns = new StringBuilder();
+		for(String column : columns)
+		{
+			updateSQL.append(column).append(" = g.").append(column).append(", ");
+			insertColumns.append(", ").append(column);
+			selectColumns.append(", g.").append(column);
+		}
+		updateSQL.append("Updated = now(), UpdatedBy = ?")
+			.append(" FROM " + entityTable + " e, " + groupAcctTable + " g")
+			.append(" WHERE a." + entityKey + " = e." + entityKey)
+			.append(" AND g." + groupKey + " = e." + groupKey)
+			.append(" AND g.C_AcctSchema_ID = a.C_AcctSchema_ID")
+			.append(" AND a.C_AcctSchema_ID = ? AND a.AD_Client_ID = ?");
+
+		String uuColumn = acctTable + "_UU";
+		boolean hasUU = m_AcctTable.getColumn(uuColumn) != null;
+		StringBuilder insertSQL = new StringBuilder("INSERT INTO " + acctTable
+				+ " (" + entityKey + ", C_AcctSchema_ID, AD_Client_ID, AD_Org_ID, IsActive, Created, CreatedBy, Updated, UpdatedBy"
+				+ (hasUU ? ", " + uuColumn : "") + insertColumns + ")")
+			.append(" SELECT e." + entityKey + ", g.C_AcctSchema_ID, e.AD_Client_ID, e.AD_Org_ID, 'Y', now(), ?, now(), ?"
+				+ (hasUU ? ", generate_uuid()" : "") + selectColumns)
+			.append(" FROM " + entityTable + " e INNER JOIN " + groupAcctTable + " g ON (g." + groupKey + " = e." + groupKey + ")")
+			.append(" WHERE g.C_AcctSchema_ID = ? AND e.AD_Client_ID = ?")
+			.append(" AND NOT EXISTS (SELECT 1 FROM " + acctTable + " a WHERE a." + entityKey + " = e." + entityKey
+				+ " AND a.C_AcctSchema_ID = g.C_AcctSchema_ID)");
+
+		int AD_User_ID = getAD_User_ID();
+		int updates = DB.executeUpdateEx(updateSQL.toString(), new Object[] {AD_User_ID, C_AcctSchema_ID, p_LookupClientID}, trxName);
+		int inserts = DB.executeUpdateEx(insertSQL.toString(), new Object[] {AD_User_ID, AD_User_ID, C_AcctSchema_ID, p_LookupClientID}, trxName);
+		if (log.isLoggable(Level.FINE)) log.fine(acctTable + " C_AcctSchema_ID=" + C_AcctSchema_ID + " Update=#" + updates + " Insert=#" + inserts);
+
+		return updates + inserts;
 	}
 
 	private boolean deletePA_Report_Tables()
@@ -321,263 +402,244 @@ public class JPiereInitializeDefaultAccountOnly extends SvrProcess {
 		return true;
 	}
 
-	private void getAcctSchemaElementAccounts()
+	private static final String[] defaultGLAccounts_Column =
+		{"CommitmentOffsetSales_Acct"
+		,"CommitmentOffset_Acct"
+		,"CurrencyBalancing_Acct"
+		,"IncomeSummary_Acct"	//Don't use in iDempiere
+		,"IntercompanyDueFrom_Acct"
+		,"IntercompanyDueTo_Acct"
+		,"PPVOffset_Acct"
+		,"RetainedEarning_Acct" //Don't use in iDempiere
+		,"SuspenseBalancing_Acct"
+		,"SuspenseError_Acct"
+		};
+
+	private static final String[] defaultAccounts_Column =
+		{"B_Asset_Acct"
+		,"B_Expense_Acct"			//Don't use in iDempiere
+		,"B_InTransit_Acct"
+		,"B_InterestExp_Acct"
+		,"B_InterestRev_Acct"
+		,"B_PaymentSelect_Acct"
+		,"B_RevaluationGain_Acct"	//Don't use in iDempiere
+		,"B_RevaluationLoss_Acct"	//Don't use in iDempiere
+		,"B_SettlementGain_Acct"	//Don't use in iDempiere
+		,"B_SettlementLoss_Acct"	//Don't use in iDempiere
+		,"B_UnallocatedCash_Acct"
+		,"B_Unidentified_Acct"		//Don't use in iDempiere
+		,"CB_Asset_Acct"
+		,"CB_CashTransfer_Acct"
+		,"CB_Differences_Acct"
+		,"CB_Expense_Acct"
+		,"CB_Receipt_Acct"
+		,"C_Prepayment_Acct"
+		,"C_Receivable_Acct"
+		,"C_Receivable_Services_Acct" //(20)
+		,"Ch_Expense_Acct"
+		,"Ch_Revenue_Acct"			//Don't use in iDempiere
+		,"E_Expense_Acct"			//Don't use in iDempiere
+		,"E_Prepayment_Acct"		//Don't use in iDempiere
+		,"NotInvoicedReceipts_Acct"
+		,"NotInvoicedReceivables_Acct"	//Don't use in iDempiere
+		,"NotInvoicedRevenue_Acct"		//Don't use in iDempiere
+		,"PJ_Asset_Acct"
+		,"PJ_WIP_Acct"
+		,"P_Asset_Acct"
+		,"P_AverageCostVariance_Acct"
+		,"P_Burden_Acct"	//Don't use in iDempiere
+		,"P_COGS_Acct"
+		,"P_CostAdjustment_Acct"
+		,"P_CostOfProduction_Acct"	//Don't use in iDempiere
+		,"P_Expense_Acct"
+		,"P_FloorStock_Acct"		//Don't use in iDempiere
+		,"P_InventoryClearing_Acct"
+		,"P_InvoicePriceVariance_Acct"
+		,"P_Labor_Acct"			//(40)
+		,"P_LandedCostClearing_Acct"
+		,"P_MethodChangeVariance_Acct"	//Don't use in iDempiere
+		,"P_MixVariance_Acct"			//Don't use in iDempiere
+		,"P_OutsideProcessing_Acct"		//Don't use in iDempiere
+		,"P_Overhead_Acct"				//Don't use in iDempiere
+		,"P_PurchasePriceVariance_Acct"
+		,"P_RateVariance_Acct"
+		,"P_Revenue_Acct"
+		,"P_Scrap_Acct"					//Don't use in iDempiere
+		,"P_TradeDiscountGrant_Acct"
+		,"P_TradeDiscountRec_Acct"
+		,"P_UsageVariance_Acct"			//Don't use in iDempiere
+		,"P_WIP_Acct"					//Don't use in iDempiere
+		,"PayDiscount_Exp_Acct"
+		,"PayDiscount_Rev_Acct"
+		,"RealizedGain_Acct"
+		,"RealizedLoss_Acct"
+		,"T_Credit_Acct"
+		,"T_Due_Acct"
+		,"T_Expense_Acct"	//(60)
+		,"T_Liability_Acct"		//Don't use in iDempiere
+		,"T_Receivables_Acct"	//Don't use in iDempiere
+		,"UnEarnedRevenue_Acct"	//Don't use in iDempiere
+		,"UnrealizedGain_Acct"
+		,"UnrealizedLoss_Acct"
+		,"V_Liability_Acct"
+		,"V_Liability_Services_Acct"
+		,"V_Prepayment_Acct"
+		,"W_Differences_Acct"
+		,"W_InvActualAdjust_Acct"	//Don't use in iDempiere
+		,"W_Inventory_Acct"			//Don't use in iDempiere
+		,"W_Revaluation_Acct"		//Don't use in iDempiere
+		,"Withholding_Acct"			//Don't use in iDempiere
+		,"WriteOff_Acct" //(74)
+
+		};
+
+	/**
+	 * Get Account_ID of Default Accounts with single query.
+	 * C_AcctSchema_Element + C_AcctSchema_GL + C_AcctSchema_Default.
+	 * The Account columns are unpivoted by VALUES, columns that are not in the dictionary are skipped.
+	 */
+	private void getDefaultAccounts()
 	{
-		String[] AcctSchemaElement_Accounts =
-			{"C_ElementValue_ID"};
+		StringBuilder sql = new StringBuilder("SELECT ev.C_ElementValue_ID FROM C_AcctSchema_Element ae")
+				.append(" INNER JOIN C_ElementValue ev ON (ev.C_ElementValue_ID = ae.C_ElementValue_ID)")
+				.append(" WHERE ae.AD_Client_ID = ?");
 
-		for(int i = 0; i < AcctSchemaElement_Accounts.length; i++)
+		String glValues = getValuesClause("C_AcctSchema_GL", "gl", defaultGLAccounts_Column);
+		if(glValues != null)
 		{
-			String sql = "SELECT ev.C_ElementValue_ID FROM C_AcctSchema_Element ae "
-					+" INNER JOIN adempiere.C_ElementValue ev on (ev.C_ElementValue_ID = ae." + AcctSchemaElement_Accounts[i] + ") "
-					+ " WHERE ae.AD_Client_ID = ? ";
+			sql.append(" UNION SELECT vc.Account_ID FROM C_AcctSchema_GL gl")
+				.append(" CROSS JOIN LATERAL (VALUES ").append(glValues).append(") acct(C_ValidCombination_ID)")
+				.append(" INNER JOIN C_ValidCombination vc ON (vc.C_ValidCombination_ID = acct.C_ValidCombination_ID)")
+				.append(" WHERE gl.AD_Client_ID = ?");
+		}
 
-			PreparedStatement pstmt = null;
-			ResultSet rs = null;
-			try
-			{
-				pstmt = DB.prepareStatement(sql, get_TrxName());
-				pstmt.setInt(1, p_LookupClientID);
-				rs = pstmt.executeQuery();
-				while (rs.next())
-				{
-					int account_ID =rs.getInt(1);
-					if(account_ID > 0)
-						defaultAccount_List.add(Integer.valueOf(account_ID));
-				}
-			}
-			catch (Exception e)
-			{
-				log.log(Level.SEVERE, sql, e);
-			}
-			finally
+		String defaultValues = getValuesClause("C_AcctSchema_Default", "df", defaultAccounts_Column);
+		if(defaultValues != null)
+		{
+			sql.append(" UNION SELECT vc.Account_ID FROM C_AcctSchema_Default df")
+				.append(" CROSS JOIN LATERAL (VALUES ").append(defaultValues).append(") acct(C_ValidCombination_ID)")
+				.append(" INNER JOIN C_ValidCombination vc ON (vc.C_ValidCombination_ID = acct.C_ValidCombination_ID)")
+				.append(" WHERE df.AD_Client_ID = ?");
+		}
+
+		PreparedStatement pstmt = null;
+		ResultSet rs = null;
+		try
+		{
+			pstmt = DB.prepareStatement(sql.toString(), get_TrxName());
+			int index = 1;
+			pstmt.setInt(index++, p_LookupClientID);
+			if(glValues != null)
+				pstmt.setInt(index++, p_LookupClientID);
+			if(defaultValues != null)
+				pstmt.setInt(index++, p_LookupClientID);
+			rs = pstmt.executeQuery();
+			while (rs.next())
 			{
-				DB.close(rs, pstmt);
-				rs = null; pstmt = null;
+				int account_ID =rs.getInt(1);
+				if(account_ID > 0)
+					defaultAccount_Set.add(Integer.valueOf(account_ID));
 			}
-
 		}
+		catch (SQLException e)
+		{
+			log.log(Level.SEVERE, sql.toString(), e);
+			throw new DBException(e, sql.toString());
+		}
+		finally
+		{
+			DB.close(rs, pstmt);
+			rs = null; pstmt = null;
+		}
+
+		addLog("Default Accounts : " + defaultAccount_Set.size());
 	}
 
-	private void getDefaultGLAccounts()
+	/**
+	 * @return VALUES clause like "(df.B_Asset_Acct),(df.B_InTransit_Acct)" of the columns in the dictionary, or null
+	 */
+	private String getValuesClause(String tableName, String alias, String[] columns)
 	{
-		String[] defaultGLAccounts_Column =
-			{"CommitmentOffsetSales_Acct"
-			,"CommitmentOffset_Acct"
-			,"CurrencyBalancing_Acct"
-			,"IncomeSummary_Acct"	//Don't use in iDempiere
-			,"IntercompanyDueFrom_Acct"
-			,"IntercompanyDueTo_Acct"
-			,"PPVOffset_Acct"
-			,"RetainedEarning_Acct" //Don't use in iDempiere
-			,"SuspenseBalancing_Acct"
-			,"SuspenseError_Acct"
-			};
-
-		for(int i = 0; i < defaultGLAccounts_Column.length; i++)
-		{
-			String sql = "SELECT vc.Account_ID FROM C_AcctSchema_GL gl "
-					+" INNER JOIN adempiere.C_ValidCombination vc on (vc.C_ValidCombination_ID = gl." + defaultGLAccounts_Column[i] + ") "
-					+ " WHERE gl.AD_Client_ID = ? ";
-
-			PreparedStatement pstmt = null;
-			ResultSet rs = null;
-			try
-			{
-				pstmt = DB.prepareStatement(sql, get_TrxName());
-				pstmt.setInt(1, p_LookupClientID);
-				rs = pstmt.executeQuery();
-				while (rs.next())
-				{
-					int account_ID =rs.getInt(1);
-					if(account_ID > 0)
-						defaultAccount_List.add(Integer.valueOf(account_ID));
-				}
-			}
-			catch (Exception e)
-			{
-				log.log(Level.SEVERE, sql, e);
-			}
-			finally
-			{
-				DB.close(rs, pstmt);
-				rs = null; pstmt = null;
-			}
+		MTable m_Table = MTable.get(getCtx(), tableName);
+		StringBuilder values = new StringBuilder();
+		for(int i = 0; i < columns.length; i++)
+		{
+			if(m_Table.getColumn(columns[i]) == null)
+				continue;
 
+			if(values.length() > 0)
+				values.append(",");
+			values.append("(").append(alias).append(".").append(columns[i]).append(")");
 		}
+
+		return values.length() == 0 ? null : values.toString();
 	}
 
-	private void getDefaultAccounts()//TODO
+	/**
+	 * @return Array literal of Default Accounts for binding, like "{101,102}"
+	 */
+	private String getDefaultAccountArray()
 	{
-
-		String[] defaultAccounts_Column =
-			{"B_Asset_Acct"
-			,"B_Expense_Acct"			//Don't use in iDempiere
-			,"B_InTransit_Acct"
-			,"B_InterestExp_Acct"
-			,"B_InterestRev_Acct"
-			,"B_PaymentSelect_Acct"
-			,"B_RevaluationGain_Acct"	//Don't use in iDempiere
-			,"B_RevaluationLoss_Acct"	//Don't use in iDempiere
-			,"B_SettlementGain_Acct"	//Don't use in iDempiere
-			,"B_SettlementLoss_Acct"	//Don't use in iDempiere
-			,"B_UnallocatedCash_Acct"
-			,"B_Unidentified_Acct"		//Don't use in iDempiere
-			,"CB_Asset_Acct"
-			,"CB_CashTransfer_Acct"
-			,"CB_Differences_Acct"
-			,"CB_Expense_Acct"
-			,"CB_Receipt_Acct"
-			,"C_Prepayment_Acct"
-			,"C_Receivable_Acct"
-			,"C_Receivable_Services_Acct" //(20)
-			,"Ch_Expense_Acct"
-			,"Ch_Revenue_Acct"			//Don't use in iDempiere
-			,"E_Expense_Acct"			//Don't use in iDempiere
-			,"E_Prepayment_Acct"		//Don't use in iDempiere
-			,"NotInvoicedReceipts_Acct"
-			,"NotInvoicedReceivables_Acct"	//Don't use in iDempiere
-			,"NotInvoicedRevenue_Acct"		//Don't use in iDempiere
-			,"PJ_Asset_Acct"
-			,"PJ_WIP_Acct"
-			,"P_Asset_Acct"
-			,"P_AverageCostVariance_Acct"
-			,"P_Burden_Acct"	//Don't use in iDempiere
-			,"P_COGS_Acct"
-			,"P_CostAdjustment_Acct"
-			,"P_CostOfProduction_Acct"	//Don't use in iDempiere
-			,"P_Expense_Acct"
-			,"P_FloorStock_Acct"		//Don't use in iDempiere
-			,"P_InventoryClearing_Acct"
-			,"P_InvoicePriceVariance_Acct"
-			,"P_Labor_Acct"			//(40)
-			,"P_LandedCostClearing_Acct"
-			,"P_MethodChangeVariance_Acct"	//Don't use in iDempiere
-			,"P_MixVariance_Acct"			//Don't use in iDempiere
-			,"P_OutsideProcessing_Acct"		//Don't use in iDempiere
-			,"P_Overhead_Acct"				//Don't use in iDempiere
-			,"P_PurchasePriceVariance_Acct"
-			,"P_RateVariance_Acct"
-			,"P_Revenue_Acct"
-			,"P_Scrap_Acct"					//Don't use in iDempiere
-			,"P_TradeDiscountGrant_Acct"
-			,"P_TradeDiscountRec_Acct"
-			,"P_UsageVariance_Acct"			//Don't use in iDempiere
-			,"P_WIP_Acct"					//Don't use in iDempiere
-			,"PayDiscount_Exp_Acct"
-			,"PayDiscount_Rev_Acct"
-			,"RealizedGain_Acct"
-			,"RealizedLoss_Acct"
-			,"T_Credit_Acct"
-			,"T_Due_Acct"
-			,"T_Expense_Acct"	//(60)
-			,"T_Liability_Acct"		//Don't use in iDempiere
-			,"T_Receivables_Acct"	//Don't use in iDempiere
-			,"UnEarnedRevenue_Acct"	//Don't use in iDempiere
-			,"UnrealizedGain_Acct"
-			,"UnrealizedLoss_Acct"
-			,"V_Liability_Acct"
-			,"V_Liability_Services_Acct"
-			,"V_Prepayment_Acct"
-			,"W_Differences_Acct"
-			,"W_InvActualAdjust_Acct"	//Don't use in iDempiere
-			,"W_Inventory_Acct"			//Don't use in iDempiere
-			,"W_Revaluation_Acct"		//Don't use in iDempiere
-			,"Withholding_Acct"			//Don't use in iDempiere
-			,"WriteOff_Acct" //(74)
-
-			};
-
-		for(int i = 0; i < defaultAccounts_Column.length; i++)
-		{
-			String sql = "SELECT vc.Account_ID FROM C_AcctSchema_Default df "
-					+" INNER JOIN adempiere.C_ValidCombination vc on (vc.C_ValidCombination_ID = df." + defaultAccounts_Column[i] + ") "
-					+ " WHERE df.AD_Client_ID = ? ";
-
-			PreparedStatement pstmt = null;
-			ResultSet rs = null;
-			try
-			{
-				pstmt = DB.prepareStatement(sql, get_TrxName());
-				pstmt.setInt(1, p_LookupClientID);
-				rs = pstmt.executeQuery();
-				while (rs.next())
-				{
-					int account_ID =rs.getInt(1);
-					if(account_ID > 0)
-						defaultAccount_List.add(Integer.valueOf(account_ID));
-				}
-			}
-			catch (Exception e)
-			{
-				log.log(Level.SEVERE, sql, e);
-			}
-			finally
-			{
-				DB.close(rs, pstmt);
-				rs = null; pstmt = null;
-			}
-
+		StringBuilder array = new StringBuilder("{");
+		for(Integer account_ID : defaultAccount_Set)
+		{
+			if(array.length() > 1)
+				array.append(",");
+			array.append(account_ID.intValue());
 		}
 
+		return array.append("}").toString();
 	}
 
-	private boolean deleteC_ValidCombination()
+	/**
+	 * Anti-join to the bound array of Default Accounts.
+	 * @param column column to compare
+	 */
+	private String getNotDefaultAccountWhere(String column)
 	{
+		return "NOT EXISTS (SELECT 1 FROM unnest(?::numeric[]) da(Account_ID) WHERE da.Account_ID = " + column + ")";
+	}
 
-		StringBuilder where = new StringBuilder(" Account_ID NOT IN ( ");
-		int i = 0;
-		for(Integer account_ID :defaultAccount_List)
+	private boolean deleteC_ValidCombination()
+	{
+		if(defaultAccount_Set.size() == 0)
 		{
-			if(i==0)
-			{
-				where.append(String.valueOf(account_ID.intValue()));
-			}else {
-				where.append(",").append(String.valueOf(account_ID.intValue()));
-			}
-
-			i++;
+			addLog("Default Accounts are not found. C_ValidCombination is not deleted.");
+			return false;
 		}
 
-		where.append(")");
-
-		executeDeleteSQL("C_ValidCombination", where.toString());
+		executeDeleteSQL("C_ValidCombination", getNotDefaultAccountWhere("Account_ID"), getDefaultAccountArray());
 
 		return true;
 	}
 
 	private boolean deleteTreeNode()
 	{
-		StringBuilder deleteSQL = new StringBuilder("DELETE FROM AD_TreeNode tn USING AD_Tree t WHERE tn.AD_Tree_ID = t.AD_Tree_ID AND t.treetype = 'EV' AND tn.Node_ID NOT IN ( ");
-		int i = 0;
-		for(Integer account_ID :defaultAccount_List)
+		if(defaultAccount_Set.size() == 0)
 		{
-			if(i==0)
-			{
-				deleteSQL.append(String.valueOf(account_ID.intValue()));
-			}else {
-				deleteSQL.append(",").append(String.valueOf(account_ID.intValue()));
-			}
-
-			i++;
+			addLog("Default Accounts are not found. AD_TreeNode is not deleted.");
+			return false;
 		}
 
-		deleteSQL.append(")");
-		deleteSQL.append(" AND tn.AD_Client_ID = " + p_LookupClientID);
+		String deleteSQL = "DELETE FROM AD_TreeNode tn USING AD_Tree t WHERE tn.AD_Tree_ID = t.AD_Tree_ID AND t.treetype = 'EV' AND "
+				+ getNotDefaultAccountWhere("tn.Node_ID")
+				+ " AND tn.AD_Client_ID = ?";
 		PreparedStatement pstmt = null;
 		ResultSet rs = null;
 		int deletes = 0;
 		try
 		{
-			pstmt = DB.prepareStatement(deleteSQL.toString(), get_TrxName());
+			pstmt = DB.prepareStatement(deleteSQL, get_TrxName());
+			pstmt.setString(1, getDefaultAccountArray());
+			pstmt.setInt(2, p_LookupClientID);
 			deletes = pstmt.executeUpdate();
-			if (log.isLoggable(Level.FINE)) log.fine("Delete AD_TreeNode =#" + deletes + ":" + deleteSQL.toString());
+			if (log.isLoggable(Level.FINE)) log.fine("Delete AD_TreeNode =#" + deletes + ":" + deleteSQL);
 
 		}
 		catch (SQLException e)
 		{
-			log.log(Level.SEVERE, deleteSQL.toString(), e);
-			throw new DBException(e, deleteSQL.toString());
+			log.log(Level.SEVERE, deleteSQL, e);
+			throw new DBException(e, deleteSQL);
 		} finally {
 			DB.close(rs, pstmt);
 			rs = null; pstmt = null;
@@ -608,25 +670,16 @@ public class JPiereInitializeDefaultAccountOnly extends SvrProcess {
 
 	private boolean deleteC_ElementValue()
 	{
-
-		StringBuilder where = new StringBuilder(" C_ElementValue_ID NOT IN ( ");
-		int i = 0;
-		for(Integer account_ID :defaultAccount_List)
+		if(defaultAccount_Set.size() == 0)
 		{
-			if(i==0)
-			{
-				where.append(String.valueOf(account_ID.intValue()));
-			}else {
-				where.append(",").append(String.valueOf(account_ID.intValue()));
-			}
-
-			i++;
+			addLog("Default Accounts are not found. C_ElementValue is not deleted.");
+			return false;
 		}
 
-		where.append(")");
-
-		executeDeleteSQL("C_ElementValue", where.toString());
-		executeDeleteSQL("C_ElementValue_Trl", where.toString());
+		String where = getNotDefaultAccountWhere("C_ElementValue_ID");
+		String accounts = getDefaultAccountArray();
+		executeDeleteSQL("C_ElementValue", where, accounts);
+		executeDeleteSQL("C_ElementValue_Trl", where, accounts);
 
 		return true;
 	}
@@ -659,6 +712,19 @@ public class JPiereInitializeDefaultAccountOnly extends SvrProcess {
 	}
 
 	private boolean executeDeleteSQL(String table,String where)
+	{
+		return executeDeleteSQL(table, where, null);
+	}
+
+	/**
+	 * Execute Delete SQL
+	 *
+	 * @param table
+	 * @param where
+	 * @param param parameter of where clause or null
+	 * @return
+	 */
+	private boolean executeDeleteSQL(String table,String where, String param)
 	{
 		StringBuilder DeleteSQL = new StringBuilder();
 		DeleteSQL.append("DELETE FROM "+ table);
@@ -675,6 +741,8 @@ public class JPiereInitializeDefaultAccountOnly extends SvrProcess {
 		try
 		{
 			pstmt = DB.prepareStatement(DeleteSQL.toString(), get_TrxName());
+			if(param != null)
+				pstmt.setString(1, param);
 			deletes = pstmt.executeUpdate();
 			if (log.isLoggable(Level.FINE)) log.fine("Delete " + table + " =#" + deletes + " : " + DeleteSQL.toString());
 
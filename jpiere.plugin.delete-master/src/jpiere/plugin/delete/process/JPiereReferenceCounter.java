@@ -0,0 +1,315 @@
+/******************************************************************************
+ * Product: JPiere                                                            *
+ * Copyright (C) Hideaki Hagiwara (h.hagiwara@oss-erp.co.jp)                  *
+ *                                                                            *
+ * This program is free software, you can redistribute it and/or modify it    *
+ * under the terms version 2 of the GNU General Public License as published   *
+ * by the Free Software Foundation. This program is distributed in the hope   *
+ * that it will be useful, but WITHOUT ANY WARRANTY.                          *
+ * See the GNU General Public License for more details.                       *
+ *                                                                            *
+ * JPiere is maintained by OSS ERP Solutions Co., Ltd.                        *
+ * (http://www.oss-erp.co.jp)                                                 *
+ *****************************************************************************/
+package jpiere.plugin.delete.process;
+
+import java.sql.Array;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+
+import org.adempiere.exceptions.AdempiereException;
+import org.adempiere.exceptions.DBException;
+import org.compiere.model.MSysConfig;
+import org.compiere.util.CLogger;
+import org.compiere.util.DB;
+
+/**
+ * 	Referencing Row Counter.
+ *
+ *  Counts the rows that reference a table per FK column, overall and for a client.
+ *  Exact counts run in parallel on a bounded pool of autocommit connections.
+ *  Approximate counts are calculated from pg_class.reltuples and pg_stats
+ *  (null_frac of the FK column and most common values of AD_Client_ID) with one catalog query.
+ *  (PostgreSQL only)
+ *
+ */
+public class JPiereReferenceCounter
+{
+	private static final CLogger log = CLogger.getCLogger(JPiereReferenceCounter.class);
+
+	/** SysConfig : Number of parallel connections to count referencing rows */
+	public static final String JP_DELETE_REFERENCE_COUNT_PARALLEL = "JP_DELETE_REFERENCE_COUNT_PARALLEL";
+
+	private final int AD_Client_ID;
+	private final boolean isApproximate;
+	private final String trxName;
+
+	/**
+	 * Referencing Column
+	 */
+	public static class Reference
+	{
+		public final String tableName;
+		public final String columnName;
+		public final boolean hasClientColumn;
+
+		/** Referencing rows (-1 = unknown) */
+		public long rows = -1;
+		/** Referencing rows of the client (-1 = unknown) */
+		public long clientRows = -1;
+
+		public Reference(String tableName, String columnName, boolean hasClientColumn)
+		{
+			this.tableName = tableName;
+			this.columnName = columnName;
+			this.hasClientColumn = hasClientColumn;
+		}
+	}
+
+	/**
+	 *
+	 * @param AD_Client_ID client of client rows (0 = not count client rows)
+	 * @param isApproximate true : estimate from statistics, false : count rows
+	 * @param trxName transaction used to read the catalog
+	 */
+	public JPiereReferenceCounter(int AD_Client_ID, boolean isApproximate, String trxName)
+	{
+		this.AD_Client_ID = AD_Client_ID;
+		this.isApproximate = isApproximate;
+		this.trxName = trxName;
+	}
+
+	/**
+	 * Count referencing rows of the references
+	 *
+	 * @param references
+	 */
+	public void count(List<Reference> references)
+	{
+		if(references.size() == 0)
+			return;
+
+		if(isApproximate)
+			estimate(references);
+		else
+			countParallel(references);
+	}
+
+	/**
+	 * Count referencing rows in parallel.
+	 * Each worker borrows a connection from the pool, so the number of connections is bounded.
+	 */
+	private void countParallel(List<Reference> references)
+	{
+		int parallel = Math.max(1, Math.min(references.size(), MSysConfig.getIntValue(JP_DELETE_REFERENCE_COUNT_PARALLEL, 4)));
+		final ArrayBlockingQueue<Connection> pool = new ArrayBlockingQueue<Connection>(parallel);
+		ExecutorService executor = Executors.newFixedThreadPool(parallel);
+		try
+		{
+			for(int i = 0; i < parallel; i++)
+			{
+				Connection conn = DB.createConnection(true, Connection.TRANSACTION_READ_COMMITTED);
+				if(conn == null)
+					throw new AdempiereException("Can not create connection");
+				pool.add(conn);
+			}
+
+			ArrayList<Future<?>> futures = new ArrayList<Future<?>>();
+			for(final Reference reference : references)
+			{
+				futures.add(executor.submit(new Callable<Object>() {
+					@Override
+					public Object call() throws Exception
+					{
+						Connection conn = pool.take();
+						try
+						{
+							countRows(conn, reference);
+						} finally {
+							pool.put(conn);
+						}
+						return null;
+					}
+				}));
+			}
+
+			for(Future<?> future : futures)
+			{
+				try
+				{
+					future.get();
+				}
+				catch (ExecutionException e)
+				{
+					throw new AdempiereException(e.getCause());
+				}
+			}
+
+		}catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new AdempiereException(e);
+		} finally {
+			executor.shutdownNow();
+			for(Connection conn : pool)
+			{
+				try
+				{
+					conn.close();
+				}catch (SQLException e) {
+					;//Nothing to do
+				}
+			}
+		}
+	}
+
+	/**
+	 * Count referencing rows of one column.
+	 * The error of a column (e.g. column is not in database) is logged and the count stays unknown.
+	 */
+	private void countRows(Connection conn, Reference reference)
+	{
+		boolean isClient = AD_Client_ID > 0 && reference.hasClientColumn;
+		String sql = "SELECT COUNT(" + reference.columnName + ")"
+				+ (isClient ? ", COUNT(" + reference.columnName + ") FILTER (WHERE AD_Client_ID = ?)" : "")
+				+ " FROM " + reference.tableName;
+
+		PreparedStatement pstmt = null;
+		ResultSet rs = null;
+		try
+		{
+			pstmt = conn.prepareStatement(sql);
+			if(isClient)
+				pstmt.setInt(1, AD_Client_ID);
+			rs = pstmt.executeQuery();
+			if(rs.next())
+			{
+				reference.rows = rs.getLong(1);
+				if(isClient)
+					reference.clientRows = rs.getLong(2);
+			}
+		}
+		catch (SQLException e)
+		{
+			log.log(Level.WARNING, sql, e);
+		} finally {
+			DB.close(rs, pstmt);
+			rs = null; pstmt = null;
+		}
+	}
+
+	/**
+	 * Estimate referencing rows from statistics with one catalog query.
+	 *
+	 * Rows = reltuples * (1 - null_frac of FK column).
+	 * Client Rows = Rows * frequency of AD_Client_ID. The frequency is taken from most common values,
+	 * or from the rest of frequencies divided by the rest of distinct values if the client is not a most common value.
+	 */
+	private void estimate(List<Reference> references)
+	{
+		HashMap<String, Reference> referenceMap = new HashMap<String, Reference>();
+		StringBuilder tableNames = new StringBuilder();
+		StringBuilder columnNames = new StringBuilder();
+		for(Reference reference : references)
+		{
+			if(tableNames.length() > 0)
+			{
+				tableNames.append(",");
+				columnNames.append(",");
+			}
+			tableNames.append(reference.tableName.toLowerCase());
+			columnNames.append(reference.columnName.toLowerCase());
+			referenceMap.put(reference.tableName.toLowerCase() + "." + reference.columnName.toLowerCase(), reference);
+		}
+
+		String sql = "SELECT r.TableName, r.ColumnName"
+				+ ", GREATEST(c.reltuples, 0)"
+				+ ", COALESCE(s.null_frac, 0)"
+				+ ", cs.most_common_vals::text::text[]"
+				+ ", cs.most_common_freqs"
+				+ ", cs.n_distinct"
+				+ " FROM unnest(string_to_array(?, ','), string_to_array(?, ',')) AS r(TableName, ColumnName)"
+				+ " INNER JOIN pg_class c ON (c.relname = r.TableName AND c.relkind IN ('r','p'))"
+				+ " INNER JOIN pg_namespace n ON (n.oid = c.relnamespace AND n.nspname = ?)"
+				+ " LEFT OUTER JOIN pg_stats s ON (s.schemaname = n.nspname AND s.tablename = r.TableName AND s.attname = r.ColumnName)"
+				+ " LEFT OUTER JOIN pg_stats cs ON (cs.schemaname = n.nspname AND cs.tablename = r.TableName AND cs.attname = 'ad_client_id')";
+
+		PreparedStatement pstmt = null;
+		ResultSet rs = null;
+		try
+		{
+			pstmt = DB.prepareStatement(sql, trxName);
+			pstmt.setString(1, tableNames.toString());
+			pstmt.setString(2, columnNames.toString());
+			pstmt.setString(3, DB.getDatabase().getSchema());
+			rs = pstmt.executeQuery();
+			while (rs.next ())
+			{
+				Reference reference = referenceMap.get(rs.getString(1) + "." + rs.getString(2));
+				if(reference == null)
+					continue;
+
+				double rows = rs.getDouble(3) * (1 - rs.getDouble(4));
+				reference.rows = Math.round(rows);
+
+				if(AD_Client_ID > 0 && reference.hasClientColumn)
+				{
+					double frequency = getClientFrequency(rs.getArray(5), rs.getArray(6), rs.getDouble(7), rs.getDouble(3));
+					if(frequency >= 0)
+						reference.clientRows = Math.round(rows * frequency);
+				}
+			}
+		}
+		catch (SQLException e)
+		{
+			log.log(Level.SEVERE, sql, e);
+			throw new DBException(e, sql);
+		} finally {
+			DB.close(rs, pstmt);
+			rs = null; pstmt = null;
+		}
+	}
+
+	/**
+	 * Frequency of the client in AD_Client_ID column
+	 *
+	 * @return frequency, or -1 if no statistics
+	 */
+	private double getClientFrequency(Array mcvArray, Array freqArray, double nDistinct, double reltuples) throws SQLException
+	{
+		if(mcvArray == null || freqArray == null)
+			return -1;
+
+		Object[] mcvs = (Object[])mcvArray.getArray();
+		Object[] freqs = (Object[])freqArray.getArray();
+		String client = String.valueOf(AD_Client_ID);
+		double sumOfFreqs = 0;
+		for(int i = 0; i < mcvs.length && i < freqs.length; i++)
+		{
+			double freq = ((Number)freqs[i]).doubleValue();
+			if(client.equals(mcvs[i]))
+				return freq;
+			sumOfFreqs = sumOfFreqs + freq;
+		}
+
+		//n_distinct < 0 : ratio of distinct values to rows
+		double distinct = nDistinct < 0 ? -nDistinct * reltuples : nDistinct;
+		double otherDistinct = distinct - mcvs.length;
+		if(otherDistinct < 1)
+			return 0;
+
+		return Math.max(0, 1 - sumOfFreqs) / otherDistinct;
+	}
+
+}
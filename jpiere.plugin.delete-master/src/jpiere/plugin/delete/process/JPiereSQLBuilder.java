@@ -0,0 +1,276 @@
+/******************************************************************************
+ * Product: JPiere                                                            *
+ * Copyright (C) Hideaki Hagiwara (h.hagiwara@oss-erp.co.jp)                  *
+ *                                                                            *
+ * This program is free software, you can redistribute it and/or modify it    *
+ * under the terms version 2 of the GNU General Public License as published   *
+ * by the Free Software Foundation. This program is distributed in the hope   *
+ * that it will be useful, but WITHOUT ANY WARRANTY.                          *
+ * See the GNU General Public License for more details.                       *
+ *                                                                            *
+ * JPiere is maintained by OSS ERP Solutions Co., Ltd.                        *
+ * (http://www.oss-erp.co.jp)                                                 *
+ *****************************************************************************/
+package jpiere.plugin.delete.process;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import org.compiere.util.Util;
+
+/**
+ * 	SQL Builder of Delete Processes.
+ *
+ *  Builds DELETE / UPDATE / TRUNCATE / SELECT statements that bind the client ID, update value and
+ *  ID lists as parameters. ID lists are bound as one array parameter (= ANY(?::numeric[])),
+ *  so the SQL text depends only on the shape (table, column, treat, IN or NOT IN) and
+ *  can be reused by {@link JPiereStatementCache}.
+ *  (PostgreSQL only)
+ *
+ */
+public final class JPiereSQLBuilder
+{
+	private final StringBuilder sql;
+	private final ArrayList<Object> params = new ArrayList<Object>();
+	private boolean hasWhere = false;
+
+	private JPiereSQLBuilder(String sql)
+	{
+		this.sql = new StringBuilder(sql);
+	}
+
+	/**
+	 * DELETE FROM table
+	 */
+	public static JPiereSQLBuilder deleteFrom(String table)
+	{
+		return new JPiereSQLBuilder("DELETE FROM " + table);
+	}
+
+	/**
+	 * SELECT columns FROM table
+	 */
+	public static JPiereSQLBuilder select(String columns, String table)
+	{
+		return new JPiereSQLBuilder("SELECT " + columns + " FROM " + table);
+	}
+
+	/**
+	 * TRUNCATE TABLE table CASCADE
+	 */
+	public static JPiereSQLBuilder truncate(String table)
+	{
+		return new JPiereSQLBuilder("TRUNCATE TABLE " + table + " CASCADE");
+	}
+
+	/**
+	 * UPDATE table SET column = ?
+	 *
+	 * @param value Update value, or null to set null
+	 */
+	public static JPiereSQLBuilder update(String table, String column, Integer value)
+	{
+		JPiereSQLBuilder builder = new JPiereSQLBuilder("UPDATE " + table + " SET " + column);
+		if(value == null)
+		{
+			builder.sql.append(" = null");
+		}else{
+			builder.sql.append(" = ?");
+			builder.params.add(value);
+		}
+
+		return builder;
+	}
+
+	/**
+	 * Statement of fixed SQL with parameters, e.g. UPDATE table SET column = ?
+	 *
+	 * @param sql SQL without Where Clause
+	 * @param params parameters of the SQL
+	 */
+	public static JPiereSQLBuilder updateSQL(String sql, Object... params)
+	{
+		JPiereSQLBuilder builder = new JPiereSQLBuilder(sql);
+		for(Object param : params)
+			builder.params.add(param);
+
+		return builder;
+	}
+
+	/**
+	 * Add Where Clause with AND
+	 *
+	 * @param where can be null or NONE
+	 */
+	public JPiereSQLBuilder where(Where where)
+	{
+		if(where == null || where.clause == null)
+			return this;
+
+		sql.append(hasWhere ? " AND " : " WHERE ").append(where.clause);
+		params.addAll(where.params);
+		hasWhere = true;
+
+		return this;
+	}
+
+	/**
+	 * Add AD_Client_ID = ? with AND
+	 */
+	public JPiereSQLBuilder whereClient(int AD_Client_ID)
+	{
+		return where(new Where("AD_Client_ID = ?", Collections.<Object>singletonList(Integer.valueOf(AD_Client_ID))));
+	}
+
+	public Statement build()
+	{
+		return new Statement(sql.toString(), params.toArray());
+	}
+
+
+	/**
+	 * Where Clause with parameters
+	 */
+	public static final class Where
+	{
+		/** No Where Clause : all records (of the client) */
+		public static final Where NONE = new Where(null, Collections.emptyList());
+
+		private final String clause;
+		private final List<Object> params;
+
+		private Where(String clause, List<Object> params)
+		{
+			this.clause = clause;
+			this.params = params;
+		}
+
+		/**
+		 * Where Clause without parameter
+		 *
+		 * @param clause
+		 * @return NONE if clause is empty
+		 */
+		public static Where of(String clause)
+		{
+			if(Util.isEmpty(clause))
+				return NONE;
+
+			return new Where(clause, Collections.emptyList());
+		}
+
+		/**
+		 * column = ?
+		 *
+		 * @param column
+		 * @param ID
+		 */
+		public static Where equalsID(String column, int ID)
+		{
+			return new Where(column + " = ?", Collections.<Object>singletonList(Integer.valueOf(ID)));
+		}
+
+		/**
+		 * column &lt;&gt; ?
+		 *
+		 * @param column
+		 * @param ID
+		 */
+		public static Where notEqualsID(String column, int ID)
+		{
+			return new Where(column + " <> ?", Collections.<Object>singletonList(Integer.valueOf(ID)));
+		}
+
+		/**
+		 * This Where Clause AND other Where Clause
+		 *
+		 * @param other can be null or NONE
+		 * @return combined Where Clause
+		 */
+		public Where and(Where other)
+		{
+			if(other == null || other.clause == null)
+				return this;
+			if(clause == null)
+				return other;
+
+			ArrayList<Object> andParams = new ArrayList<Object>(params);
+			andParams.addAll(other.params);
+			return new Where(clause + " AND " + other.clause, andParams);
+		}
+
+		/**
+		 * column = ANY(?) or NOT (column = ANY(?)), same results as IN (...) / NOT IN (...).
+		 *
+		 * @param column
+		 * @param IDs
+		 * @param isIN
+		 * @return NONE if column is null or IDs are empty
+		 */
+		public static Where inIDs(String column, Collection<Integer> IDs, boolean isIN)
+		{
+			if(column == null || IDs == null || IDs.size() == 0)
+				return NONE;
+
+			StringBuilder array = new StringBuilder("{");
+			for(Integer ID : IDs)
+			{
+				if(array.length() > 1)
+					array.append(",");
+				array.append(ID.intValue());
+			}
+			array.append("}");
+
+			String clause = isIN ? column + " = ANY(?::numeric[])" : "NOT (" + column + " = ANY(?::numeric[]))";
+			return new Where(clause, Collections.<Object>singletonList(array.toString()));
+		}
+	}
+
+
+	/**
+	 * Statement : SQL and parameters
+	 */
+	public static final class Statement
+	{
+		/** SQL with placeholders. Statements of same SQL have same shape. */
+		public final String sql;
+		public final Object[] params;
+
+		private Statement(String sql, Object[] params)
+		{
+			this.sql = sql;
+			this.params = params;
+		}
+
+		/**
+		 * @return SQL with parameters as literals, for logging and EXPLAIN
+		 */
+		@Override
+		public String toString()
+		{
+			if(params.length == 0)
+				return sql;
+
+			StringBuilder literal = new StringBuilder();
+			int index = 0;
+			for(int i = 0; i < sql.length(); i++)
+			{
+				char c = sql.charAt(i);
+				if(c == '?' && index < params.length)
+				{
+					Object param = params[index++];
+					if(param instanceof String)
+						literal.append("'").append(((String)param).replace("'", "''")).append("'");
+					else
+						literal.append(param);
+				}else{
+					literal.append(c);
+				}
+			}
+
+			return literal.toString();
+		}
+	}
+}
@@ -0,0 +1,196 @@
+/******************************************************************************
+ * Product: JPiere                                                            *
+ * Copyright (C) Hideaki Hagiwara (h.hagiwara@oss-erp.co.jp)                  *
+ *                                                                            *
+ * This program is free software, you can redistribute it and/or modify it    *
+ * under the terms version 2 of the GNU General Public License as published   *
+ * by the Free Software Foundation. This program is distributed in the hope   *
+ * that it will be useful, but WITHOUT ANY WARRANTY.                          *
+ * See the GNU General Public License for more details.                       *
+ *                                                                            *
+ * JPiere is maintained by OSS ERP Solutions Co., Ltd.                        *
+ * (http://www.oss-erp.co.jp)                                                 *
+ *****************************************************************************/
+package jpiere.plugin.delete.process;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+
+import org.adempiere.exceptions.DBException;
+import org.compiere.util.CLogger;
+import org.compiere.util.DB;
+
+/**
+ * 	Prepared Statement Cache of a Delete Process run.
+ *
+ *  Keeps the PreparedStatements of the run per SQL (shape of {@link JPiereSQLBuilder.Statement}),
+ *  so a shape executed again reuses the statement and the server side prepared plan.
+ *  Statements of same shape can be sent as one JDBC batch.
+ *  The cache must be closed at the end of the run.
+ *
+ */
+public class JPiereStatementCache
+{
+	private static final CLogger log = CLogger.getCLogger(JPiereStatementCache.class);
+
+	/** Maximum number of cached statements. The least recently used statement is closed. */
+	private static final int MAX_STATEMENTS = 100;
+
+	private final String trxName;
+
+	/** Key : SQL */
+	private final LinkedHashMap<String, PreparedStatement> m_Statements = new LinkedHashMap<String, PreparedStatement>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest)
+		{
+			if(size() <= MAX_STATEMENTS)
+				return false;
+
+			DB.close(eldest.getValue());
+			return true;
+		}
+	};
+
+	/** Statements waiting for executeBatch() */
+	private final ArrayList<JPiereSQLBuilder.Statement> m_Batch = new ArrayList<JPiereSQLBuilder.Statement>();
+
+	private int prepared = 0;
+	private int reused = 0;
+
+	/**
+	 * @param trxName transaction of the process
+	 */
+	public JPiereStatementCache(String trxName)
+	{
+		this.trxName = trxName;
+	}
+
+	private PreparedStatement getStatement(String sql)
+	{
+		PreparedStatement pstmt = m_Statements.get(sql);
+		if(pstmt != null)
+		{
+			reused++;
+			return pstmt;
+		}
+
+		pstmt = DB.prepareStatement(sql, trxName);
+		m_Statements.put(sql, pstmt);
+		prepared++;
+
+		return pstmt;
+	}
+
+	private void setParameters(PreparedStatement pstmt, Object[] params) throws SQLException
+	{
+		for(int i = 0; i < params.length; i++)
+			pstmt.setObject(i + 1, params[i]);
+	}
+
+	/**
+	 * Execute DELETE / UPDATE / TRUNCATE
+	 *
+	 * @param statement
+	 * @return processed records
+	 */
+	public int executeUpdate(JPiereSQLBuilder.Statement statement)
+	{
+		try
+		{
+			PreparedStatement pstmt = getStatement(statement.sql);
+			setParameters(pstmt, statement.params);
+			return pstmt.executeUpdate();
+		}
+		catch (SQLException e)
+		{
+			log.log(Level.SEVERE, statement.toString(), e);
+			throw new DBException(e, statement.toString());
+		}
+	}
+
+	/**
+	 * Add the statement to the batch. The batch is executed by {@link #executeBatch()}.
+	 *
+	 * @param statement
+	 */
+	public void addBatch(JPiereSQLBuilder.Statement statement)
+	{
+		m_Batch.add(statement);
+	}
+
+	/**
+	 * Execute the statements added by {@link #addBatch(JPiereSQLBuilder.Statement)}.
+	 * Statements of same shape are sent as one JDBC batch, in order of the first statement of each shape.
+	 *
+	 * @return processed records of each statement, in order of addBatch
+	 */
+	public int[] executeBatch()
+	{
+		int[] results = new int[m_Batch.size()];
+		LinkedHashMap<String, List<Integer>> shapes = new LinkedHashMap<String, List<Integer>>();
+		for(int i = 0; i < m_Batch.size(); i++)
+		{
+			List<Integer> indexes = shapes.get(m_Batch.get(i).sql);
+			if(indexes == null)
+			{
+				indexes = new ArrayList<Integer>();
+				shapes.put(m_Batch.get(i).sql, indexes);
+			}
+			indexes.add(Integer.valueOf(i));
+		}
+
+		String sql = null;
+		try
+		{
+			for(Map.Entry<String, List<Integer>> shape : shapes.entrySet())
+			{
+				sql = shape.getKey();
+				PreparedStatement pstmt = getStatement(sql);
+				for(Integer index : shape.getValue())
+				{
+					setParameters(pstmt, m_Batch.get(index.intValue()).params);
+					pstmt.addBatch();
+				}
+
+				int[] counts = pstmt.executeBatch();
+				for(int i = 0; i < counts.length; i++)
+					results[shape.getValue().get(i).intValue()] = counts[i];
+			}
+		}
+		catch (SQLException e)
+		{
+			log.log(Level.SEVERE, sql, e);
+			throw new DBException(e, sql);
+		} finally {
+			m_Batch.clear();
+		}
+
+		return results;
+	}
+
+	/**
+	 * @return Number of prepared statements and reused statements
+	 */
+	public String getStatistics()
+	{
+		return "Prepared Statements : " + prepared + " / Reused : " + reused;
+	}
+
+	/**
+	 * Close all cached statements
+	 */
+	public void close()
+	{
+		for(PreparedStatement pstmt : m_Statements.values())
+			DB.close(pstmt);
+		m_Statements.clear();
+		m_Batch.clear();
+	}
+}
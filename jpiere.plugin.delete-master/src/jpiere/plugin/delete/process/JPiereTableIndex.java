@@ -0,0 +1,309 @@
+/******************************************************************************
+ * Product: JPiere                                                            *
+ * Copyright (C) Hideaki Hagiwara (h.hagiwara@oss-erp.co.jp)                  *
+ *                                                                            *
+ * This program is free software, you can redistribute it and/or modify it    *
+ * under the terms version 2 of the GNU General Public License as published   *
+ * by the Free Software Foundation. This program is distributed in the hope   *
+ * that it will be useful, but WITHOUT ANY WARRANTY.                          *
+ * See the GNU General Public License for more details.                       *
+ *                                                                            *
+ * JPiere is maintained by OSS ERP Solutions Co., Ltd.                        *
+ * (http://www.oss-erp.co.jp)                                                 *
+ *****************************************************************************/
+package jpiere.plugin.delete.process;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+
+import org.compiere.model.MTable;
+
+/**
+ * 	Table Classification Index of Delete Processes.
+ *
+ *  Classifies the tables (TRX / INI / CUSTOM / IMPORT / TEMP / SYSTEM / OTHER) with case-folded
+ *  hash lookup instead of linear scans of TrxTables and IniTables.
+ *  The index of Transaction Tables and Initialize Tables is shared by all delete processes,
+ *  and the index with Custom Delete Tables is held by the Delete Plan.
+ *
+ */
+public final class JPiereTableIndex
+{
+	public static final String CLASS_TRX = "TRX";
+	public static final String CLASS_INI = "INI";
+	public static final String CLASS_CUSTOM = "CUSTOM";
+	public static final String CLASS_IMPORT = "IMPORT";
+	public static final String CLASS_TEMP = "TEMP";
+	public static final String CLASS_SYSTEM = "SYSTEM";
+	public static final String CLASS_OTHER = "OTHER";
+
+	/** Transaction Tables */
+	public static final TableSet TRX_TABLES = new TableSet(JPiereDeleteClientRecords.TrxTables);
+
+	/** Initialize Tables */
+	public static final TableSet INI_TABLES = new TableSet(JPiereDeleteClientRecords.IniTables);
+
+	/** Index without Custom Delete Tables */
+	private static final JPiereTableIndex s_Default = new JPiereTableIndex(TableSet.EMPTY);
+
+	private final TableSet customTables;
+	private final TableSet trxAndCustomTables;
+
+	/** Key : UPPER(TableName), Value : Classification of TRX / INI / CUSTOM */
+	private final HashMap<String, String> m_Classification;
+
+	/**
+	 * Get Index without Custom Delete Tables
+	 *
+	 * @return shared index
+	 */
+	public static JPiereTableIndex get()
+	{
+		return s_Default;
+	}
+
+	/**
+	 * Get Index with Custom Delete Tables
+	 *
+	 * @param customTables Custom Delete Tables (can be null)
+	 * @return index
+	 */
+	public static JPiereTableIndex get(String[] customTables)
+	{
+		if(customTables == null || customTables.length == 0)
+			return s_Default;
+
+		return new JPiereTableIndex(new TableSet(customTables));
+	}
+
+	private JPiereTableIndex(TableSet customTables)
+	{
+		this.customTables = customTables;
+		this.trxAndCustomTables = TRX_TABLES.union(customTables);
+
+		HashMap<String, String> classification = new HashMap<String, String>();
+		for(String key : INI_TABLES.m_Tables.keySet())
+			classification.put(key, CLASS_INI);
+		for(String key : TRX_TABLES.m_Tables.keySet())
+			classification.put(key, CLASS_TRX);
+		for(String key : customTables.m_Tables.keySet())
+			classification.put(key, CLASS_CUSTOM);
+		this.m_Classification = classification;
+	}
+
+	/**
+	 * Get Classification of the table.
+	 * IMPORT and TEMP are judged by prefix of table name, SYSTEM by Access Level of the table.
+	 *
+	 * @param ctx
+	 * @param tableName
+	 * @return CLASS_*
+	 */
+	public String getClassification(Properties ctx, String tableName)
+	{
+		String key = TableSet.toKey(tableName);
+		if(key.startsWith("I_"))
+			return CLASS_IMPORT;
+
+		if(key.startsWith("T_") && !key.equals("T_DELETECLIENTLOGJP"))
+			return CLASS_TEMP;
+
+		String classification = m_Classification.get(key);
+		if(classification != null)
+			return classification;
+
+		MTable m_Table = MTable.get(ctx, tableName);
+		if(m_Table != null && m_Table.get_ID() != 0 && MTable.ACCESSLEVEL_SystemOnly.equals(m_Table.getAccessLevel()))
+			return CLASS_SYSTEM;
+
+		return CLASS_OTHER;
+	}
+
+	public boolean isTrxTable(String tableName)
+	{
+		return TRX_TABLES.contains(tableName);
+	}
+
+	public boolean isIniTable(String tableName)
+	{
+		return INI_TABLES.contains(tableName);
+	}
+
+	public boolean isCustomTable(String tableName)
+	{
+		return customTables.contains(tableName);
+	}
+
+	/**
+	 * @return Custom Delete Tables
+	 */
+	public TableSet getCustomTables()
+	{
+		return customTables;
+	}
+
+	/**
+	 * @return Transaction Tables + Custom Delete Tables
+	 */
+	public TableSet getTrxAndCustomTables()
+	{
+		return trxAndCustomTables;
+	}
+
+
+	/**
+	 * Immutable set of Table Names.
+	 * Table names are compared case-insensitively. Order and case of the first added name are kept.
+	 */
+	public static final class TableSet implements Iterable<String>
+	{
+		public static final TableSet EMPTY = new TableSet(new LinkedHashMap<String, String>());
+
+		/** Key : UPPER(TableName), Value : TableName */
+		private final LinkedHashMap<String, String> m_Tables;
+
+		/** Array of Table Names, created at first use and copied for callers */
+		private volatile String[] m_Array;
+
+		public TableSet(String[] tableNames)
+		{
+			this.m_Tables = new LinkedHashMap<String, String>();
+			if(tableNames != null)
+			{
+				for(String tableName : tableNames)
+					add(m_Tables, tableName);
+			}
+		}
+
+		public TableSet(Collection<String> tableNames)
+		{
+			this.m_Tables = new LinkedHashMap<String, String>();
+			if(tableNames != null)
+			{
+				for(String tableName : tableNames)
+					add(m_Tables, tableName);
+			}
+		}
+
+		private TableSet(LinkedHashMap<String, String> tables)
+		{
+			this.m_Tables = tables;
+		}
+
+		private static String toKey(String tableName)
+		{
+			return tableName.toUpperCase(Locale.ROOT);
+		}
+
+		private static void add(LinkedHashMap<String, String> tables, String tableName)
+		{
+			String key = toKey(tableName);
+			if(!tables.containsKey(key))
+				tables.put(key, tableName);
+		}
+
+		public boolean contains(String tableName)
+		{
+			if(tableName == null)
+				return false;
+
+			return m_Tables.containsKey(toKey(tableName));
+		}
+
+		public int size()
+		{
+			return m_Tables.size();
+		}
+
+		public boolean isEmpty()
+		{
+			return m_Tables.isEmpty();
+		}
+
+		/**
+		 * @return Tables of this set, and Tables of other set that are not in this set
+		 */
+		public TableSet union(TableSet other)
+		{
+			if(other == null || other.isEmpty())
+				return this;
+			if(isEmpty())
+				return other;
+
+			LinkedHashMap<String, String> tables = new LinkedHashMap<String, String>(m_Tables);
+			for(String tableName : other.m_Tables.values())
+				add(tables, tableName);
+
+			return new TableSet(tables);
+		}
+
+		/**
+		 * @return Tables of this set that are not in other set
+		 */
+		public TableSet minus(TableSet other)
+		{
+			if(other == null || other.isEmpty() || isEmpty())
+				return this;
+
+			LinkedHashMap<String, String> tables = new LinkedHashMap<String, String>();
+			for(Map.Entry<String, String> entry : m_Tables.entrySet())
+			{
+				if(!other.m_Tables.containsKey(entry.getKey()))
+					tables.put(entry.getKey(), entry.getValue());
+			}
+
+			return new TableSet(tables);
+		}
+
+		/**
+		 * @return Tables of this set that are in other set
+		 */
+		public TableSet intersect(TableSet other)
+		{
+			if(other == null || other.isEmpty() || isEmpty())
+				return EMPTY;
+
+			LinkedHashMap<String, String> tables = new LinkedHashMap<String, String>();
+			for(Map.Entry<String, String> entry : m_Tables.entrySet())
+			{
+				if(other.m_Tables.containsKey(entry.getKey()))
+					tables.put(entry.getKey(), entry.getValue());
+			}
+
+			return new TableSet(tables);
+		}
+
+		/**
+		 * @return New array of Table Names
+		 */
+		public String[] toArray()
+		{
+			String[] array = m_Array;
+			if(array == null)
+			{
+				array = m_Tables.values().toArray(new String[m_Tables.size()]);
+				m_Array = array;
+			}
+
+			return array.clone();
+		}
+
+		@Override
+		public Iterator<String> iterator()
+		{
+			return Collections.unmodifiableCollection(m_Tables.values()).iterator();
+		}
+
+		@Override
+		public String toString()
+		{
+			return m_Tables.values().toString();
+		}
+	}
+}
@@ -0,0 +1,459 @@
+/******************************************************************************
+ * Product: JPiere                                                            *
+ * Copyright (C) Hideaki Hagiwara (h.hagiwara@oss-erp.co.jp)                  *
+ *                                                                            *
+ * This program is free software, you can redistribute it and/or modify it    *
+ * under the terms version 2 of the GNU General Public License as published   *
+ * by the Free Software Foundation. This program is distributed in the hope   *
+ * that it will be useful, but WITHOUT ANY WARRANTY.                          *
+ * See the GNU General Public License for more details.                       *
+ *                                                                            *
+ * JPiere is maintained by OSS ERP Solutions Co., Ltd.                        *
+ * (http://www.oss-erp.co.jp)                                                 *
+ *****************************************************************************/
+package jpiere.plugin.delete.process;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.logging.Level;
+
+import org.adempiere.exceptions.DBException;
+import org.compiere.model.MSysConfig;
+import org.compiere.util.CLogger;
+import org.compiere.util.DB;
+
+/**
+ * 	Temporary Index Advisor of Delete Process.
+ *
+ *  Finds FK columns that refer the tables of the delete run and that have no usable index
+ *  on large tables, and creates temporary indexes (CREATE INDEX CONCURRENTLY) for them.
+ *  The bulk UPDATE/DELETE ... WHERE FK NOT IN (...) AND AD_Client_ID = ? statements
+ *  can use these indexes instead of a full scan. The indexes are dropped after the run.
+ *  (PostgreSQL only)
+ *
+ *  Index names are jp_tmpdel_{AD_PInstance_ID}_{sequence}, so concurrent runs never share
+ *  an index and the leftovers of an aborted run can be told from the indexes of a running one.
+ *
+ */
+public class JPiereTemporaryIndexAdvisor
+{
+	private static final CLogger log = CLogger.getCLogger(JPiereTemporaryIndexAdvisor.class);
+
+	/** SysConfig : Create temporary indexes before delete process (Y/N) */
+	public static final String JP_DELETE_TEMP_INDEX = "JP_DELETE_TEMP_INDEX";
+
+	/** SysConfig : Minimum estimated rows of the table to create a temporary index */
+	public static final String JP_DELETE_TEMP_INDEX_MIN_ROWS = "JP_DELETE_TEMP_INDEX_MIN_ROWS";
+
+	/** SysConfig : Maximum number of temporary indexes per run */
+	public static final String JP_DELETE_TEMP_INDEX_MAX = "JP_DELETE_TEMP_INDEX_MAX";
+
+	/** Prefix of temporary index name, followed by AD_PInstance_ID and a sequence of the run. */
+	public static final String INDEX_PREFIX = "jp_tmpdel_";
+
+	private final String schemaName;
+	private final int AD_PInstance_ID;
+	private final String trxName;
+
+	/** Sequence of index names of this run */
+	private int m_IndexNo = 0;
+
+	/** Key : UPPER(TableName.ColumnName) */
+	private final HashMap<String, TemporaryIndex> m_Indexes = new HashMap<String, TemporaryIndex>();
+
+	/**
+	 * Temporary Index
+	 */
+	public class TemporaryIndex
+	{
+		public final String tableName;
+		public final String columnName;
+		public final String indexName;
+		public final long estimatedRows;
+		public final long relPages;
+
+		public boolean isCreated = false;
+		public long buildMillis = 0;
+		public int statements = 0;
+		public long statementMillis = 0;
+
+		public TemporaryIndex(String tableName, String columnName, long estimatedRows, long relPages)
+		{
+			this.tableName = tableName;
+			this.columnName = columnName;
+			this.estimatedRows = estimatedRows;
+			this.relPages = relPages;
+			this.indexName = getIndexName(AD_PInstance_ID, ++m_IndexNo);
+		}
+
+		/**
+		 * Estimated time saved by the temporary index.
+		 * A concurrent build reads the heap twice, so half of the build time approximates one full scan.
+		 *
+		 * @return milliseconds (negative if the index cost more than it saved)
+		 */
+		public long getEstimatedSavedMillis()
+		{
+			return (statements * (buildMillis / 2)) - statementMillis - buildMillis;
+		}
+	}
+
+	/**
+	 *
+	 * @param schemaName Schema of Database
+	 * @param AD_PInstance_ID process instance of the run, part of the index names
+	 * @param trxName transaction used to read the catalog
+	 */
+	public JPiereTemporaryIndexAdvisor(String schemaName, int AD_PInstance_ID, String trxName)
+	{
+		this.schemaName = schemaName;
+		this.AD_PInstance_ID = AD_PInstance_ID;
+		this.trxName = trxName;
+	}
+
+	/**
+	 * Name of a temporary index. The table and column are not part of the name, because
+	 * PostgreSQL truncates names to 63 characters; they are logged with the name instead.
+	 *
+	 * @param AD_PInstance_ID process instance of the run
+	 * @param indexNo sequence of the index in the run
+	 * @return index name
+	 */
+	public static String getIndexName(int AD_PInstance_ID, int indexNo)
+	{
+		return INDEX_PREFIX + AD_PInstance_ID + "_" + indexNo;
+	}
+
+	/**
+	 * Process instance of a temporary index name.
+	 *
+	 * @param indexName index name
+	 * @return AD_PInstance_ID, or -1 if the name is not a temporary index name
+	 */
+	public static int getAD_PInstance_ID(String indexName)
+	{
+		if(indexName == null || !indexName.startsWith(INDEX_PREFIX))
+			return -1;
+
+		String rest = indexName.substring(INDEX_PREFIX.length());
+		int separator = rest.indexOf('_');
+		if(separator <= 0 || separator == rest.length() - 1)
+			return -1;
+
+		try
+		{
+			Integer.parseInt(rest.substring(separator + 1));
+			return Integer.parseInt(rest.substring(0, separator));
+		}
+		catch (NumberFormatException e)
+		{
+			return -1;
+		}
+	}
+
+	/**
+	 * Is the advisor enabled by SysConfig
+	 *
+	 * @return true if enabled
+	 */
+	public static boolean isEnabled()
+	{
+		return MSysConfig.getBooleanValue(JP_DELETE_TEMP_INDEX, true);
+	}
+
+	/**
+	 * Find FK columns that refer the tables (directly by TableName_ID or indirectly by AD_Ref_Table)
+	 * and that have no valid, non partial index whose first key is the column. Only tables with estimated
+	 * rows over JP_DELETE_TEMP_INDEX_MIN_ROWS are returned, largest first.
+	 *
+	 * @param referencedTables Table names of referenced tables
+	 * @return list of candidate
+	 */
+	public List<TemporaryIndex> findCandidates(Collection<String> referencedTables)
+	{
+		ArrayList<TemporaryIndex> list = new ArrayList<TemporaryIndex>();
+		if(referencedTables == null || referencedTables.size() == 0)
+			return list;
+
+		StringBuilder tables = new StringBuilder();
+		for(String table : referencedTables)
+		{
+			if(table == null || table.length() == 0)
+				continue;
+			if(tables.length() > 0)
+				tables.append(",");
+			tables.append(table.toUpperCase());
+		}
+
+		int minRows = MSysConfig.getIntValue(JP_DELETE_TEMP_INDEX_MIN_ROWS, 100000);
+		int maxIndexes = MSysConfig.getIntValue(JP_DELETE_TEMP_INDEX_MAX, 50);
+
+		String sql = "SELECT t.TableName, c.ColumnName, pc.reltuples::bigint, pc.relpages::bigint"
+				+ " FROM AD_Column c"
+				+ " INNER JOIN AD_Table t ON (t.AD_Table_ID = c.AD_Table_ID)"
+				+ " INNER JOIN pg_class pc ON (pc.relname = LOWER(t.TableName) AND pc.relkind = 'r')"
+				+ " INNER JOIN pg_namespace ns ON (ns.oid = pc.relnamespace)"
+				+ " INNER JOIN pg_attribute a ON (a.attrelid = pc.oid AND a.attname = LOWER(c.ColumnName) AND a.attnum > 0 AND NOT a.attisdropped)"
+				+ " WHERE ns.nspname = ? AND t.IsView='N' AND c.ColumnSQL IS NULL AND c.IsKey='N'"
+				+ " AND UPPER(c.ColumnName) NOT IN ('CREATEDBY','UPDATEDBY')"
+				+ " AND pc.reltuples >= ?"
+				+ " AND ( UPPER(c.ColumnName) IN (SELECT rtn || '_ID' FROM unnest(string_to_array(?, ',')) rtn)"
+				+ "    OR c.AD_Reference_Value_ID IN (SELECT rt.AD_Reference_ID FROM AD_Ref_Table rt"
+				+ "           INNER JOIN AD_Table rtt ON (rtt.AD_Table_ID = rt.AD_Table_ID)"
+				+ "           WHERE UPPER(rtt.TableName) = ANY(string_to_array(?, ','))) )"
+				+ " AND NOT EXISTS (SELECT 1 FROM pg_index i WHERE i.indrelid = pc.oid AND i.indisvalid AND i.indpred IS NULL AND i.indkey[0] = a.attnum)"
+				+ " ORDER BY pc.reltuples DESC, t.TableName, c.ColumnName";
+
+		PreparedStatement pstmt = null;
+		ResultSet rs = null;
+		try
+		{
+			pstmt = DB.prepareStatement(sql, trxName);
+			pstmt.setString(1, schemaName);
+			pstmt.setInt(2, minRows);
+			pstmt.setString(3, tables.toString());
+			pstmt.setString(4, tables.toString());
+			rs = pstmt.executeQuery();
+			while (rs.next())
+			{
+				if(list.size() >= maxIndexes)
+					break;
+
+				TemporaryIndex index = new TemporaryIndex(rs.getString(1), rs.getString(2), rs.getLong(3), rs.getLong(4));
+				if(m_Indexes.containsKey(getKey(index.tableName, index.columnName)))
+					continue;
+
+				list.add(index);
+			}
+		}
+		catch (SQLException e)
+		{
+			log.log(Level.SEVERE, sql, e);
+			throw new DBException(e, sql);
+		} finally {
+			DB.close(rs, pstmt);
+			rs = null; pstmt = null;
+		}
+
+		return list;
+	}
+
+	/**
+	 * Create the temporary indexes with CREATE INDEX CONCURRENTLY.
+	 * CONCURRENTLY can not run in a transaction block, so an auto commit connection is used.
+	 * The transaction of the process must be committed before calling this method.
+	 *
+	 * @param candidates
+	 * @return number of created indexes
+	 */
+	public int createIndexes(List<TemporaryIndex> candidates)
+	{
+		int created = 0;
+		Connection conn = null;
+		Statement stmt = null;
+		try
+		{
+			conn = DB.createConnection(true, Connection.TRANSACTION_READ_COMMITTED);
+			stmt = conn.createStatement();
+			for(TemporaryIndex index : candidates)
+			{
+				String createSQL = "CREATE INDEX CONCURRENTLY IF NOT EXISTS " + index.indexName
+						+ " ON " + schemaName + "." + index.tableName + " (" + index.columnName + ")";
+				long start = System.currentTimeMillis();
+				try
+				{
+					stmt.execute(createSQL);
+					index.isCreated = true;
+					index.buildMillis = System.currentTimeMillis() - start;
+					m_Indexes.put(getKey(index.tableName, index.columnName), index);
+					created++;
+				}
+				catch (SQLException e)
+				{
+					//A failed concurrent build leaves an invalid index.
+					log.log(Level.WARNING, createSQL, e);
+					executeQuietly(stmt, "DROP INDEX CONCURRENTLY IF EXISTS " + schemaName + "." + index.indexName);
+				}
+			}
+		}
+		catch (SQLException e)
+		{
+			log.log(Level.WARNING, "Create temporary index", e);
+		} finally {
+			closeQuietly(stmt, conn);
+			stmt = null; conn = null;
+		}
+
+		return created;
+	}
+
+	/**
+	 * Drop all temporary indexes that were created by this advisor.
+	 *
+	 * @return list of dropped indexes
+	 */
+	public List<TemporaryIndex> dropIndexes()
+	{
+		ArrayList<TemporaryIndex> list = new ArrayList<TemporaryIndex>(m_Indexes.values());
+		if(list.size() == 0)
+			return list;
+
+		Connection conn = null;
+		Statement stmt = null;
+		try
+		{
+			conn = DB.createConnection(true, Connection.TRANSACTION_READ_COMMITTED);
+			stmt = conn.createStatement();
+			for(TemporaryIndex index : list)
+			{
+				executeQuietly(stmt, "DROP INDEX CONCURRENTLY IF EXISTS " + schemaName + "." + index.indexName);
+			}
+		}
+		catch (SQLException e)
+		{
+			log.log(Level.WARNING, "Drop temporary index", e);
+		} finally {
+			closeQuietly(stmt, conn);
+			stmt = null; conn = null;
+		}
+
+		m_Indexes.clear();
+		return list;
+	}
+
+	/**
+	 * Drop temporary indexes that were left by a run that was aborted.
+	 * Indexes of a process instance that is still processing belong to a concurrent run and are kept.
+	 *
+	 * @return number of dropped indexes
+	 */
+	public int dropLeftoverIndexes()
+	{
+		ArrayList<String> indexNames = new ArrayList<String>();
+		String sql = "SELECT ix.indexname, pi.IsProcessing FROM pg_indexes ix"
+				+ " LEFT OUTER JOIN AD_PInstance pi ON (pi.AD_PInstance_ID::text = split_part(substr(ix.indexname, ?), '_', 1))"
+				+ " WHERE ix.schemaname = ? AND ix.indexname LIKE ?";
+		PreparedStatement pstmt = null;
+		ResultSet rs = null;
+		try
+		{
+			pstmt = DB.prepareStatement(sql, trxName);
+			pstmt.setInt(1, INDEX_PREFIX.length() + 1);
+			pstmt.setString(2, schemaName);
+			pstmt.setString(3, INDEX_PREFIX.replace("_", "\\_") + "%");
+			rs = pstmt.executeQuery();
+			while (rs.next())
+			{
+				String indexName = rs.getString(1);
+				int instanceID = getAD_PInstance_ID(indexName);
+				if(instanceID < 0 || instanceID == AD_PInstance_ID)
+					continue;//Not a temporary index name, or an index of this run
+
+				if("Y".equals(rs.getString(2)))
+					continue;//A concurrent run is using it
+
+				indexNames.add(indexName);
+			}
+		}
+		catch (SQLException e)
+		{
+			log.log(Level.SEVERE, sql, e);
+			throw new DBException(e, sql);
+		} finally {
+			DB.close(rs, pstmt);
+			rs = null; pstmt = null;
+		}
+
+		if(indexNames.size() == 0)
+			return 0;
+
+		Connection conn = null;
+		Statement stmt = null;
+		try
+		{
+			conn = DB.createConnection(true, Connection.TRANSACTION_READ_COMMITTED);
+			stmt = conn.createStatement();
+			for(String indexName : indexNames)
+			{
+				executeQuietly(stmt, "DROP INDEX CONCURRENTLY IF EXISTS " + schemaName + "." + indexName);
+			}
+		}
+		catch (SQLException e)
+		{
+			log.log(Level.WARNING, "Drop leftover temporary index", e);
+		} finally {
+			closeQuietly(stmt, conn);
+			stmt = null; conn = null;
+		}
+
+		return indexNames.size();
+	}
+
+	/**
+	 * Record a statement that filtered by the column, to estimate the time saved.
+	 *
+	 * @param tableName
+	 * @param columnName
+	 * @param millis elapsed time of the statement
+	 */
+	public void recordStatement(String tableName, String columnName, long millis)
+	{
+		if(tableName == null || columnName == null)
+			return;
+
+		TemporaryIndex index = m_Indexes.get(getKey(tableName, columnName));
+		if(index == null)
+			return;
+
+		index.statements++;
+		index.statementMillis = index.statementMillis + millis;
+	}
+
+	private String getKey(String tableName, String columnName)
+	{
+		return (tableName + "." + columnName).toUpperCase();
+	}
+
+	private void executeQuietly(Statement stmt, String sql)
+	{
+		try
+		{
+			stmt.execute(sql);
+		}
+		catch (SQLException e)
+		{
+			log.log(Level.WARNING, sql, e);
+		}
+	}
+
+	private void closeQuietly(Statement stmt, Connection conn)
+	{
+		try
+		{
+			if(stmt != null)
+				stmt.close();
+		}
+		catch (SQLException e)
+		{
+			;//Nothing to do
+		}
+
+		try
+		{
+			if(conn != null)
+				conn.close();
+		}
+		catch (SQLException e)
+		{
+			;//Nothing to do
+		}
+	}
+
+}
@@ -0,0 +1,49 @@
+/******************************************************************************
+ * Product: JPiere                                                            *
+ * Copyright (C) Hideaki Hagiwara (h.hagiwara@oss-erp.co.jp)                  *
+ *                                                                            *
+ * This program is free software, you can redistribute it and/or modify it    *
+ * under the terms version 2 of the GNU General Public License as published   *
+ * by the Free Software Foundation. This program is distributed in the hope   *
+ * that it will be useful, but WITHOUT ANY WARRANTY.                          *
+ * See the GNU General Public License for more details.                       *
+ *                                                                            *
+ * JPiere is maintained by OSS ERP Solutions Co., Ltd.                        *
+ * (http://www.oss-erp.co.jp)                                                 *
+ *****************************************************************************/
+package jpiere.plugin.delete.model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.math.BigDecimal;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * 	Test of the Default Logic of POBatchInsert.
+ *
+ */
+public class POBatchInsertTest
+{
+	@Test
+	public void constantDefaultsAreApplied()
+	{
+		assertEquals("N", POBatchInsert.getDefaultValue("N", Boolean.class));
+		assertEquals("Y", POBatchInsert.getDefaultValue("'Y'", Boolean.class));
+		assertEquals("TSN", POBatchInsert.getDefaultValue("'TSN'", String.class));
+		assertEquals(Integer.valueOf(0), POBatchInsert.getDefaultValue("0", Integer.class));
+		assertEquals(new BigDecimal("1.5"), POBatchInsert.getDefaultValue("1.5", BigDecimal.class));
+	}
+
+	@Test
+	public void contextAndSQLDefaultsAreNotEvaluated()
+	{
+		assertNull(POBatchInsert.getDefaultValue(null, String.class));
+		assertNull(POBatchInsert.getDefaultValue("", String.class));
+		assertNull(POBatchInsert.getDefaultValue("@#AD_Org_ID@", Integer.class));
+		assertNull(POBatchInsert.getDefaultValue("@SQL=SELECT 1", Integer.class));
+		assertNull(POBatchInsert.getDefaultValue("A;B", String.class));
+		assertNull(POBatchInsert.getDefaultValue("abc", Integer.class));
+	}
+}
@@ -0,0 +1,59 @@
+/******************************************************************************
+ * Product: JPiere                                                            *
+ * Copyright (C) Hideaki Hagiwara (h.hagiwara@oss-erp.co.jp)                  *
+ *                                                                            *
+ * This program is free software, you can redistribute it and/or modify it    *
+ * under the terms version 2 of the GNU General Public License as published   *
+ * by the Free Software Foundation. This program is distributed in the hope   *
+ * that it will be useful, but WITHOUT ANY WARRANTY.                          *
+ * See the GNU General Public License for more details.                       *
+ *                                                                            *
+ * JPiere is maintained by OSS ERP Solutions Co., Ltd.                        *
+ * (http://www.oss-erp.co.jp)                                                 *
+ *****************************************************************************/
+package jpiere.plugin.delete.process;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * 	Test of the statements of JPiereSQLBuilder.
+ *
+ */
+public class JPiereSQLBuilderTest
+{
+	@Test
+	public void whereAndBindsBothClauses()
+	{
+		JPiereSQLBuilder.Where where = JPiereSQLBuilder.Where.inIDs("AD_User_ID", Arrays.asList(100, 101), false)
+											.and(JPiereSQLBuilder.Where.notEqualsID("AD_Client_ID", 11));
+		JPiereSQLBuilder.Statement statement = JPiereSQLBuilder.deleteFrom("AD_Preference").where(where).build();
+
+		assertEquals("DELETE FROM AD_Preference WHERE NOT (AD_User_ID = ANY(?::numeric[])) AND AD_Client_ID <> ?", statement.sql);
+		assertArrayEquals(new Object[] {"{100,101}", Integer.valueOf(11)}, statement.params);
+	}
+
+	@Test
+	public void whereAndIgnoresNone()
+	{
+		JPiereSQLBuilder.Where where = JPiereSQLBuilder.Where.NONE.and(JPiereSQLBuilder.Where.equalsID("C_Order_ID", 5))
+											.and(JPiereSQLBuilder.Where.NONE);
+		JPiereSQLBuilder.Statement statement = JPiereSQLBuilder.select("COUNT(*)", "C_OrderLine").where(where).whereClient(11).build();
+
+		assertEquals("SELECT COUNT(*) FROM C_OrderLine WHERE C_Order_ID = ? AND AD_Client_ID = ?", statement.sql);
+		assertEquals("SELECT COUNT(*) FROM C_OrderLine WHERE C_Order_ID = 5 AND AD_Client_ID = 11", statement.toString());
+	}
+
+	@Test
+	public void resetStatementBindsClient()
+	{
+		JPiereSQLBuilder.Statement statement = JPiereSQLBuilder.updateSQL("UPDATE AD_Client SET Name = ?", "Test").whereClient(11).build();
+
+		assertEquals("UPDATE AD_Client SET Name = ? WHERE AD_Client_ID = ?", statement.sql);
+		assertEquals("UPDATE AD_Client SET Name = 'Test' WHERE AD_Client_ID = 11", statement.toString());
+	}
+}
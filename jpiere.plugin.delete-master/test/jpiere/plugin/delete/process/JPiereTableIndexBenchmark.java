@@ -0,0 +1,111 @@
+/******************************************************************************
+ * Product: JPiere                                                            *
+ * Copyright (C) Hideaki Hagiwara (h.hagiwara@oss-erp.co.jp)                  *
+ *                                                                            *
+ * This program is free software, you can redistribute it and/or modify it    *
+ * under the terms version 2 of the GNU General Public License as published   *
+ * by the Free Software Foundation. This program is distributed in the hope   *
+ * that it will be useful, but WITHOUT ANY WARRANTY.                          *
+ * See the GNU General Public License for more details.                       *
+ *                                                                            *
+ * JPiere is maintained by OSS ERP Solutions Co., Ltd.                        *
+ * (http://www.oss-erp.co.jp)                                                 *
+ *****************************************************************************/
+package jpiere.plugin.delete.process;
+
+import java.util.ArrayList;
+import java.util.Locale;
+
+/**
+ * 	Micro benchmark of table classification.
+ *
+ *  Compares the linear toUpperCase scans of TrxTables and IniTables that the delete processes
+ *  used before with the case-folded lookup of JPiereTableIndex, for a dictionary of about
+ *  1200 tables. Run with the bundle and org.adempiere.base on the class path:
+ *
+ *  java jpiere.plugin.delete.process.JPiereTableIndexBenchmark [passes]
+ *
+ */
+public class JPiereTableIndexBenchmark
+{
+	private static final int WARMUP = 50;
+
+	public static void main(String[] args)
+	{
+		int passes = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+
+		String[] trxTables = JPiereDeleteClientRecords.TrxTables;
+		String[] iniTables = JPiereDeleteClientRecords.IniTables;
+		ArrayList<String> dictionary = new ArrayList<String>();
+		for(int i = 0; i < 900; i++)
+			dictionary.add("X_TABLE_" + i);
+		for(String table : trxTables)
+			dictionary.add(table.toUpperCase(Locale.ROOT));
+		for(String table : iniTables)
+			dictionary.add(table.toUpperCase(Locale.ROOT));
+		String[] tables = dictionary.toArray(new String[dictionary.size()]);
+
+		JPiereTableIndex index = JPiereTableIndex.get();
+		for(int i = 0; i < WARMUP; i++)
+		{
+			classifyByScan(tables, trxTables, iniTables);
+			classifyByIndex(tables, index);
+		}
+
+		long start = System.nanoTime();
+		int scan = 0;
+		for(int i = 0; i < passes; i++)
+			scan = classifyByScan(tables, trxTables, iniTables);
+		long scanNanos = (System.nanoTime() - start) / passes;
+
+		start = System.nanoTime();
+		int indexed = 0;
+		for(int i = 0; i < passes; i++)
+			indexed = classifyByIndex(tables, index);
+		long indexNanos = (System.nanoTime() - start) / passes;
+
+		if(scan != indexed)
+			throw new IllegalStateException("Different classification: " + scan + " / " + indexed);
+
+		System.out.println("Tables: " + tables.length + " (TRX " + trxTables.length + " / INI " + iniTables.length + ")");
+		System.out.println("Scan  : " + (scanNanos / 1000) + " us/pass");
+		System.out.println("Index : " + (indexNanos / 1000) + " us/pass");
+	}
+
+	private static int classifyByScan(String[] tables, String[] trxTables, String[] iniTables)
+	{
+		int classified = 0;
+		for(String table : tables)
+		{
+			if(isIn(trxTables, table))
+				classified = classified + 1;
+			else if(isIn(iniTables, table))
+				classified = classified + 2;
+		}
+		return classified;
+	}
+
+	private static int classifyByIndex(String[] tables, JPiereTableIndex index)
+	{
+		int classified = 0;
+		for(String table : tables)
+		{
+			if(index.isTrxTable(table))
+				classified = classified + 1;
+			else if(index.isIniTable(table))
+				classified = classified + 2;
+		}
+		return classified;
+	}
+
+	/** The scan of the delete processes before the index */
+	private static boolean isIn(String[] array, String string)
+	{
+		for(int i = 0; i < array.length; i++)
+		{
+			if(array[i].toUpperCase().equals(string.toUpperCase()))
+				return true;
+		}
+		return false;
+	}
+}
@@ -0,0 +1,103 @@
+/******************************************************************************
+ * Product: JPiere                                                            *
+ * Copyright (C) Hideaki Hagiwara (h.hagiwara@oss-erp.co.jp)                  *
+ *                                                                            *
+ * This program is free software, you can redistribute it and/or modify it    *
+ * under the terms version 2 of the GNU General Public License as published   *
+ * by the Free Software Foundation. This program is distributed in the hope   *
+ * that it will be useful, but WITHOUT ANY WARRANTY.                          *
+ * See the GNU General Public License for more details.                       *
+ *                                                                            *
+ * JPiere is maintained by OSS ERP Solutions Co., Ltd.                        *
+ * (http://www.oss-erp.co.jp)                                                 *
+ *****************************************************************************/
+package jpiere.plugin.delete.process;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Iterator;
+
+import org.junit.jupiter.api.Test;
+
+import jpiere.plugin.delete.process.JPiereTableIndex.TableSet;
+
+/**
+ * 	Test of JPiereTableIndex.TableSet.
+ *
+ */
+public class JPiereTableIndexTest
+{
+	@Test
+	public void containsIgnoresCase()
+	{
+		TableSet tables = new TableSet(new String[]{"C_Order", "M_InOut"});
+		assertTrue(tables.contains("C_ORDER"));
+		assertTrue(tables.contains("c_order"));
+		assertTrue(tables.contains("M_InOut"));
+		assertFalse(tables.contains("C_OrderLine"));
+		assertFalse(tables.contains(null));
+	}
+
+	@Test
+	public void keepsFirstNameAndOrder()
+	{
+		TableSet tables = new TableSet(new String[]{"M_InOut", "C_Order", "C_ORDER", "AD_User"});
+		assertEquals(3, tables.size());
+		assertArrayEquals(new String[]{"M_InOut", "C_Order", "AD_User"}, tables.toArray());
+	}
+
+	@Test
+	public void unionAppendsMissingNames()
+	{
+		TableSet tables = new TableSet(new String[]{"C_Order", "M_InOut"})
+				.union(new TableSet(new String[]{"m_inout", "C_Invoice"}));
+		assertArrayEquals(new String[]{"C_Order", "M_InOut", "C_Invoice"}, tables.toArray());
+	}
+
+	@Test
+	public void unionWithEmptyReturnsSameSet()
+	{
+		TableSet tables = new TableSet(new String[]{"C_Order"});
+		assertSame(tables, tables.union(TableSet.EMPTY));
+		assertSame(tables, TableSet.EMPTY.union(tables));
+	}
+
+	@Test
+	public void minusAndIntersect()
+	{
+		TableSet tables = new TableSet(new String[]{"C_Order", "M_InOut", "C_Invoice"});
+		TableSet other = new TableSet(new String[]{"C_INVOICE", "AD_User"});
+		assertArrayEquals(new String[]{"C_Order", "M_InOut"}, tables.minus(other).toArray());
+		assertArrayEquals(new String[]{"C_Invoice"}, tables.intersect(other).toArray());
+		assertTrue(tables.intersect(TableSet.EMPTY).isEmpty());
+	}
+
+	@Test
+	public void toArrayReturnsCopy()
+	{
+		TableSet tables = new TableSet(new String[]{"C_Order", "M_InOut"});
+		String[] array = tables.toArray();
+		array[0] = "AD_User";
+		assertNotSame(array, tables.toArray());
+		assertArrayEquals(new String[]{"C_Order", "M_InOut"}, tables.toArray());
+		assertFalse(tables.contains("AD_User"));
+	}
+
+	@Test
+	public void iteratorIsReadOnly()
+	{
+		TableSet tables = new TableSet(new String[]{"C_Order"});
+		assertThrows(UnsupportedOperationException.class, () -> {
+			Iterator<String> iterator = tables.iterator();
+			iterator.next();
+			iterator.remove();
+		});
+		assertEquals(1, tables.size());
+	}
+}
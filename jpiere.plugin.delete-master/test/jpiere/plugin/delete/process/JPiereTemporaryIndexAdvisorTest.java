@@ -0,0 +1,53 @@
+/******************************************************************************
+ * Product: JPiere                                                            *
+ * Copyright (C) Hideaki Hagiwara (h.hagiwara@oss-erp.co.jp)                  *
+ *                                                                            *
+ * This program is free software, you can redistribute it and/or modify it    *
+ * under the terms version 2 of the GNU General Public License as published   *
+ * by the Free Software Foundation. This program is distributed in the hope   *
+ * that it will be useful, but WITHOUT ANY WARRANTY.                          *
+ * See the GNU General Public License for more details.                       *
+ *                                                                            *
+ * JPiere is maintained by OSS ERP Solutions Co., Ltd.                        *
+ * (http://www.oss-erp.co.jp)                                                 *
+ *****************************************************************************/
+package jpiere.plugin.delete.process;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * 	Test of the temporary index names of JPiereTemporaryIndexAdvisor.
+ *
+ */
+public class JPiereTemporaryIndexAdvisorTest
+{
+	@Test
+	public void indexNameIsScopedToRun()
+	{
+		String indexName = JPiereTemporaryIndexAdvisor.getIndexName(1000123, 7);
+		assertEquals("jp_tmpdel_1000123_7", indexName);
+		assertEquals(1000123, JPiereTemporaryIndexAdvisor.getAD_PInstance_ID(indexName));
+	}
+
+	@Test
+	public void indexNamesOfRunAreUnique()
+	{
+		assertTrue(!JPiereTemporaryIndexAdvisor.getIndexName(1000123, 1).equals(JPiereTemporaryIndexAdvisor.getIndexName(1000123, 2)));
+		assertTrue(!JPiereTemporaryIndexAdvisor.getIndexName(1000123, 1).equals(JPiereTemporaryIndexAdvisor.getIndexName(1000124, 1)));
+		assertTrue(JPiereTemporaryIndexAdvisor.getIndexName(Integer.MAX_VALUE, Integer.MAX_VALUE).length() <= 63);
+	}
+
+	@Test
+	public void otherNamesHaveNoInstance()
+	{
+		assertEquals(-1, JPiereTemporaryIndexAdvisor.getAD_PInstance_ID(null));
+		assertEquals(-1, JPiereTemporaryIndexAdvisor.getAD_PInstance_ID("c_order_key"));
+		assertEquals(-1, JPiereTemporaryIndexAdvisor.getAD_PInstance_ID("jp_tmpdel_3f2a9c"));
+		assertEquals(-1, JPiereTemporaryIndexAdvisor.getAD_PInstance_ID("jp_tmpdel_1000123_"));
+		assertEquals(-1, JPiereTemporaryIndexAdvisor.getAD_PInstance_ID("jp_tmpdel__7"));
+		assertEquals(-1, JPiereTemporaryIndexAdvisor.getAD_PInstance_ID("jp_tmpdel_1000123_x"));
+	}
+}